@@ -0,0 +1,452 @@
+package com.mbcdev.folkets;
+
+import android.support.annotation.NonNull;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * An index of the headwords of a table by the letters of their {@link SearchKeys search keys},
+ * kept on disk by the {@link IndexSnapshotStore} and read straight from the memory mapped
+ * snapshot. It finds the anagrams of a key, and the headwords that can be spelled with some of
+ * its letters.
+ * <p>
+ *     The signature of a key is its characters other than spaces, sorted. Headwords are sorted by
+ *     signature and then kept in search order, so the anagrams of a key are one range, found by
+ *     binary search. The sorted signatures also make up a trie without storing any nodes: the
+ *     signatures below a node share its prefix, so they are a range, and its children are the
+ *     runs of that range with the same next character. A search for the headwords that can be
+ *     spelled with some letters walks that trie, and never enters a child whose letter has run
+ *     out.
+ * </p>
+ * <p>
+ *     Layout, big endian: the number of headwords n, n row ids, n + 1 offsets into the keys, the
+ *     UTF-16 chars of every key one after another, n + 1 offsets into the signatures and the
+ *     UTF-16 chars of every signature one after another.
+ * </p>
+ */
+class AnagramIndex implements Headwords {
+
+    private static final int VERSION = 1;
+
+    private final ByteBuffer buffer;
+    private final int size;
+    private final int rowIdsStart;
+    private final int keyOffsetsStart;
+    private final int keysStart;
+    private final int signatureOffsetsStart;
+    private final int signaturesStart;
+
+    /**
+     * Creates an index over a snapshot
+     *
+     * @param buffer The snapshot
+     * @throws IOException if the snapshot is malformed
+     */
+    private AnagramIndex(@NonNull ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        size = buffer.getInt(0);
+
+        if (size < 0 || 4L + size * 8L + 8 > buffer.limit()) {
+            throw new IOException("Malformed anagram index");
+        }
+
+        rowIdsStart = 4;
+        keyOffsetsStart = rowIdsStart + size * 4;
+        keysStart = keyOffsetsStart + (size + 1) * 4;
+        signatureOffsetsStart = keysStart + buffer.getInt(keyOffsetsStart + size * 4) * 2;
+        signaturesStart = signatureOffsetsStart + (size + 1) * 4;
+
+        if (signatureOffsetsStart < keysStart || signaturesStart > buffer.limit()
+                || signaturesStart + signatureOffset(size) * 2L > buffer.limit()) {
+            throw new IOException("Malformed anagram index");
+        }
+    }
+
+    /**
+     * Gets the snapshot of the anagram index of a table
+     *
+     * @param tableName The table
+     * @return the snapshot of the anagram index of the table
+     */
+    @NonNull
+    static IndexSnapshot<AnagramIndex> snapshot(@NonNull final String tableName) {
+        return new IndexSnapshot<AnagramIndex>() {
+            @NonNull
+            @Override
+            public String getName() {
+                return "anagrams_" + tableName;
+            }
+
+            @Override
+            public int getVersion() {
+                return VERSION;
+            }
+
+            @Override
+            public void build(
+                    @NonNull FolketsDatabase database, @NonNull DataOutputStream output)
+                    throws IOException {
+                write(HeadwordIndex.readSorted(database, tableName), output);
+            }
+
+            @NonNull
+            @Override
+            public AnagramIndex load(@NonNull ByteBuffer buffer) throws IOException {
+                return new AnagramIndex(buffer);
+            }
+        };
+    }
+
+    /**
+     * Gets the signature of a key: its characters other than spaces, sorted
+     *
+     * @param key The search key
+     * @return the signature of the key
+     */
+    @NonNull
+    static String signatureOf(@NonNull String key) {
+
+        char[] signature = new char[key.length()];
+        int length = 0;
+
+        for (int i = 0; i < key.length(); i++) {
+            if (key.charAt(i) != ' ') {
+                signature[length++] = key.charAt(i);
+            }
+        }
+
+        Arrays.sort(signature, 0, length);
+        return new String(signature, 0, length);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @NonNull
+    @Override
+    public String getKey(int index) {
+        int start = keyOffset(index);
+        char[] key = new char[keyOffset(index + 1) - start];
+
+        for (int i = 0; i < key.length; i++) {
+            key[i] = buffer.getChar(keysStart + (start + i) * 2);
+        }
+
+        return new String(key);
+    }
+
+    @Override
+    public int getRowId(int index) {
+        return buffer.getInt(rowIdsStart + index * 4);
+    }
+
+    /**
+     * Finds a page of the anagrams of a key: the headwords with the same letters
+     *
+     * @param key The search key
+     * @param skip How many anagrams come before the page
+     * @param limit The most anagrams on the page
+     * @return the positions of the anagrams on the page, in search order
+     */
+    @NonNull
+    int[] findAnagrams(@NonNull String key, int skip, int limit) {
+
+        String signature = signatureOf(key);
+
+        if (signature.length() == 0) {
+            return new int[0];
+        }
+
+        int start = lowerBound(signature, false);
+        int end = lowerBound(signature, true);
+
+        int from = Math.min(end, start + skip);
+        int to = (int) Math.min(end, (long) from + limit);
+        int[] positions = new int[to - from];
+
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = from + i;
+        }
+
+        return positions;
+    }
+
+    /**
+     * Finds a page of the headwords that can be spelled with some of the letters of a key, each
+     * used at most as often as the key has it
+     *
+     * @param key The search key holding the letters
+     * @param skip How many headwords come before the page
+     * @param limit The most headwords on the page
+     * @return the positions of the headwords on the page, longest first and then in search order
+     */
+    @NonNull
+    int[] findFormable(@NonNull String key, int skip, int limit) {
+
+        FormableWalk walk = new FormableWalk(signatureOf(key));
+        walk.visit(0, size, 0);
+
+        Integer[] matches = walk.matches.toArray(new Integer[walk.matches.size()]);
+
+        Arrays.sort(matches, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer first, Integer second) {
+                int byLength = signatureLength(second) - signatureLength(first);
+
+                if (byLength != 0) {
+                    return byLength;
+                }
+
+                int byKey = getKey(first).compareTo(getKey(second));
+                return byKey != 0 ? byKey : first - second;
+            }
+        });
+
+        int from = Math.min(matches.length, skip);
+        int to = (int) Math.min(matches.length, (long) from + limit);
+        int[] positions = new int[to - from];
+
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = matches[from + i];
+        }
+
+        return positions;
+    }
+
+    /**
+     * Finds where a signature is, or would be, by binary search over the signatures
+     *
+     * @param signature The signature
+     * @param after Whether to find the end of the headwords with the signature, rather than the
+     *              start
+     * @return the position of the first headword whose signature sorts after the signature, or
+     *         with it if not after
+     */
+    private int lowerBound(@NonNull String signature, boolean after) {
+
+        int low = 0;
+        int high = size;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compareSignature(middle, signature);
+
+            if (comparison < 0 || (after && comparison == 0)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Compares the signature of a headword with a signature, without copying it out of the buffer
+     *
+     * @param index The position of the headword
+     * @param signature The signature
+     * @return less than, equal to or greater than 0 if the signature of the headword sorts
+     *         before, with or after the signature
+     */
+    private int compareSignature(int index, @NonNull String signature) {
+
+        int start = signatureOffset(index);
+        int length = signatureLength(index);
+        int common = Math.min(length, signature.length());
+
+        for (int i = 0; i < common; i++) {
+            int difference = signatureChar(start + i) - signature.charAt(i);
+
+            if (difference != 0) {
+                return difference;
+            }
+        }
+
+        return length - signature.length();
+    }
+
+    private int keyOffset(int index) {
+        return buffer.getInt(keyOffsetsStart + index * 4);
+    }
+
+    private int signatureOffset(int index) {
+        return buffer.getInt(signatureOffsetsStart + index * 4);
+    }
+
+    private int signatureLength(int index) {
+        return signatureOffset(index + 1) - signatureOffset(index);
+    }
+
+    private char signatureChar(int offset) {
+        return buffer.getChar(signaturesStart + offset * 2);
+    }
+
+    /**
+     * A depth first walk of the trie of the signatures that only spends the letters it has, see
+     * {@link #findFormable(String, int, int)}
+     */
+    private class FormableWalk {
+
+        final char[] letters;
+        final int[] remaining;
+        final List<Integer> matches = new ArrayList<>();
+
+        FormableWalk(@NonNull String signature) {
+
+            char[] distinct = new char[signature.length()];
+            int[] counts = new int[signature.length()];
+            int count = 0;
+
+            for (int i = 0; i < signature.length(); i++) {
+                if (count > 0 && distinct[count - 1] == signature.charAt(i)) {
+                    counts[count - 1]++;
+                } else {
+                    distinct[count] = signature.charAt(i);
+                    counts[count++] = 1;
+                }
+            }
+
+            letters = Arrays.copyOf(distinct, count);
+            remaining = Arrays.copyOf(counts, count);
+        }
+
+        /**
+         * Visits the node of a range of signatures that share their first depth characters
+         *
+         * @param start The first signature of the range
+         * @param end The signature after the last of the range
+         * @param depth The depth of the node
+         */
+        void visit(int start, int end, int depth) {
+
+            // Signatures that end at this node sort first, and are spelled by the path to it
+            while (start < end && signatureLength(start) == depth) {
+                if (depth > 0) {
+                    matches.add(start);
+                }
+
+                start++;
+            }
+
+            while (start < end) {
+                char c = signatureChar(signatureOffset(start) + depth);
+                int childEnd = childEnd(start, end, depth, c);
+                int letter = Arrays.binarySearch(letters, c);
+
+                if (letter >= 0 && remaining[letter] > 0) {
+                    remaining[letter]--;
+                    visit(start, childEnd, depth + 1);
+                    remaining[letter]++;
+                } else if (letter < 0 && -letter - 1 == letters.length) {
+                    // Every later child has a letter past the last one there is
+                    return;
+                }
+
+                start = childEnd;
+            }
+        }
+
+        /**
+         * Finds where the run of signatures with a character at a depth ends, by binary search
+         *
+         * @return the first signature in the range past the run
+         */
+        int childEnd(int start, int end, int depth, char c) {
+
+            int low = start;
+            int high = end;
+
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+
+                if (signatureChar(signatureOffset(middle) + depth) <= c) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+
+            return low;
+        }
+    }
+
+    /**
+     * Writes the index over headwords
+     *
+     * @param headwords The headwords, in search order
+     * @param output Where to write the index
+     * @throws IOException if the index could not be written
+     */
+    private static void write(
+            @NonNull List<HeadwordIndex.Headword> headwords,
+            @NonNull DataOutputStream output) throws IOException {
+
+        List<Signed> signed = new ArrayList<>(headwords.size());
+
+        for (HeadwordIndex.Headword headword : headwords) {
+            signed.add(new Signed(headword, signatureOf(headword.key)));
+        }
+
+        // A stable sort, so headwords with the same signature stay in search order
+        Collections.sort(signed, new Comparator<Signed>() {
+            @Override
+            public int compare(Signed first, Signed second) {
+                return first.signature.compareTo(second.signature);
+            }
+        });
+
+        output.writeInt(signed.size());
+
+        for (Signed headword : signed) {
+            output.writeInt(headword.headword.rowId);
+        }
+
+        int offset = 0;
+        output.writeInt(offset);
+
+        for (Signed headword : signed) {
+            offset += headword.headword.key.length();
+            output.writeInt(offset);
+        }
+
+        for (Signed headword : signed) {
+            output.writeChars(headword.headword.key);
+        }
+
+        offset = 0;
+        output.writeInt(offset);
+
+        for (Signed headword : signed) {
+            offset += headword.signature.length();
+            output.writeInt(offset);
+        }
+
+        for (Signed headword : signed) {
+            output.writeChars(headword.signature);
+        }
+    }
+
+    /**
+     * A headword being indexed, with its signature
+     */
+    private static class Signed {
+
+        final HeadwordIndex.Headword headword;
+        final String signature;
+
+        Signed(@NonNull HeadwordIndex.Headword headword, @NonNull String signature) {
+            this.headword = headword;
+            this.signature = signature;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.mbcdev.folkets;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The {@link CompletionTable completion table} of a table, loaded into memory so that the most
+ * important words for a short prefix are a single hash lookup away
+ */
+class Completions {
+
+    private static final long[] NO_ROW_IDS = new long[0];
+    private static final String[] NO_KEYS = new String[0];
+
+    private final Map<String, long[]> rowIdsByPrefix;
+    private final Map<String, String[]> keysByPrefix;
+
+    private Completions(
+            @NonNull Map<String, long[]> rowIdsByPrefix,
+            @NonNull Map<String, String[]> keysByPrefix) {
+        this.rowIdsByPrefix = rowIdsByPrefix;
+        this.keysByPrefix = keysByPrefix;
+    }
+
+    /**
+     * Loads the completion table of a table
+     *
+     * @param database The shard holding the completion table
+     * @param tableName The dictionary table
+     * @return the completions
+     */
+    @NonNull
+    static Completions load(@NonNull SQLiteDatabase database, @NonNull String tableName) {
+
+        Map<String, long[]> rowIdsByPrefix = new HashMap<>();
+        Map<String, String[]> keysByPrefix = new HashMap<>();
+
+        Cursor cursor = database.query(CompletionTable.tableName(tableName),
+                new String[] { CompletionTable.PREFIX_COLUMN, CompletionTable.RANK_COLUMN,
+                        CompletionTable.ROW_ID_COLUMN, SearchKeys.COLUMN },
+                null, null, null, null, null);
+
+        try {
+            while (cursor.moveToNext()) {
+                String prefix = cursor.getString(0);
+                int rank = cursor.getInt(1);
+                long[] rowIds = rowIdsByPrefix.get(prefix);
+                String[] keys = keysByPrefix.get(prefix);
+
+                if (rowIds == null) {
+                    rowIds = new long[CompletionTable.SIZE];
+                    keys = new String[CompletionTable.SIZE];
+                    rowIdsByPrefix.put(prefix, rowIds);
+                    keysByPrefix.put(prefix, keys);
+                }
+
+                if (rank >= 0 && rank < rowIds.length) {
+                    rowIds[rank] = cursor.getLong(2);
+                    keys[rank] = cursor.getString(3);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        // Prefixes with fewer words than the table holds are trimmed to them
+        for (Map.Entry<String, String[]> entry : keysByPrefix.entrySet()) {
+            String[] keys = entry.getValue();
+            int size = 0;
+
+            while (size < keys.length && keys[size] != null) {
+                size++;
+            }
+
+            if (size < keys.length) {
+                entry.setValue(Arrays.copyOf(keys, size));
+                rowIdsByPrefix.put(entry.getKey(),
+                        Arrays.copyOf(rowIdsByPrefix.get(entry.getKey()), size));
+            }
+        }
+
+        return new Completions(rowIdsByPrefix, keysByPrefix);
+    }
+
+    /**
+     * Gets the row ids of the most important words for a prefix, most important first
+     *
+     * @param prefix The search key of the prefix, see {@link CompletionTable#isServed(String)}
+     * @return the row ids, empty if no word starts with the prefix
+     */
+    @NonNull
+    long[] getRowIds(@NonNull String prefix) {
+        long[] rowIds = rowIdsByPrefix.get(prefix);
+        return rowIds != null ? rowIds : NO_ROW_IDS;
+    }
+
+    /**
+     * Gets the search keys of the most important words for a prefix, in the order of
+     * {@link #getRowIds(String)}
+     *
+     * @param prefix The search key of the prefix, see {@link CompletionTable#isServed(String)}
+     * @return the search keys, empty if no word starts with the prefix
+     */
+    @NonNull
+    String[] getKeys(@NonNull String prefix) {
+        String[] keys = keysByPrefix.get(prefix);
+        return keys != null ? keys : NO_KEYS;
+    }
+
+    @Override
+    public String toString() {
+        return "Completions{" +
+                "prefixes=" + rowIdsByPrefix.size() +
+                '}';
+    }
+}
@@ -0,0 +1,249 @@
+package com.mbcdev.folkets;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Splits a Swedish compound, like "sjukhusparkering", into the headwords it is made of, like
+ * "sjukhus" and "parkering", so that a query for a compound the dictionary does not have can
+ * still be answered with its parts.
+ * <p>
+ *     The headwords that start the key at every position are found by a walk down the trie of
+ *     the {@link HeadwordIndex}, see {@link HeadwordIndex#findPrefixesOf(String, int)}, once per
+ *     position. A part may be followed by one of the {@link #LINKING_LETTERS linking letters}
+ *     that Swedish puts between the parts of a compound, like the s of "kvällsmat". The best
+ *     splits are then found by dynamic programming over the positions of the key, keeping the
+ *     best few splits of every prefix: fewest parts first, then fewest linking letters, then the
+ *     longest parts. Since every criterion adds up part by part, the best few splits of the whole
+ *     key are always made from the best few of its prefixes.
+ * </p>
+ */
+class CompoundSplitter {
+
+    /** The fewest characters of a part, so that compounds are not split into single letters */
+    static final int MIN_PART_LENGTH = 2;
+
+    /** The letters that can link the parts of a compound */
+    private static final String LINKING_LETTERS = "se";
+
+    private CompoundSplitter() {
+        // Intentionally empty
+    }
+
+    /**
+     * Finds the best splits of a key into two or more headwords
+     *
+     * @param index The headword index of the table
+     * @param key The search key of the compound
+     * @param limit The most splits to find
+     * @return the splits, best first, which are empty if the key can not be split
+     */
+    @NonNull
+    static List<Split> split(@NonNull HeadwordIndex index, @NonNull String key, int limit) {
+
+        int length = key.length();
+
+        if (limit <= 0 || length < MIN_PART_LENGTH * 2 || key.indexOf(' ') >= 0) {
+            return Collections.emptyList();
+        }
+
+        int[][] prefixes = new int[length][];
+        int[][] prefixLengths = new int[length][];
+
+        // The best splits of every prefix of the key, by the length of the prefix
+        List<List<Split>> best = new ArrayList<>(length + 1);
+
+        for (int i = 0; i <= length; i++) {
+            best.add(new ArrayList<Split>(limit));
+        }
+
+        // The empty prefix has a single split, with no parts
+        best.get(0).add(null);
+
+        for (int end = 0; end < length; end++) {
+            List<Split> splits = best.get(end);
+
+            if (splits.isEmpty()) {
+                continue;
+            }
+
+            boolean linkable = end > 0 && LINKING_LETTERS.indexOf(key.charAt(end)) >= 0;
+
+            for (int start = end; start <= end + (linkable ? 1 : 0) && start < length; start++) {
+
+                if (prefixes[start] == null) {
+                    prefixes[start] = index.findPrefixesOf(key, start);
+                    prefixLengths[start] = new int[prefixes[start].length];
+
+                    for (int i = 0; i < prefixes[start].length; i++) {
+                        prefixLengths[start][i] = index.getKey(prefixes[start][i]).length();
+                    }
+                }
+
+                char link = start > end ? key.charAt(end) : 0;
+
+                for (int i = 0; i < prefixes[start].length; i++) {
+                    int partEnd = start + prefixLengths[start][i];
+
+                    if (prefixLengths[start][i] < MIN_PART_LENGTH) {
+                        continue;
+                    }
+
+                    for (Split split : splits) {
+                        // The whole key on its own is a headword, not a compound
+                        if (split == null && partEnd == length) {
+                            continue;
+                        }
+
+                        offer(best.get(partEnd),
+                                new Split(split, prefixes[start][i], start, partEnd, link),
+                                limit);
+                    }
+                }
+            }
+        }
+
+        return best.get(length);
+    }
+
+    /**
+     * Adds a split to the best splits of a prefix, if it is one of them
+     *
+     * @param splits The best splits so far, best first
+     * @param split The split
+     * @param limit The most splits to keep
+     */
+    private static void offer(@NonNull List<Split> splits, @NonNull Split split, int limit) {
+
+        int at = splits.size();
+
+        // Splits as good as an earlier one come after it
+        while (at > 0 && split.compareTo(splits.get(at - 1)) < 0) {
+            at--;
+        }
+
+        if (at < limit) {
+            splits.add(at, split);
+
+            if (splits.size() > limit) {
+                splits.remove(limit);
+            }
+        }
+    }
+
+    /**
+     * A split of a prefix of a key into headwords. Splits are built from the split of the prefix
+     * before their last part, so that the best splits of a prefix share their objects with the
+     * splits they continue.
+     */
+    static class Split implements Comparable<Split> {
+
+        @Nullable
+        private final Split previous;
+        private final int position;
+        private final int start;
+        private final char link;
+        private final int partCount;
+        private final int linkCount;
+        private final int squaredLengths;
+
+        Split(@Nullable Split previous, int position, int start, int end, char link) {
+            this.previous = previous;
+            this.position = position;
+            this.start = start;
+            this.link = link;
+
+            int length = end - start;
+            partCount = (previous != null ? previous.partCount : 0) + 1;
+            linkCount = (previous != null ? previous.linkCount : 0) + (link != 0 ? 1 : 0);
+            squaredLengths = (previous != null ? previous.squaredLengths : 0) + length * length;
+        }
+
+        /**
+         * Gets the number of parts
+         *
+         * @return the number of parts
+         */
+        int getPartCount() {
+            return partCount;
+        }
+
+        /**
+         * Gets the positions in the headword index of the parts
+         *
+         * @return the positions of the headwords, in the order of the parts
+         */
+        @NonNull
+        int[] getPositions() {
+
+            int[] positions = new int[partCount];
+            Split split = this;
+
+            for (int i = partCount - 1; i >= 0; i--) {
+                positions[i] = split.position;
+                split = split.previous;
+            }
+
+            return positions;
+        }
+
+        /**
+         * Gets the linking letters that come before the parts
+         *
+         * @return the letter before every part, or 0 for a part without one
+         */
+        @NonNull
+        char[] getLinks() {
+
+            char[] links = new char[partCount];
+            Split split = this;
+
+            for (int i = partCount - 1; i >= 0; i--) {
+                links[i] = split.link;
+                split = split.previous;
+            }
+
+            return links;
+        }
+
+        /**
+         * Gets where the parts start in the key
+         *
+         * @return the start of every part, in order
+         */
+        @NonNull
+        int[] getStarts() {
+
+            int[] starts = new int[partCount];
+            Split split = this;
+
+            for (int i = partCount - 1; i >= 0; i--) {
+                starts[i] = split.start;
+                split = split.previous;
+            }
+
+            return starts;
+        }
+
+        /**
+         * Ranks splits: fewest parts first, then fewest linking letters, then longest parts
+         */
+        @Override
+        public int compareTo(@NonNull Split other) {
+
+            if (partCount != other.partCount) {
+                return partCount - other.partCount;
+            }
+
+            if (linkCount != other.linkCount) {
+                return linkCount - other.linkCount;
+            }
+
+            return other.squaredLengths - squaredLengths;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.mbcdev.folkets;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.annotation.NonNull;
+
+import java.util.Locale;
+
+import static timber.log.Timber.d;
+
+/**
+ * How the read only connections to the dictionary shards are tuned.
+ * <p>
+ *     The {@link #TUNED} mode memory maps each shard and raises its page cache, so that pages are
+ *     read straight from the OS page cache instead of being copied, and warms up the search
+ *     index of the table being searched right after the install, so the first keystrokes do not
+ *     pay for cold page faults. Memory mapping needs SQLite 3.7.17, so it is ignored before
+ *     Lollipop.
+ * </p>
+ * <p>
+ *     It is opt in, see {@code BuildConfig.TUNED_DATABASE}. The {@code benchmarkSearch} task
+ *     times the first keystrokes after opening the shards with both modes.
+ * </p>
+ */
+class DatabaseTuning {
+
+    /** Leaves every connection with SQLite's defaults */
+    static final DatabaseTuning DEFAULT = new DatabaseTuning(0, 0, false);
+
+    /**
+     * Maps up to 16MB and caches up to 4MB per shard. Both are upper bounds, SQLite only maps and
+     * caches what is read, and most shards are far smaller.
+     */
+    static final DatabaseTuning TUNED = new DatabaseTuning(16 * 1024 * 1024, 4 * 1024, true);
+
+    private final long mmapSize;
+    private final int cacheSizeKb;
+    private final boolean warmUp;
+
+    /**
+     * Creates a tuning
+     *
+     * @param mmapSize The mmap_size of each connection in bytes, or 0 for the default
+     * @param cacheSizeKb The cache_size of each connection in KiB, or 0 for the default
+     * @param warmUp Whether to read the search index of the table being searched after install
+     */
+    private DatabaseTuning(long mmapSize, int cacheSizeKb, boolean warmUp) {
+        this.mmapSize = mmapSize;
+        this.cacheSizeKb = cacheSizeKb;
+        this.warmUp = warmUp;
+    }
+
+    /**
+     * Gets the tuning to use
+     *
+     * @param tuned true for {@link #TUNED}, false for {@link #DEFAULT}
+     * @return the tuning to use
+     */
+    @NonNull
+    static DatabaseTuning of(boolean tuned) {
+        return tuned ? TUNED : DEFAULT;
+    }
+
+    /**
+     * Whether the search index of the table being searched should be warmed up after install
+     *
+     * @return true to warm up the search index
+     */
+    boolean shouldWarmUp() {
+        return warmUp;
+    }
+
+    /**
+     * Applies the tuning to a freshly opened connection
+     *
+     * @param database The connection
+     */
+    void apply(@NonNull SQLiteDatabase database) {
+
+        if (mmapSize > 0) {
+            pragma(database, String.format(Locale.US, "pragma mmap_size = %d", mmapSize));
+        }
+
+        if (cacheSizeKb > 0) {
+            // A negative cache size is in KiB rather than pages
+            pragma(database, String.format(Locale.US, "pragma cache_size = -%d", cacheSizeKb));
+        }
+    }
+
+    /**
+     * Reads every page of the search key index of a table, so that later searches find them
+     * cached. Covers the whole index with a range that only the index can answer.
+     *
+     * @param database The connection
+     * @param tableName The table
+     */
+    void warmUp(@NonNull SQLiteDatabase database, @NonNull String tableName) {
+
+        long start = System.nanoTime();
+
+        Cursor cursor = database.rawQuery(
+                "select sum(length(" + SearchKeys.COLUMN + ")) from " + tableName +
+                " where " + SearchKeys.COLUMN + " >= ''", null);
+        cursor.moveToFirst();
+        cursor.close();
+
+        d("warmUp: Warmed up %s of %s in %sms", tableName, database.getPath(),
+                (System.nanoTime() - start) / 1000000);
+    }
+
+    /**
+     * Runs a pragma. Pragmas that set a value may return it as a row, which execSQL refuses.
+     *
+     * @param database The connection
+     * @param sql The pragma
+     */
+    private static void pragma(@NonNull SQLiteDatabase database, @NonNull String sql) {
+        Cursor cursor = database.rawQuery(sql, null);
+        cursor.moveToFirst();
+        cursor.close();
+    }
+
+    @Override
+    public String toString() {
+        return "DatabaseTuning{" +
+                "mmapSize=" + mmapSize +
+                ", cacheSizeKb=" + cacheSizeKb +
+                ", warmUp=" + warmUp +
+                '}';
+    }
+}
@@ -0,0 +1,265 @@
+package com.mbcdev.folkets;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Locale;
+import java.util.SortedSet;
+
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.GzipSource;
+import okio.HashingSource;
+import okio.Okio;
+import okio.Source;
+
+import static timber.log.Timber.d;
+import static timber.log.Timber.w;
+
+/**
+ * Installs the compressed dictionary from the assets into main storage.
+ * <p>
+ *     The asset is decompressed in a single streaming pass into a temporary file, hashing the
+ *     decompressed bytes along the way. Only when the hash matches the expected fingerprint is
+ *     the temporary file synced to disk and renamed over the live database, so a crash part way
+ *     through an install never leaves a truncated database in place.
+ * </p>
+ * <p>
+ *     An installed dictionary can also be patched in place with a {@link DictionaryDelta}, which
+ *     only writes the pages that changed. A patch can not be made atomic, so callers must treat
+ *     the dictionary as not installed until the patch has succeeded.
+ * </p>
+ * <p>
+ *     Chunks of an installed dictionary that are found to be corrupt can be rewritten from the
+ *     asset, see {@link #repair(String, File, long, SortedSet)}. They are rewritten in a copy
+ *     that is renamed over the dictionary, so that a connection open on it never reads a chunk
+ *     while it is being written.
+ * </p>
+ */
+class DictionaryInstaller {
+
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String REPAIR_SUFFIX = ".repair";
+    private static final long BUFFER_SIZE = 64 * 1024;
+
+    private final Context context;
+
+    /**
+     * Creates an installer
+     *
+     * @param context A valid context
+     */
+    DictionaryInstaller(@NonNull Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    /**
+     * Installs a gzipped asset to the given file
+     *
+     * @param assetName The name of the gzipped asset
+     * @param target The file to install to. Replaced atomically if it already exists
+     * @param expectedMd5 The hex encoded md5 of the decompressed asset
+     * @throws IOException if the asset could not be installed or did not match the expected md5
+     */
+    void install(
+            @NonNull String assetName, @NonNull File target,
+            @NonNull String expectedMd5) throws IOException {
+
+        d("install: Installing %s to %s", assetName, target.getPath());
+
+        File temp = new File(target.getPath() + TEMP_SUFFIX);
+
+        try (InputStream inputStream = context.getAssets().open(assetName);
+             HashingSource hashingSource = HashingSource.md5(
+                     new GzipSource(Okio.source(inputStream)));
+             FileOutputStream outputStream = new FileOutputStream(temp)) {
+
+            BufferedSink sink = Okio.buffer(Okio.sink(outputStream));
+            sink.writeAll(hashingSource);
+            sink.flush();
+
+            String hash = hashingSource.hash().hex();
+
+            if (!hash.equals(expectedMd5)) {
+                throw new IOException(String.format(Locale.US,
+                        "Installed %s has hash %s, expected %s", assetName, hash, expectedMd5));
+            }
+
+            outputStream.getFD().sync();
+
+        } catch (IOException e) {
+            delete(temp);
+            throw e;
+        }
+
+        if (!temp.renameTo(target)) {
+            delete(temp);
+            throw new IOException("Could not rename " + temp.getPath() + " to " + target.getPath());
+        }
+
+        d("install: Installed %s", target.getPath());
+    }
+
+    /**
+     * Patches an installed dictionary in place with a gzipped delta asset, then verifies it
+     *
+     * @param assetName The name of the gzipped delta asset
+     * @param target The installed dictionary to patch
+     * @param installedMd5 The hex encoded md5 of the installed dictionary
+     * @param expectedMd5 The hex encoded md5 that the dictionary should have once patched
+     * @throws IOException if the delta could not be applied or the patched dictionary did not
+     *                     match the expected md5. The dictionary must then be installed in full.
+     */
+    void patch(
+            @NonNull String assetName, @NonNull File target,
+            @NonNull String installedMd5, @NonNull String expectedMd5) throws IOException {
+
+        d("patch: Patching %s with %s", target.getPath(), assetName);
+
+        try (InputStream inputStream = context.getAssets().open(assetName);
+             InputStream deltaStream = Okio.buffer(
+                     new GzipSource(Okio.source(inputStream))).inputStream()) {
+
+            patch(deltaStream, target, installedMd5, expectedMd5);
+        }
+
+        d("patch: Patched %s", target.getPath());
+    }
+
+    /**
+     * Patches an installed dictionary in place with a delta, then verifies it
+     *
+     * @param deltaStream The delta, which is not closed
+     * @param target The installed dictionary to patch
+     * @param installedMd5 The hex encoded md5 of the installed dictionary
+     * @param expectedMd5 The hex encoded md5 that the dictionary should have once patched
+     * @throws IOException if the delta could not be applied or the patched dictionary did not
+     *                     match the expected md5. The dictionary must then be installed in full.
+     */
+    static void patch(
+            @NonNull InputStream deltaStream, @NonNull File target,
+            @NonNull String installedMd5, @NonNull String expectedMd5) throws IOException {
+
+        try (RandomAccessFile file = new RandomAccessFile(target, "rw")) {
+
+            String deltaMd5 = DictionaryDelta.apply(deltaStream, installedMd5, file);
+
+            if (!deltaMd5.equals(expectedMd5)) {
+                throw new IOException(String.format(Locale.US,
+                        "Delta for %s produces %s, expected %s",
+                        target.getPath(), deltaMd5, expectedMd5));
+            }
+
+            file.getFD().sync();
+        }
+
+        String hash = md5(target);
+
+        if (!hash.equals(expectedMd5)) {
+            throw new IOException(String.format(Locale.US,
+                    "Patched %s has hash %s, expected %s", target.getPath(), hash, expectedMd5));
+        }
+    }
+
+    /**
+     * Rewrites chunks of an installed dictionary from its gzipped asset. The asset is decompressed
+     * up to the last chunk being repaired, but only the given chunks are written, into a copy of
+     * the dictionary that then replaces it atomically. Connections that were open on the
+     * dictionary keep reading the old file until they are closed.
+     *
+     * @param assetName The name of the gzipped asset
+     * @param target The installed dictionary to repair. Replaced atomically.
+     * @param expectedSize The size of the decompressed asset in bytes
+     * @param chunks The indexes of the {@link ShardChecksums#CHUNK_SIZE chunks} to rewrite
+     * @throws IOException if the chunks could not be rewritten
+     */
+    void repair(
+            @NonNull String assetName, @NonNull File target, long expectedSize,
+            @NonNull SortedSet<Integer> chunks) throws IOException {
+
+        d("repair: Rewriting %s chunks of %s", chunks.size(), target.getPath());
+
+        File temp = new File(target.getPath() + REPAIR_SUFFIX);
+
+        try (Source installed = Okio.source(target);
+             BufferedSink sink = Okio.buffer(Okio.sink(temp))) {
+            sink.writeAll(installed);
+        } catch (IOException e) {
+            delete(temp);
+            throw e;
+        }
+
+        try (InputStream inputStream = context.getAssets().open(assetName);
+             BufferedSource source = Okio.buffer(new GzipSource(Okio.source(inputStream)));
+             RandomAccessFile file = new RandomAccessFile(temp, "rw")) {
+
+            long position = 0;
+
+            for (int chunk : chunks) {
+                long offset = (long) chunk * ShardChecksums.CHUNK_SIZE;
+                long length = Math.min(ShardChecksums.CHUNK_SIZE, expectedSize - offset);
+
+                if (length <= 0) {
+                    break;
+                }
+
+                source.skip(offset - position);
+                file.seek(offset);
+                file.write(source.readByteArray(length));
+                position = offset + length;
+            }
+
+            file.setLength(expectedSize);
+            file.getFD().sync();
+
+        } catch (IOException e) {
+            delete(temp);
+            throw e;
+        }
+
+        if (!temp.renameTo(target)) {
+            delete(temp);
+            throw new IOException("Could not rename " + temp.getPath() + " to " + target.getPath());
+        }
+    }
+
+    /**
+     * Computes the hex encoded md5 of a file
+     *
+     * @param file The file to hash
+     * @return the hex encoded md5 of the file
+     * @throws IOException if the file could not be read
+     */
+    @NonNull
+    private static String md5(@NonNull File file) throws IOException {
+
+        try (Source source = Okio.source(file);
+             HashingSource hashingSource = HashingSource.md5(source)) {
+
+            Buffer buffer = new Buffer();
+
+            while (hashingSource.read(buffer, BUFFER_SIZE) != -1) {
+                buffer.clear();
+            }
+
+            return hashingSource.hash().hex();
+        }
+    }
+
+    /**
+     * Deletes a file, logging if that was not possible
+     *
+     * @param file The file to delete
+     */
+    private static void delete(@NonNull File file) {
+        if (file.exists() && !file.delete()) {
+            w("delete: Could not delete %s", file.getPath());
+        }
+    }
+}
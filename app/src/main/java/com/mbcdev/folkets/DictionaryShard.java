@@ -0,0 +1,279 @@
+package com.mbcdev.folkets;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Models a shard of the dictionary: the words of one table that start with the letters of one
+ * {@link ShardKeys bucket}, or the {@link TextIndex full text index},
+ * {@link TranslationIndex reverse translation index}, {@link InflectionIndex inflected form index},
+ * {@link PhoneticIndex phonetic index} or {@link CompletionTable completion table} of one table.
+ * Every shard is installed and opened as its own SQLite file.
+ */
+class DictionaryShard {
+
+    private static final String ASSET_DIR = "dictionary/";
+    private static final String ASSET_SUFFIX = ".gz";
+    private static final String DELTA_ASSET_DIR = "dictionary/deltas/";
+    private static final String CHECKSUMS_ASSET_DIR = "dictionary/checksums/";
+
+    private static Map<String, DictionaryShard> shardsByFileName;
+
+    private final String tableName;
+    private final int bucket;
+    private final String md5;
+    private final long size;
+    private final String[] deltaBaseMd5s;
+
+    /**
+     * Creates a shard. Shards are listed in the generated {@link DictionaryShards}.
+     *
+     * @param tableName The table that this shard is part of
+     * @param bucket The bucket of words that this shard holds
+     * @param md5 The hex encoded md5 of the uncompressed shard
+     * @param size The size of the uncompressed shard in bytes
+     * @param deltaBaseMd5s The hex encoded md5s of older versions of this shard that have a
+     *                      {@link DictionaryDelta delta} to this version in the assets
+     */
+    DictionaryShard(
+            @NonNull String tableName, int bucket, @NonNull String md5, long size,
+            @NonNull String... deltaBaseMd5s) {
+        this.tableName = tableName;
+        this.bucket = bucket;
+        this.md5 = md5;
+        this.size = size;
+        this.deltaBaseMd5s = deltaBaseMd5s;
+    }
+
+    /**
+     * Gets the shards that must be searched, in order, to find the words whose search keys start
+     * with the given key. Reading the shards in the returned order gives the words in Swedish
+     * alphabetical order.
+     *
+     * @param tableName The table to search
+     * @param key The {@link SearchKeys search key} of the query
+     * @return the shards to search, which may be empty
+     */
+    @NonNull
+    static List<DictionaryShard> forSearch(@NonNull String tableName, @NonNull String key) {
+
+        List<DictionaryShard> shards = new ArrayList<>();
+
+        for (int bucket : ShardKeys.bucketsFor(key)) {
+            DictionaryShard shard = getShardsByFileName().get(
+                    ShardKeys.fileName(tableName, bucket));
+
+            if (shard != null) {
+                shards.add(shard);
+            }
+        }
+
+        return shards;
+    }
+
+    /**
+     * Gets the shard holding the word with the given headword
+     *
+     * @param tableName The table of the word
+     * @param word The headword
+     * @return the shard, or null if there is none
+     */
+    @Nullable
+    static DictionaryShard forWord(@NonNull String tableName, @NonNull String word) {
+        return forKey(tableName, SearchKeys.keyOf(word));
+    }
+
+    /**
+     * Gets the shard holding the word with the given search key
+     *
+     * @param tableName The table of the word
+     * @param key The {@link SearchKeys search key} of the headword
+     * @return the shard, or null if there is none
+     */
+    @Nullable
+    static DictionaryShard forKey(@NonNull String tableName, @NonNull String key) {
+        return getShardsByFileName().get(
+                ShardKeys.fileName(tableName, ShardKeys.bucketOf(key)));
+    }
+
+    /**
+     * Gets the shard holding the {@link TextIndex full text index} of a table
+     *
+     * @param tableName The dictionary table
+     * @return the shard, or null if there is none
+     */
+    @Nullable
+    static DictionaryShard forTextIndex(@NonNull String tableName) {
+        return getShardsByFileName().get(
+                ShardKeys.fileName(TextIndex.tableName(tableName), TextIndex.BUCKET));
+    }
+
+    /**
+     * Gets the shard holding the {@link TranslationIndex reverse translation index} of a table
+     *
+     * @param tableName The dictionary table
+     * @return the shard, or null if there is none
+     */
+    @Nullable
+    static DictionaryShard forTranslationIndex(@NonNull String tableName) {
+        return getShardsByFileName().get(ShardKeys.fileName(
+                TranslationIndex.tableName(tableName), TranslationIndex.BUCKET));
+    }
+
+    /**
+     * Gets the shard holding the {@link InflectionIndex inflected form index} of a table
+     *
+     * @param tableName The dictionary table
+     * @return the shard, or null if there is none
+     */
+    @Nullable
+    static DictionaryShard forInflectionIndex(@NonNull String tableName) {
+        return getShardsByFileName().get(ShardKeys.fileName(
+                InflectionIndex.tableName(tableName), InflectionIndex.BUCKET));
+    }
+
+    /**
+     * Gets the shard holding the {@link PhoneticIndex phonetic index} of a table
+     *
+     * @param tableName The dictionary table
+     * @return the shard, or null if there is none
+     */
+    @Nullable
+    static DictionaryShard forPhoneticIndex(@NonNull String tableName) {
+        return getShardsByFileName().get(ShardKeys.fileName(
+                PhoneticIndex.tableName(tableName), PhoneticIndex.BUCKET));
+    }
+
+    /**
+     * Gets the shard holding the {@link CompletionTable completion table} of a table
+     *
+     * @param tableName The dictionary table
+     * @return the shard, or null if there is none
+     */
+    @Nullable
+    static DictionaryShard forCompletionTable(@NonNull String tableName) {
+        return getShardsByFileName().get(ShardKeys.fileName(
+                CompletionTable.tableName(tableName), CompletionTable.BUCKET));
+    }
+
+    /**
+     * Looks up a shard by its file name
+     *
+     * @param fileName The file name
+     * @return true if a shard has this file name
+     */
+    static boolean isShardFileName(@NonNull String fileName) {
+        return getShardsByFileName().containsKey(fileName);
+    }
+
+    @NonNull
+    private static synchronized Map<String, DictionaryShard> getShardsByFileName() {
+
+        if (shardsByFileName == null) {
+            shardsByFileName = new HashMap<>();
+
+            for (DictionaryShard shard : DictionaryShards.ALL) {
+                shardsByFileName.put(shard.getFileName(), shard);
+            }
+        }
+
+        return shardsByFileName;
+    }
+
+    /**
+     * Gets the table that this shard is part of
+     *
+     * @return the table that this shard is part of
+     */
+    @NonNull
+    String getTableName() {
+        return tableName;
+    }
+
+    /**
+     * Gets the hex encoded md5 of the uncompressed shard
+     *
+     * @return the hex encoded md5 of the uncompressed shard
+     */
+    @NonNull
+    String getMd5() {
+        return md5;
+    }
+
+    /**
+     * Gets the size of the uncompressed shard in bytes
+     *
+     * @return the size of the uncompressed shard in bytes
+     */
+    long getSize() {
+        return size;
+    }
+
+    /**
+     * Gets the name of the file that this shard is installed to
+     *
+     * @return the name of the file that this shard is installed to
+     */
+    @NonNull
+    String getFileName() {
+        return ShardKeys.fileName(tableName, bucket);
+    }
+
+    /**
+     * Gets the name of the gzipped asset that this shard is installed from
+     *
+     * @return the name of the gzipped asset that this shard is installed from
+     */
+    @NonNull
+    String getAssetName() {
+        return ASSET_DIR + getFileName() + ASSET_SUFFIX;
+    }
+
+    /**
+     * Checks whether an installed version of this shard can be patched to this version
+     *
+     * @param installedMd5 The hex encoded md5 of the installed shard
+     * @return true if there is a delta from the installed version in the assets
+     */
+    boolean hasDeltaFrom(@NonNull String installedMd5) {
+        return Arrays.asList(deltaBaseMd5s).contains(installedMd5);
+    }
+
+    /**
+     * Gets the name of the gzipped delta asset that patches an older version of this shard
+     *
+     * @param baseMd5 The hex encoded md5 of the older version
+     * @return the name of the gzipped delta asset
+     */
+    @NonNull
+    String getDeltaAssetName(@NonNull String baseMd5) {
+        return DELTA_ASSET_DIR + DictionaryDelta.fileName(getFileName(), baseMd5) + ASSET_SUFFIX;
+    }
+
+    /**
+     * Gets the name of the asset holding the {@link ShardChecksums chunk checksums} of this shard
+     *
+     * @return the name of the checksums asset
+     */
+    @NonNull
+    String getChecksumsAssetName() {
+        return CHECKSUMS_ASSET_DIR + ShardChecksums.fileName(getFileName());
+    }
+
+    @Override
+    public String toString() {
+        return "DictionaryShard{" +
+                "tableName='" + tableName + '\'' +
+                ", bucket=" + bucket +
+                ", md5='" + md5 + '\'' +
+                ", size=" + size +
+                ", deltaBaseMd5s=" + Arrays.toString(deltaBaseMd5s) +
+                '}';
+    }
+}
@@ -0,0 +1,343 @@
+package com.mbcdev.folkets;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.support.annotation.NonNull;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import static timber.log.Timber.d;
+import static timber.log.Timber.e;
+import static timber.log.Timber.w;
+
+/**
+ * Verifies the installed shards against their {@link ShardChecksums chunk checksums} in the
+ * background, and repairs the chunks that are corrupt.
+ * <p>
+ *     Verification is spread out so that it never competes with the user. A few chunks are
+ *     verified per step on a background priority thread, the next step is only taken after a
+ *     pause, and every search pushes the next step back further. The position is saved as it goes,
+ *     so a pass that is cut short resumes on the next launch, and a full pass is made at most once
+ *     per {@link #PASS_INTERVAL_MS}.
+ * </p>
+ */
+class DictionaryVerifier {
+
+    private static final String PREFERENCES = "dictionary_verifier";
+    private static final String SHARD_INDEX = "shard_index";
+    private static final String CHUNK_INDEX = "chunk_index";
+    private static final String LAST_PASS = "last_pass";
+
+    private static final int CHUNKS_PER_STEP = 8;
+    private static final long STEP_DELAY_MS = 250;
+    private static final long IDLE_DELAY_MS = TimeUnit.SECONDS.toMillis(5);
+    private static final long PASS_INTERVAL_MS = TimeUnit.DAYS.toMillis(1);
+
+    private final Context context;
+    private final File shardsDir;
+    private final Listener listener;
+    private final SharedPreferences preferences;
+
+    private final Runnable step = new Runnable() {
+        @Override
+        public void run() {
+            verifyNextChunks();
+        }
+    };
+
+    private HandlerThread thread;
+    private Handler handler;
+
+    private int shardIndex;
+    private int chunkIndex;
+    private int[] checksums;
+    private final SortedSet<Integer> corruptChunks = new TreeSet<>();
+
+    /**
+     * Creates a verifier
+     *
+     * @param context A valid context
+     * @param shardsDir The directory the shards are installed in
+     * @param listener Told about shards that were repaired or could not be repaired
+     */
+    DictionaryVerifier(
+            @NonNull Context context, @NonNull File shardsDir, @NonNull Listener listener) {
+        this.context = context.getApplicationContext();
+        this.shardsDir = shardsDir;
+        this.listener = listener;
+        preferences = context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Starts verifying in the background, unless a full pass was made recently. Must only be
+     * called once every shard is installed.
+     */
+    synchronized void start() {
+
+        if (handler != null) {
+            return;
+        }
+
+        shardIndex = preferences.getInt(SHARD_INDEX, 0);
+        chunkIndex = preferences.getInt(CHUNK_INDEX, 0);
+        long sinceLastPass = System.currentTimeMillis() - preferences.getLong(LAST_PASS, 0);
+
+        if (shardIndex == 0 && chunkIndex == 0 && sinceLastPass < PASS_INTERVAL_MS) {
+            d("start: Last pass was %sms ago, not verifying", sinceLastPass);
+            return;
+        }
+
+        d("start: Resuming at shard %s, chunk %s", shardIndex, chunkIndex);
+
+        thread = new HandlerThread("DictionaryVerifier", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+        handler.postDelayed(step, IDLE_DELAY_MS);
+    }
+
+    /**
+     * Stops verifying. The position is kept, so that the next start resumes where this left off.
+     */
+    synchronized void stop() {
+
+        if (handler == null) {
+            return;
+        }
+
+        handler.removeCallbacks(step);
+        thread.quit();
+        handler = null;
+        thread = null;
+    }
+
+    /**
+     * Pushes the next step back, because the database is being used
+     */
+    synchronized void postpone() {
+        if (handler != null) {
+            handler.removeCallbacks(step);
+            handler.postDelayed(step, IDLE_DELAY_MS);
+        }
+    }
+
+    /**
+     * Schedules the next step
+     */
+    private synchronized void scheduleNextStep() {
+        if (handler != null) {
+            handler.postDelayed(step, STEP_DELAY_MS);
+        }
+    }
+
+    /**
+     * Verifies up to {@link #CHUNKS_PER_STEP} chunks, moving on to the next shard when the
+     * current one is done. Runs on the verifier thread.
+     */
+    private void verifyNextChunks() {
+
+        DictionaryShard[] shards = DictionaryShards.ALL;
+
+        if (shardIndex >= shards.length) {
+            finishPass();
+            return;
+        }
+
+        DictionaryShard shard = shards[shardIndex];
+
+        try {
+            if (checksums == null) {
+                checksums = readChecksums(shard);
+            }
+
+            int end = Math.min(chunkIndex + CHUNKS_PER_STEP, checksums.length);
+            corruptChunks.addAll(findCorruptChunks(shard, chunkIndex, end));
+            chunkIndex = end;
+
+        } catch (IOException e) {
+            w(e, "verifyNextChunks: Could not verify %s", shard.getFileName());
+
+            if (checksums != null) {
+                // The checksums were read, so it is the shard itself that can not be read
+                listener.onRepairFailed(shard);
+            }
+
+            checksums = null;
+            corruptChunks.clear();
+        }
+
+        if (checksums == null || chunkIndex >= checksums.length) {
+            if (!corruptChunks.isEmpty()) {
+                repair(shard);
+            }
+
+            shardIndex++;
+            chunkIndex = 0;
+            checksums = null;
+            corruptChunks.clear();
+        }
+
+        savePosition();
+        scheduleNextStep();
+    }
+
+    /**
+     * Reads the checksums of a shard from the assets
+     *
+     * @param shard The shard
+     * @return the checksum of every chunk of the shard
+     * @throws IOException if the checksums could not be read
+     */
+    @NonNull
+    private int[] readChecksums(@NonNull DictionaryShard shard) throws IOException {
+        try (InputStream inputStream = context.getAssets().open(shard.getChecksumsAssetName())) {
+            return ShardChecksums.read(inputStream);
+        }
+    }
+
+    /**
+     * Checks a range of chunks of a shard against their checksums
+     *
+     * @param shard The shard
+     * @param start The first chunk to check
+     * @param end The chunk after the last one to check
+     * @return the chunks that do not match their checksums
+     * @throws IOException if the shard could not be read
+     */
+    @NonNull
+    private SortedSet<Integer> findCorruptChunks(
+            @NonNull DictionaryShard shard, int start, int end) throws IOException {
+
+        SortedSet<Integer> corrupt = new TreeSet<>();
+        byte[] chunk = new byte[ShardChecksums.CHUNK_SIZE];
+
+        try (RandomAccessFile file = new RandomAccessFile(
+                new File(shardsDir, shard.getFileName()), "r")) {
+
+            for (int i = start; i < end; i++) {
+                long offset = (long) i * ShardChecksums.CHUNK_SIZE;
+                int length = (int) Math.min(ShardChecksums.CHUNK_SIZE, shard.getSize() - offset);
+
+                file.seek(offset);
+
+                if (!readChunk(file, chunk, length)
+                        || ShardChecksums.checksum(chunk, length) != checksums[i]) {
+                    w("findCorruptChunks: Chunk %s of %s is corrupt", i, shard.getFileName());
+                    corrupt.add(i);
+                }
+            }
+
+            if (end == checksums.length && file.length() != shard.getSize()) {
+                w("findCorruptChunks: %s has the wrong length", shard.getFileName());
+                corrupt.add(checksums.length - 1);
+            }
+        }
+
+        return corrupt;
+    }
+
+    /**
+     * Reads a chunk of a shard
+     *
+     * @param file The shard, positioned at the start of the chunk
+     * @param chunk The buffer to read the chunk into
+     * @param length The length of the chunk
+     * @return true if the whole chunk was read, false if the shard is too short
+     * @throws IOException if the shard could not be read
+     */
+    private static boolean readChunk(
+            @NonNull RandomAccessFile file, @NonNull byte[] chunk, int length) throws IOException {
+        try {
+            file.readFully(chunk, 0, length);
+            return true;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Rewrites the corrupt chunks of a shard from the assets, then checks them again
+     *
+     * @param shard The shard
+     */
+    private void repair(@NonNull DictionaryShard shard) {
+
+        try {
+            new DictionaryInstaller(context).repair(shard.getAssetName(),
+                    new File(shardsDir, shard.getFileName()), shard.getSize(), corruptChunks);
+
+            SortedSet<Integer> stillCorrupt = findCorruptChunks(
+                    shard, corruptChunks.first(), corruptChunks.last() + 1);
+            stillCorrupt.retainAll(corruptChunks);
+
+            if (stillCorrupt.isEmpty()) {
+                d("repair: Repaired %s chunks of %s", corruptChunks.size(), shard.getFileName());
+                listener.onRepaired(shard);
+                return;
+            }
+
+        } catch (IOException e) {
+            e(e, "repair: Could not repair %s", shard.getFileName());
+        }
+
+        listener.onRepairFailed(shard);
+    }
+
+    /**
+     * Saves the position, so that the next launch resumes from here
+     */
+    private void savePosition() {
+        preferences.edit()
+                .putInt(SHARD_INDEX, shardIndex)
+                .putInt(CHUNK_INDEX, chunkIndex)
+                .apply();
+    }
+
+    /**
+     * Ends a full pass over every shard, and stops until the next one is due
+     */
+    private void finishPass() {
+        d("finishPass: Every shard has been verified");
+
+        shardIndex = 0;
+        chunkIndex = 0;
+
+        preferences.edit()
+                .putInt(SHARD_INDEX, 0)
+                .putInt(CHUNK_INDEX, 0)
+                .putLong(LAST_PASS, System.currentTimeMillis())
+                .apply();
+
+        stop();
+    }
+
+    /**
+     * Told about the outcome of repairs. Called on the verifier thread.
+     */
+    interface Listener {
+
+        /**
+         * Called when the corrupt chunks of a shard have been rewritten and now verify
+         *
+         * @param shard The shard
+         */
+        void onRepaired(@NonNull DictionaryShard shard);
+
+        /**
+         * Called when the corrupt chunks of a shard could not be repaired, and the shard has to
+         * be installed again in full
+         *
+         * @param shard The shard
+         */
+        void onRepairFailed(@NonNull DictionaryShard shard);
+    }
+}
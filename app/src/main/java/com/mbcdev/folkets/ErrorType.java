@@ -8,7 +8,9 @@ import android.support.annotation.StringRes;
  * Created by barry on 24/09/2016.
  */
 enum ErrorType {
-    DATABASE_NULL(R.string.error_database_null);
+    DATABASE_NULL(R.string.error_database_null),
+    DATABASE_INSTALL_FAILED(R.string.error_database_install_failed),
+    SEARCH_FAILED(R.string.error_search_failed);
 
     private final int stringResourceId;
 
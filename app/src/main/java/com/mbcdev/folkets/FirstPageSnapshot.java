@@ -0,0 +1,162 @@
+package com.mbcdev.folkets;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static timber.log.Timber.d;
+import static timber.log.Timber.w;
+
+/**
+ * A snapshot on disk of the results of the empty search, one per language, so that the first
+ * page can be shown on the first frame without touching SQLite.
+ * <p>
+ *     A snapshot is written after a live empty search, and is only read back if it was written
+ *     with the same {@link #VERSION} and for the same {@link DictionaryFingerprint#SHARDS}. Any
+ *     other snapshot is treated as missing, and replaced by the next live search.
+ * </p>
+ */
+class FirstPageSnapshot {
+
+    /** Bump whenever the serialised form of {@link Word} changes */
+    private static final int VERSION = 1;
+
+    private static final String SNAPSHOTS_DIR = "snapshots";
+    private static final String FILE_PREFIX = "first_page_";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File snapshotsDir;
+    private final Set<String> currentLanguages = Collections.synchronizedSet(new HashSet<String>());
+
+    /**
+     * Creates a snapshot store
+     *
+     * @param context A valid context
+     */
+    FirstPageSnapshot(@NonNull Context context) {
+        snapshotsDir = new File(context.getFilesDir(), SNAPSHOTS_DIR);
+    }
+
+    /**
+     * Reads the snapshot of a language. Reads a single small file, so it can be called on the
+     * UI thread to show results on the first frame.
+     *
+     * @param languageCode The language code of the language being searched
+     * @return the first page of results, or null if there is no current snapshot
+     */
+    @Nullable
+    List<Word> read(@NonNull String languageCode) {
+
+        File file = getFile(languageCode);
+
+        if (!file.exists()) {
+            return null;
+        }
+
+        try (ObjectInputStream input = new ObjectInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+
+            if (input.readInt() != VERSION) {
+                d("read: Snapshot %s has an old version", file.getName());
+                return null;
+            }
+
+            if (!DictionaryFingerprint.SHARDS.equals(input.readUTF())) {
+                d("read: Snapshot %s is for another dictionary", file.getName());
+                return null;
+            }
+
+            @SuppressWarnings("unchecked")
+            List<Word> words = (List<Word>) input.readObject();
+            currentLanguages.add(languageCode);
+            return words;
+
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            w(e, "read: Could not read snapshot %s", file.getName());
+            return null;
+        }
+    }
+
+    /**
+     * Writes the snapshot of a language, unless it is already current. Must not be called on
+     * the UI thread.
+     *
+     * @param languageCode The language code of the language that was searched
+     * @param words The results of the empty search
+     */
+    void write(@NonNull String languageCode, @NonNull List<Word> words) {
+
+        if (currentLanguages.contains(languageCode)) {
+            return;
+        }
+
+        if (!snapshotsDir.isDirectory() && !snapshotsDir.mkdirs()) {
+            w("write: Could not create %s", snapshotsDir.getPath());
+            return;
+        }
+
+        File file = getFile(languageCode);
+        File temp = new File(file.getPath() + TEMP_SUFFIX);
+
+        try (FileOutputStream outputStream = new FileOutputStream(temp)) {
+            ObjectOutputStream output = new ObjectOutputStream(
+                    new BufferedOutputStream(outputStream));
+
+            output.writeInt(VERSION);
+            output.writeUTF(DictionaryFingerprint.SHARDS);
+            output.writeObject(new ArrayList<>(words));
+            output.flush();
+            outputStream.getFD().sync();
+
+        } catch (IOException e) {
+            w(e, "write: Could not write snapshot %s", file.getName());
+            delete(temp);
+            return;
+        }
+
+        if (!temp.renameTo(file)) {
+            w("write: Could not rename %s", temp.getPath());
+            delete(temp);
+            return;
+        }
+
+        currentLanguages.add(languageCode);
+        d("write: Wrote snapshot %s of %s words", file.getName(), words.size());
+    }
+
+    /**
+     * Gets the file of the snapshot of a language
+     *
+     * @param languageCode The language code
+     * @return the file of the snapshot
+     */
+    @NonNull
+    private File getFile(@NonNull String languageCode) {
+        return new File(snapshotsDir, FILE_PREFIX + languageCode);
+    }
+
+    /**
+     * Deletes a file, logging if that was not possible
+     *
+     * @param file The file to delete
+     */
+    private static void delete(@NonNull File file) {
+        if (file.exists() && !file.delete()) {
+            w("delete: Could not delete %s", file.getPath());
+        }
+    }
+}
@@ -4,91 +4,639 @@ import android.content.Context;
 import android.content.SharedPreferences;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.AsyncTask;
 import android.preference.PreferenceManager;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-
-import okio.BufferedSink;
-import okio.HashingSource;
-import okio.Okio;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static android.os.AsyncTask.execute;
 import static com.mbcdev.folkets.Utils.runOnUiThread;
 import static timber.log.Timber.d;
 import static timber.log.Timber.e;
+import static timber.log.Timber.w;
 
 /**
  * Wraps the preexisting database in a {@link SQLiteOpenHelper}
+ * <p>
+ *     The dictionary is split into {@link DictionaryShard shards} by table and first letter. A
+ *     search only needs the shards for its table and first letter, and installs them on demand if
+ *     they are not installed yet. The remaining shards are installed in the background, those of
+ *     the table being searched first.
+ * </p>
+ * <p>
+ *     The database is initialised in the background, see {@link #initialise(String, Callback)}.
+ *     Searches made before it is ready are queued and run as soon as it is.
+ * </p>
+ * <p>
+ *     Once every shard is installed, the shards are verified in the background while the
+ *     database is idle, see {@link DictionaryVerifier}.
+ * </p>
+ * <p>
+ *     Every shard connection is tuned with a {@link DatabaseTuning}. The time taken by the first
+ *     {@link #TIMED_SEARCHES} searches is logged, to compare tunings.
+ * </p>
+ * <p>
+ *     In memory indexes over the dictionary are kept on disk by an {@link IndexSnapshotStore},
+ *     see {@link #getIndex(IndexSnapshot)}. The headword index of the table being searched is
+ *     loaded on start, once the shards are installed, and from then on finds the headwords that
+ *     match a search, so SQLite only reads the words that are shown.
+ * </p>
+ * <p>
+ *     Prefixes of one or two characters are answered from the {@link Completions} of the table,
+ *     which rank the words by importance rather than alphabetically, see {@link CompletionTable}.
+ *     Longer prefixes are ranked the same way by the headword index, from the
+ *     {@link ImportanceScore} that every row of the shards carries, see
+ *     {@link HeadwordIndex#findRanked(String, int)}.
+ *     A longer key that matches nothing is split into the headwords it is a compound of, see
+ *     {@link CompoundSplitter}, or if it can not be, taken to be misspelled, and the headwords a
+ *     typo or two away from it are returned instead, see
+ *     {@link HeadwordIndex#findSimilar(String, int, int)}.
+ * </p>
+ * <p>
+ *     Besides headwords, the examples, idioms, definitions and explanations of a table can be
+ *     searched through its {@link TextIndex full text index}, see
+ *     {@link #searchText(String, String, Callback)}, and its words can be found by their
+ *     translations through its {@link TranslationIndex reverse translation index}, see
+ *     {@link #searchTranslations(String, String, Callback)}. Headwords can also be matched
+ *     against wildcard patterns, see
+ *     {@link #searchPattern(String, WildcardPattern, int, Callback)}, and searched for what
+ *     they contain or end with through the {@link SuffixIndex suffix array} of the table, and by
+ *     their letters through its {@link AnagramIndex anagram index}. Words can be found by how
+ *     they sound through its {@link PhoneticIndex phonetic index}, see
+ *     {@link #searchSoundingLike(String, String, Callback)}.
+ * </p>
+ * <p>
+ *     There is at most one open instance per process, owned by {@link MainApplication}.
+ * </p>
  *
  * Created by barry on 20/08/2016.
  */
 class FolketsDatabase {
 
-    private static final String FOLKETS_DB = "folkets.db";
-    private final Context context;
+    /** The most words on a page of a paged search */
+    static final int PAGE_SIZE = 100;
 
-    private SQLiteDatabase database;
+    private static final String LEGACY_FOLKETS_DB = "folkets.db";
+    private static final String SHARDS_DIR = "dictionary";
+    private static final String SHARD_PREFERENCES = "dictionary_shards";
+    private static final String DB_HASH = "db_hash";
+    private static final int SEARCH_LIMIT = 100;
+    private static final int TIMED_SEARCHES = 20;
+    private static final int KEYS_PER_WORD = 4;
+    private static final int MIN_SIMILAR_KEY_LENGTH = 3;
+    private static final int ONE_TYPO_KEY_LENGTH = 5;
+    private static final int COMPOUND_SPLITS = 3;
+
+    private final Context context;
+    private final DatabaseTuning tuning;
     private final SharedPreferences preferences;
+    private final SharedPreferences shardPreferences;
+    private final File shardsDir;
+
+    private final FutureTask<Void> ready;
+    private final FutureTask<Void> installed;
+    private final AtomicBoolean started = new AtomicBoolean(false);
+    private final AtomicInteger searchCount = new AtomicInteger(0);
+    private final AtomicInteger textSearchGeneration = new AtomicInteger(0);
+    private final List<Runnable> pendingQueries = new ArrayList<>();
+    private final List<Callback<Integer>> initialisationCallbacks = new ArrayList<>();
+
+    private final Map<DictionaryShard, FutureTask<Void>> installTasks =
+            Collections.synchronizedMap(new HashMap<DictionaryShard, FutureTask<Void>>());
+    private final Map<DictionaryShard, SQLiteDatabase> openShards = new HashMap<>();
+    private final Map<String, Completions> completions = new HashMap<>();
+    private final DictionaryVerifier verifier;
+    private final IndexSnapshotStore indexSnapshots;
+
+    private final Object workLock = new Object();
+    private final List<SQLiteDatabase> retiredShards = new ArrayList<>();
+    private int runningWork;
+
+    private volatile String priorityTableName;
+    private volatile boolean closed;
 
     /**
-     * Creates an instance of the SQLiteOpenHelper. Intentionally private
+     * Creates an instance of the SQLiteOpenHelper. Does not touch the disk, call
+     * {@link #initialise(String, Callback)} to open the database.
      *
      * @param context A valid context
+     * @param tuning How to tune the connections to the shards
      */
-    FolketsDatabase(@NonNull Context context) {
+    FolketsDatabase(@NonNull Context context, @NonNull DatabaseTuning tuning) {
         this.context = context.getApplicationContext();
+        this.tuning = tuning;
         preferences = PreferenceManager.getDefaultSharedPreferences(context);
+        shardPreferences = context.getSharedPreferences(SHARD_PREFERENCES, Context.MODE_PRIVATE);
+        shardsDir = new File(context.getFilesDir(), SHARDS_DIR);
+        indexSnapshots = new IndexSnapshotStore(context);
+        verifier = new DictionaryVerifier(context, shardsDir, new DictionaryVerifier.Listener() {
+            @Override
+            public void onRepaired(@NonNull DictionaryShard shard) {
+                // The repaired shard replaced the file, the open connection still reads the old one
+                retireShard(shard);
+            }
+
+            @Override
+            public void onRepairFailed(@NonNull DictionaryShard shard) {
+                reinstall(shard);
+            }
+        });
+
+        ready = new FutureTask<Void>(new Callable<Void>() {
+            @Override
+            public Void call() {
+                prepareShards();
+                return null;
+            }
+        }) {
+            @Override
+            protected void done() {
+                runPendingQueries();
+            }
+        };
+
+        installed = new FutureTask<Void>(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                installShards();
+                return null;
+            }
+        }) {
+            @Override
+            protected void done() {
+                onInstalled();
+            }
+        };
+    }
+
+    /**
+     * Starts initialising the database in the background, if that has not started already.
+     *
+     * @param priorityTableName The table whose shards should be installed first
+     * @param callback Receives the progress of the install as a percentage, ending with 100 when
+     *                 every shard is installed, or an error if a shard could not be installed.
+     *                 Always called on the UI thread.
+     */
+    void initialise(@NonNull String priorityTableName, @NonNull Callback<Integer> callback) {
+
+        this.priorityTableName = priorityTableName;
+        boolean isDone;
+
+        synchronized (initialisationCallbacks) {
+            isDone = installed.isDone();
+
+            if (!isDone) {
+                initialisationCallbacks.add(callback);
+            }
+        }
+
+        if (isDone) {
+            notifyInstalled(callback);
+        } else if (started.compareAndSet(false, true)) {
+            AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    ready.run();
+                    installed.run();
+                    warmUp();
+                    loadIndexes();
+                }
+            });
+        }
+    }
+
+    /**
+     * Gets a future that completes when the database is ready to be searched. Must only be
+     * waited on from a background thread.
+     *
+     * @return a future that completes when the database is ready to be searched
+     */
+    @NonNull
+    Future<Void> getReadyFuture() {
+        return ready;
+    }
+
+    /**
+     * Closes the database. Does nothing if shards are still being installed, as an install can
+     * not be safely interrupted, or while queries, index builds or other background work are
+     * reading the shards. Once closed, no new work is started.
+     *
+     * @return true if the database is closed, false if it is still in use
+     */
+    boolean close() {
+
+        if (started.get() && !installed.isDone()) {
+            d("close: Shards are still being installed, not closing");
+            return false;
+        }
+
+        synchronized (workLock) {
+            if (runningWork > 0) {
+                d("close: %s tasks are still reading the shards, not closing", runningWork);
+                return false;
+            }
+
+            closed = true;
+            closeRetiredShards();
+        }
+
+        verifier.stop();
+
+        synchronized (openShards) {
+            d("close: Closing %s shards", openShards.size());
+
+            for (SQLiteDatabase database : openShards.values()) {
+                database.close();
+            }
 
-        synchronized (this) {
-            initialiseDatabase(context);
+            openShards.clear();
         }
+
+        return true;
     }
 
     /**
-     * Searches the database for
+     * Searches the database for the words whose {@link SearchKeys search keys} start with the
+     * given key, or that have an {@link InflectionIndex inflected form} whose key does. Words
+     * whose key is the key itself come first, then the other headwords by their
+     * {@link ImportanceScore}, computed when the dictionary is built, and the length of their
+     * key, and then the other forms in Swedish alphabetical order. The empty key lists the words
+     * in alphabetical order. Words found by a form are {@link Word#getMatchedForm() marked} with
+     * it. Both the match and the order are answered from the completion table and the headword
+     * index where possible, and until the headword index is loaded, the search key indexes find
+     * the headwords and rank them the same way. If nothing matches, the key is taken to be a
+     * compound, and the headwords it is made of are found instead. If it can not be split, the
+     * headwords a typo or two away from the key are found, closest first.
      *
      * @param tableName The table name to run the query in.
-     * @param query The query. This will be appended with % to get inexact matches
+     * @param key The search key of the query. Like wildcards in it are honoured.
      * @param callback The callback used to deliver the results.
      */
     void search(
+            @NonNull final String tableName, @NonNull final String key,
+            @NonNull Callback<List<Word>> callback) {
+
+        searchWhenReady("search", callback, new SearchQuery<Word>() {
+            @Override
+            public List<Word> find() throws IOException {
+                return toWords(findByHeadwordOrForm(tableName, key));
+            }
+        });
+    }
+
+    /**
+     * Searches both tables the way {@link #search(String, String, Callback)} searches one, and
+     * merges their words into one list by the same ranking, each
+     * {@link Word#getLanguage() marked} with the language of its table. The other table is
+     * searched on a pool thread while this one searches the first, and every table has shards of
+     * its own, so the two read through separate connections and the search takes as long as the
+     * slower of them rather than both.
+     *
+     * @param first The language searched first, whose words come first among equal keys
+     * @param key The search key of the query. Like wildcards in it are honoured.
+     * @param callback The callback used to deliver the results.
+     */
+    void searchBothDirections(
+            @NonNull final Language first, @NonNull final String key,
+            @NonNull Callback<List<Word>> callback) {
+
+        final Language second = first == Language.ENGLISH ? Language.SWEDISH : Language.ENGLISH;
+
+        searchWhenReady("searchBothDirections", callback, new SearchQuery<Word>() {
+            @Override
+            public List<Word> find() throws IOException {
+
+                FutureTask<List<WordHit>> secondHits = new FutureTask<>(
+                        new Callable<List<WordHit>>() {
+                            @Override
+                            public List<WordHit> call() throws IOException {
+
+                                // It can outlive the query if the first table fails
+                                if (!beginWork()) {
+                                    throw new IOException("The database is closed");
+                                }
+
+                                try {
+                                    return findByHeadwordOrForm(second.getTableName(), key);
+                                } finally {
+                                    endWork();
+                                }
+                            }
+                        });
+
+                AsyncTask.THREAD_POOL_EXECUTOR.execute(secondHits);
+
+                try {
+                    List<WordHit> firstHits = findByHeadwordOrForm(first.getTableName(), key);
+
+                    // If the pool is busy installing shards, search the other table here instead
+                    // of waiting for a thread to pick it up
+                    secondHits.run();
+                    return mergeByRank(key, first, firstHits, second, secondHits.get());
+
+                } catch (InterruptedException e) {
+                    throw new IOException("Interrupted while searching " + second, e);
+
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) e.getCause();
+                    }
+
+                    throw new IOException("Could not search " + second, e.getCause());
+
+                } finally {
+                    secondHits.cancel(false);
+                }
+            }
+        });
+    }
+
+    /**
+     * Searches the reverse translation index of a table for the words that have a translation, or
+     * a part of one starting at a word, whose {@link SearchKeys search key} starts with the given
+     * key. Words come in the order of their best matching translation, and are then read from
+     * their shards by row id, so the translations column itself is never scanned.
+     *
+     * @param tableName The table whose words to find
+     * @param key The search key of the query. Like wildcards in it are honoured.
+     * @param callback The callback used to deliver the results.
+     */
+    void searchTranslations(
+            @NonNull final String tableName, @NonNull final String key,
+            @NonNull Callback<List<Word>> callback) {
+
+        searchWhenReady("searchTranslations", callback, new SearchQuery<Word>() {
+            @Override
+            public List<Word> find() throws IOException {
+                List<WordHit> hits = findHits(TranslationIndex.tableName(tableName),
+                        DictionaryShard.forTranslationIndex(tableName), tableName, key, null);
+                readWords(tableName, hits);
+                return toWords(hits);
+            }
+        });
+    }
+
+    /**
+     * Searches the phonetic index of a table for the words that sound like a spelling guess.
+     * Words that sound the same as the guess come first, and then those whose pronunciation
+     * starts with it, each closest in spelling to the guess first. Both are answered from the
+     * index over the phonetic keys, so the cost is that of a prefix search.
+     *
+     * @param tableName The table whose words to find
+     * @param key The search key of the guess
+     * @param callback The callback used to deliver the results.
+     */
+    void searchSoundingLike(
+            @NonNull final String tableName, @NonNull final String key,
+            @NonNull Callback<List<Word>> callback) {
+
+        searchWhenReady("searchSoundingLike", callback, new SearchQuery<Word>() {
+            @Override
+            public List<Word> find() throws IOException {
+                return toWords(findSoundingLike(tableName, key));
+            }
+        });
+    }
+
+    /**
+     * Searches a table for the words whose {@link SearchKeys search keys} match a wildcard
+     * pattern, a page at a time, in Swedish alphabetical order. The pattern is matched by walking
+     * the {@link HeadwordIndex} of the table.
+     *
+     * @param tableName The table whose words to find
+     * @param pattern The pattern
+     * @param page The page, from 0, of {@link #PAGE_SIZE} words
+     * @param callback The callback used to deliver the words on the page. A page with fewer than
+     *                 {@link #PAGE_SIZE} words is the last.
+     */
+    void searchPattern(
+            @NonNull final String tableName, @NonNull final WildcardPattern pattern,
+            int page, @NonNull Callback<List<Word>> callback) {
+
+        searchPage("searchPattern", page, callback, new PageQuery() {
+            @NonNull
+            @Override
+            public List<WordHit> find(int skip, int limit) throws IOException {
+                HeadwordIndex index = waitForIndex(HeadwordIndex.snapshot(tableName));
+                return readHeadwords(
+                        tableName, index, index.findMatching(pattern, skip, limit));
+            }
+        });
+    }
+
+    /**
+     * Searches a table for the words whose {@link SearchKeys search keys} contain a key, a page
+     * at a time, through the {@link SuffixIndex} of the table. Words come in the order of the rest
+     * of their keys after the first place they contain the key at.
+     *
+     * @param tableName The table whose words to find
+     * @param key The search key to look for, which must not be empty
+     * @param page The page, from 0, of {@link #PAGE_SIZE} words
+     * @param callback The callback used to deliver the words on the page. A page with fewer than
+     *                 {@link #PAGE_SIZE} words is the last.
+     */
+    void searchContaining(
+            @NonNull final String tableName, @NonNull final String key,
+            int page, @NonNull Callback<List<Word>> callback) {
+
+        searchPage("searchContaining", page, callback, new PageQuery() {
+            @NonNull
+            @Override
+            public List<WordHit> find(int skip, int limit) throws IOException {
+                SuffixIndex index = waitForIndex(SuffixIndex.snapshot(tableName));
+                return readHeadwords(
+                        tableName, index, index.findContaining(key, skip, limit));
+            }
+        });
+    }
+
+    /**
+     * Searches a table for the words whose {@link SearchKeys search keys} end with a key, a page
+     * at a time, in Swedish alphabetical order, through the {@link SuffixIndex} of the table
+     *
+     * @param tableName The table whose words to find
+     * @param key The search key to look for, which must not be empty
+     * @param page The page, from 0, of {@link #PAGE_SIZE} words
+     * @param callback The callback used to deliver the words on the page. A page with fewer than
+     *                 {@link #PAGE_SIZE} words is the last.
+     */
+    void searchEndingWith(
+            @NonNull final String tableName, @NonNull final String key,
+            int page, @NonNull Callback<List<Word>> callback) {
+
+        searchPage("searchEndingWith", page, callback, new PageQuery() {
+            @NonNull
+            @Override
+            public List<WordHit> find(int skip, int limit) throws IOException {
+                SuffixIndex index = waitForIndex(SuffixIndex.snapshot(tableName));
+                return readHeadwords(
+                        tableName, index, index.findEndingWith(key, skip, limit));
+            }
+        });
+    }
+
+    /**
+     * Searches a table for the anagrams of a key, the words whose {@link SearchKeys search keys}
+     * have the same letters, a page at a time, through the {@link AnagramIndex} of the table
+     *
+     * @param tableName The table whose words to find
+     * @param key The search key whose letters to use
+     * @param page The page, from 0, of {@link #PAGE_SIZE} words
+     * @param callback The callback used to deliver the words on the page. A page with fewer than
+     *                 {@link #PAGE_SIZE} words is the last.
+     */
+    void searchAnagrams(
+            @NonNull final String tableName, @NonNull final String key,
+            int page, @NonNull Callback<List<Word>> callback) {
+
+        searchPage("searchAnagrams", page, callback, new PageQuery() {
+            @NonNull
+            @Override
+            public List<WordHit> find(int skip, int limit) throws IOException {
+                AnagramIndex index = waitForIndex(AnagramIndex.snapshot(tableName));
+                return readHeadwords(tableName, index, index.findAnagrams(key, skip, limit));
+            }
+        });
+    }
+
+    /**
+     * Searches a table for the words that can be spelled with some of the letters of a key, a
+     * page at a time, longest first, through the {@link AnagramIndex} of the table
+     *
+     * @param tableName The table whose words to find
+     * @param key The search key whose letters to use
+     * @param page The page, from 0, of {@link #PAGE_SIZE} words
+     * @param callback The callback used to deliver the words on the page. A page with fewer than
+     *                 {@link #PAGE_SIZE} words is the last.
+     */
+    void searchFormable(
+            @NonNull final String tableName, @NonNull final String key,
+            int page, @NonNull Callback<List<Word>> callback) {
+
+        searchPage("searchFormable", page, callback, new PageQuery() {
+            @NonNull
+            @Override
+            public List<WordHit> find(int skip, int limit) throws IOException {
+                AnagramIndex index = waitForIndex(AnagramIndex.snapshot(tableName));
+                return readHeadwords(tableName, index, index.findFormable(key, skip, limit));
+            }
+        });
+    }
+
+    /**
+     * Searches the full text index of a table for the words whose examples, idioms, definition or
+     * explanation contain the query, best matches first. A search that has not started by the time
+     * a newer one is asked for is dropped without calling back, so that typing never queues up
+     * stale searches.
+     *
+     * @param tableName The dictionary table
+     * @param query The query, as typed
+     * @param callback The callback used to deliver the results
+     */
+    void searchText(
             @NonNull final String tableName, @NonNull final String query,
-            @NonNull final Callback<List<Word>> callback) {
+            @NonNull Callback<List<TextMatch>> callback) {
 
-        if (this.database == null) {
-            d("The database is null.");
-            callback.onError(ErrorType.DATABASE_NULL);
-            return;
-        }
+        final int generation = textSearchGeneration.incrementAndGet();
+
+        searchWhenReady("searchText", callback, new SearchQuery<TextMatch>() {
+            @Override
+            public List<TextMatch> find() throws IOException {
+
+                if (generation != textSearchGeneration.get()) {
+                    d("searchText: Dropping stale search for %s", query);
+                    return null;
+                }
+
+                DictionaryShard shard = DictionaryShard.forTextIndex(tableName);
+
+                if (shard == null) {
+                    throw new IOException("There is no text index for " + tableName);
+                }
+
+                return TextSearch.search(getShardDatabase(shard), tableName, query);
+            }
+        });
+    }
 
-        execute(new Runnable() {
+    /**
+     * Reads a word, for example one found by {@link #searchText(String, String, Callback)}
+     *
+     * @param tableName The table of the word
+     * @param word The headword, which decides the shard the word is in
+     * @param rowId The row id of the word in its table
+     * @param callback The callback used to deliver the word
+     */
+    void getWord(
+            @NonNull final String tableName, @NonNull final String word, final int rowId,
+            @NonNull final Callback<Word> callback) {
+
+        whenReady(new Runnable() {
             @Override
             public void run() {
-                Cursor cursor = database.query(
-                        tableName, null, "word like ?",
-                        new String[] { query + "%" }, null, null, "word asc limit 0,100");
 
-                d("Number of results %s", cursor.getCount());
-                final List<Word> words = new ArrayList<>();
+                DictionaryShard shard = DictionaryShard.forWord(tableName, word);
+                Word result = null;
 
-                cursor.moveToFirst();
-                while (!cursor.isAfterLast()) {
-                    words.add(new Word(context, cursor));
-                    cursor.moveToNext();
+                try {
+                    if (shard != null) {
+                        Cursor cursor = getShardDatabase(shard).query(tableName, null,
+                                "rowid = ?", new String[] { String.valueOf(rowId) },
+                                null, null, null);
+
+                        try {
+                            if (cursor.moveToFirst()) {
+                                result = new Word(context, cursor);
+                            }
+                        } finally {
+                            cursor.close();
+                        }
+                    }
+                } catch (IOException e) {
+                    e(e, "getWord: A shard could not be installed");
+                    deliverError(callback, ErrorType.DATABASE_NULL);
+                    return;
+
+                } catch (RuntimeException e) {
+                    e(e, "getWord: The word could not be read");
+                    deliverError(callback, ErrorType.SEARCH_FAILED);
+                    return;
                 }
 
-                cursor.close();
+                if (result == null) {
+                    w("getWord: There is no row %s in %s", rowId, tableName);
+                    deliverError(callback, ErrorType.DATABASE_NULL);
+                    return;
+                }
+
+                final Word found = result;
 
                 runOnUiThread(new Runnable() {
                     @Override
                     public void run() {
-                        callback.onSuccess(words);
+                        callback.onSuccess(found);
                     }
                 });
             }
@@ -96,94 +644,1640 @@ class FolketsDatabase {
     }
 
     /**
-     * Initialises the database.
-     * <p>
-     *     The database will be copied from raw resources to the main storage if:
-     *     <ol>
-     *         <li>The database does not exist in main storage</li>
-     *         <li>The database in raw resources is different to the one in main storage</li>
-     *     </ol>
-     * </p>
-     * <p>
-     *     If the database already exists in main storage, then its checksum is compared to the
-     *     checksum of the one in raw storage. If the checksums do not match, then the raw
-     *     resource is copied to main memory.
-     * </p>
+     * Runs a search that is answered a page at a time from an in memory index. The index is
+     * waited for if it is not loaded yet, and the shards are only read for the words on the page,
+     * so no table is ever scanned.
      *
-     * @param context A valid context
+     * @param name The name of the search, for the log
+     * @param page The page, from 0, of {@link #PAGE_SIZE} words
+     * @param callback The callback used to deliver the words on the page
+     * @param query Finds the hits on the page
+     */
+    private void searchPage(
+            @NonNull final String name, final int page,
+            @NonNull Callback<List<Word>> callback, @NonNull final PageQuery query) {
+
+        searchWhenReady(name + " page " + page, callback, new SearchQuery<Word>() {
+            @Override
+            public List<Word> find() throws IOException {
+                return toWords(query.find(page * PAGE_SIZE, PAGE_SIZE));
+            }
+        });
+    }
+
+    /**
+     * Runs a search once the database is ready, and delivers its results on the UI thread. A
+     * search that fails, because a shard could not be installed or an index loaded, or because
+     * SQLite could not read a shard, delivers an error instead.
+     *
+     * @param name The name of the search, for the log
+     * @param callback The callback used to deliver the results
+     * @param query Finds the results
+     * @param <T> The type of the results
      */
-    private void initialiseDatabase(@NonNull Context context) {
-        d("initialiseDatabase: Start");
+    private <T> void searchWhenReady(
+            @NonNull final String name, @NonNull final Callback<List<T>> callback,
+            @NonNull final SearchQuery<T> query) {
 
-        final File file = new File(context.getFilesDir(), FOLKETS_DB);
+        verifier.postpone();
 
-        if (file.exists()) {
-            d("initialiseDatabase: DB already exists.");
-            String storedHash = preferences.getString("db_hash", "");
+        final long start = System.nanoTime();
 
-            try (InputStream inputStream = context.getResources().openRawResource(R.raw.folkets);
-                 HashingSource hashingSource = HashingSource.md5(Okio.source(inputStream))) {
+        whenReady(new Runnable() {
+            @Override
+            public void run() {
 
-                Okio.buffer(hashingSource).readAll(Okio.blackhole());
-                String currentHash = hashingSource.hash().hex();
+                final List<T> results;
 
-                d("initialiseDatabase: Stored hash %s, current DB hash %s", storedHash, currentHash);
+                try {
+                    results = query.find();
 
-                if (!storedHash.equals(currentHash)) {
-                    d("initialiseDatabase: New database detected");
-                    copyDbToStorage(context, file);
-                } else {
-                    d("initialiseDatabase: Database is unchanged");
-                    database = getDatabase(file);
+                    if (results == null) {
+                        return;
+                    }
+
+                } catch (IOException e) {
+                    e(e, "%s: The search could not be run", name);
+                    deliverError(callback, ErrorType.DATABASE_NULL);
+                    return;
+
+                } catch (RuntimeException e) {
+                    e(e, "%s: The search failed", name);
+                    deliverError(callback, ErrorType.SEARCH_FAILED);
+                    return;
                 }
 
-            } catch (IOException e) {
-                e(e, "initialiseDatabase: Error computing hash for file %s", file.getPath());
+                d("%s: %s results in %sms", name, results.size(),
+                        (System.nanoTime() - start) / 1000000);
+                logSearchTime(start);
+
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onSuccess(results);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Delivers an error on the UI thread
+     *
+     * @param callback The callback to deliver the error to
+     * @param errorType The error
+     */
+    private static void deliverError(
+            @NonNull final Callback<?> callback, @NonNull final ErrorType errorType) {
+
+        runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                callback.onError(errorType);
             }
+        });
+    }
 
-        } else {
-            d("initialiseDatabase: DB does not exist.");
-            copyDbToStorage(context, file);
+    /**
+     * Gets an in memory index, waiting for it to be loaded or built. Must not be called on the
+     * UI thread.
+     *
+     * @param snapshot The index
+     * @param <T> The type of the index
+     * @return the index
+     * @throws IOException if the index could not be loaded or built
+     */
+    @NonNull
+    private <T> T waitForIndex(@NonNull IndexSnapshot<T> snapshot) throws IOException {
+        try {
+            return getIndex(snapshot).get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IOException("The index " + snapshot.getName() + " could not be loaded", e);
         }
     }
 
     /**
-     * Gets an instance of the database.
+     * Gets an in memory index over the dictionary, loading it from its snapshot on disk or, if
+     * the dictionary has changed since the snapshot was written, building it in the background
      *
-     * @param file The file, used to get the path to the database
-     * @return An instance of the database
+     * @param snapshot The index
+     * @param <T> The type of the index
+     * @return a future that completes with the index. Must only be waited on from a background
+     *         thread.
      */
-    private SQLiteDatabase getDatabase(@NonNull File file) {
-        return SQLiteDatabase.openDatabase(
-                file.getPath(), null,
-                SQLiteDatabase.NO_LOCALIZED_COLLATORS | SQLiteDatabase.OPEN_READONLY);
+    @NonNull
+    <T> Future<T> getIndex(@NonNull IndexSnapshot<T> snapshot) {
+        return indexSnapshots.get(this, snapshot);
     }
 
     /**
-     * Copies the database from the raw resources to the main storage
+     * Reads the given columns of every row of a table, shard by shard, in alphabetical order of
+     * the word. Waits for the database to be ready, and installs shards as needed. Must not be
+     * called on the UI thread.
      *
-     * @param context A valid context
-     * @param file The file to write to
+     * @param tableName The table
+     * @param columns The columns to read
+     * @param visitor Called with the cursor positioned on each row in turn
+     * @throws IOException if the database could not be read
      */
-    private void copyDbToStorage(@NonNull Context context, @NonNull File file) {
-        d("copyDbToStorage: Start");
+    void forEachRow(
+            @NonNull String tableName, @NonNull String[] columns,
+            @NonNull RowVisitor visitor) throws IOException {
+
+        if (!beginWork()) {
+            throw new IOException("The database is closed");
+        }
 
-        InputStream inputStream = context.getResources().openRawResource(R.raw.folkets);
+        try {
+            ready.get();
+        } catch (InterruptedException | ExecutionException e) {
+            endWork();
+            throw new IOException("The database did not become ready", e);
+        }
 
-        try (
-                HashingSource hashingSource = HashingSource.md5(Okio.source(inputStream));
-                BufferedSink bufferedSink = Okio.buffer(Okio.sink(file))) {
+        try {
+            for (DictionaryShard shard : DictionaryShards.ALL) {
 
-            bufferedSink.writeAll(hashingSource);
+                if (!shard.getTableName().equals(tableName)) {
+                    continue;
+                }
 
-            String hash = hashingSource.hash().hex();
-            d("copyDbToStorage: Saving hash of db as %s", hash);
-            preferences.edit().putString("db_hash", hash).apply();
-            database = getDatabase(file);
+                Cursor cursor = getShardDatabase(shard).query(
+                        tableName, columns, null, null, null, null, "word asc");
 
-        } catch (final IOException e) {
-            e(e, "copyDbToStorage: Error copying database.");
+                try {
+                    while (cursor.moveToNext()) {
+                        visitor.visit(cursor);
+                    }
+                } finally {
+                    cursor.close();
+                }
+            }
+        } finally {
+            endWork();
         }
     }
-}
 
+    /**
+     * Finds the words of a table by their headwords and inflected forms, see
+     * {@link #search(String, String, Callback)}. Hits on forms equal to the key join the
+     * headwords equal to it, and the other hits on forms follow every headword. Only the words of
+     * the forms that make it into the results are read. Must not be called on the UI thread.
+     *
+     * @param tableName The table whose words to find
+     * @param key The search key of the query
+     * @return the hits, with their words read, ranked
+     * @throws IOException if a shard could not be installed
+     */
+    @NonNull
+    private List<WordHit> findByHeadwordOrForm(
+            @NonNull String tableName, @NonNull String key) throws IOException {
+
+        if (CompletionTable.isServed(key)) {
+            return findCompletions(tableName, key);
+        }
+
+        List<WordHit> headwords = findHeadwords(tableName, key);
+
+        // Every word has a form matching the empty key, so it would only repeat the first page
+        if (key.length() == 0) {
+            return headwords;
+        }
+
+        List<WordHit> forms = findHits(InflectionIndex.tableName(tableName),
+                DictionaryShard.forInflectionIndex(tableName), tableName, key,
+                InflectionIndex.FORM_COLUMN);
+
+        Set<Long> rowIds = new HashSet<>();
+
+        for (WordHit headword : headwords) {
+            rowIds.add(headword.rowId);
+        }
+
+        // Headwords equal to the key come first, whether they are ranked or not
+        int exact = 0;
+
+        while (exact < headwords.size() && headwords.get(exact).key.equals(key)) {
+            exact++;
+        }
+
+        List<WordHit> hits = new ArrayList<>(headwords.subList(0, exact));
+        List<WordHit> formHits = new ArrayList<>();
+        boolean isExactForm = true;
+
+        // Forms come in the order of their keys, so those equal to the key come first
+        for (WordHit form : forms) {
+
+            if (isExactForm && !form.key.equals(key)) {
+                hits.addAll(headwords.subList(exact, headwords.size()));
+                isExactForm = false;
+            }
+
+            if (hits.size() >= SEARCH_LIMIT) {
+                break;
+            }
+
+            if (rowIds.add(form.rowId)) {
+                hits.add(form);
+                formHits.add(form);
+            }
+        }
+
+        if (isExactForm) {
+            hits.addAll(headwords.subList(exact, headwords.size()));
+        }
+
+        if (hits.size() > SEARCH_LIMIT) {
+            hits = new ArrayList<>(hits.subList(0, SEARCH_LIMIT));
+        }
+
+        if (hits.isEmpty()) {
+            List<WordHit> parts = findCompoundParts(tableName, key);
+            return !parts.isEmpty() ? parts : findSimilarHeadwords(tableName, key);
+        }
+
+        readWords(tableName, formHits);
+        return hits;
+    }
+
+    /**
+     * Finds the words of a table whose headwords match a key, ranked like
+     * {@link HeadwordIndex#findRanked(String, int)} ranks them, or in the order of their keys for
+     * the empty key. Once the {@link HeadwordIndex} of the table is loaded, the matching row ids
+     * come from it and SQLite only reads their words. Until then, and for keys with like
+     * wildcards, the shards are searched and rank their matches by the stored
+     * {@link ImportanceScore}, so a query gives the same words before and after the index loads.
+     *
+     * @param tableName The table whose words to find
+     * @param key The search key of the query
+     * @return the hits, with their words read
+     * @throws IOException if a shard could not be installed
+     */
+    @NonNull
+    private List<WordHit> findHeadwords(
+            @NonNull String tableName, @NonNull String key) throws IOException {
+
+        HeadwordIndex index = getLoadedHeadwordIndex(tableName);
+
+        if (index != null && SearchKeys.canSearchByRange(key)) {
+            return findHeadwords(tableName, key, index);
+        }
+
+        boolean isRanked = key.length() > 0;
+        List<WordHit> hits = new ArrayList<>();
+        PrefixSelection selection = new PrefixSelection(key);
+        String[] selectionArgs = selection.selectionArgs;
+        String orderBy = SearchKeys.COLUMN + " asc, word asc";
+
+        if (isRanked) {
+            selectionArgs = Arrays.copyOf(selectionArgs, selectionArgs.length + 1);
+            selectionArgs[selectionArgs.length - 1] = key;
+            orderBy = String.format(Locale.US, "%1$s = ? desc, %2$s desc, length(%1$s) asc, %3$s",
+                    SearchKeys.COLUMN, ImportanceScore.COLUMN, orderBy);
+        }
+
+        for (DictionaryShard shard : DictionaryShard.forSearch(tableName, key)) {
+
+            // Ranked matches can be in any of the shards, so each gives its best
+            int remaining = isRanked ? SEARCH_LIMIT : SEARCH_LIMIT - hits.size();
+
+            if (remaining <= 0) {
+                break;
+            }
+
+            Cursor cursor = getShardDatabase(shard).query(
+                    tableName, new String[] { "rowid", "*" }, selection.selection,
+                    selectionArgs, null, null,
+                    String.format(Locale.US, "%s limit 0,%d", orderBy, remaining));
+
+            try {
+                int keyColumn = cursor.getColumnIndex(SearchKeys.COLUMN);
+
+                while (cursor.moveToNext()) {
+                    Word word = new Word(context, cursor);
+                    WordHit hit = new WordHit(
+                            cursor.getString(keyColumn), cursor.getLong(0), shard, null);
+                    hit.word = word;
+                    hit.score = readScore(cursor);
+                    hits.add(hit);
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+
+        if (isRanked) {
+            final String searchKey = key;
+
+            Collections.sort(hits, new Comparator<WordHit>() {
+                @Override
+                public int compare(WordHit hit, WordHit other) {
+                    return compareRank(searchKey, hit, other);
+                }
+            });
+
+            if (hits.size() > SEARCH_LIMIT) {
+                hits = new ArrayList<>(hits.subList(0, SEARCH_LIMIT));
+            }
+        }
+
+        return hits;
+    }
+
+    /**
+     * Finds the words of a table whose headwords match a key through its {@link HeadwordIndex},
+     * and reads only the words of the {@link #SEARCH_LIMIT} best ranked matches, see
+     * {@link HeadwordIndex#findRanked(String, int)}. The matches of the empty key are every
+     * headword, so they are taken in alphabetical order instead.
+     *
+     * @param tableName The table whose words to find
+     * @param key The search key of the query, without like wildcards
+     * @param index The headword index of the table
+     * @return the hits, with their words read
+     * @throws IOException if a shard could not be installed
+     */
+    @NonNull
+    private List<WordHit> findHeadwords(
+            @NonNull String tableName, @NonNull String key,
+            @NonNull HeadwordIndex index) throws IOException {
+
+        if (key.length() > 0) {
+            return readHeadwords(tableName, index, index.findRanked(key, SEARCH_LIMIT));
+        }
+
+        int end = Math.min(index.size(), SEARCH_LIMIT);
+        int[] positions = new int[end];
+
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = i;
+        }
+
+        return readHeadwords(tableName, index, positions);
+    }
+
+    /**
+     * Finds the words of a table whose headwords are a few typos away from a key, through its
+     * {@link HeadwordIndex}, once it is loaded. Keys of up to {@link #ONE_TYPO_KEY_LENGTH}
+     * characters allow one edit, longer keys two.
+     *
+     * @param tableName The table whose words to find
+     * @param key The search key of the query
+     * @return the hits, closest first and then in the order of their keys, with their words read,
+     *         or no hits if the index is not loaded or the key is too short or has like wildcards
+     * @throws IOException if a shard could not be installed
+     */
+    @NonNull
+    private List<WordHit> findSimilarHeadwords(
+            @NonNull String tableName, @NonNull String key) throws IOException {
+
+        HeadwordIndex index = getLoadedHeadwordIndex(tableName);
+
+        if (index == null || key.length() < MIN_SIMILAR_KEY_LENGTH
+                || !SearchKeys.canSearchByRange(key)) {
+            return Collections.emptyList();
+        }
+
+        long start = System.nanoTime();
+        int maxDistance = key.length() <= ONE_TYPO_KEY_LENGTH ? 1 : 2;
+        int[] positions = index.findSimilar(key, maxDistance, SEARCH_LIMIT);
+
+        d("findSimilarHeadwords: Found %s within %s edits of %s in %sus", positions.length,
+                maxDistance, key, (System.nanoTime() - start) / 1000);
+
+        return readHeadwords(tableName, index, positions);
+    }
+
+    /**
+     * Finds the words of a table that sound like a spelling guess through its
+     * {@link PhoneticIndex}, see {@link #searchSoundingLike(String, String, Callback)}
+     *
+     * @param tableName The table whose words to find
+     * @param key The search key of the guess
+     * @return the hits, ranked, with their words read
+     * @throws IOException if a shard could not be installed
+     */
+    @NonNull
+    private List<WordHit> findSoundingLike(
+            @NonNull String tableName, @NonNull String key) throws IOException {
+
+        DictionaryShard indexShard = DictionaryShard.forPhoneticIndex(tableName);
+
+        if (indexShard == null) {
+            throw new IOException("There is no phonetic index for " + tableName);
+        }
+
+        String phoneticKey = PhoneticIndex.keyOfSpelling(key);
+
+        if (phoneticKey.length() == 0) {
+            return Collections.emptyList();
+        }
+
+        Set<Long> rowIds = new HashSet<>();
+        List<WordHit> hits = findPhoneticHits(indexShard, tableName, key,
+                PhoneticIndex.KEY_COLUMN + " = ?", new String[] { phoneticKey },
+                SEARCH_LIMIT, rowIds);
+
+        if (hits.size() < SEARCH_LIMIT) {
+            hits.addAll(findPhoneticHits(indexShard, tableName, key,
+                    PhoneticIndex.KEY_COLUMN + " > ? and " + PhoneticIndex.KEY_COLUMN + " < ?",
+                    new String[] { phoneticKey, SearchKeys.upperBound(phoneticKey) },
+                    SEARCH_LIMIT - hits.size(), rowIds));
+        }
+
+        readWords(tableName, hits);
+        return hits;
+    }
+
+    /**
+     * Finds the words of a table whose phonetic keys are selected from its
+     * {@link PhoneticIndex}, and ranks them by how close their headwords are in spelling to a
+     * guess. Only the few hits that are returned are ranked, so no large set is ever sorted.
+     *
+     * @param indexShard The shard holding the phonetic index
+     * @param tableName The table whose words to find
+     * @param key The search key of the guess
+     * @param selection The where clause over the phonetic keys
+     * @param selectionArgs The arguments of the where clause
+     * @param limit The most hits to find
+     * @param rowIds The row ids of the words already hit, which are skipped, and which the new
+     *               hits are added to
+     * @return the hits, closest in spelling first and then in the order of their phonetic keys,
+     *         without their words
+     * @throws IOException if the shard could not be installed
+     */
+    @NonNull
+    private List<WordHit> findPhoneticHits(
+            @NonNull DictionaryShard indexShard, @NonNull String tableName,
+            @NonNull String key, @NonNull String selection, @NonNull String[] selectionArgs,
+            int limit, @NonNull Set<Long> rowIds) throws IOException {
+
+        final Map<WordHit, Integer> distances = new HashMap<>();
+        List<WordHit> hits = new ArrayList<>();
+
+        Cursor cursor = getShardDatabase(indexShard).query(
+                PhoneticIndex.tableName(tableName),
+                new String[] { PhoneticIndex.ROW_ID_COLUMN, PhoneticIndex.WORD_COLUMN },
+                selection, selectionArgs, null, null,
+                String.format(Locale.US, "%s asc, %s asc limit 0,%d", PhoneticIndex.KEY_COLUMN,
+                        PhoneticIndex.WORD_COLUMN, limit * KEYS_PER_WORD));
+
+        try {
+            while (cursor.moveToNext() && hits.size() < limit) {
+                long rowId = cursor.getLong(0);
+                String headwordKey = SearchKeys.keyOf(cursor.getString(1));
+                DictionaryShard shard = DictionaryShard.forKey(tableName, headwordKey);
+
+                if (shard != null && rowIds.add(rowId)) {
+                    WordHit hit = new WordHit(headwordKey, rowId, shard, null);
+                    distances.put(hit, editDistance(key, headwordKey));
+                    hits.add(hit);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        // A stable sort, so hits as close as each other stay in the order of their keys
+        Collections.sort(hits, new Comparator<WordHit>() {
+            @Override
+            public int compare(WordHit first, WordHit second) {
+                return distances.get(first) - distances.get(second);
+            }
+        });
+
+        return hits;
+    }
+
+    /**
+     * Gets the Levenshtein distance between two keys
+     *
+     * @param first The first key
+     * @param second The second key
+     * @return the fewest insertions, deletions and substitutions that turn one into the other
+     */
+    private static int editDistance(@NonNull String first, @NonNull String second) {
+
+        int[] previous = new int[second.length() + 1];
+        int[] current = new int[second.length() + 1];
+
+        for (int j = 0; j <= second.length(); j++) {
+            previous[j] = j;
+        }
+
+        for (int i = 1; i <= first.length(); i++) {
+            current[0] = i;
+
+            for (int j = 1; j <= second.length(); j++) {
+                int substitution = first.charAt(i - 1) == second.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(previous[j - 1] + substitution,
+                        Math.min(previous[j], current[j - 1]) + 1);
+            }
+
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+
+        return previous[second.length()];
+    }
+
+    /**
+     * Finds the headwords that a key is a compound of through the {@link HeadwordIndex} of a
+     * table, once it is loaded, see {@link CompoundSplitter}. The words of the parts of the best
+     * few splits are {@link Word#getCompound() marked} with the split they were found in.
+     *
+     * @param tableName The table whose words to find
+     * @param key The search key of the query
+     * @return the hits, the parts of the best split first, with their words read, or no hits if
+     *         the index is not loaded, the key has like wildcards or it can not be split
+     * @throws IOException if a shard could not be installed
+     */
+    @NonNull
+    private List<WordHit> findCompoundParts(
+            @NonNull String tableName, @NonNull String key) throws IOException {
+
+        HeadwordIndex index = getLoadedHeadwordIndex(tableName);
+
+        if (index == null || !SearchKeys.canSearchByRange(key)) {
+            return Collections.emptyList();
+        }
+
+        long start = System.nanoTime();
+        List<CompoundSplitter.Split> splits = CompoundSplitter.split(index, key, COMPOUND_SPLITS);
+
+        d("findCompoundParts: Found %s splits of %s in %sus", splits.size(), key,
+                (System.nanoTime() - start) / 1000);
+
+        Set<Long> rowIds = new HashSet<>();
+        List<WordHit> hits = new ArrayList<>();
+
+        for (CompoundSplitter.Split split : splits) {
+            List<WordHit> parts = readHeadwords(tableName, index, split.getPositions());
+
+            if (parts.size() != split.getPartCount()) {
+                continue;
+            }
+
+            char[] links = split.getLinks();
+            StringBuilder compound = new StringBuilder();
+
+            for (int i = 0; i < parts.size(); i++) {
+                if (links[i] != 0) {
+                    compound.append('(').append(links[i]).append(')');
+                }
+
+                compound.append(i > 0 ? " + " : "").append(parts.get(i).word.getWord());
+            }
+
+            for (WordHit part : parts) {
+                if (rowIds.add(part.rowId)) {
+                    part.word.setCompound(compound.toString());
+                    hits.add(part);
+                }
+            }
+        }
+
+        return hits;
+    }
+
+    /**
+     * Reads the words of the headwords of an index from their shards
+     *
+     * @param tableName The table of the index
+     * @param index The headword index
+     * @param positions The positions of the headwords in the index
+     * @return the hits, in the order of the positions, leaving out those whose words could not
+     *         be read
+     * @throws IOException if a shard could not be installed
+     */
+    @NonNull
+    private List<WordHit> readHeadwords(
+            @NonNull String tableName, @NonNull Headwords index,
+            @NonNull int[] positions) throws IOException {
+
+        List<WordHit> hits = new ArrayList<>(positions.length);
+
+        for (int i : positions) {
+            String headwordKey = index.getKey(i);
+            DictionaryShard shard = DictionaryShard.forKey(tableName, headwordKey);
+
+            if (shard != null) {
+                hits.add(new WordHit(headwordKey, index.getRowId(i), shard, null));
+            }
+        }
+
+        readWords(tableName, hits);
+
+        List<WordHit> found = new ArrayList<>(hits.size());
+
+        for (WordHit hit : hits) {
+            if (hit.word != null) {
+                found.add(hit);
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * Finds the most important words of a table for a short prefix, from its {@link Completions}
+     *
+     * @param tableName The table whose words to find
+     * @param key The search key of the prefix, see {@link CompletionTable#isServed(String)}
+     * @return the hits, most important first, with their words read
+     * @throws IOException if a shard could not be installed
+     */
+    @NonNull
+    private List<WordHit> findCompletions(
+            @NonNull String tableName, @NonNull String key) throws IOException {
+
+        Completions tableCompletions = getCompletions(tableName);
+        long[] rowIds = tableCompletions.getRowIds(key);
+        String[] keys = tableCompletions.getKeys(key);
+        List<WordHit> hits = new ArrayList<>(rowIds.length);
+
+        for (int i = 0; i < rowIds.length; i++) {
+            DictionaryShard shard = DictionaryShard.forKey(tableName, keys[i]);
+
+            if (shard != null) {
+                hits.add(new WordHit(keys[i], rowIds[i], shard, null));
+            }
+        }
+
+        readWords(tableName, hits);
+        return hits;
+    }
+
+    /**
+     * Gets the {@link Completions} of a table, loading them on first use
+     *
+     * @param tableName The table
+     * @return the completions of the table
+     * @throws IOException if the completion table could not be installed
+     */
+    @NonNull
+    private Completions getCompletions(@NonNull String tableName) throws IOException {
+
+        synchronized (completions) {
+            Completions tableCompletions = completions.get(tableName);
+
+            if (tableCompletions != null) {
+                return tableCompletions;
+            }
+
+            DictionaryShard shard = DictionaryShard.forCompletionTable(tableName);
+
+            if (shard == null) {
+                throw new IOException("There is no completion table for " + tableName);
+            }
+
+            long start = System.nanoTime();
+            tableCompletions = Completions.load(getShardDatabase(shard), tableName);
+            completions.put(tableName, tableCompletions);
+
+            d("getCompletions: Loaded %s in %sms", tableCompletions,
+                    (System.nanoTime() - start) / 1000000);
+
+            return tableCompletions;
+        }
+    }
+
+    /**
+     * Gets the {@link HeadwordIndex} of a table if it is loaded, and starts loading it if it is
+     * not. Never waits for it.
+     *
+     * @param tableName The table
+     * @return the index, or null if it is not loaded yet or could not be loaded
+     */
+    @Nullable
+    private HeadwordIndex getLoadedHeadwordIndex(@NonNull String tableName) {
+
+        Future<HeadwordIndex> index = getIndex(HeadwordIndex.snapshot(tableName));
+
+        if (!index.isDone()) {
+            return null;
+        }
+
+        try {
+            return index.get();
+        } catch (InterruptedException | ExecutionException e) {
+            w(e, "getLoadedHeadwordIndex: The headword index of %s could not be loaded",
+                    tableName);
+            return null;
+        }
+    }
+
+    /**
+     * Finds the words of a table through one of its key indexes, in the order of the keys. A word
+     * that matches with several of its keys is only hit once, by its first key.
+     *
+     * @param indexName The table of the index
+     * @param indexShard The shard holding the index, may be null if there is none
+     * @param tableName The table whose words to find
+     * @param key The search key of the query
+     * @param formColumn The column holding what matched, or null if the hits need none
+     * @return the hits, without their words
+     * @throws IOException if a shard could not be installed
+     */
+    @NonNull
+    private List<WordHit> findHits(
+            @NonNull String indexName, @Nullable DictionaryShard indexShard,
+            @NonNull String tableName, @NonNull String key,
+            @Nullable String formColumn) throws IOException {
+
+        if (indexShard == null) {
+            throw new IOException("There is no index " + indexName);
+        }
+
+        // A word can match with several of its keys, so more keys than words are read. The key
+        // indexes share their row id and headword columns.
+        PrefixSelection selection = new PrefixSelection(key);
+        Set<Long> rowIds = new HashSet<>();
+        List<WordHit> hits = new ArrayList<>();
+
+        Cursor cursor = getShardDatabase(indexShard).query(indexName,
+                new String[] { SearchKeys.COLUMN, InflectionIndex.ROW_ID_COLUMN,
+                        InflectionIndex.WORD_COLUMN,
+                        formColumn != null ? formColumn : "null" },
+                selection.selection, selection.selectionArgs, null, null,
+                String.format(Locale.US, "%s asc, word asc limit 0,%d", SearchKeys.COLUMN,
+                        SEARCH_LIMIT * KEYS_PER_WORD));
+
+        try {
+            while (cursor.moveToNext() && hits.size() < SEARCH_LIMIT) {
+                long rowId = cursor.getLong(1);
+                DictionaryShard shard = DictionaryShard.forWord(tableName, cursor.getString(2));
+
+                if (shard != null && rowIds.add(rowId)) {
+                    hits.add(new WordHit(cursor.getString(0), rowId, shard, cursor.getString(3)));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return hits;
+    }
+
+    /**
+     * Reads the words of hits from their shards by row id, shard by shard. Words found by a form
+     * are marked with it.
+     *
+     * @param tableName The table of the words
+     * @param hits The hits whose words to read
+     * @throws IOException if a shard could not be installed
+     */
+    private void readWords(
+            @NonNull String tableName, @NonNull List<WordHit> hits) throws IOException {
+
+        Map<DictionaryShard, Map<Long, WordHit>> hitsByShard = new LinkedHashMap<>();
+
+        for (WordHit hit : hits) {
+            if (!hitsByShard.containsKey(hit.shard)) {
+                hitsByShard.put(hit.shard, new HashMap<Long, WordHit>());
+            }
+
+            hitsByShard.get(hit.shard).put(hit.rowId, hit);
+        }
+
+        for (Map.Entry<DictionaryShard, Map<Long, WordHit>> entry : hitsByShard.entrySet()) {
+
+            Map<Long, WordHit> shardHits = entry.getValue();
+            StringBuilder placeholders = new StringBuilder();
+            String[] rowIds = new String[shardHits.size()];
+            int i = 0;
+
+            for (long rowId : shardHits.keySet()) {
+                placeholders.append(i > 0 ? ", ?" : "?");
+                rowIds[i++] = String.valueOf(rowId);
+            }
+
+            Cursor cursor = getShardDatabase(entry.getKey()).query(
+                    tableName, new String[] { "rowid", "*" },
+                    "rowid in (" + placeholders + ")", rowIds, null, null, null);
+
+            try {
+                while (cursor.moveToNext()) {
+                    WordHit hit = shardHits.get(cursor.getLong(0));
+
+                    if (hit != null) {
+                        hit.word = new Word(context, cursor);
+                        hit.word.setMatchedForm(hit.form);
+                        hit.score = readScore(cursor);
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Reads the {@link ImportanceScore} of the word a cursor is positioned on
+     *
+     * @param cursor The cursor over a table of a dictionary shard
+     * @return the score of the word, or 0 if the shard has none
+     */
+    private static int readScore(@NonNull Cursor cursor) {
+        int column = cursor.getColumnIndex(ImportanceScore.COLUMN);
+        return column >= 0 ? cursor.getInt(column) : 0;
+    }
+
+    /**
+     * Gets the words of hits, leaving out those whose words could not be read
+     *
+     * @param hits The hits
+     * @return the words, in the order of the hits
+     */
+    @NonNull
+    private static List<Word> toWords(@NonNull List<WordHit> hits) {
+
+        List<Word> words = new ArrayList<>(hits.size());
+
+        for (WordHit hit : hits) {
+            if (hit.word != null) {
+                words.add(hit.word);
+            }
+        }
+
+        return words;
+    }
+
+    /**
+     * Merges the hits of two tables into the words of the first {@link #SEARCH_LIMIT} by rank,
+     * marking every word with the language of its table. Hits whose key is the search key itself
+     * come first, then those with the higher {@link ImportanceScore}, then those with the shorter
+     * key, and then in the order of their keys. The hits of the empty key are merged in the
+     * order of their keys, like the first page of one table.
+     * <p>
+     *     Not every search ranks its hits, so both are sorted before they are merged. The sort
+     *     is stable, and the hits of a ranked search are already in order, so it is cheap.
+     * </p>
+     *
+     * @param key The search key of the query
+     * @param first The language of the first table
+     * @param firstHits The hits in the first table, which come first among equal ranks
+     * @param second The language of the second table
+     * @param secondHits The hits in the second table
+     * @return the words of the hits, merged by rank
+     */
+    @NonNull
+    static List<Word> mergeByRank(
+            @NonNull final String key,
+            @NonNull Language first, @NonNull List<WordHit> firstHits,
+            @NonNull Language second, @NonNull List<WordHit> secondHits) {
+
+        Comparator<WordHit> comparator = new Comparator<WordHit>() {
+            @Override
+            public int compare(WordHit hit, WordHit other) {
+                return key.isEmpty()
+                        ? hit.key.compareTo(other.key) : compareRank(key, hit, other);
+            }
+        };
+
+        firstHits = new ArrayList<>(firstHits);
+        secondHits = new ArrayList<>(secondHits);
+        Collections.sort(firstHits, comparator);
+        Collections.sort(secondHits, comparator);
+
+        List<Word> words = new ArrayList<>(SEARCH_LIMIT);
+        int nextFirst = 0;
+        int nextSecond = 0;
+
+        while (words.size() < SEARCH_LIMIT
+                && (nextFirst < firstHits.size() || nextSecond < secondHits.size())) {
+
+            boolean isFirst = nextSecond == secondHits.size() || (nextFirst < firstHits.size()
+                    && comparator.compare(firstHits.get(nextFirst),
+                            secondHits.get(nextSecond)) <= 0);
+
+            WordHit hit = isFirst ? firstHits.get(nextFirst++) : secondHits.get(nextSecond++);
+
+            if (hit.word != null) {
+                hit.word.setLanguage(isFirst ? first : second);
+                words.add(hit.word);
+            }
+        }
+
+        return words;
+    }
+
+    /**
+     * Compares the rank of two hits, see {@link #mergeByRank(String, Language, List, Language,
+     * List)}
+     *
+     * @return less than, equal to or greater than 0 if the first ranks before, with or after the
+     *         second
+     */
+    private static int compareRank(
+            @NonNull String key, @NonNull WordHit first, @NonNull WordHit second) {
+
+        boolean isFirstExact = first.key.equals(key);
+
+        if (isFirstExact != second.key.equals(key)) {
+            return isFirstExact ? -1 : 1;
+        }
+
+        if (first.score != second.score) {
+            return second.score - first.score;
+        }
+
+        if (first.key.length() != second.key.length()) {
+            return first.key.length() - second.key.length();
+        }
+
+        return first.key.compareTo(second.key);
+    }
+
+    /**
+     * Starts loading the indexes of the priority table, and loads its completions, so that they
+     * are ready before they are needed
+     */
+    private void loadIndexes() {
+
+        if (!beginWork()) {
+            return;
+        }
+
+        getIndex(HeadwordIndex.snapshot(priorityTableName));
+
+        try {
+            getCompletions(priorityTableName);
+        } catch (IOException | SQLiteException e) {
+            w(e, "loadIndexes: Could not load the completions of %s", priorityTableName);
+        } finally {
+            endWork();
+        }
+    }
+
+    /**
+     * Logs how long one of the first {@link #TIMED_SEARCHES} searches took, from being asked for
+     * to having its results, including any wait for the database to be ready
+     *
+     * @param start When the search was asked for, from {@link System#nanoTime()}
+     */
+    private void logSearchTime(long start) {
+
+        int count = searchCount.incrementAndGet();
+
+        if (count <= TIMED_SEARCHES) {
+            d("logSearchTime: Search %s of %s took %sms with %s",
+                    count, TIMED_SEARCHES, (System.nanoTime() - start) / 1000000, tuning);
+        }
+    }
+
+    /**
+     * Warms up the search index of the priority table, shard by shard, so that a search never
+     * waits behind more than one shard being warmed up. Runs once the shards are installed.
+     */
+    private void warmUp() {
+
+        if (!tuning.shouldWarmUp()) {
+            return;
+        }
+
+        String tableName = priorityTableName;
+        long start = System.nanoTime();
+
+        for (DictionaryShard shard : DictionaryShards.ALL) {
+
+            if (!shard.getTableName().equals(tableName)) {
+                continue;
+            }
+
+            // One shard at a time, so that the database can be closed in between
+            if (!beginWork()) {
+                return;
+            }
+
+            try {
+                tuning.warmUp(getShardDatabase(shard), tableName);
+            } catch (IOException | SQLiteException e) {
+                w(e, "warmUp: Could not warm up %s", shard.getFileName());
+                return;
+            } finally {
+                endWork();
+            }
+        }
+
+        d("warmUp: Warmed up %s in %sms", tableName, (System.nanoTime() - start) / 1000000);
+    }
+
+    /**
+     * Runs a query once the database is ready. If it is not ready yet, then the query is queued
+     * until it is. The database is not closed while the query is queued or running, and a query
+     * made once it is closed is dropped.
+     *
+     * @param work The query to run
+     */
+    private void whenReady(@NonNull final Runnable work) {
+
+        if (!beginWork()) {
+            w("whenReady: The database is closed, dropping query");
+            return;
+        }
+
+        Runnable query = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    work.run();
+                } finally {
+                    endWork();
+                }
+            }
+        };
+
+        synchronized (pendingQueries) {
+            if (!ready.isDone()) {
+                d("whenReady: Database is not ready, queueing query");
+                pendingQueries.add(query);
+                return;
+            }
+        }
+
+        execute(query);
+    }
+
+    /**
+     * Marks the start of work that reads the shards, so that {@link #close()} does not close
+     * them under it. Every call that returns true must be balanced by a call to
+     * {@link #endWork()}.
+     *
+     * @return true if the work can start, false if the database is closed
+     */
+    private boolean beginWork() {
+        synchronized (workLock) {
+            if (closed) {
+                return false;
+            }
+
+            runningWork++;
+            return true;
+        }
+    }
+
+    /**
+     * Marks the end of work started with {@link #beginWork()}. The last work to end closes the
+     * connections of the shards that were retired while it ran.
+     */
+    private void endWork() {
+        synchronized (workLock) {
+            runningWork--;
+
+            if (runningWork == 0) {
+                closeRetiredShards();
+            }
+        }
+    }
+
+    /**
+     * Closes the connections of retired shards. Must only be called holding the work lock, when
+     * no work is running.
+     */
+    private void closeRetiredShards() {
+
+        if (retiredShards.isEmpty()) {
+            return;
+        }
+
+        d("closeRetiredShards: Closing %s retired connections", retiredShards.size());
+
+        for (SQLiteDatabase database : retiredShards) {
+            database.close();
+        }
+
+        retiredShards.clear();
+    }
+
+    /**
+     * Runs the queued queries. Called on the initialising thread once the database is ready.
+     */
+    private void runPendingQueries() {
+
+        List<Runnable> queries;
+
+        synchronized (pendingQueries) {
+            queries = new ArrayList<>(pendingQueries);
+            pendingQueries.clear();
+        }
+
+        d("runPendingQueries: Running %s queued queries", queries.size());
+
+        for (Runnable query : queries) {
+            execute(query);
+        }
+    }
+
+    /**
+     * Gets the database of a shard, installing the shard first if needed. Must only be called
+     * once the database is ready, and never on the UI thread.
+     *
+     * @param shard The shard
+     * @return the opened shard
+     * @throws IOException if the shard could not be installed
+     */
+    @NonNull
+    private SQLiteDatabase getShardDatabase(@NonNull DictionaryShard shard) throws IOException {
+
+        installIfNeeded(shard);
+
+        synchronized (openShards) {
+            SQLiteDatabase database = openShards.get(shard);
+
+            if (database == null) {
+                database = SQLiteDatabase.openDatabase(
+                        new File(shardsDir, shard.getFileName()).getPath(), null,
+                        SQLiteDatabase.NO_LOCALIZED_COLLATORS | SQLiteDatabase.OPEN_READONLY);
+                tuning.apply(database);
+                openShards.put(shard, database);
+            }
+
+            return database;
+        }
+    }
+
+    /**
+     * Installs a shard if it is not installed yet, or waits for it if another thread is already
+     * installing it. If the install fails, then the next call tries again.
+     *
+     * @param shard The shard
+     * @throws IOException if the shard could not be installed
+     */
+    private void installIfNeeded(@NonNull DictionaryShard shard) throws IOException {
+
+        FutureTask<Void> task = installTasks.get(shard);
+
+        if (task == null) {
+            return;
+        }
+
+        task.run();
+
+        try {
+            task.get();
+            installTasks.remove(shard);
+
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted while installing " + shard.getFileName(), e);
+
+        } catch (ExecutionException e) {
+            synchronized (installTasks) {
+                if (installTasks.get(shard) == task) {
+                    installTasks.put(shard, newInstallTask(shard));
+                }
+            }
+
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+
+            throw new IOException("Could not install " + shard.getFileName(), e.getCause());
+        }
+    }
+
+    /**
+     * Retires the connection to a shard, so that the next search reopens it from disk. Work that
+     * is running may still be reading through the old connection, with cursors that fill their
+     * windows lazily, so it is only closed once no work is running.
+     *
+     * @param shard The shard
+     */
+    private void retireShard(@NonNull DictionaryShard shard) {
+
+        SQLiteDatabase database;
+
+        synchronized (openShards) {
+            database = openShards.remove(shard);
+        }
+
+        if (database == null) {
+            return;
+        }
+
+        synchronized (workLock) {
+            retiredShards.add(database);
+
+            if (runningWork == 0) {
+                closeRetiredShards();
+            }
+        }
+    }
+
+    /**
+     * Queues a shard that is corrupt to be installed again in full. The next search that needs
+     * it installs it, and if the app is closed first, then the next launch does.
+     *
+     * @param shard The shard
+     */
+    private void reinstall(@NonNull DictionaryShard shard) {
+        w("reinstall: %s is corrupt, reinstalling", shard.getFileName());
+
+        shardPreferences.edit().remove(shard.getFileName()).commit();
+        preferences.edit().remove(DB_HASH).commit();
+        installTasks.put(shard, newInstallTask(shard));
+        retireShard(shard);
+    }
+
+    /**
+     * Works out which shards need to be installed.
+     * <p>
+     *     The fingerprint of the bundled shards is computed at build time, see
+     *     {@link DictionaryFingerprint#SHARDS}. If it matches the fingerprint stored when every
+     *     shard was last installed, then nothing is read from disk at all. Otherwise every shard
+     *     whose own fingerprint has changed is queued for install, or for a patch if a delta from
+     *     the installed version is bundled, and files left behind by older versions are deleted.
+     * </p>
+     */
+    private void prepareShards() {
+        d("prepareShards: Start");
+
+        String storedHash = preferences.getString(DB_HASH, "");
+
+        d("prepareShards: Stored hash %s, bundled shards hash %s",
+                storedHash, DictionaryFingerprint.SHARDS);
+
+        List<DictionaryShard> shards = findShardsToInstall(
+                storedHash, DictionaryFingerprint.SHARDS, shardPreferences, shardsDir,
+                DictionaryShards.ALL);
+
+        if (shards == null) {
+            d("prepareShards: Database is unchanged");
+            return;
+        }
+
+        deleteStaleFiles();
+
+        for (DictionaryShard shard : shards) {
+            installTasks.put(shard, newInstallTask(shard));
+        }
+
+        d("prepareShards: %s shards to install", installTasks.size());
+    }
+
+    /**
+     * Finds the shards that are not installed in their bundled version.
+     * <p>
+     *     The files are only looked at if the stored fingerprint is not the bundled one, or if
+     *     the fingerprint of any shard is not the one stored when it was installed. The stored
+     *     fingerprint alone is not trusted, since the shards of an older version may have been
+     *     stored under the same one.
+     * </p>
+     *
+     * @param storedFingerprint The fingerprint stored when every shard was last installed
+     * @param fingerprint The fingerprint of the bundled shards
+     * @param shardPreferences The fingerprints of the installed shards, by file name
+     * @param shardsDir The directory the shards are installed to
+     * @param shards The bundled shards
+     * @return the shards to install, or null if every shard is installed
+     */
+    @Nullable
+    static List<DictionaryShard> findShardsToInstall(
+            @NonNull String storedFingerprint, @NonNull String fingerprint,
+            @NonNull SharedPreferences shardPreferences, @NonNull File shardsDir,
+            @NonNull DictionaryShard... shards) {
+
+        boolean installed = storedFingerprint.equals(fingerprint);
+
+        for (int i = 0; installed && i < shards.length; i++) {
+            installed = shards[i].getMd5().equals(
+                    shardPreferences.getString(shards[i].getFileName(), ""));
+        }
+
+        if (installed) {
+            return null;
+        }
+
+        List<DictionaryShard> shardsToInstall = new ArrayList<>();
+
+        for (DictionaryShard shard : shards) {
+            String installedHash = shardPreferences.getString(shard.getFileName(), "");
+            File file = new File(shardsDir, shard.getFileName());
+
+            if (!installedHash.equals(shard.getMd5()) || !file.exists()) {
+                shardsToInstall.add(shard);
+            }
+        }
+
+        return shardsToInstall;
+    }
+
+    /**
+     * Deletes the unsharded database of older versions, and shards that are no longer bundled
+     */
+    private void deleteStaleFiles() {
+
+        File legacyDatabase = new File(context.getFilesDir(), LEGACY_FOLKETS_DB);
+
+        if (legacyDatabase.exists() && !legacyDatabase.delete()) {
+            w("deleteStaleFiles: Could not delete %s", legacyDatabase.getPath());
+        }
+
+        File[] files = shardsDir.listFiles();
+
+        if (files == null) {
+            return;
+        }
+
+        SharedPreferences.Editor editor = shardPreferences.edit();
+
+        for (File file : files) {
+            if (!DictionaryShard.isShardFileName(file.getName())) {
+                d("deleteStaleFiles: Deleting %s", file.getName());
+                editor.remove(file.getName());
+
+                if (!file.delete()) {
+                    w("deleteStaleFiles: Could not delete %s", file.getPath());
+                }
+            }
+        }
+
+        editor.apply();
+    }
+
+    /**
+     * Installs every shard that is not installed yet, those of the priority table first
+     *
+     * @throws IOException if a shard could not be installed
+     */
+    private void installShards() throws IOException {
+
+        if (installTasks.isEmpty()) {
+            return;
+        }
+
+        List<DictionaryShard> shards = new ArrayList<>();
+        long totalSize = 0;
+
+        // Headword searches also read the inflected forms and completions of the table
+        String priorityFormsTableName = InflectionIndex.tableName(priorityTableName);
+        String priorityCompletionsTableName = CompletionTable.tableName(priorityTableName);
+
+        for (DictionaryShard shard : DictionaryShards.ALL) {
+            if (shard.getTableName().equals(priorityTableName)
+                    || shard.getTableName().equals(priorityFormsTableName)
+                    || shard.getTableName().equals(priorityCompletionsTableName)) {
+                shards.add(shard);
+            }
+        }
+
+        for (DictionaryShard shard : DictionaryShards.ALL) {
+            if (!shards.contains(shard)) {
+                shards.add(shard);
+            }
+
+            totalSize += shard.getSize();
+        }
+
+        long installedSize = 0;
+
+        for (DictionaryShard shard : shards) {
+            installIfNeeded(shard);
+            installedSize += shard.getSize();
+            notifyProgress((int) (installedSize * 100 / Math.max(totalSize, 1)));
+        }
+
+        d("installShards: Saving hash of shards as %s", DictionaryFingerprint.SHARDS);
+        preferences.edit().putString(DB_HASH, DictionaryFingerprint.SHARDS).apply();
+    }
+
+    /**
+     * Creates a task that installs a shard from the assets
+     *
+     * @param shard The shard to install
+     * @return the task
+     */
+    @NonNull
+    private FutureTask<Void> newInstallTask(@NonNull final DictionaryShard shard) {
+        return new FutureTask<>(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                installShard(shard);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Installs a shard from the assets. If the installed version of the shard has a delta to the
+     * bundled version, then it is patched in place. Otherwise, or if the patch fails, the whole
+     * shard is installed, verifying the hash as it decompresses.
+     *
+     * @param shard The shard to install
+     * @throws IOException if the shard could not be installed
+     */
+    private void installShard(@NonNull DictionaryShard shard) throws IOException {
+
+        if (!shardsDir.isDirectory() && !shardsDir.mkdirs()) {
+            throw new IOException("Could not create " + shardsDir.getPath());
+        }
+
+        DictionaryInstaller installer = new DictionaryInstaller(context);
+        File file = new File(shardsDir, shard.getFileName());
+        String installedHash = shardPreferences.getString(shard.getFileName(), "");
+
+        if (file.exists() && shard.hasDeltaFrom(installedHash)) {
+            d("installShard: Patching %s from %s", shard.getFileName(), installedHash);
+
+            // A patch is not atomic, so forget the installed hash until it has succeeded. If the
+            // app dies part way through, the shard is then installed in full on the next launch.
+            shardPreferences.edit().remove(shard.getFileName()).commit();
+
+            try {
+                installer.patch(shard.getDeltaAssetName(installedHash), file,
+                        installedHash, shard.getMd5());
+                shardPreferences.edit().putString(shard.getFileName(), shard.getMd5()).apply();
+                return;
+
+            } catch (IOException e) {
+                w(e, "installShard: Could not patch %s, installing in full", shard.getFileName());
+            }
+        }
+
+        d("installShard: Installing %s", shard.getFileName());
+
+        installer.install(shard.getAssetName(), file, shard.getMd5());
+
+        shardPreferences.edit().putString(shard.getFileName(), shard.getMd5()).apply();
+    }
+
+    /**
+     * Notifies the initialisation callbacks once every shard is installed, or has failed, and
+     * starts verifying the shards if they were installed
+     */
+    private void onInstalled() {
+
+        if (!installed.isCancelled()) {
+            try {
+                installed.get();
+                verifier.start();
+            } catch (InterruptedException | ExecutionException e) {
+                d("onInstalled: Not verifying, the install failed");
+            }
+        }
+
+        List<Callback<Integer>> callbacks;
+
+        synchronized (initialisationCallbacks) {
+            callbacks = new ArrayList<>(initialisationCallbacks);
+            initialisationCallbacks.clear();
+        }
+
+        for (Callback<Integer> callback : callbacks) {
+            notifyInstalled(callback);
+        }
+    }
+
+    /**
+     * Tells a callback how the install finished, on the UI thread
+     *
+     * @param callback The callback to notify
+     */
+    private void notifyInstalled(@NonNull final Callback<Integer> callback) {
+
+        boolean success;
+
+        try {
+            installed.get();
+            success = true;
+        } catch (InterruptedException | ExecutionException e) {
+            e(e, "notifyInstalled: The dictionary could not be installed");
+            success = false;
+        }
+
+        final boolean wasInstalled = success;
+
+        runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                if (wasInstalled) {
+                    callback.onSuccess(100);
+                } else {
+                    callback.onError(ErrorType.DATABASE_INSTALL_FAILED);
+                }
+            }
+        });
+    }
+
+    /**
+     * Tells the initialisation callbacks how far the install has got, on the UI thread
+     *
+     * @param percent How much of the database has been installed
+     */
+    private void notifyProgress(final int percent) {
+
+        final List<Callback<Integer>> callbacks;
+
+        synchronized (initialisationCallbacks) {
+            callbacks = new ArrayList<>(initialisationCallbacks);
+        }
+
+        runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                for (Callback<Integer> callback : callbacks) {
+                    callback.onSuccess(percent);
+                }
+            }
+        });
+    }
+
+    /**
+     * Visits the rows of a table, see {@link #forEachRow(String, String[], RowVisitor)}
+     */
+    interface RowVisitor {
+
+        /**
+         * Called for each row
+         *
+         * @param cursor The cursor, positioned on the row. Must not be moved or closed.
+         */
+        void visit(@NonNull Cursor cursor);
+    }
+
+    /**
+     * Finds the results of a search, see
+     * {@link #searchWhenReady(String, Callback, SearchQuery)}. Called on a background thread.
+     *
+     * @param <T> The type of the results
+     */
+    private interface SearchQuery<T> {
+
+        /**
+         * Finds the results
+         *
+         * @return the results, or null to drop the search without calling back
+         * @throws IOException if a shard could not be installed or an index could not be loaded
+         */
+        @Nullable List<T> find() throws IOException;
+    }
+
+    /**
+     * Finds the hits on a page of a paged search, see
+     * {@link #searchPage(String, int, Callback, PageQuery)}. Called on a background thread.
+     */
+    private interface PageQuery {
+
+        /**
+         * Finds the hits on a page
+         *
+         * @param skip How many hits come before the page
+         * @param limit The most hits on the page
+         * @return the hits on the page, with their words read
+         * @throws IOException if the index could not be loaded or a shard could not be installed
+         */
+        @NonNull List<WordHit> find(int skip, int limit) throws IOException;
+    }
+
+    /**
+     * A word that matched a search, by its headword or by one of its keys in an index. Its word
+     * is read once it is known to be among the results.
+     */
+    static class WordHit {
+
+        final String key;
+        final long rowId;
+        final DictionaryShard shard;
+        final String form;
+        Word word;
+        int score;
+
+        WordHit(
+                @NonNull String key, long rowId, @NonNull DictionaryShard shard,
+                @Nullable String form) {
+            this.key = key;
+            this.rowId = rowId;
+            this.shard = shard;
+            this.form = form;
+        }
+    }
+
+    /**
+     * The where clause of a prefix search. A range over the search keys where possible, and like
+     * over them otherwise, see {@link SearchKeys#canSearchByRange(String)}.
+     */
+    private static class PrefixSelection {
+
+        final String selection;
+        final String[] selectionArgs;
+
+        PrefixSelection(@NonNull String key) {
+
+            if (!SearchKeys.canSearchByRange(key)) {
+                selection = SearchKeys.COLUMN + " like ?";
+                selectionArgs = new String[] { key + "%" };
+                return;
+            }
+
+            String upperBound = SearchKeys.upperBound(key);
+
+            if (upperBound == null) {
+                selection = SearchKeys.COLUMN + " >= ?";
+                selectionArgs = new String[] { key };
+            } else {
+                selection = SearchKeys.COLUMN + " >= ? and " + SearchKeys.COLUMN + " < ?";
+                selectionArgs = new String[] { key, upperBound };
+            }
+        }
+    }
+}
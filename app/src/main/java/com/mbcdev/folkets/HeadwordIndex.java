@@ -0,0 +1,1072 @@
+package com.mbcdev.folkets;
+
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * A compact trie over the {@link SearchKeys search keys} of every headword of a table, kept on
+ * disk by the {@link IndexSnapshotStore} and read straight from the memory mapped snapshot, so it
+ * holds no objects per word or node.
+ * <p>
+ *     Headwords are sorted by key and then by word, the order searches return them in, so the
+ *     headwords matching a prefix are one range of positions. Every node of the trie is a prefix
+ *     shared by more than {@link #LEAF_SIZE} headwords and holds that range. A prefix search walks
+ *     down the trie one character at a time, and only compares keys once it reaches a node that
+ *     was not split any further. The row ids of the range are then all that has to be read from
+ *     SQLite.
+ * </p>
+ * <p>
+ *     The same walk finds the headwords within a small edit distance of a misspelled key, see
+ *     {@link #findSimilar(String, int, int)}, pruning every node whose prefix is already too far
+ *     from the key, and the headwords that a compound starts with, see
+ *     {@link #findPrefixesOf(String, int)}.
+ * </p>
+ * <p>
+ *     Wildcard patterns are matched by walking the trie too, stepping the automaton of the
+ *     {@link WildcardPattern} with the label of every node, see
+ *     {@link #findMatching(WildcardPattern, int, int)}.
+ * </p>
+ * <p>
+ *     Headwords also keep their {@link ImportanceScore}, and a segment tree over their positions
+ *     that holds the best ranked headword of every range. The best ranked headwords of a prefix
+ *     are taken from it one at a time, splitting the range around each, see
+ *     {@link #findRanked(String, int)}, so ranking never sorts the whole range.
+ * </p>
+ * <p>
+ *     Layout, big endian: the number of headwords n and of nodes m, n row ids, n + 1 offsets into
+ *     the keys, the UTF-16 chars of every key one after another, then the nodes in breadth first
+ *     order: m labels, m + 1 offsets to the first child of every node, and the m starts and m
+ *     ends of their ranges. The children of a node are consecutive and ordered by label, and the
+ *     root is node 0. Then n scores, and the 2n entries of the segment tree, whose leaves are
+ *     entries n to 2n - 1 and whose entry 0 is unused.
+ * </p>
+ */
+class HeadwordIndex implements Headwords {
+
+    private static final int VERSION = 3;
+
+    /** The most headwords a node holds without being split any further */
+    private static final int LEAF_SIZE = 8;
+
+    /** The deepest a node can be, which bounds the size of the trie */
+    private static final int MAX_DEPTH = 16;
+
+    private final ByteBuffer buffer;
+    private final int size;
+    private final int nodeCount;
+    private final int rowIdsStart;
+    private final int offsetsStart;
+    private final int keysStart;
+    private final int labelsStart;
+    private final int firstChildrenStart;
+    private final int rangeStartsStart;
+    private final int rangeEndsStart;
+    private final int scoresStart;
+    private final int bestStart;
+
+    /**
+     * Creates an index over a snapshot
+     *
+     * @param buffer The snapshot
+     * @throws IOException if the snapshot is malformed
+     */
+    private HeadwordIndex(@NonNull ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        size = buffer.getInt(0);
+        nodeCount = buffer.getInt(4);
+
+        if (size < 0 || nodeCount < 1 || 8L + size * 8L + 4 > buffer.limit()) {
+            throw new IOException("Malformed headword index");
+        }
+
+        rowIdsStart = 8;
+        offsetsStart = rowIdsStart + size * 4;
+        keysStart = offsetsStart + (size + 1) * 4;
+        labelsStart = keysStart + buffer.getInt(offsetsStart + size * 4) * 2;
+        firstChildrenStart = labelsStart + nodeCount * 2;
+        rangeStartsStart = firstChildrenStart + (nodeCount + 1) * 4;
+        rangeEndsStart = rangeStartsStart + nodeCount * 4;
+        scoresStart = rangeEndsStart + nodeCount * 4;
+        bestStart = scoresStart + size * 4;
+
+        if (labelsStart < keysStart || bestStart + size * 8L > buffer.limit()) {
+            throw new IOException("Malformed headword index");
+        }
+    }
+
+    /**
+     * Gets the snapshot of the headword index of a table
+     *
+     * @param tableName The table
+     * @return the snapshot of the headword index of the table
+     */
+    @NonNull
+    static IndexSnapshot<HeadwordIndex> snapshot(@NonNull final String tableName) {
+        return new IndexSnapshot<HeadwordIndex>() {
+            @NonNull
+            @Override
+            public String getName() {
+                return "headwords_" + tableName;
+            }
+
+            @Override
+            public int getVersion() {
+                return VERSION;
+            }
+
+            @Override
+            public void build(
+                    @NonNull FolketsDatabase database, @NonNull DataOutputStream output)
+                    throws IOException {
+                write(database, tableName, output);
+            }
+
+            @NonNull
+            @Override
+            public HeadwordIndex load(@NonNull ByteBuffer buffer) throws IOException {
+                return new HeadwordIndex(buffer);
+            }
+        };
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the number of nodes of the trie
+     *
+     * @return the number of nodes, at least 1 for the root
+     */
+    int nodeCount() {
+        return nodeCount;
+    }
+
+    @NonNull
+    @Override
+    public String getKey(int index) {
+        int start = keyOffset(index);
+        char[] key = new char[keyOffset(index + 1) - start];
+
+        for (int i = 0; i < key.length; i++) {
+            key[i] = keyChar(start + i);
+        }
+
+        return new String(key);
+    }
+
+    @Override
+    public int getRowId(int index) {
+        return buffer.getInt(rowIdsStart + index * 4);
+    }
+
+    /**
+     * Finds the headwords whose search keys start with a key
+     *
+     * @param key The search key of the prefix, without like wildcards
+     * @return the positions of the first matching headword and of the one after the last, which
+     *         are equal if nothing matches
+     */
+    @NonNull
+    int[] prefixRange(@NonNull String key) {
+
+        int node = 0;
+        int depth = 0;
+
+        while (depth < key.length()) {
+            int first = firstChild(node);
+            int end = firstChild(node + 1);
+
+            if (first == end) {
+                break;
+            }
+
+            int child = findChild(first, end, key.charAt(depth));
+
+            if (child < 0) {
+                return new int[] { rangeStart(node), rangeStart(node) };
+            }
+
+            node = child;
+            depth++;
+        }
+
+        int low = rangeStart(node);
+        int high = rangeEnd(node);
+
+        if (depth == key.length()) {
+            return new int[] { low, high };
+        }
+
+        int end = high;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+
+            if (compareToPrefix(middle, key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        int from = low;
+        high = end;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+
+            if (compareToPrefix(middle, key) == 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return new int[] { from, low };
+    }
+
+    /**
+     * Finds the best ranked headwords whose search keys start with a key. Headwords whose key is
+     * the key itself come first, and then the rest. Each are ranked by {@link ImportanceScore},
+     * highest first, then by the length of their key, shortest first, and then in search order.
+     *
+     * @param key The search key of the prefix, without like wildcards
+     * @param limit The most headwords to find
+     * @return the positions of the headwords, best ranked first
+     */
+    @NonNull
+    int[] findRanked(@NonNull String key, int limit) {
+
+        int[] range = prefixRange(key);
+        int exactEnd = range[0];
+
+        // Keys equal to the prefix sort first in its range
+        while (exactEnd < range[1] && keyLength(exactEnd) == key.length()) {
+            exactEnd++;
+        }
+
+        IntList ranked = new IntList();
+        addRanked(range[0], exactEnd, limit, ranked);
+        addRanked(exactEnd, range[1], limit, ranked);
+        return Arrays.copyOf(ranked.values, ranked.size);
+    }
+
+    /**
+     * Adds the best ranked headwords of a range to a list, taking the best headword of the range
+     * and then of the ranges either side of it, until the list is full
+     *
+     * @param start The first headword of the range
+     * @param end The headword after the last of the range
+     * @param limit The most headwords the list can hold
+     * @param ranked The list
+     */
+    private void addRanked(int start, int end, int limit, @NonNull IntList ranked) {
+
+        // Ranges not taken yet, as their start, end and best headword, best first
+        PriorityQueue<int[]> ranges = new PriorityQueue<>(16, new Comparator<int[]>() {
+            @Override
+            public int compare(int[] first, int[] second) {
+                return compareRank(first[2], second[2]);
+            }
+        });
+
+        if (start < end) {
+            ranges.add(new int[] { start, end, findBest(start, end) });
+        }
+
+        while (ranked.size < limit && !ranges.isEmpty()) {
+            int[] best = ranges.poll();
+            ranked.add(best[2]);
+
+            if (best[0] < best[2]) {
+                ranges.add(new int[] { best[0], best[2], findBest(best[0], best[2]) });
+            }
+
+            if (best[2] + 1 < best[1]) {
+                ranges.add(new int[] { best[2] + 1, best[1], findBest(best[2] + 1, best[1]) });
+            }
+        }
+    }
+
+    /**
+     * Gets the {@link ImportanceScore} of a headword
+     *
+     * @param index The position of the headword
+     * @return the score of the headword
+     */
+    int getScore(int index) {
+        return buffer.getInt(scoresStart + index * 4);
+    }
+
+    /**
+     * Finds the headwords whose search keys start a key from a position on, the way the words a
+     * compound is made of start it. A single walk down the trie along the key finds all of them.
+     *
+     * @param key The search key
+     * @param start Where in the key the headwords have to start
+     * @return the positions of the first headword with every such search key, shortest key first
+     */
+    @NonNull
+    int[] findPrefixesOf(@NonNull String key, int start) {
+
+        IntList matches = new IntList();
+        int node = 0;
+        int depth = 0;
+        int low = rangeStart(node);
+        int high = rangeEnd(node);
+        boolean inTrie = true;
+
+        while (low < high) {
+            // Keys that end at this depth sort first
+            if (depth > 0 && keyLength(low) == depth) {
+                matches.add(low);
+            }
+
+            if (start + depth == key.length()) {
+                break;
+            }
+
+            char c = key.charAt(start + depth);
+
+            if (inTrie && firstChild(node) != firstChild(node + 1)) {
+                node = findChild(firstChild(node), firstChild(node + 1), c);
+
+                if (node < 0) {
+                    break;
+                }
+
+                low = rangeStart(node);
+                high = rangeEnd(node);
+            } else {
+                // Below a node that was not split any further, narrow the range by binary search
+                inTrie = false;
+                int from = charBound(low, high, depth, c, false);
+                high = charBound(from, high, depth, c, true);
+                low = from;
+            }
+
+            depth++;
+        }
+
+        return Arrays.copyOf(matches.values, matches.size);
+    }
+
+    /**
+     * Finds the headwords whose search keys are within an edit distance of a key. Insertions,
+     * deletions, substitutions and swaps of two neighbouring characters each count as one edit.
+     *
+     * @param key The search key of a whole word
+     * @param maxDistance The most edits a match can be away from the key
+     * @param limit The most matches to return
+     * @return the positions of the matches, closest first and then in search order
+     */
+    @NonNull
+    int[] findSimilar(@NonNull String key, int maxDistance, int limit) {
+
+        SimilarWalk walk = new SimilarWalk(key, maxDistance);
+        walk.visit(0, 0);
+
+        int count = 0;
+
+        for (int distance = 0; distance <= maxDistance; distance++) {
+            count += walk.matches[distance].size;
+        }
+
+        int[] positions = new int[Math.min(count, limit)];
+        int filled = 0;
+
+        for (int distance = 0; distance <= maxDistance && filled < positions.length; distance++) {
+            IntList matches = walk.matches[distance];
+            int copied = Math.min(matches.size, positions.length - filled);
+            System.arraycopy(matches.values, 0, positions, filled, copied);
+            filled += copied;
+        }
+
+        return positions;
+    }
+
+    /**
+     * Finds a page of the headwords whose search keys match a wildcard pattern. Subtrees that no
+     * key matching the pattern can be in are skipped, as is counting through the ones that every
+     * key in matches.
+     *
+     * @param pattern The pattern
+     * @param skip How many matches come before the page
+     * @param limit The most matches on the page
+     * @return the positions of the matches on the page, in search order
+     */
+    @NonNull
+    int[] findMatching(@NonNull WildcardPattern pattern, int skip, int limit) {
+        PatternWalk walk = new PatternWalk(pattern, skip, limit);
+        walk.visit(0, 0, pattern.start());
+        return Arrays.copyOf(walk.matches.values, walk.matches.size);
+    }
+
+    /**
+     * Finds the child of a node with a label, by binary search over the labels of its children
+     *
+     * @param first The first child of the node
+     * @param end The node after the last child
+     * @param label The label
+     * @return the child, or -1 if there is none with the label
+     */
+    private int findChild(int first, int end, char label) {
+
+        int low = first;
+        int high = end - 1;
+
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            char middleLabel = buffer.getChar(labelsStart + middle * 2);
+
+            if (middleLabel < label) {
+                low = middle + 1;
+            } else if (middleLabel > label) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Finds where the keys with a character at a depth start or end, by binary search over a
+     * range of keys that share their first depth characters. Keys no longer than the depth sort
+     * before every character.
+     *
+     * @param low The first key of the range
+     * @param high The key after the last of the range
+     * @param depth The depth
+     * @param c The character
+     * @param after Whether to find the end of the keys with the character, rather than the start
+     * @return the first key in the range whose character sorts after the character, or with it if
+     *         not after
+     */
+    private int charBound(int low, int high, int depth, char c, boolean after) {
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int comparison = keyLength(middle) <= depth
+                    ? -1 : keyChar(keyOffset(middle) + depth) - c;
+
+            if (comparison < 0 || (after && comparison == 0)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Compares the key of a headword with a prefix, without copying the key out of the buffer
+     *
+     * @param index The position of the headword
+     * @param prefix The prefix
+     * @return 0 if the key starts with the prefix, otherwise less than or greater than 0 if the
+     *         key comes before or after the keys that do
+     */
+    private int compareToPrefix(int index, @NonNull String prefix) {
+
+        int start = keyOffset(index);
+        int length = keyOffset(index + 1) - start;
+        int common = Math.min(length, prefix.length());
+
+        for (int i = 0; i < common; i++) {
+            int difference = keyChar(start + i) - prefix.charAt(i);
+
+            if (difference != 0) {
+                return difference;
+            }
+        }
+
+        return length < prefix.length() ? -1 : 0;
+    }
+
+    /**
+     * Finds the best ranked headword of a range by walking the segment tree up from its ends
+     *
+     * @param start The first headword of the range
+     * @param end The headword after the last of the range, after start
+     * @return the position of the best ranked headword of the range
+     */
+    private int findBest(int start, int end) {
+
+        int best = start;
+
+        for (int low = start + size, high = end + size; low < high; low >>= 1, high >>= 1) {
+            if ((low & 1) == 1) {
+                best = better(best, bestOf(low++));
+            }
+
+            if ((high & 1) == 1) {
+                best = better(best, bestOf(--high));
+            }
+        }
+
+        return best;
+    }
+
+    private int better(int first, int second) {
+        return compareRank(first, second) <= 0 ? first : second;
+    }
+
+    /**
+     * Compares the rank of two headwords: highest score first, then shortest key, then search
+     * order
+     *
+     * @return less than, equal to or greater than 0 if the first ranks before, with or after the
+     *         second
+     */
+    private int compareRank(int first, int second) {
+
+        int byScore = Integer.compare(getScore(second), getScore(first));
+
+        if (byScore != 0) {
+            return byScore;
+        }
+
+        int byLength = keyLength(first) - keyLength(second);
+        return byLength != 0 ? byLength : first - second;
+    }
+
+    private int bestOf(int entry) {
+        return buffer.getInt(bestStart + entry * 4);
+    }
+
+    private int keyOffset(int index) {
+        return buffer.getInt(offsetsStart + index * 4);
+    }
+
+    private int keyLength(int index) {
+        return keyOffset(index + 1) - keyOffset(index);
+    }
+
+    private char keyChar(int offset) {
+        return buffer.getChar(keysStart + offset * 2);
+    }
+
+    private int firstChild(int node) {
+        return buffer.getInt(firstChildrenStart + node * 4);
+    }
+
+    private int rangeStart(int node) {
+        return buffer.getInt(rangeStartsStart + node * 4);
+    }
+
+    private int rangeEnd(int node) {
+        return buffer.getInt(rangeEndsStart + node * 4);
+    }
+
+    /**
+     * A depth first walk of the trie that keeps a row of the edit distance matrix per depth, see
+     * {@link #findSimilar(String, int, int)}. Matches are found in search order.
+     */
+    private class SimilarWalk {
+
+        final String key;
+        final int maxDistance;
+        final IntList[] matches;
+        int[][] rows;
+        char[] path;
+
+        SimilarWalk(@NonNull String key, int maxDistance) {
+            this.key = key;
+            this.maxDistance = maxDistance;
+
+            matches = new IntList[maxDistance + 1];
+
+            for (int distance = 0; distance <= maxDistance; distance++) {
+                matches[distance] = new IntList();
+            }
+
+            rows = new int[key.length() + maxDistance + 1][];
+            path = new char[rows.length];
+            rows[0] = new int[key.length() + 1];
+
+            for (int column = 0; column <= key.length(); column++) {
+                rows[0][column] = column;
+            }
+        }
+
+        /**
+         * Visits a node whose row has been computed, and the nodes below it
+         *
+         * @param node The node
+         * @param depth The depth of the node, which is the length of its prefix
+         */
+        void visit(int node, int depth) {
+
+            int start = rangeStart(node);
+            int end = rangeEnd(node);
+            int first = firstChild(node);
+            int last = firstChild(node + 1);
+
+            if (first == last) {
+                for (int index = start; index < end; index++) {
+                    visitKey(index, depth);
+                }
+
+                return;
+            }
+
+            // Keys that end at this node sort first
+            for (int index = start; index < end && keyLength(index) == depth; index++) {
+                match(index, rows[depth][key.length()]);
+            }
+
+            for (int child = first; child < last; child++) {
+                if (computeRow(depth + 1, buffer.getChar(labelsStart + child * 2))
+                        <= maxDistance) {
+                    visit(child, depth + 1);
+                }
+            }
+        }
+
+        /**
+         * Finishes the rows of a single key below a node that was not split any further
+         *
+         * @param index The position of the headword
+         * @param depth The depth of the node
+         */
+        void visitKey(int index, int depth) {
+
+            int offset = keyOffset(index);
+            int length = keyLength(index);
+
+            for (int position = depth; position < length; position++) {
+                if (computeRow(position + 1, keyChar(offset + position)) > maxDistance) {
+                    return;
+                }
+            }
+
+            match(index, rows[length][key.length()]);
+        }
+
+        /**
+         * Computes the row of a depth, from the rows above it
+         *
+         * @param depth The depth, at least 1
+         * @param label The character of the prefix at that depth
+         * @return the smallest distance in the row, which no longer prefix can improve on
+         */
+        int computeRow(int depth, char label) {
+
+            if (depth >= rows.length) {
+                rows = Arrays.copyOf(rows, depth * 2);
+                path = Arrays.copyOf(path, depth * 2);
+            }
+
+            if (rows[depth] == null) {
+                rows[depth] = new int[key.length() + 1];
+            }
+
+            int[] above = rows[depth - 1];
+            int[] row = rows[depth];
+            path[depth] = label;
+            row[0] = depth;
+            int smallest = depth;
+
+            for (int column = 1; column <= key.length(); column++) {
+                int cost = key.charAt(column - 1) == label ? 0 : 1;
+                int distance = Math.min(Math.min(above[column] + 1, row[column - 1] + 1),
+                        above[column - 1] + cost);
+
+                if (depth > 1 && column > 1 && label == key.charAt(column - 2)
+                        && path[depth - 1] == key.charAt(column - 1)) {
+                    distance = Math.min(distance, rows[depth - 2][column - 2] + 1);
+                }
+
+                row[column] = distance;
+                smallest = Math.min(smallest, distance);
+            }
+
+            return smallest;
+        }
+
+        void match(int index, int distance) {
+            if (distance <= maxDistance) {
+                matches[distance].add(index);
+            }
+        }
+    }
+
+    /**
+     * A depth first walk of the trie that steps a {@link WildcardPattern} along the way, see
+     * {@link #findMatching(WildcardPattern, int, int)}. Matches are found in search order.
+     */
+    private class PatternWalk {
+
+        final WildcardPattern pattern;
+        final int limit;
+        final IntList matches = new IntList();
+        int skip;
+
+        PatternWalk(@NonNull WildcardPattern pattern, int skip, int limit) {
+            this.pattern = pattern;
+            this.skip = skip;
+            this.limit = limit;
+        }
+
+        /**
+         * Visits a node, and the nodes below it
+         *
+         * @param node The node
+         * @param depth The depth of the node, which is the length of its prefix
+         * @param states The states of the pattern after the prefix of the node
+         * @return false once the page is full
+         */
+        boolean visit(int node, int depth, long states) {
+
+            int start = rangeStart(node);
+            int end = rangeEnd(node);
+
+            if (pattern.acceptsEverything(states)) {
+                return matchAll(start, end);
+            }
+
+            int first = firstChild(node);
+            int last = firstChild(node + 1);
+
+            if (first == last) {
+                for (int index = start; index < end; index++) {
+                    if (matchesFrom(index, depth, states) && !match(index)) {
+                        return false;
+                    }
+                }
+
+                return true;
+            }
+
+            // Keys that end at this node sort first
+            for (int index = start; index < end && keyLength(index) == depth; index++) {
+                if (pattern.accepts(states) && !match(index)) {
+                    return false;
+                }
+            }
+
+            for (int child = first; child < last; child++) {
+                long next = pattern.step(states, buffer.getChar(labelsStart + child * 2));
+
+                if (next != 0 && !visit(child, depth + 1, next)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * Checks whether the rest of a key, below a node that was not split any further, matches
+         *
+         * @param index The position of the headword
+         * @param depth The depth of the node
+         * @param states The states of the pattern after the prefix of the node
+         * @return true if the key matches
+         */
+        boolean matchesFrom(int index, int depth, long states) {
+
+            int offset = keyOffset(index);
+            int length = keyLength(index);
+
+            for (int position = depth; position < length && states != 0; position++) {
+                if (pattern.acceptsEverything(states)) {
+                    return true;
+                }
+
+                states = pattern.step(states, keyChar(offset + position));
+            }
+
+            return pattern.accepts(states);
+        }
+
+        /**
+         * Adds a range of matches to the page, skipping those before it without visiting them
+         *
+         * @return false once the page is full
+         */
+        boolean matchAll(int start, int end) {
+
+            int skipped = Math.min(skip, end - start);
+            skip -= skipped;
+
+            for (int index = start + skipped; index < end; index++) {
+                if (!match(index)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * Adds a match to the page, unless it comes before the page
+         *
+         * @return false once the page is full
+         */
+        boolean match(int index) {
+
+            if (skip > 0) {
+                skip--;
+            } else {
+                matches.add(index);
+            }
+
+            return matches.size < limit;
+        }
+    }
+
+    /**
+     * A growable list of ints
+     */
+    private static class IntList {
+
+        int[] values = new int[16];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+
+            values[size++] = value;
+        }
+    }
+
+    /**
+     * Reads every headword of a table and writes the index
+     *
+     * @param database The database
+     * @param tableName The table
+     * @param output Where to write the index
+     * @throws IOException if the table could not be read or the index could not be written
+     */
+    private static void write(
+            @NonNull FolketsDatabase database, @NonNull String tableName,
+            @NonNull DataOutputStream output) throws IOException {
+
+        List<Headword> headwords = readSorted(database, tableName);
+        Trie trie = new Trie(headwords);
+
+        output.writeInt(headwords.size());
+        output.writeInt(trie.count);
+
+        for (Headword headword : headwords) {
+            output.writeInt(headword.rowId);
+        }
+
+        int offset = 0;
+        output.writeInt(offset);
+
+        for (Headword headword : headwords) {
+            offset += headword.key.length();
+            output.writeInt(offset);
+        }
+
+        for (Headword headword : headwords) {
+            output.writeChars(headword.key);
+        }
+
+        for (int node = 0; node < trie.count; node++) {
+            output.writeChar(trie.labels[node]);
+        }
+
+        for (int node = 0; node <= trie.count; node++) {
+            output.writeInt(trie.firstChildren[node]);
+        }
+
+        for (int node = 0; node < trie.count; node++) {
+            output.writeInt(trie.rangeStarts[node]);
+        }
+
+        for (int node = 0; node < trie.count; node++) {
+            output.writeInt(trie.rangeEnds[node]);
+        }
+
+        for (Headword headword : headwords) {
+            output.writeInt(headword.score);
+        }
+
+        for (int best : rankTree(headwords)) {
+            output.writeInt(best);
+        }
+    }
+
+    /**
+     * Builds the segment tree of the best ranked headword of every range, see
+     * {@link #findRanked(String, int)}
+     *
+     * @param headwords The headwords, in search order
+     * @return the 2n entries of the tree, the parent of entry i being entry i / 2
+     */
+    @NonNull
+    private static int[] rankTree(@NonNull List<Headword> headwords) {
+
+        int size = headwords.size();
+        int[] best = new int[size * 2];
+
+        for (int i = 0; i < size; i++) {
+            best[size + i] = i;
+        }
+
+        for (int entry = size - 1; entry > 0; entry--) {
+            int left = best[entry * 2];
+            int right = best[entry * 2 + 1];
+            int byScore = headwords.get(right).score - headwords.get(left).score;
+            int byLength = headwords.get(left).key.length() - headwords.get(right).key.length();
+
+            // With any number of headwords, a left child can hold later positions than its right
+            boolean rightIsBetter = byScore > 0 || (byScore == 0
+                    && (byLength > 0 || (byLength == 0 && right < left)));
+
+            best[entry] = rightIsBetter ? right : left;
+        }
+
+        return best;
+    }
+
+    /**
+     * Reads every headword of a table, in the order searches return them in: by search key, then
+     * by word and then by row id
+     *
+     * @param database The database
+     * @param tableName The table
+     * @return the headwords, in search order
+     * @throws IOException if the table could not be read
+     */
+    @NonNull
+    static List<Headword> readSorted(
+            @NonNull FolketsDatabase database, @NonNull String tableName) throws IOException {
+
+        final List<Headword> headwords = new ArrayList<>();
+
+        database.forEachRow(tableName, new String[] { "rowid", "word", ImportanceScore.COLUMN },
+                new FolketsDatabase.RowVisitor() {
+                    @Override
+                    public void visit(@NonNull Cursor cursor) {
+                        if (!cursor.isNull(1)) {
+                            headwords.add(new Headword(
+                                    cursor.getInt(0), cursor.getString(1), cursor.getInt(2)));
+                        }
+                    }
+                });
+
+        Collections.sort(headwords, new Comparator<Headword>() {
+            @Override
+            public int compare(Headword first, Headword second) {
+                int byKey = first.key.compareTo(second.key);
+
+                if (byKey != 0) {
+                    return byKey;
+                }
+
+                int byWord = first.word.compareTo(second.word);
+                return byWord != 0 ? byWord : first.rowId - second.rowId;
+            }
+        });
+
+        return headwords;
+    }
+
+    /**
+     * A headword being indexed
+     */
+    static class Headword {
+
+        final int rowId;
+        final String word;
+        final String key;
+        final int score;
+
+        Headword(int rowId, @NonNull String word, int score) {
+            this.rowId = rowId;
+            this.word = word;
+            this.key = SearchKeys.keyOf(word);
+            this.score = score;
+        }
+    }
+
+    /**
+     * The nodes of the trie being written, built breadth first from the sorted headwords
+     */
+    private static class Trie {
+
+        char[] labels = new char[64];
+        int[] firstChildren = new int[65];
+        int[] rangeStarts = new int[64];
+        int[] rangeEnds = new int[64];
+        int[] depths = new int[64];
+        int count;
+
+        Trie(@NonNull List<Headword> headwords) {
+
+            add((char) 0, 0, headwords.size(), 0);
+
+            for (int node = 0; node < count; node++) {
+                firstChildren[node] = count;
+
+                int start = rangeStarts[node];
+                int end = rangeEnds[node];
+                int depth = depths[node];
+
+                if (end - start <= LEAF_SIZE || depth >= MAX_DEPTH) {
+                    continue;
+                }
+
+                // Keys that end here sort first, and belong to no child
+                int i = start;
+
+                while (i < end && headwords.get(i).key.length() <= depth) {
+                    i++;
+                }
+
+                while (i < end) {
+                    char label = headwords.get(i).key.charAt(depth);
+                    int j = i + 1;
+
+                    while (j < end && headwords.get(j).key.charAt(depth) == label) {
+                        j++;
+                    }
+
+                    add(label, i, j, depth + 1);
+                    i = j;
+                }
+            }
+
+            firstChildren[count] = count;
+        }
+
+        private void add(char label, int start, int end, int depth) {
+
+            if (count == labels.length) {
+                int capacity = count * 2;
+                labels = Arrays.copyOf(labels, capacity);
+                firstChildren = Arrays.copyOf(firstChildren, capacity + 1);
+                rangeStarts = Arrays.copyOf(rangeStarts, capacity);
+                rangeEnds = Arrays.copyOf(rangeEnds, capacity);
+                depths = Arrays.copyOf(depths, capacity);
+            }
+
+            labels[count] = label;
+            rangeStarts[count] = start;
+            rangeEnds[count] = end;
+            depths[count] = depth;
+            count++;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.mbcdev.folkets;
+
+import android.support.annotation.NonNull;
+
+/**
+ * The headwords of a table held by an in memory index, by position. Searches over the index
+ * find positions, and the words at them are then read from the shards by row id.
+ */
+interface Headwords {
+
+    /**
+     * Gets the number of headwords
+     *
+     * @return the number of headwords
+     */
+    int size();
+
+    /**
+     * Gets the search key of a headword
+     *
+     * @param index The position of the headword, from 0 to {@link #size()}
+     * @return the search key of the headword
+     */
+    @NonNull String getKey(int index);
+
+    /**
+     * Gets the row id of a headword
+     *
+     * @param index The position of the headword, from 0 to {@link #size()}
+     * @return the row id of the headword in its table
+     */
+    int getRowId(int index);
+}
@@ -0,0 +1,50 @@
+package com.mbcdev.folkets;
+
+import android.support.annotation.NonNull;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Describes an in memory search index that is kept on disk by the {@link IndexSnapshotStore},
+ * so that it only has to be built from the dictionary once per dictionary version.
+ *
+ * @param <T> The type of the index
+ */
+interface IndexSnapshot<T> {
+
+    /**
+     * Gets the name of the index, which must be unique and safe to use as a file name
+     *
+     * @return the name of the index
+     */
+    @NonNull String getName();
+
+    /**
+     * Gets the version of the format of the index. Bump it whenever the format changes, so that
+     * snapshots in the old format are rebuilt.
+     *
+     * @return the version of the format of the index
+     */
+    int getVersion();
+
+    /**
+     * Builds the index from the dictionary. Called on a background thread.
+     *
+     * @param database The database to build the index from
+     * @param output Where to write the index
+     * @throws IOException if the index could not be built or written
+     */
+    void build(@NonNull FolketsDatabase database, @NonNull DataOutputStream output)
+            throws IOException;
+
+    /**
+     * Loads the index from a memory mapped snapshot
+     *
+     * @param buffer The index, as written by {@link #build(FolketsDatabase, DataOutputStream)}
+     * @return the index
+     * @throws IOException if the snapshot is malformed
+     */
+    @NonNull T load(@NonNull ByteBuffer buffer) throws IOException;
+}
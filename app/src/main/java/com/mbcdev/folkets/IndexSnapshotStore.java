@@ -0,0 +1,280 @@
+package com.mbcdev.folkets;
+
+import android.content.Context;
+import android.os.AsyncTask;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import static timber.log.Timber.d;
+import static timber.log.Timber.w;
+
+/**
+ * Keeps {@link IndexSnapshot in memory search indexes} on disk, so that they do not have to be
+ * rebuilt from the dictionary on every start.
+ * <p>
+ *     Every index is written to its own file in {@code files/indexes}, behind a header holding
+ *     the version of the index format and the {@link DictionaryFingerprint#SHARDS fingerprint}
+ *     of the shards it was built from, which is the hash saved as {@code db_hash} once the
+ *     shards are installed.
+ *     Loading maps the file into memory, so an index is usable without being parsed. If the
+ *     header does not match, the index is rebuilt in the background and written over the old one.
+ * </p>
+ */
+class IndexSnapshotStore {
+
+    private static final String INDEXES_DIR = "indexes";
+    private static final String FILE_SUFFIX = ".idx";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int MAGIC = 0x464b4958;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File indexesDir;
+    private final Map<String, FutureTask<?>> tasks = new HashMap<>();
+
+    /**
+     * Creates a store
+     *
+     * @param context A valid context
+     */
+    IndexSnapshotStore(@NonNull Context context) {
+        indexesDir = new File(context.getFilesDir(), INDEXES_DIR);
+    }
+
+    /**
+     * Gets an index, loading it from disk in the background, or building it first if there is
+     * no snapshot of it for the bundled dictionary. Each index is only loaded once, unless that
+     * fails, in which case the next call tries again.
+     *
+     * @param database The database to build the index from, if needed
+     * @param snapshot The index
+     * @param <T> The type of the index
+     * @return a future that completes with the index
+     */
+    @NonNull
+    <T> Future<T> get(
+            @NonNull final FolketsDatabase database, @NonNull final IndexSnapshot<T> snapshot) {
+
+        synchronized (tasks) {
+            @SuppressWarnings("unchecked")
+            FutureTask<T> task = (FutureTask<T>) tasks.get(snapshot.getName());
+
+            if (task == null || hasFailed(task)) {
+                task = new FutureTask<>(new Callable<T>() {
+                    @Override
+                    public T call() throws IOException {
+                        return loadOrBuild(database, snapshot);
+                    }
+                });
+
+                tasks.put(snapshot.getName(), task);
+                AsyncTask.THREAD_POOL_EXECUTOR.execute(task);
+            }
+
+            return task;
+        }
+    }
+
+    /**
+     * Loads an index, building it first if there is no current snapshot of it
+     *
+     * @param database The database to build the index from, if needed
+     * @param snapshot The index
+     * @param <T> The type of the index
+     * @return the index
+     * @throws IOException if the index could not be built or loaded
+     */
+    @NonNull
+    private <T> T loadOrBuild(
+            @NonNull FolketsDatabase database, @NonNull IndexSnapshot<T> snapshot)
+            throws IOException {
+
+        T index = load(snapshot);
+
+        if (index != null) {
+            return index;
+        }
+
+        long start = System.nanoTime();
+        build(database, snapshot);
+        d("loadOrBuild: Built %s in %sms",
+                snapshot.getName(), (System.nanoTime() - start) / 1000000);
+
+        index = load(snapshot);
+
+        if (index == null) {
+            throw new IOException("Could not load " + snapshot.getName() + " after building it");
+        }
+
+        return index;
+    }
+
+    /**
+     * Maps the snapshot of an index into memory
+     *
+     * @param snapshot The index
+     * @param <T> The type of the index
+     * @return the index, or null if there is no snapshot for the bundled dictionary
+     * @throws IOException if the snapshot could not be read
+     */
+    @Nullable
+    private <T> T load(@NonNull IndexSnapshot<T> snapshot) throws IOException {
+
+        File file = getFile(snapshot);
+
+        if (!file.exists()) {
+            d("load: There is no snapshot of %s", snapshot.getName());
+            return null;
+        }
+
+        MappedByteBuffer buffer;
+
+        // The mapping stays valid once the file is closed
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+             FileChannel channel = randomAccessFile.getChannel()) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (!isCurrent(buffer, snapshot)) {
+            d("load: The snapshot of %s is out of date", snapshot.getName());
+            return null;
+        }
+
+        d("load: Mapped %s, %s bytes", snapshot.getName(), buffer.capacity());
+        return snapshot.load(buffer.slice());
+    }
+
+    /**
+     * Writes the header of a snapshot
+     *
+     * @param output Where to write the header
+     * @param snapshot The index
+     * @throws IOException if the header could not be written
+     */
+    static void writeHeader(
+            @NonNull DataOutputStream output, @NonNull IndexSnapshot<?> snapshot)
+            throws IOException {
+        output.writeInt(MAGIC);
+        output.writeInt(snapshot.getVersion());
+        output.writeUTF(DictionaryFingerprint.SHARDS);
+    }
+
+    /**
+     * Checks the header of a snapshot, leaving the buffer positioned after it
+     *
+     * @param buffer The snapshot
+     * @param snapshot The index
+     * @return true if the snapshot has the current format and is of the bundled shards
+     */
+    static boolean isCurrent(@NonNull ByteBuffer buffer, @NonNull IndexSnapshot<?> snapshot) {
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != snapshot.getVersion()) {
+                return false;
+            }
+
+            byte[] fingerprint = new byte[buffer.getShort() & 0xffff];
+            buffer.get(fingerprint);
+            return DictionaryFingerprint.SHARDS.equals(new String(fingerprint, UTF_8));
+
+        } catch (BufferUnderflowException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Builds an index and writes it to disk. The old snapshot is replaced atomically.
+     *
+     * @param database The database to build the index from
+     * @param snapshot The index
+     * @throws IOException if the index could not be built or written
+     */
+    private void build(
+            @NonNull FolketsDatabase database, @NonNull IndexSnapshot<?> snapshot)
+            throws IOException {
+
+        if (!indexesDir.isDirectory() && !indexesDir.mkdirs()) {
+            throw new IOException("Could not create " + indexesDir.getPath());
+        }
+
+        File file = getFile(snapshot);
+        File temp = new File(file.getPath() + TEMP_SUFFIX);
+
+        try (FileOutputStream outputStream = new FileOutputStream(temp)) {
+            DataOutputStream output = new DataOutputStream(
+                    new BufferedOutputStream(outputStream));
+
+            writeHeader(output, snapshot);
+            snapshot.build(database, output);
+            output.flush();
+            outputStream.getFD().sync();
+
+        } catch (IOException e) {
+            delete(temp);
+            throw e;
+        }
+
+        if (!temp.renameTo(file)) {
+            delete(temp);
+            throw new IOException("Could not rename " + temp.getPath() + " to " + file.getPath());
+        }
+    }
+
+    /**
+     * Gets the file of the snapshot of an index
+     *
+     * @param snapshot The index
+     * @return the file of the snapshot
+     */
+    @NonNull
+    private File getFile(@NonNull IndexSnapshot<?> snapshot) {
+        return new File(indexesDir, snapshot.getName() + FILE_SUFFIX);
+    }
+
+    /**
+     * Checks whether a task has finished with an error
+     *
+     * @param task The task
+     * @return true if the task has finished with an error
+     */
+    private static boolean hasFailed(@NonNull FutureTask<?> task) {
+
+        if (!task.isDone()) {
+            return false;
+        }
+
+        try {
+            task.get();
+            return false;
+        } catch (InterruptedException | ExecutionException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Deletes a file, logging if that was not possible
+     *
+     * @param file The file to delete
+     */
+    private static void delete(@NonNull File file) {
+        if (file.exists() && !file.delete()) {
+            w("delete: Could not delete %s", file.getPath());
+        }
+    }
+}
@@ -3,6 +3,7 @@ package com.mbcdev.folkets;
 import android.content.Context;
 import android.os.Bundle;
 import android.support.annotation.NonNull;
+import android.support.annotation.StringRes;
 import android.support.design.widget.Snackbar;
 import android.support.v7.app.ActionBar;
 import android.support.v7.app.AppCompatActivity;
@@ -11,7 +12,9 @@ import android.support.v7.widget.RecyclerView;
 import android.support.v7.widget.Toolbar;
 import android.view.Menu;
 import android.view.MenuItem;
+import android.view.View;
 import android.view.inputmethod.EditorInfo;
+import android.widget.ProgressBar;
 import android.widget.SearchView;
 
 import java.util.List;
@@ -23,8 +26,12 @@ import java.util.Locale;
  */
 public class MainActivity extends AppCompatActivity implements MainMvp.View {
 
+    private static final int PAGE_AHEAD = 10;
+
     private RecyclerView recyclerView;
+    private ProgressBar progressBar;
     private MainMvp.Presenter presenter;
+    private SearchView searchView;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -37,6 +44,22 @@ public class MainActivity extends AppCompatActivity implements MainMvp.View {
         recyclerView = (RecyclerView) findViewById(R.id.main_recycler_view);
         recyclerView.setLayoutManager(new LinearLayoutManager(this));
         recyclerView.addItemDecoration(new DividerItemDecoration(this));
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+
+                LinearLayoutManager layoutManager =
+                        (LinearLayoutManager) recyclerView.getLayoutManager();
+
+                // Asks for the next page a screen or so before the end is reached
+                if (dy > 0 && layoutManager.findLastVisibleItemPosition()
+                        >= layoutManager.getItemCount() - PAGE_AHEAD) {
+                    presenter.showMoreResults();
+                }
+            }
+        });
+
+        progressBar = (ProgressBar) findViewById(R.id.main_progress_bar);
 
         presenter = new MainPresenter();
         presenter.attachView(this);
@@ -53,7 +76,7 @@ public class MainActivity extends AppCompatActivity implements MainMvp.View {
         // Inflate the menu; this adds items to the action bar if it is present.
         getMenuInflater().inflate(R.menu.menu_main, menu);
 
-        SearchView searchView = (SearchView) menu.findItem(R.id.main_search).getActionView();
+        searchView = (SearchView) menu.findItem(R.id.main_search).getActionView();
         searchView.setImeOptions(searchView.getImeOptions() | EditorInfo.IME_FLAG_NO_EXTRACT_UI);
         searchView.setQueryHint(getString(R.string.main_search_title));
 
@@ -87,21 +110,119 @@ public class MainActivity extends AppCompatActivity implements MainMvp.View {
             return true;
         }
 
+        if (id == R.id.action_search_headwords) {
+            setSearchMode(item, SearchMode.HEADWORDS, R.string.main_search_title);
+            return true;
+        }
+
+        if (id == R.id.action_search_translations) {
+            setSearchMode(item, SearchMode.TRANSLATIONS, R.string.action_search_translations);
+            return true;
+        }
+
+        if (id == R.id.action_search_text) {
+            setSearchMode(item, SearchMode.TEXT, R.string.action_search_text);
+            return true;
+        }
+
+        if (id == R.id.action_search_sounds_like) {
+            setSearchMode(item, SearchMode.SOUNDS_LIKE, R.string.action_search_sounds_like);
+            return true;
+        }
+
+        if (id == R.id.action_search_both_directions) {
+            setSearchMode(item, SearchMode.BOTH_DIRECTIONS,
+                    R.string.action_search_both_directions);
+            return true;
+        }
+
+        if (id == R.id.action_search_pattern) {
+            setSearchMode(item, SearchMode.PATTERN, R.string.action_search_pattern);
+            return true;
+        }
+
+        if (id == R.id.action_search_contains) {
+            setSearchMode(item, SearchMode.CONTAINS, R.string.action_search_contains);
+            return true;
+        }
+
+        if (id == R.id.action_search_ends_with) {
+            setSearchMode(item, SearchMode.ENDS_WITH, R.string.action_search_ends_with);
+            return true;
+        }
+
+        if (id == R.id.action_search_anagrams) {
+            setSearchMode(item, SearchMode.ANAGRAMS, R.string.action_search_anagrams);
+            return true;
+        }
+
+        if (id == R.id.action_search_letters) {
+            setSearchMode(item, SearchMode.LETTERS, R.string.action_search_letters);
+            return true;
+        }
+
         return super.onOptionsItemSelected(item);
     }
 
+    /**
+     * Switches to a search mode picked from the menu
+     *
+     * @param item The menu item of the search mode
+     * @param searchMode The search mode
+     * @param queryHint The hint to show in the search view
+     */
+    private void setSearchMode(
+            @NonNull MenuItem item, @NonNull SearchMode searchMode, @StringRes int queryHint) {
+
+        item.setChecked(true);
+
+        if (searchView != null) {
+            searchView.setQueryHint(getString(queryHint));
+        }
+
+        presenter.setSearchMode(searchMode);
+    }
+
 
     @Override
     public void showResults(@NonNull List<Word> words) {
         recyclerView.setAdapter(new WordsRecyclerAdapter(words));
     }
 
+    @Override
+    public void showMoreResults(@NonNull List<Word> words) {
+
+        RecyclerView.Adapter adapter = recyclerView.getAdapter();
+
+        if (adapter instanceof WordsRecyclerAdapter) {
+            ((WordsRecyclerAdapter) adapter).addWords(words);
+        } else {
+            showResults(words);
+        }
+    }
+
+    @Override
+    public void showTextMatches(@NonNull List<TextMatch> matches) {
+        recyclerView.setAdapter(new TextMatchesRecyclerAdapter(matches, presenter));
+    }
+
+    @Override
+    public void showWord(@NonNull Word word) {
+        WordActivity.startWithWord(this, word);
+    }
+
     @Override
     public void onError(@NonNull ErrorType errorType) {
         String error = getString(errorType.getStringResourceId());
         Snackbar.make(recyclerView, error, Snackbar.LENGTH_SHORT).show();
     }
 
+    @Override
+    public void showProgress(int percent) {
+        progressBar.setProgress(percent);
+        progressBar.setVisibility(percent < 100 ? View.VISIBLE : View.GONE);
+    }
+
     @Override
     public void setToolbarText(@NonNull String text) {
 
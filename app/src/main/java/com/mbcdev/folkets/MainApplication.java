@@ -1,19 +1,96 @@
 package com.mbcdev.folkets;
 
 import android.app.Application;
+import android.content.Context;
+import android.support.annotation.NonNull;
 
 import timber.log.Timber;
 
 /**
- * Main application class. Installs a debug timber tree
+ * Main application class. Installs a debug timber tree, and owns the process wide
+ * {@link FolketsDatabase}.
+ * <p>
+ *     The database is reference counted. Activities and background tasks acquire it with
+ *     {@link #acquireDatabase()} and give it back with {@link #releaseDatabase()}, so an activity
+ *     that is recreated reuses the open database. When nothing holds a reference and the process
+ *     is asked to trim its memory, then the database is closed, and reopened on the next acquire.
+ *     The database itself refuses to close while queries or index builds are still reading it,
+ *     see {@link FolketsDatabase#close()}, and it is then closed on a later trim instead.
+ * </p>
  *
  * Created by barry on 20/08/2016.
  */
 public class MainApplication extends Application {
 
+    private final Object databaseLock = new Object();
+    private FolketsDatabase database;
+    private int databaseReferences;
+
+    /**
+     * Gets the application from any context
+     *
+     * @param context A valid context
+     * @return the application
+     */
+    @NonNull
+    static MainApplication from(@NonNull Context context) {
+        return (MainApplication) context.getApplicationContext();
+    }
+
     @Override
     public void onCreate() {
         super.onCreate();
         Timber.plant(new Timber.DebugTree());
     }
+
+    /**
+     * Acquires a reference to the database, creating it if needed. Every call must be balanced
+     * by a call to {@link #releaseDatabase()}.
+     *
+     * @return the database
+     */
+    @NonNull
+    FolketsDatabase acquireDatabase() {
+        synchronized (databaseLock) {
+            if (database == null) {
+                Timber.d("acquireDatabase: Creating database");
+                database = new FolketsDatabase(
+                        this, DatabaseTuning.of(BuildConfig.TUNED_DATABASE));
+            }
+
+            databaseReferences++;
+            return database;
+        }
+    }
+
+    /**
+     * Releases a reference acquired with {@link #acquireDatabase()}. The database stays open
+     * until the process trims its memory, so that it can be reused by recreated activities.
+     */
+    void releaseDatabase() {
+        synchronized (databaseLock) {
+            if (databaseReferences == 0) {
+                Timber.w("releaseDatabase: Database was released more times than acquired");
+                return;
+            }
+
+            databaseReferences--;
+        }
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+
+        if (level < TRIM_MEMORY_BACKGROUND) {
+            return;
+        }
+
+        synchronized (databaseLock) {
+            if (database != null && databaseReferences == 0 && database.close()) {
+                Timber.d("onTrimMemory: Closed unused database at level %s", level);
+                database = null;
+            }
+        }
+    }
 }
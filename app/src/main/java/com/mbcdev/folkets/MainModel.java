@@ -2,9 +2,12 @@ package com.mbcdev.folkets;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.os.AsyncTask;
 import android.preference.PreferenceManager;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
 
@@ -19,23 +22,177 @@ class MainModel implements MainMvp.Model {
     private static final String ENGLISH_LANGUAGE_CODE = "en";
     private static final String BASE_LANGUAGE = "base_language";
 
-    private FolketsDatabase database = null;
+    private final FolketsDatabase database;
     private final SharedPreferences preferences;
+    private final FirstPageSnapshot firstPageSnapshot;
 
     /**
      * Creates an instance of the model
      *
      * @param context A valid context
+     * @param database The database to search, acquired from {@link MainApplication}
      */
-    MainModel(@NonNull Context context) {
-        this.database = new FolketsDatabase(context);
+    MainModel(@NonNull Context context, @NonNull FolketsDatabase database) {
+        this.database = database;
         this.preferences = PreferenceManager.getDefaultSharedPreferences(context);
+        this.firstPageSnapshot = new FirstPageSnapshot(context);
+    }
+
+    @Override
+    public void initialise(@NonNull Callback<Integer> callback) {
+        Language searchLanguage = Language.fromLanguageCode(getLanguageCode());
+        database.initialise(searchLanguage.getTableName(), callback);
+    }
+
+    @Nullable
+    @Override
+    public List<Word> getFirstPageSnapshot() {
+        return firstPageSnapshot.read(getLanguageCode());
     }
 
     @Override
     public void search(@NonNull final String query, @NonNull final Callback<List<Word>> callback) {
+        final String languageCode = getLanguageCode();
+        Language searchLanguage = Language.fromLanguageCode(languageCode);
+
+        // Normalized once here, the database only ever sees search keys
+        String key = SearchKeys.keyOf(query);
+
+        if (key.length() > 0) {
+            database.search(searchLanguage.getTableName(), key, callback);
+            return;
+        }
+
+        database.search(searchLanguage.getTableName(), key, new Callback<List<Word>>() {
+            @Override
+            public void onSuccess(final List<Word> words) {
+                callback.onSuccess(words);
+
+                AsyncTask.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        firstPageSnapshot.write(languageCode, words);
+                    }
+                });
+            }
+
+            @Override
+            public void onError(ErrorType errorType) {
+                callback.onError(errorType);
+            }
+        });
+    }
+
+    @Override
+    public void searchTranslations(
+            @NonNull String query, @NonNull Callback<List<Word>> callback) {
+        Language searchLanguage = Language.fromLanguageCode(getLanguageCode());
+        database.searchTranslations(
+                searchLanguage.getTableName(), SearchKeys.keyOf(query), callback);
+    }
+
+    @Override
+    public void searchSoundingLike(
+            @NonNull String query, @NonNull Callback<List<Word>> callback) {
+        Language searchLanguage = Language.fromLanguageCode(getLanguageCode());
+        database.searchSoundingLike(
+                searchLanguage.getTableName(), SearchKeys.keyOf(query), callback);
+    }
+
+    @Override
+    public void searchBothDirections(
+            @NonNull String query, @NonNull Callback<List<Word>> callback) {
+        Language searchLanguage = Language.fromLanguageCode(getLanguageCode());
+        database.searchBothDirections(searchLanguage, SearchKeys.keyOf(query), callback);
+    }
+
+    @Override
+    public void searchText(
+            @NonNull String query, @NonNull Callback<List<TextMatch>> callback) {
+        Language searchLanguage = Language.fromLanguageCode(getLanguageCode());
+        database.searchText(searchLanguage.getTableName(), query, callback);
+    }
+
+    @Override
+    public void searchPattern(
+            @NonNull String query, int page, @NonNull Callback<List<Word>> callback) {
+
+        WildcardPattern pattern = WildcardPattern.compile(SearchKeys.keyOf(query));
+
+        if (pattern == null) {
+            callback.onSuccess(Collections.<Word>emptyList());
+            return;
+        }
+
+        Language searchLanguage = Language.fromLanguageCode(getLanguageCode());
+        database.searchPattern(searchLanguage.getTableName(), pattern, page, callback);
+    }
+
+    @Override
+    public void searchContaining(
+            @NonNull String query, int page, @NonNull Callback<List<Word>> callback) {
+
+        String key = SearchKeys.keyOf(query);
+
+        if (key.length() == 0) {
+            callback.onSuccess(Collections.<Word>emptyList());
+            return;
+        }
+
+        Language searchLanguage = Language.fromLanguageCode(getLanguageCode());
+        database.searchContaining(searchLanguage.getTableName(), key, page, callback);
+    }
+
+    @Override
+    public void searchEndingWith(
+            @NonNull String query, int page, @NonNull Callback<List<Word>> callback) {
+
+        String key = SearchKeys.keyOf(query);
+
+        if (key.length() == 0) {
+            callback.onSuccess(Collections.<Word>emptyList());
+            return;
+        }
+
+        Language searchLanguage = Language.fromLanguageCode(getLanguageCode());
+        database.searchEndingWith(searchLanguage.getTableName(), key, page, callback);
+    }
+
+    @Override
+    public void searchAnagrams(
+            @NonNull String query, int page, @NonNull Callback<List<Word>> callback) {
+
+        String key = SearchKeys.keyOf(query);
+
+        if (key.length() == 0) {
+            callback.onSuccess(Collections.<Word>emptyList());
+            return;
+        }
+
+        Language searchLanguage = Language.fromLanguageCode(getLanguageCode());
+        database.searchAnagrams(searchLanguage.getTableName(), key, page, callback);
+    }
+
+    @Override
+    public void searchFormable(
+            @NonNull String query, int page, @NonNull Callback<List<Word>> callback) {
+
+        String key = SearchKeys.keyOf(query);
+
+        if (key.length() == 0) {
+            callback.onSuccess(Collections.<Word>emptyList());
+            return;
+        }
+
+        Language searchLanguage = Language.fromLanguageCode(getLanguageCode());
+        database.searchFormable(searchLanguage.getTableName(), key, page, callback);
+    }
+
+    @Override
+    public void getWord(@NonNull TextMatch match, @NonNull Callback<Word> callback) {
         Language searchLanguage = Language.fromLanguageCode(getLanguageCode());
-        database.search(searchLanguage.getTableName(), query, callback);
+        database.getWord(
+                searchLanguage.getTableName(), match.getWord(), match.getRowId(), callback);
     }
 
     @Override
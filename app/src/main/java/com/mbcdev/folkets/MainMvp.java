@@ -2,6 +2,7 @@ package com.mbcdev.folkets;
 
 import android.content.Context;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 import java.util.List;
 
@@ -16,6 +17,23 @@ interface MainMvp {
      * Defines model operations
      */
     interface Model {
+        /**
+         * Initialises the model in the background. Searches made before the model is ready are
+         * delivered once it is.
+         *
+         * @param callback Receives the progress as a percentage, ending with 100 when the model
+         *                 is ready, or an error if the model could not be initialised
+         */
+        void initialise(@NonNull Callback<Integer> callback);
+
+        /**
+         * Gets the snapshot of the results of the empty search, read from disk without touching
+         * the database. Live results should replace it as soon as they arrive.
+         *
+         * @return the first page of results, or null if there is no up to date snapshot
+         */
+        @Nullable List<Word> getFirstPageSnapshot();
+
         /**
          * Searches the model for words and definitions
          *
@@ -24,6 +42,106 @@ interface MainMvp {
          */
         void search(@NonNull String query, @NonNull Callback<List<Word>> callback);
 
+        /**
+         * Searches the words by their translations
+         *
+         * @param query The query to make
+         * @param callback The callback used to deliver the results
+         */
+        void searchTranslations(@NonNull String query, @NonNull Callback<List<Word>> callback);
+
+        /**
+         * Searches the words that sound like the query, taking it as a guess at their spelling
+         *
+         * @param query The query to make
+         * @param callback The callback used to deliver the results, those that sound the same
+         *                 first
+         */
+        void searchSoundingLike(@NonNull String query, @NonNull Callback<List<Word>> callback);
+
+        /**
+         * Searches the words of both languages, those of the current language first among
+         * equal matches
+         *
+         * @param query The query to make
+         * @param callback The callback used to deliver the results, each marked with its language
+         */
+        void searchBothDirections(
+                @NonNull String query, @NonNull Callback<List<Word>> callback);
+
+        /**
+         * Searches the examples, idioms, definitions and explanations of the words
+         *
+         * @param query The query to make
+         * @param callback The callback used to deliver the matches, best first
+         */
+        void searchText(@NonNull String query, @NonNull Callback<List<TextMatch>> callback);
+
+        /**
+         * Searches the words whose headwords match a wildcard pattern, a page at a time
+         *
+         * @param query The pattern, where ? is any one character and * any run of characters
+         * @param page The page to get, from 0
+         * @param callback The callback used to deliver the words on the page. A page with fewer
+         *                 than {@link FolketsDatabase#PAGE_SIZE} words is the last.
+         */
+        void searchPattern(
+                @NonNull String query, int page, @NonNull Callback<List<Word>> callback);
+
+        /**
+         * Searches the words whose headwords contain the query, a page at a time
+         *
+         * @param query The query to make
+         * @param page The page to get, from 0
+         * @param callback The callback used to deliver the words on the page. A page with fewer
+         *                 than {@link FolketsDatabase#PAGE_SIZE} words is the last.
+         */
+        void searchContaining(
+                @NonNull String query, int page, @NonNull Callback<List<Word>> callback);
+
+        /**
+         * Searches the words whose headwords end with the query, a page at a time
+         *
+         * @param query The query to make
+         * @param page The page to get, from 0
+         * @param callback The callback used to deliver the words on the page. A page with fewer
+         *                 than {@link FolketsDatabase#PAGE_SIZE} words is the last.
+         */
+        void searchEndingWith(
+                @NonNull String query, int page, @NonNull Callback<List<Word>> callback);
+
+        /**
+         * Searches the words whose headwords have the same letters as the query, a page at a
+         * time
+         *
+         * @param query The query to make
+         * @param page The page to get, from 0
+         * @param callback The callback used to deliver the words on the page. A page with fewer
+         *                 than {@link FolketsDatabase#PAGE_SIZE} words is the last.
+         */
+        void searchAnagrams(
+                @NonNull String query, int page, @NonNull Callback<List<Word>> callback);
+
+        /**
+         * Searches the words whose headwords can be spelled with some of the letters of the
+         * query, a page at a time, longest first
+         *
+         * @param query The query to make
+         * @param page The page to get, from 0
+         * @param callback The callback used to deliver the words on the page. A page with fewer
+         *                 than {@link FolketsDatabase#PAGE_SIZE} words is the last.
+         */
+        void searchFormable(
+                @NonNull String query, int page, @NonNull Callback<List<Word>> callback);
+
+        /**
+         * Reads the word of a match
+         *
+         * @param match The match
+         * @param callback The callback used to deliver the word
+         */
+        void getWord(@NonNull TextMatch match, @NonNull Callback<Word> callback);
+
         void switchBaseLanguage();
 
         @NonNull String getLanguageCode();
@@ -40,6 +158,27 @@ interface MainMvp {
          */
         void showResults(@NonNull List<Word> words);
 
+        /**
+         * Adds the next page of results to the results shown
+         *
+         * @param words The words to add
+         */
+        void showMoreResults(@NonNull List<Word> words);
+
+        /**
+         * Shows the matches of a full text search
+         *
+         * @param matches The matches to show
+         */
+        void showTextMatches(@NonNull List<TextMatch> matches);
+
+        /**
+         * Shows a word in full
+         *
+         * @param word The word to show
+         */
+        void showWord(@NonNull Word word);
+
         /**
          * Shows an error encountered when searching
          *
@@ -47,6 +186,13 @@ interface MainMvp {
          */
         void onError(@NonNull ErrorType error);
 
+        /**
+         * Shows how far the dictionary has been initialised
+         *
+         * @param percent The progress from 0 to 100. The progress should be hidden at 100.
+         */
+        void showProgress(int percent);
+
         /**
          * Sets the toolbar text
          * @param text The text to set
@@ -84,6 +230,25 @@ interface MainMvp {
          */
         void search(@NonNull String query);
 
+        /**
+         * Sets what searches look for, and searches again for the last query
+         *
+         * @param searchMode What searches look for
+         */
+        void setSearchMode(@NonNull SearchMode searchMode);
+
+        /**
+         * Shows the next page of results, if the search is paged and there are more
+         */
+        void showMoreResults();
+
+        /**
+         * Opens the word of a full text search match
+         *
+         * @param match The match to open
+         */
+        void openTextMatch(@NonNull TextMatch match);
+
         /**
          * Switches the base language. If the device has an swedish locale, then this will
          * switch the app to search the english database.
@@ -2,6 +2,7 @@ package com.mbcdev.folkets;
 
 import android.support.annotation.NonNull;
 
+import java.util.Collections;
 import java.util.List;
 
 import timber.log.Timber;
@@ -15,37 +16,143 @@ class MainPresenter implements MainMvp.Presenter {
 
     private MainMvp.Model model;
     private MainMvp.View view;
+    private MainApplication application;
+    private SearchMode searchMode = SearchMode.HEADWORDS;
+    private String query = "";
+
+    /** The last page of a paged search shown, or -1 while the first is loading */
+    private int page = -1;
+    private boolean loadingPage;
+    private boolean lastPage;
 
     @Override
     public void attachView(@NonNull MainMvp.View view) {
         this.view = view;
-        model = new MainModel(view.getContext());
+        application = MainApplication.from(view.getContext());
+        model = new MainModel(view.getContext(), application.acquireDatabase());
         view.setToolbarText(model.getLanguageCode());
-        search("");
+
+        model.initialise(new Callback<Integer>() {
+            @Override
+            public void onSuccess(Integer progress) {
+                if (view != null && progress != null) {
+                    view.showProgress(progress);
+                }
+            }
+
+            @Override
+            public void onError(ErrorType errorType) {
+                if (view != null) {
+                    view.showProgress(100);
+                    view.onError(errorType);
+                }
+            }
+        });
+
+        showFirstPage();
     }
 
     @Override
     public void detachView() {
         this.view = null;
+
+        if (application != null) {
+            application.releaseDatabase();
+            application = null;
+        }
     }
 
     @Override
     public void search(@NonNull String query) {
 
+        this.query = query;
+
         if (view == null) {
             Timber.d("View is null. Will not search.");
             return;
         }
 
-        model.search(query, new Callback<List<Word>>() {
+        if (searchMode == SearchMode.TEXT) {
+            searchText(query);
+            return;
+        }
+
+        if (searchMode.isPaged()) {
+            page = -1;
+            lastPage = false;
+            searchPage(query, 0);
+            return;
+        }
+
+        Callback<List<Word>> callback = new Callback<List<Word>>() {
             @Override
             public void onSuccess(List<Word> result) {
-                view.showResults(result);
+                if (view != null && result != null) {
+                    view.showResults(result);
+                }
             }
 
             @Override
             public void onError(ErrorType errorType) {
-                view.onError(errorType);
+                if (view != null) {
+                    view.onError(errorType);
+                }
+            }
+        };
+
+        if (searchMode == SearchMode.TRANSLATIONS) {
+            model.searchTranslations(query, callback);
+        } else if (searchMode == SearchMode.SOUNDS_LIKE) {
+            model.searchSoundingLike(query, callback);
+        } else if (searchMode == SearchMode.BOTH_DIRECTIONS) {
+            model.searchBothDirections(query, callback);
+        } else {
+            model.search(query, callback);
+        }
+    }
+
+    @Override
+    public void setSearchMode(@NonNull SearchMode searchMode) {
+
+        if (this.searchMode == searchMode) {
+            return;
+        }
+
+        this.searchMode = searchMode;
+        search(query);
+    }
+
+    @Override
+    public void showMoreResults() {
+
+        if (view == null || !searchMode.isPaged() || loadingPage || lastPage || page < 0) {
+            return;
+        }
+
+        searchPage(query, page + 1);
+    }
+
+    @Override
+    public void openTextMatch(@NonNull TextMatch match) {
+
+        if (view == null) {
+            Timber.d("View is null. Will not open %s.", match.getWord());
+            return;
+        }
+
+        model.getWord(match, new Callback<Word>() {
+            @Override
+            public void onSuccess(Word word) {
+                if (view != null && word != null) {
+                    view.showWord(word);
+                }
+            }
+
+            @Override
+            public void onError(ErrorType errorType) {
+                if (view != null) {
+                    view.onError(errorType);
+                }
             }
         });
     }
@@ -54,6 +161,122 @@ class MainPresenter implements MainMvp.Presenter {
     public void switchBaseLanguage() {
         model.switchBaseLanguage();
         view.setToolbarText(model.getLanguageCode());
+
+        // Only the empty search has a snapshot to show, other queries are kept across the switch
+        if (searchMode == SearchMode.HEADWORDS && query.isEmpty()) {
+            showFirstPage();
+        } else {
+            search(query);
+        }
+    }
+
+    /**
+     * Searches the examples, idioms, definitions and explanations of the words. A query without
+     * anything to search for clears the matches straight away.
+     *
+     * @param query the query to search for
+     */
+    private void searchText(@NonNull String query) {
+
+        if (TextIndex.matchExpression(query) == null) {
+            view.showTextMatches(Collections.<TextMatch>emptyList());
+            return;
+        }
+
+        model.searchText(query, new Callback<List<TextMatch>>() {
+            @Override
+            public void onSuccess(List<TextMatch> matches) {
+                if (view != null && matches != null && searchMode == SearchMode.TEXT) {
+                    view.showTextMatches(matches);
+                }
+            }
+
+            @Override
+            public void onError(ErrorType errorType) {
+                if (view != null) {
+                    view.onError(errorType);
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs a paged search for a page of results. Pages that arrive after the query or the search
+     * mode changed are dropped.
+     *
+     * @param query the query to search for
+     * @param page the page to show, from 0. The first replaces the results, later ones are added
+     *             to them.
+     */
+    private void searchPage(@NonNull final String query, final int page) {
+
+        final SearchMode pageSearchMode = searchMode;
+
+        Callback<List<Word>> callback = new Callback<List<Word>>() {
+            @Override
+            public void onSuccess(List<Word> words) {
+
+                if (view == null || words == null || searchMode != pageSearchMode
+                        || !query.equals(MainPresenter.this.query)) {
+                    return;
+                }
+
+                loadingPage = false;
+                MainPresenter.this.page = page;
+                lastPage = words.size() < FolketsDatabase.PAGE_SIZE;
+
+                if (page == 0) {
+                    view.showResults(words);
+                } else {
+                    view.showMoreResults(words);
+                }
+            }
+
+            @Override
+            public void onError(ErrorType errorType) {
+
+                loadingPage = false;
+
+                if (view != null) {
+                    view.onError(errorType);
+                }
+            }
+        };
+
+        loadingPage = true;
+
+        switch (searchMode) {
+            case CONTAINS:
+                model.searchContaining(query, page, callback);
+                break;
+            case ENDS_WITH:
+                model.searchEndingWith(query, page, callback);
+                break;
+            case ANAGRAMS:
+                model.searchAnagrams(query, page, callback);
+                break;
+            case LETTERS:
+                model.searchFormable(query, page, callback);
+                break;
+            default:
+                model.searchPattern(query, page, callback);
+                break;
+        }
+    }
+
+    /**
+     * Shows the snapshot of the first page straight away, if there is one, and then searches for
+     * it, so the live results take over as soon as they arrive
+     */
+    private void showFirstPage() {
+
+        List<Word> snapshot = model.getFirstPageSnapshot();
+
+        if (snapshot != null) {
+            Timber.d("Showing snapshot of %s words", snapshot.size());
+            view.showResults(snapshot);
+        }
+
         search("");
     }
 }
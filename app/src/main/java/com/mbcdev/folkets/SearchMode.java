@@ -0,0 +1,57 @@
+package com.mbcdev.folkets;
+
+/**
+ * Models what a search looks for
+ */
+enum SearchMode {
+
+    /** Words whose headword starts with the query */
+    HEADWORDS(false),
+
+    /** Words with a translation that starts with the query, or has a word that does */
+    TRANSLATIONS(false),
+
+    /** Words whose examples, idioms, definition or explanation contain the query */
+    TEXT(false),
+
+    /** Words that sound like the query, read as Swedish spelling */
+    SOUNDS_LIKE(false),
+
+    /** Words whose headword starts with the query, in both languages */
+    BOTH_DIRECTIONS(false),
+
+    /** Words whose headword matches the query, where ? is any one character and * any run */
+    PATTERN(true),
+
+    /** Words whose headword contains the query */
+    CONTAINS(true),
+
+    /** Words whose headword ends with the query */
+    ENDS_WITH(true),
+
+    /** Words whose headword has the same letters as the query */
+    ANAGRAMS(true),
+
+    /** Words whose headword can be spelled with some of the letters of the query */
+    LETTERS(true);
+
+    private final boolean paged;
+
+    /**
+     * Configures the enum constant with whether its results are paged
+     *
+     * @param paged Whether the results of the mode come a page at a time
+     */
+    SearchMode(boolean paged) {
+        this.paged = paged;
+    }
+
+    /**
+     * Checks whether the results of this SearchMode come a page at a time
+     *
+     * @return true if the results come a page at a time
+     */
+    boolean isPaged() {
+        return paged;
+    }
+}
@@ -0,0 +1,484 @@
+package com.mbcdev.folkets;
+
+import android.support.annotation.NonNull;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A suffix array over the {@link SearchKeys search keys} of every headword of a table, with its
+ * LCP array, kept on disk by the {@link IndexSnapshotStore} and read straight from the memory
+ * mapped snapshot. It finds the headwords that contain a key, or end with it, without scanning
+ * them.
+ * <p>
+ *     The keys are concatenated in search order, each followed by a {@link #SEPARATOR}. Every
+ *     position inside a key starts a suffix, which runs to the end of its key, and the suffix
+ *     array holds those positions sorted by suffix, then by position. So the suffixes starting
+ *     with a key are one range, found by binary search, and the suffixes equal to it come first
+ *     in that range, in search order of their headwords.
+ * </p>
+ * <p>
+ *     The LCP array holds the length of the prefix every suffix shares with the one before it.
+ *     Once the first suffix of a range is found, the rest of the range is read off the LCP array
+ *     without comparing any more characters.
+ * </p>
+ * <p>
+ *     Layout, big endian: the number of headwords n, the number of characters t and the number
+ *     of suffixes s, n row ids, n + 1 offsets of the keys into the text, the t UTF-16 chars of the
+ *     text, s suffix positions and s LCP lengths as chars.
+ * </p>
+ */
+class SuffixIndex implements Headwords {
+
+    private static final int VERSION = 1;
+
+    /** Ends every key in the text. Sorts before every character of a key. */
+    private static final char SEPARATOR = 0;
+
+    /** The most suffixes that are insertion sorted, rather than split by the quicksort */
+    private static final int INSERTION_SORT_SIZE = 16;
+
+    private final ByteBuffer buffer;
+    private final int size;
+    private final int suffixCount;
+    private final int rowIdsStart;
+    private final int offsetsStart;
+    private final int textStart;
+    private final int suffixesStart;
+    private final int lcpsStart;
+
+    /**
+     * Creates an index over a snapshot
+     *
+     * @param buffer The snapshot
+     * @throws IOException if the snapshot is malformed
+     */
+    private SuffixIndex(@NonNull ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        size = buffer.getInt(0);
+        int textLength = buffer.getInt(4);
+        suffixCount = buffer.getInt(8);
+
+        rowIdsStart = 12;
+        offsetsStart = rowIdsStart + size * 4;
+        textStart = offsetsStart + (size + 1) * 4;
+        suffixesStart = textStart + textLength * 2;
+        lcpsStart = suffixesStart + suffixCount * 4;
+
+        if (size < 0 || textLength < 0 || suffixCount < 0
+                || lcpsStart + suffixCount * 2L > buffer.limit()) {
+            throw new IOException("Malformed suffix index");
+        }
+    }
+
+    /**
+     * Gets the snapshot of the suffix index of a table
+     *
+     * @param tableName The table
+     * @return the snapshot of the suffix index of the table
+     */
+    @NonNull
+    static IndexSnapshot<SuffixIndex> snapshot(@NonNull final String tableName) {
+        return new IndexSnapshot<SuffixIndex>() {
+            @NonNull
+            @Override
+            public String getName() {
+                return "suffixes_" + tableName;
+            }
+
+            @Override
+            public int getVersion() {
+                return VERSION;
+            }
+
+            @Override
+            public void build(
+                    @NonNull FolketsDatabase database, @NonNull DataOutputStream output)
+                    throws IOException {
+                write(HeadwordIndex.readSorted(database, tableName), output);
+            }
+
+            @NonNull
+            @Override
+            public SuffixIndex load(@NonNull ByteBuffer buffer) throws IOException {
+                return new SuffixIndex(buffer);
+            }
+        };
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the number of suffixes
+     *
+     * @return the number of suffixes, one per character of every key
+     */
+    int suffixCount() {
+        return suffixCount;
+    }
+
+    @NonNull
+    @Override
+    public String getKey(int index) {
+        int start = keyOffset(index);
+        char[] key = new char[keyOffset(index + 1) - 1 - start];
+
+        for (int i = 0; i < key.length; i++) {
+            key[i] = textChar(start + i);
+        }
+
+        return new String(key);
+    }
+
+    @Override
+    public int getRowId(int index) {
+        return buffer.getInt(rowIdsStart + index * 4);
+    }
+
+    /**
+     * Finds a page of the headwords whose search keys contain a key. A headword is found once, by
+     * the first place its key contains the key at.
+     *
+     * @param key The search key to look for
+     * @param skip How many matches come before the page
+     * @param limit The most matches on the page
+     * @return the positions of the matches on the page, in order of the rest of their keys after
+     *         the match
+     */
+    @NonNull
+    int[] findContaining(@NonNull String key, int skip, int limit) {
+
+        int[] positions = new int[Math.min(limit, size)];
+        int count = 0;
+
+        int first = findFirst(key);
+
+        for (int i = first; i < suffixCount && count < positions.length; i++) {
+            if (i > first && lcp(i) < key.length()) {
+                break;
+            }
+
+            int suffix = suffix(i);
+            int headword = headwordAt(suffix);
+
+            if (!isFirstMatch(headword, suffix, key)) {
+                continue;
+            }
+
+            if (skip > 0) {
+                skip--;
+            } else {
+                positions[count++] = headword;
+            }
+        }
+
+        return Arrays.copyOf(positions, count);
+    }
+
+    /**
+     * Finds a page of the headwords whose search keys end with a key
+     *
+     * @param key The search key to look for
+     * @param skip How many matches come before the page
+     * @param limit The most matches on the page
+     * @return the positions of the matches on the page, in search order
+     */
+    @NonNull
+    int[] findEndingWith(@NonNull String key, int skip, int limit) {
+
+        int[] positions = new int[Math.min(limit, size)];
+        int count = 0;
+
+        // Suffixes equal to the key come first in its range, so the range ends at the first
+        // suffix that runs on past the key
+        int first = findFirst(key);
+
+        for (int i = first + skip; i < suffixCount && count < positions.length; i++) {
+            int suffix = suffix(i);
+
+            if ((i > first && lcp(i) < key.length())
+                    || textChar(suffix + key.length()) != SEPARATOR) {
+                break;
+            }
+
+            positions[count++] = headwordAt(suffix);
+        }
+
+        return Arrays.copyOf(positions, count);
+    }
+
+    /**
+     * Finds the first suffix starting with a key, by binary search over the suffix array
+     *
+     * @param key The key, at least one character long
+     * @return the position of the suffix in the suffix array, or {@link #suffixCount()} if no
+     *         suffix starts with the key
+     */
+    private int findFirst(@NonNull String key) {
+
+        int low = 0;
+        int high = suffixCount;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+
+            if (compareToPrefix(suffix(middle), key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        if (key.length() == 0 || low == suffixCount || compareToPrefix(suffix(low), key) != 0) {
+            return suffixCount;
+        }
+
+        return low;
+    }
+
+    /**
+     * Compares a suffix with a prefix, without copying the suffix out of the buffer
+     *
+     * @param suffix The position of the suffix in the text
+     * @param prefix The prefix
+     * @return 0 if the suffix starts with the prefix, otherwise less than or greater than 0 if the
+     *         suffix comes before or after the suffixes that do
+     */
+    private int compareToPrefix(int suffix, @NonNull String prefix) {
+
+        for (int i = 0; i < prefix.length(); i++) {
+            int difference = textChar(suffix + i) - prefix.charAt(i);
+
+            if (difference != 0) {
+                return difference;
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * Checks whether a suffix is the first place in its key that contains a key
+     *
+     * @param headword The position of the headword of the suffix
+     * @param suffix The position of the suffix in the text
+     * @param key The key the suffix starts with
+     * @return true if the key does not occur earlier in the key of the headword
+     */
+    private boolean isFirstMatch(int headword, int suffix, @NonNull String key) {
+
+        for (int start = keyOffset(headword); start < suffix; start++) {
+            if (compareToPrefix(start, key) == 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Finds the headword a position in the text belongs to, by binary search over the offsets
+     *
+     * @param position The position in the text
+     * @return the position of the headword
+     */
+    private int headwordAt(int position) {
+
+        int low = 0;
+        int high = size - 1;
+
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+
+            if (keyOffset(middle) <= position) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        return low;
+    }
+
+    private int keyOffset(int index) {
+        return buffer.getInt(offsetsStart + index * 4);
+    }
+
+    private char textChar(int offset) {
+        return buffer.getChar(textStart + offset * 2);
+    }
+
+    private int suffix(int index) {
+        return buffer.getInt(suffixesStart + index * 4);
+    }
+
+    private int lcp(int index) {
+        return buffer.getChar(lcpsStart + index * 2);
+    }
+
+    /**
+     * Writes the index over headwords
+     *
+     * @param headwords The headwords, in search order
+     * @param output Where to write the index
+     * @throws IOException if the index could not be written
+     */
+    private static void write(
+            @NonNull List<HeadwordIndex.Headword> headwords,
+            @NonNull DataOutputStream output) throws IOException {
+
+        int textLength = 0;
+
+        for (HeadwordIndex.Headword headword : headwords) {
+            textLength += headword.key.length() + 1;
+        }
+
+        char[] text = new char[textLength];
+        int[] offsets = new int[headwords.size() + 1];
+        int suffixCount = 0;
+
+        for (int i = 0; i < headwords.size(); i++) {
+            String key = headwords.get(i).key;
+            key.getChars(0, key.length(), text, offsets[i]);
+            text[offsets[i] + key.length()] = SEPARATOR;
+            offsets[i + 1] = offsets[i] + key.length() + 1;
+            suffixCount += key.length();
+        }
+
+        int[] suffixes = new int[suffixCount];
+        int next = 0;
+
+        for (int position = 0; position < textLength; position++) {
+            if (text[position] != SEPARATOR) {
+                suffixes[next++] = position;
+            }
+        }
+
+        sort(text, suffixes, 0, suffixCount, 0);
+
+        output.writeInt(headwords.size());
+        output.writeInt(textLength);
+        output.writeInt(suffixCount);
+
+        for (HeadwordIndex.Headword headword : headwords) {
+            output.writeInt(headword.rowId);
+        }
+
+        for (int offset : offsets) {
+            output.writeInt(offset);
+        }
+
+        for (char c : text) {
+            output.writeChar(c);
+        }
+
+        for (int suffix : suffixes) {
+            output.writeInt(suffix);
+        }
+
+        for (int i = 0; i < suffixCount; i++) {
+            int common = i > 0 ? commonPrefix(text, suffixes[i - 1], suffixes[i]) : 0;
+            output.writeChar(Math.min(common, Character.MAX_VALUE));
+        }
+    }
+
+    /**
+     * Sorts suffixes that share their first characters by the rest, then by position, with a
+     * multikey quicksort: suffixes are split three ways on the character at a depth, and only
+     * those equal to the pivot go on to the next depth. Suffixes that all end at the depth are
+     * equal, and are sorted by position.
+     *
+     * @param text The text
+     * @param suffixes The positions of the suffixes
+     * @param start The first suffix to sort
+     * @param end The suffix after the last to sort
+     * @param depth How many characters the suffixes share
+     */
+    private static void sort(
+            @NonNull char[] text, @NonNull int[] suffixes, int start, int end, int depth) {
+
+        while (end - start > INSERTION_SORT_SIZE) {
+            char pivot = text[suffixes[(start + end) >>> 1] + depth];
+            int less = start;
+            int greater = end;
+            int i = start;
+
+            while (i < greater) {
+                char c = text[suffixes[i] + depth];
+
+                if (c < pivot) {
+                    swap(suffixes, less++, i++);
+                } else if (c > pivot) {
+                    swap(suffixes, i, --greater);
+                } else {
+                    i++;
+                }
+            }
+
+            sort(text, suffixes, start, less, depth);
+
+            if (pivot == SEPARATOR) {
+                Arrays.sort(suffixes, less, greater);
+            } else {
+                sort(text, suffixes, less, greater, depth + 1);
+            }
+
+            start = greater;
+        }
+
+        for (int i = start + 1; i < end; i++) {
+            for (int j = i; j > start && compare(text, suffixes[j - 1], suffixes[j], depth) > 0;
+                    j--) {
+                swap(suffixes, j - 1, j);
+            }
+        }
+    }
+
+    /**
+     * Compares two suffixes that share their first characters
+     *
+     * @param text The text
+     * @param first The position of the first suffix
+     * @param second The position of the second suffix
+     * @param depth How many characters the suffixes share
+     * @return less than, equal to or greater than 0 if the first suffix sorts before, with or
+     *         after the second
+     */
+    private static int compare(@NonNull char[] text, int first, int second, int depth) {
+        int common = depth + commonPrefix(text, first + depth, second + depth);
+        int difference = text[first + common] - text[second + common];
+        return difference != 0 ? difference : first - second;
+    }
+
+    private static void swap(@NonNull int[] values, int first, int second) {
+        int value = values[first];
+        values[first] = values[second];
+        values[second] = value;
+    }
+
+    /**
+     * Gets the length of the prefix two suffixes share, which ends at the end of either key
+     *
+     * @param text The text
+     * @param first The position of the first suffix
+     * @param second The position of the second suffix
+     * @return the length of the shared prefix
+     */
+    private static int commonPrefix(@NonNull char[] text, int first, int second) {
+
+        int common = 0;
+
+        while (text[first + common] == text[second + common]
+                && text[first + common] != SEPARATOR) {
+            common++;
+        }
+
+        return common;
+    }
+}
@@ -0,0 +1,118 @@
+package com.mbcdev.folkets;
+
+import android.support.annotation.NonNull;
+
+/**
+ * A word whose examples, idioms, definition or explanation match a full text search, see
+ * {@link TextSearch}. Only holds what the list of results shows, the word itself is read when the
+ * match is opened.
+ */
+class TextMatch {
+
+    private final int rowId;
+    private final String word;
+    private final int column;
+    private final String snippet;
+    private final int highlightStart;
+    private final int highlightEnd;
+    private final double score;
+
+    /**
+     * Creates a match
+     *
+     * @param rowId The row id of the word in its table
+     * @param word The word
+     * @param column The position in {@link TextIndex#COLUMNS} of the column the snippet is from
+     * @param snippet The part of the column that matches
+     * @param highlightStart The start of the match in the snippet
+     * @param highlightEnd The end of the match in the snippet
+     * @param score How well the word matches, higher is better
+     */
+    TextMatch(
+            int rowId, @NonNull String word, int column, @NonNull String snippet,
+            int highlightStart, int highlightEnd, double score) {
+        this.rowId = rowId;
+        this.word = word;
+        this.column = column;
+        this.snippet = snippet;
+        this.highlightStart = highlightStart;
+        this.highlightEnd = highlightEnd;
+        this.score = score;
+    }
+
+    /**
+     * Gets the row id of the word in its table
+     *
+     * @return the row id of the word
+     */
+    int getRowId() {
+        return rowId;
+    }
+
+    /**
+     * Gets the word
+     *
+     * @return the word
+     */
+    @NonNull
+    String getWord() {
+        return word;
+    }
+
+    /**
+     * Gets the column the snippet is from
+     *
+     * @return the position of the column in {@link TextIndex#COLUMNS}
+     */
+    int getColumn() {
+        return column;
+    }
+
+    /**
+     * Gets the part of the column that matches
+     *
+     * @return the snippet
+     */
+    @NonNull
+    String getSnippet() {
+        return snippet;
+    }
+
+    /**
+     * Gets the start of the match in the snippet
+     *
+     * @return the start of the match in the snippet
+     */
+    int getHighlightStart() {
+        return highlightStart;
+    }
+
+    /**
+     * Gets the end of the match in the snippet
+     *
+     * @return the end of the match in the snippet
+     */
+    int getHighlightEnd() {
+        return highlightEnd;
+    }
+
+    /**
+     * Gets how well the word matches
+     *
+     * @return the score, higher is better
+     */
+    double getScore() {
+        return score;
+    }
+
+    @Override
+    public String toString() {
+        return "TextMatch{" +
+                "rowId=" + rowId +
+                ", word='" + word + '\'' +
+                ", column=" + column +
+                ", snippet='" + snippet + '\'' +
+                ", score=" + score +
+                '}';
+    }
+}
@@ -0,0 +1,81 @@
+package com.mbcdev.folkets;
+
+import android.graphics.Typeface;
+import android.support.v7.widget.RecyclerView;
+import android.text.SpannableString;
+import android.text.Spanned;
+import android.text.style.StyleSpan;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import java.util.List;
+
+/**
+ * RecyclerAdapter for a list of full text search matches
+ */
+class TextMatchesRecyclerAdapter
+        extends RecyclerView.Adapter<WordsRecyclerAdapter.ViewHolder> {
+
+    private static final int[] COLUMN_HEADERS = {
+            R.string.examples_header,
+            R.string.idioms_header,
+            R.string.definition_header,
+            R.string.explanation_header
+    };
+
+    private final List<TextMatch> matches;
+    private final MainMvp.Presenter presenter;
+
+    /**
+     * Creates an instance with the given list of matches
+     *
+     * @param matches the list of matches to display
+     * @param presenter the presenter that opens a match when it is tapped
+     */
+    TextMatchesRecyclerAdapter(List<TextMatch> matches, MainMvp.Presenter presenter) {
+        this.matches = matches;
+        this.presenter = presenter;
+    }
+
+    @Override
+    public WordsRecyclerAdapter.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+
+        View view = LayoutInflater.from(parent.getContext())
+                .inflate(R.layout.recycler_view, parent, false);
+
+        return new WordsRecyclerAdapter.ViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(final WordsRecyclerAdapter.ViewHolder holder, int position) {
+
+        final TextMatch match = matches.get(position);
+
+        holder.holderView.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                presenter.openTextMatch(match);
+            }
+        });
+
+        holder.wordTextView.setText(match.getWord());
+        holder.wordTypeTextView.setText(COLUMN_HEADERS[match.getColumn()]);
+
+        SpannableString snippet = new SpannableString(match.getSnippet());
+
+        if (match.getHighlightEnd() > match.getHighlightStart()) {
+            snippet.setSpan(new StyleSpan(Typeface.BOLD), match.getHighlightStart(),
+                    match.getHighlightEnd(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        }
+
+        holder.translationTextView.setVisibility(View.VISIBLE);
+        holder.translationTextView.setText(snippet);
+    }
+
+    @Override
+    public int getItemCount() {
+        return matches.size();
+    }
+}
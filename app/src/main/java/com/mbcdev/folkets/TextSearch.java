@@ -0,0 +1,356 @@
+package com.mbcdev.folkets;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Searches the {@link TextIndex full text index} of a table for the words whose examples, idioms,
+ * definition or explanation contain a phrase.
+ * <p>
+ *     Matches are ranked with BM25 over the match info of the index, idioms and examples weighing
+ *     more than definitions and explanations. Only the first {@link #MAX_CANDIDATES} matches in
+ *     index order are ranked, so that a query made of a very common word stays as fast as any
+ *     other. Snippets are only cut for the results that are returned.
+ * </p>
+ */
+class TextSearch {
+
+    /** The most results a search returns */
+    static final int RESULT_LIMIT = 50;
+
+    private static final int MAX_CANDIDATES = 1000;
+    private static final double[] COLUMN_WEIGHTS = { 1.5, 2.0, 1.0, 1.0 };
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private static final int MAX_SNIPPET_LENGTH = 120;
+    private static final int SNIPPET_CONTEXT = 30;
+    private static final String ELLIPSIS = "\u2026";
+    private static final String ITEM_SEPARATOR = "\\*\\*";
+    private static final String TRANSLATION_SEPARATOR = "||";
+    private static final String TRANSLATION_DISPLAY_SEPARATOR = " \u2014 ";
+
+    private TextSearch() {
+        // Intentionally empty
+    }
+
+    /**
+     * Searches the index of a table
+     *
+     * @param database The shard holding the index
+     * @param tableName The dictionary table
+     * @param query The query, as typed
+     * @return the best matches, best first
+     */
+    @NonNull
+    static List<TextMatch> search(
+            @NonNull SQLiteDatabase database, @NonNull String tableName, @NonNull String query) {
+
+        String expression = TextIndex.matchExpression(query);
+
+        if (expression == null) {
+            return Collections.emptyList();
+        }
+
+        List<Candidate> candidates = findCandidates(database, tableName, expression);
+
+        Collections.sort(candidates, new Comparator<Candidate>() {
+            @Override
+            public int compare(Candidate first, Candidate second) {
+                return Double.compare(second.score, first.score);
+            }
+        });
+
+        if (candidates.size() > RESULT_LIMIT) {
+            candidates = candidates.subList(0, RESULT_LIMIT);
+        }
+
+        return toMatches(database, tableName, candidates, TextIndex.tokens(TextIndex.fold(query)));
+    }
+
+    /**
+     * Finds and scores the candidates for an expression
+     *
+     * @param database The shard holding the index
+     * @param tableName The dictionary table
+     * @param expression The match expression
+     * @return the candidates, in index order
+     */
+    @NonNull
+    private static List<Candidate> findCandidates(
+            @NonNull SQLiteDatabase database, @NonNull String tableName,
+            @NonNull String expression) {
+
+        String indexName = TextIndex.tableName(tableName);
+        List<Candidate> candidates = new ArrayList<>();
+
+        Cursor cursor = database.rawQuery(
+                "select docid, matchinfo(" + indexName + ", 'pcnalx') from " + indexName +
+                " where " + indexName + " match ? limit " + MAX_CANDIDATES,
+                new String[] { expression });
+
+        try {
+            while (cursor.moveToNext()) {
+                int[] matchInfo = parseMatchInfo(cursor.getBlob(1));
+                int bestColumn = 0;
+                double bestScore = 0;
+                double score = 0;
+
+                for (int column = 0; column < TextIndex.COLUMNS.length; column++) {
+                    double columnScore = score(matchInfo, column);
+                    score += columnScore;
+
+                    if (columnScore > bestScore) {
+                        bestColumn = column;
+                        bestScore = columnScore;
+                    }
+                }
+
+                candidates.add(new Candidate(cursor.getInt(0), bestColumn, score));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return candidates;
+    }
+
+    /**
+     * Reads the entries of the candidates and cuts their snippets
+     *
+     * @param database The shard holding the index
+     * @param tableName The dictionary table
+     * @param candidates The candidates, in the order to return them
+     * @param phrase The tokens of the folded query
+     * @return the matches
+     */
+    @NonNull
+    private static List<TextMatch> toMatches(
+            @NonNull SQLiteDatabase database, @NonNull String tableName,
+            @NonNull List<Candidate> candidates, @NonNull List<String> phrase) {
+
+        if (candidates.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        StringBuilder placeholders = new StringBuilder();
+        String[] rowIds = new String[candidates.size()];
+
+        for (int i = 0; i < candidates.size(); i++) {
+            placeholders.append(i > 0 ? ", ?" : "?");
+            rowIds[i] = String.valueOf(candidates.get(i).rowId);
+        }
+
+        StringBuilder columns = new StringBuilder("docid, word");
+
+        for (String column : TextIndex.COLUMNS) {
+            columns.append(", ").append(column);
+        }
+
+        Map<Integer, String[]> entries = new HashMap<>();
+
+        Cursor cursor = database.rawQuery(
+                "select " + columns + " from " + TextIndex.entriesTableName(tableName) +
+                " where docid in (" + placeholders + ")", rowIds);
+
+        try {
+            while (cursor.moveToNext()) {
+                String[] entry = new String[TextIndex.COLUMNS.length + 1];
+
+                for (int i = 0; i < entry.length; i++) {
+                    entry[i] = cursor.getString(i + 1);
+                }
+
+                entries.put(cursor.getInt(0), entry);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        List<TextMatch> matches = new ArrayList<>(candidates.size());
+
+        for (Candidate candidate : candidates) {
+            String[] entry = entries.get(candidate.rowId);
+
+            if (entry != null) {
+                String[] texts = new String[TextIndex.COLUMNS.length];
+                System.arraycopy(entry, 1, texts, 0, texts.length);
+
+                matches.add(match(candidate.rowId, entry[0], texts, candidate.bestColumn,
+                        phrase, candidate.score));
+            }
+        }
+
+        return matches;
+    }
+
+    /**
+     * Builds a match, with a snippet from the best column that holds the phrase
+     *
+     * @param rowId The row id of the word
+     * @param word The word
+     * @param texts The indexed columns of the word, in the order of {@link TextIndex#COLUMNS}
+     * @param bestColumn The column that scored best
+     * @param phrase The tokens of the folded query
+     * @param score The score of the word
+     * @return the match
+     */
+    @NonNull
+    static TextMatch match(
+            int rowId, @NonNull String word, @NonNull String[] texts, int bestColumn,
+            @NonNull List<String> phrase, double score) {
+
+        for (int i = 0; i < texts.length; i++) {
+            int column = i == 0 ? bestColumn : (i <= bestColumn ? i - 1 : i);
+            TextMatch match = matchInColumn(rowId, word, texts[column], column, phrase, score);
+
+            if (match != null) {
+                return match;
+            }
+        }
+
+        String text = texts[bestColumn] != null ? texts[bestColumn] : "";
+        String item = text.split(ITEM_SEPARATOR)[0]
+                .replace(TRANSLATION_SEPARATOR, TRANSLATION_DISPLAY_SEPARATOR);
+
+        return snippet(rowId, word, bestColumn, item, new int[] { 0, 0 }, score);
+    }
+
+    /**
+     * Builds a match from the first item of a column that holds the phrase
+     *
+     * @param rowId The row id of the word
+     * @param word The word
+     * @param text The column, items separated by **
+     * @param column The position of the column in {@link TextIndex#COLUMNS}
+     * @param phrase The tokens of the folded query
+     * @param score The score of the word
+     * @return the match, or null if no item of the column holds the phrase
+     */
+    @Nullable
+    private static TextMatch matchInColumn(
+            int rowId, @NonNull String word, @Nullable String text, int column,
+            @NonNull List<String> phrase, double score) {
+
+        if (text == null || text.length() == 0) {
+            return null;
+        }
+
+        for (String item : text.split(ITEM_SEPARATOR)) {
+            String display = item.replace(TRANSLATION_SEPARATOR, TRANSLATION_DISPLAY_SEPARATOR);
+            int[] span = TextIndex.findPhrase(TextIndex.fold(display), phrase);
+
+            if (span != null) {
+                return snippet(rowId, word, column, display, span, score);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Cuts a snippet around the match, if the item is too long to show in full
+     *
+     * @param rowId The row id of the word
+     * @param word The word
+     * @param column The position of the column in {@link TextIndex#COLUMNS}
+     * @param item The item of the column that matches, as it is shown
+     * @param span The start and end of the match in the item
+     * @param score The score of the word
+     * @return the match
+     */
+    @NonNull
+    private static TextMatch snippet(
+            int rowId, @NonNull String word, int column, @NonNull String item, @NonNull int[] span,
+            double score) {
+
+        if (item.length() <= MAX_SNIPPET_LENGTH) {
+            return new TextMatch(rowId, word, column, item, span[0], span[1], score);
+        }
+
+        int from = Math.max(0, span[0] - SNIPPET_CONTEXT);
+        int to = Math.min(item.length(), Math.max(from + MAX_SNIPPET_LENGTH, span[1]));
+
+        String prefix = from > 0 ? ELLIPSIS : "";
+        String suffix = to < item.length() ? ELLIPSIS : "";
+        int shift = prefix.length() - from;
+
+        return new TextMatch(rowId, word, column, prefix + item.substring(from, to) + suffix,
+                span[0] + shift, span[1] + shift, score);
+    }
+
+    /**
+     * Parses the match info of a row, which is an array of 32 bit integers in native order
+     *
+     * @param blob The match info
+     * @return the match info
+     */
+    @NonNull
+    static int[] parseMatchInfo(@NonNull byte[] blob) {
+        IntBuffer buffer = ByteBuffer.wrap(blob).order(ByteOrder.nativeOrder()).asIntBuffer();
+        int[] matchInfo = new int[buffer.remaining()];
+        buffer.get(matchInfo);
+        return matchInfo;
+    }
+
+    /**
+     * Scores a column of a row with BM25, from match info in the 'pcnalx' format
+     *
+     * @param matchInfo The match info of the row
+     * @param column The column
+     * @return the weighted score of the column
+     */
+    static double score(@NonNull int[] matchInfo, int column) {
+
+        int phrases = matchInfo[0];
+        int columns = matchInfo[1];
+        int rows = matchInfo[2];
+        double averageLength = Math.max(matchInfo[3 + column], 1);
+        double length = matchInfo[3 + columns + column];
+        double score = 0;
+
+        for (int phrase = 0; phrase < phrases; phrase++) {
+            int hits = 3 + 2 * columns + 3 * (phrase * columns + column);
+            int frequency = matchInfo[hits];
+            int rowsWithHits = matchInfo[hits + 2];
+
+            if (frequency == 0) {
+                continue;
+            }
+
+            double idf = Math.log(1 + (rows - rowsWithHits + 0.5) / (rowsWithHits + 0.5));
+            double norm = 1 - B + B * length / averageLength;
+            score += idf * frequency * (K1 + 1) / (frequency + K1 * norm);
+        }
+
+        return COLUMN_WEIGHTS[column] * score;
+    }
+
+    /**
+     * A row of the index that matches, before its entry is read
+     */
+    private static class Candidate {
+
+        final int rowId;
+        final int bestColumn;
+        final double score;
+
+        Candidate(int rowId, int bestColumn, double score) {
+            this.rowId = rowId;
+            this.bestColumn = bestColumn;
+            this.score = score;
+        }
+    }
+}
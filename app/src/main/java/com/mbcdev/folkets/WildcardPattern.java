@@ -0,0 +1,157 @@
+package com.mbcdev.folkets;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * A pattern over {@link SearchKeys search keys}, where ? stands for any one character and * for
+ * any run of characters, including none. A key matches if the whole of it matches the pattern.
+ * <p>
+ *     The pattern is compiled into a nondeterministic automaton with a state per character of the
+ *     pattern, plus one for its end, which accepts. State i has matched the first i characters.
+ *     Since there are at most {@link #MAX_LENGTH} characters, a set of states fits in a long, so
+ *     stepping the automaton allocates nothing. A set is empty once no key continuing the
+ *     characters read so far can match, which is what lets a walk of the {@link HeadwordIndex}
+ *     prune whole subtrees.
+ * </p>
+ */
+class WildcardPattern {
+
+    /** The most characters a pattern can have */
+    static final int MAX_LENGTH = 62;
+
+    private static final char ANY_CHARACTER = '?';
+    private static final char ANY_RUN = '*';
+
+    private final String pattern;
+    private final long start;
+    private final long accepting;
+
+    /** The states from which every remaining key matches, as the rest of the pattern is all * */
+    private final long matchingEverything;
+
+    /**
+     * Creates a pattern
+     *
+     * @param pattern The pattern, already a search key
+     */
+    private WildcardPattern(@NonNull String pattern) {
+        this.pattern = pattern;
+        accepting = 1L << pattern.length();
+
+        long everything = 0;
+
+        for (int i = pattern.length() - 1; i >= 0 && pattern.charAt(i) == ANY_RUN; i--) {
+            everything |= 1L << i;
+        }
+
+        matchingEverything = everything;
+        start = close(1L);
+    }
+
+    /**
+     * Compiles a pattern. A pattern without wildcards only matches itself.
+     *
+     * @param key The search key of the pattern
+     * @return the pattern, or null if the key is empty or longer than {@link #MAX_LENGTH}
+     */
+    @Nullable
+    static WildcardPattern compile(@NonNull String key) {
+        return key.length() > 0 && key.length() <= MAX_LENGTH ? new WildcardPattern(key) : null;
+    }
+
+    /**
+     * Gets the states before any character is read
+     *
+     * @return the start states
+     */
+    long start() {
+        return start;
+    }
+
+    /**
+     * Reads a character
+     *
+     * @param states The states before the character
+     * @param c The character
+     * @return the states after the character, 0 if no key continuing with it can match
+     */
+    long step(long states, char c) {
+
+        long next = 0;
+        long remaining = states & ~accepting;
+
+        while (remaining != 0) {
+            int state = Long.numberOfTrailingZeros(remaining);
+            remaining &= remaining - 1;
+            char expected = pattern.charAt(state);
+
+            if (expected == ANY_RUN) {
+                next |= 1L << state;
+            } else if (expected == ANY_CHARACTER || expected == c) {
+                next |= 1L << (state + 1);
+            }
+        }
+
+        return close(next);
+    }
+
+    /**
+     * Checks whether the characters read so far match
+     *
+     * @param states The states after the characters
+     * @return true if the characters match the whole pattern
+     */
+    boolean accepts(long states) {
+        return (states & accepting) != 0;
+    }
+
+    /**
+     * Checks whether every key continuing the characters read so far matches
+     *
+     * @param states The states after the characters
+     * @return true if every continuation matches
+     */
+    boolean acceptsEverything(long states) {
+        return (states & matchingEverything) != 0;
+    }
+
+    /**
+     * Checks whether a whole key matches
+     *
+     * @param key The search key
+     * @return true if the key matches the pattern
+     */
+    boolean matches(@NonNull String key) {
+
+        long states = start;
+
+        for (int i = 0; i < key.length() && states != 0; i++) {
+            states = step(states, key.charAt(i));
+        }
+
+        return accepts(states);
+    }
+
+    /**
+     * Adds the states a set reaches by skipping a * without reading anything
+     *
+     * @param states The states
+     * @return the states, and those they reach
+     */
+    private long close(long states) {
+
+        for (int i = 0; i < pattern.length(); i++) {
+            if ((states & (1L << i)) != 0 && pattern.charAt(i) == ANY_RUN) {
+                states |= 1L << (i + 1);
+            }
+        }
+
+        return states;
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+}
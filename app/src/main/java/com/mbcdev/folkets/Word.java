@@ -35,6 +35,9 @@ class Word implements Serializable {
     private final ValuesWithTranslations idioms;
     private final ValuesWithTranslations derivations;
     private final ValuesWithTranslations compounds;
+    private String matchedForm;
+    private String compound;
+    private Language language;
 
     /**
      * Creates an instance from the given cursor
@@ -90,6 +93,66 @@ class Word implements Serializable {
         return word;
     }
 
+    /**
+     * Gets the inflected form that a search found this word by, like 'barnen'
+     *
+     * @return the inflected form, or null if the word was not found by one
+     */
+    @Nullable
+    String getMatchedForm() {
+        return matchedForm;
+    }
+
+    /**
+     * Marks this word as found by one of its inflected forms
+     *
+     * @param matchedForm The inflected form, or null if the word was not found by one
+     */
+    void setMatchedForm(@Nullable String matchedForm) {
+        this.matchedForm = matchedForm;
+    }
+
+    /**
+     * Gets the compound that a search found this word to be a part of, like
+     * 'sjukhus + parkering'
+     *
+     * @return the compound, split into its parts, or null if the word was not found as a part
+     */
+    @Nullable
+    String getCompound() {
+        return compound;
+    }
+
+    /**
+     * Marks this word as found as a part of a compound
+     *
+     * @param compound The compound, split into its parts, or null if the word was not found as
+     *                 a part
+     */
+    void setCompound(@Nullable String compound) {
+        this.compound = compound;
+    }
+
+    /**
+     * Gets the language that a search of both tables found this word in
+     *
+     * @return the language of the table of the word, or null if the search was of one table
+     */
+    @Nullable
+    Language getLanguage() {
+        return language;
+    }
+
+    /**
+     * Marks this word with the language of the table a search of both tables found it in
+     *
+     * @param language The language of the table of the word, or null if the search was of one
+     *                 table
+     */
+    void setLanguage(@Nullable Language language) {
+        this.language = language;
+    }
+
     /**
      * Gets the translations for the word, like 'child'
      *
@@ -6,7 +6,9 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 
 /**
  * RecyclerAdapter for a list of words
@@ -23,7 +25,18 @@ class WordsRecyclerAdapter extends RecyclerView.Adapter<WordsRecyclerAdapter.Vie
      * @param wordList the list of words to display
      */
     WordsRecyclerAdapter(List<Word> wordList) {
-        this.wordList = wordList;
+        this.wordList = new ArrayList<>(wordList);
+    }
+
+    /**
+     * Adds words to the end of the list
+     *
+     * @param words the words to add
+     */
+    void addWords(List<Word> words) {
+        int start = wordList.size();
+        wordList.addAll(words);
+        notifyItemRangeInserted(start, words.size());
     }
 
     @Override
@@ -47,10 +60,25 @@ class WordsRecyclerAdapter extends RecyclerView.Adapter<WordsRecyclerAdapter.Vie
             }
         });
 
-        holder.wordTextView.setText(word.getWord());
+        if (word.getMatchedForm() != null) {
+            holder.wordTextView.setText(holder.holderView.getContext().getString(
+                    R.string.inflected_form, word.getMatchedForm(), word.getWord()));
+        } else if (word.getCompound() != null) {
+            holder.wordTextView.setText(holder.holderView.getContext().getString(
+                    R.string.compound_part, word.getWord(), word.getCompound()));
+        } else {
+            holder.wordTextView.setText(word.getWord());
+        }
 
         String wordTypes = WordType.formatWordTypesForDisplay(
                 holder.holderView.getContext(), word.getWordTypes());
+
+        if (word.getLanguage() != null) {
+            String language = word.getLanguage().getCode().toUpperCase(Locale.US);
+            wordTypes = holder.holderView.getContext().getString(
+                    R.string.word_types_in_language, language, wordTypes);
+        }
+
         holder.wordTypeTextView.setText(wordTypes);
 
         StringBuilder stringBuilder = new StringBuilder();
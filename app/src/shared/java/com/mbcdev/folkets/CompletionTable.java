@@ -0,0 +1,100 @@
+package com.mbcdev.folkets;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Describes the completion table of a table, which holds the most important words for every
+ * short prefix. Shared between the build, which ranks the words and writes the table into a
+ * shard of its own, and the app, which loads it into memory and answers short prefixes from it.
+ * <p>
+ *     A prefix of one or two characters matches too many words for alphabetical order to be of
+ *     any use, and is the most expensive query to answer. So for every prefix of the
+ *     {@link SearchKeys search key} of a word up to {@link #MAX_PREFIX_LENGTH} characters, the
+ *     table holds the {@link #SIZE} words with the highest {@link ImportanceScore}, shortest
+ *     first among equals, with their rank, row id and search key. Words whose key is the prefix
+ *     itself rank before all others.
+ * </p>
+ */
+public final class CompletionTable {
+
+    /** The bucket of the shard holding the table, which has a single shard per table */
+    public static final int BUCKET = 0;
+
+    /** The longest prefix that is answered from the table */
+    public static final int MAX_PREFIX_LENGTH = 2;
+
+    /** The most words held for a prefix */
+    public static final int SIZE = 50;
+
+    /** The column holding the prefix */
+    public static final String PREFIX_COLUMN = "prefix";
+
+    /** The column holding the rank of the word for the prefix, from 0 */
+    public static final String RANK_COLUMN = "rank";
+
+    /** The column holding the row id of the word in its table */
+    public static final String ROW_ID_COLUMN = "word_rowid";
+
+    private static final String SUFFIX = "_completions";
+
+    private CompletionTable() {
+        // Intentionally empty
+    }
+
+    /**
+     * Gets the name of the completion table of a table. The shard holding it uses it as its
+     * table.
+     *
+     * @param tableName The dictionary table
+     * @return the name of the completion table
+     */
+    public static String tableName(String tableName) {
+        return tableName + SUFFIX;
+    }
+
+    /**
+     * Checks whether a table name is the name of a completion table rather than of a dictionary
+     * table
+     *
+     * @param tableName The table name
+     * @return true if it names a completion table
+     */
+    public static boolean isTableName(String tableName) {
+        return tableName.endsWith(SUFFIX);
+    }
+
+    /**
+     * Checks whether a prefix is answered from the completion table
+     *
+     * @param key The search key of the prefix
+     * @return true if the prefix is short enough and has no like wildcards
+     */
+    public static boolean isServed(String key) {
+        return key.length() > 0 && key.length() <= MAX_PREFIX_LENGTH
+                && SearchKeys.canSearchByRange(key);
+    }
+
+    /**
+     * Gets the prefixes of a search key that the table holds the word for. Prefixes ending in a
+     * space or half a surrogate pair are left out, since no query that the table answers ends in
+     * one.
+     *
+     * @param key The search key of a word
+     * @return the prefixes, shortest first
+     */
+    public static List<String> prefixesOf(String key) {
+
+        List<String> prefixes = new ArrayList<>(MAX_PREFIX_LENGTH);
+
+        for (int length = 1; length <= Math.min(MAX_PREFIX_LENGTH, key.length()); length++) {
+            char last = key.charAt(length - 1);
+
+            if (last != ' ' && !Character.isSurrogate(last)) {
+                prefixes.add(key.substring(0, length));
+            }
+        }
+
+        return prefixes;
+    }
+}
@@ -0,0 +1,214 @@
+package com.mbcdev.folkets;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Reads and writes dictionary delta packs. Shared between the build, which diffs a shard against
+ * the same shard of an older release, and the app, which patches the installed shard in place.
+ * <p>
+ *     SQLite only ever reads and writes whole pages, so a delta is simply the list of pages of the
+ *     new shard that differ from the page at the same offset in the old one, plus the new length.
+ *     Applying a delta therefore writes only the pages that changed.
+ * </p>
+ * <p>
+ *     Layout, big endian: magic, version, base md5, target md5, target length, page size, then
+ *     for every changed page its index, length and bytes, ending with a page index of -1.
+ * </p>
+ */
+public final class DictionaryDelta {
+
+    private static final int MAGIC = 0x464b4454;
+    private static final int VERSION = 1;
+    private static final int END_OF_PAGES = -1;
+
+    private static final int SQLITE_HEADER_SIZE = 100;
+    private static final int SQLITE_PAGE_SIZE_OFFSET = 16;
+    private static final int DEFAULT_PAGE_SIZE = 4096;
+
+    private DictionaryDelta() {
+        // Intentionally empty
+    }
+
+    /**
+     * Gets the file name of a delta pack
+     *
+     * @param shardFileName The file name of the shard that the delta patches
+     * @param baseMd5 The hex encoded md5 of the shard that the delta applies to
+     * @return the file name of the delta pack
+     */
+    public static String fileName(String shardFileName, String baseMd5) {
+        return String.format(Locale.US, "%s.%s.delta", shardFileName, baseMd5);
+    }
+
+    /**
+     * Writes the delta that turns one shard into another
+     *
+     * @param base The shard that the delta applies to
+     * @param baseMd5 The hex encoded md5 of the base shard
+     * @param target The shard that applying the delta produces
+     * @param targetMd5 The hex encoded md5 of the target shard
+     * @param outputStream The stream to write the delta to, which is not closed
+     * @return The number of pages in the delta
+     * @throws IOException if either shard could not be read or the delta could not be written
+     */
+    public static int write(
+            File base, String baseMd5, File target, String targetMd5,
+            OutputStream outputStream) throws IOException {
+
+        int pageSize = readPageSize(target);
+        int pages = 0;
+
+        DataOutputStream output = new DataOutputStream(outputStream);
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeUTF(baseMd5);
+        output.writeUTF(targetMd5);
+        output.writeLong(target.length());
+        output.writeInt(pageSize);
+
+        try (InputStream baseStream = new FileInputStream(base);
+             InputStream targetStream = new FileInputStream(target)) {
+
+            byte[] basePage = new byte[pageSize];
+            byte[] targetPage = new byte[pageSize];
+
+            for (int index = 0; ; index++) {
+                int targetRead = readPage(targetStream, targetPage);
+
+                if (targetRead == 0) {
+                    break;
+                }
+
+                int baseRead = readPage(baseStream, basePage);
+
+                if (baseRead == targetRead && Arrays.equals(basePage, targetPage)) {
+                    continue;
+                }
+
+                output.writeInt(index);
+                output.writeInt(targetRead);
+                output.write(targetPage, 0, targetRead);
+                pages++;
+            }
+        }
+
+        output.writeInt(END_OF_PAGES);
+        output.flush();
+
+        return pages;
+    }
+
+    /**
+     * Applies a delta to a shard in place. Only the pages in the delta are written, and the file
+     * is then cut or grown to the length of the target. The caller is responsible for verifying
+     * the patched file against the returned md5 and syncing it to disk.
+     *
+     * @param inputStream The delta, which is not closed
+     * @param baseMd5 The hex encoded md5 of the shard being patched
+     * @param file The shard being patched
+     * @return the hex encoded md5 that the patched shard should have
+     * @throws IOException if the delta is malformed, is for a different base, or could not be
+     *                     applied. The file is untouched if the delta is for a different base.
+     */
+    public static String apply(
+            InputStream inputStream, String baseMd5, RandomAccessFile file) throws IOException {
+
+        DataInputStream input = new DataInputStream(inputStream);
+
+        if (input.readInt() != MAGIC) {
+            throw new IOException("Not a dictionary delta");
+        }
+
+        int version = input.readInt();
+
+        if (version != VERSION) {
+            throw new IOException("Unsupported dictionary delta version " + version);
+        }
+
+        String deltaBaseMd5 = input.readUTF();
+
+        if (!deltaBaseMd5.equals(baseMd5)) {
+            throw new IOException(String.format(Locale.US,
+                    "Delta applies to %s, but the shard has hash %s", deltaBaseMd5, baseMd5));
+        }
+
+        String targetMd5 = input.readUTF();
+        long targetLength = input.readLong();
+        int pageSize = input.readInt();
+        byte[] page = new byte[pageSize];
+
+        for (int index = input.readInt(); index != END_OF_PAGES; index = input.readInt()) {
+            int length = input.readInt();
+
+            if (index < 0 || length < 0 || length > pageSize) {
+                throw new IOException("Malformed dictionary delta");
+            }
+
+            input.readFully(page, 0, length);
+            file.seek((long) index * pageSize);
+            file.write(page, 0, length);
+        }
+
+        file.setLength(targetLength);
+        return targetMd5;
+    }
+
+    /**
+     * Reads the page size from the header of an SQLite file
+     *
+     * @param file The SQLite file
+     * @return the page size of the file, or the SQLite default if the file is too short
+     * @throws IOException if the file could not be read
+     */
+    private static int readPageSize(File file) throws IOException {
+
+        byte[] header = new byte[SQLITE_HEADER_SIZE];
+
+        try (InputStream inputStream = new FileInputStream(file)) {
+            if (readPage(inputStream, header) < SQLITE_HEADER_SIZE) {
+                return DEFAULT_PAGE_SIZE;
+            }
+        }
+
+        int pageSize = ((header[SQLITE_PAGE_SIZE_OFFSET] & 0xff) << 8)
+                | (header[SQLITE_PAGE_SIZE_OFFSET + 1] & 0xff);
+
+        // A page size of 65536 does not fit in two bytes, so SQLite stores it as 1
+        return pageSize == 1 ? 65536 : pageSize;
+    }
+
+    /**
+     * Reads as much of a page as is available
+     *
+     * @param inputStream The stream to read from
+     * @param page The buffer to fill. Bytes past the end of the stream are zeroed
+     * @return the number of bytes read, which is 0 at the end of the stream
+     * @throws IOException if the stream could not be read
+     */
+    private static int readPage(InputStream inputStream, byte[] page) throws IOException {
+
+        int total = 0;
+
+        while (total < page.length) {
+            int read = inputStream.read(page, total, page.length - total);
+
+            if (read == -1) {
+                break;
+            }
+
+            total += read;
+        }
+
+        Arrays.fill(page, total, page.length, (byte) 0);
+        return total;
+    }
+}
@@ -0,0 +1,78 @@
+package com.mbcdev.folkets;
+
+/**
+ * Scores how important a word of the dictionary is, from how much the dictionary has to say about
+ * it. The dictionary holds no frequencies, but common words have more translations, examples and
+ * compounds than rare ones, and are more often defined. Shared between the build, which ranks
+ * words by the score, and the app.
+ */
+public final class ImportanceScore {
+
+    /** The column of the tables of the dictionary shards holding the score of every word */
+    public static final String COLUMN = "importance";
+
+    private static final int TRANSLATION_WEIGHT = 3;
+    private static final int EXAMPLE_WEIGHT = 2;
+    private static final int COMPOUND_WEIGHT = 1;
+    private static final int DEFINITION_WEIGHT = 4;
+    private static final String ITEM_SEPARATOR = "**";
+
+    private ImportanceScore() {
+        // Intentionally empty
+    }
+
+    /**
+     * Scores a word from its columns as they are stored in the dictionary
+     *
+     * @param translations The translations, separated by **, may be null
+     * @param examples The examples, separated by **, may be null
+     * @param compounds The compounds, separated by **, may be null
+     * @param definition The definition, may be null
+     * @return the score, 0 or more, higher is more important
+     */
+    public static int of(
+            String translations, String examples, String compounds, String definition) {
+
+        int score = TRANSLATION_WEIGHT * countItems(translations)
+                + EXAMPLE_WEIGHT * countItems(examples)
+                + COMPOUND_WEIGHT * countItems(compounds);
+
+        if (definition != null && definition.trim().length() > 0) {
+            score += DEFINITION_WEIGHT;
+        }
+
+        return score;
+    }
+
+    /**
+     * Counts the non empty items of a column
+     *
+     * @param items The items, separated by **, may be null
+     * @return the number of items that are not blank
+     */
+    static int countItems(String items) {
+
+        if (items == null) {
+            return 0;
+        }
+
+        int count = 0;
+        int start = 0;
+
+        while (start <= items.length()) {
+            int end = items.indexOf(ITEM_SEPARATOR, start);
+
+            if (end < 0) {
+                end = items.length();
+            }
+
+            if (items.substring(start, end).trim().length() > 0) {
+                count++;
+            }
+
+            start = end + ITEM_SEPARATOR.length();
+        }
+
+        return count;
+    }
+}
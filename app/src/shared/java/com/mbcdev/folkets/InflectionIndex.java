@@ -0,0 +1,112 @@
+package com.mbcdev.folkets;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Describes the inflected form index of a table, which finds the words of a table by the forms
+ * they are inflected to, like "barnen" for "barn". Shared between the build, which writes the
+ * index into a shard of its own, and the app, which searches it along with the headwords.
+ * <p>
+ *     The index holds one row for every inflected form of every word, with the
+ *     {@link SearchKeys search key} of the form, the form as it is written, and the row id and
+ *     headword of the word. Forms are searched for as a range over their keys, the same way
+ *     headwords are, so that hits on both can be merged in the order of their keys.
+ * </p>
+ */
+public final class InflectionIndex {
+
+    /** The bucket of the shard holding the index, which has a single shard per table */
+    public static final int BUCKET = 0;
+
+    /** The column holding the row id of the word in its table */
+    public static final String ROW_ID_COLUMN = "word_rowid";
+
+    /** The column holding the headword, which decides the shard the word is in */
+    public static final String WORD_COLUMN = "word";
+
+    /** The column holding the inflected form as it is written */
+    public static final String FORM_COLUMN = "form";
+
+    private static final String SUFFIX = "_inflections";
+    private static final String FORM_SEPARATOR = "**";
+
+    private InflectionIndex() {
+        // Intentionally empty
+    }
+
+    /**
+     * Gets the name of the index of a table. The shard holding the index uses it as its table.
+     *
+     * @param tableName The dictionary table
+     * @return the name of the index table
+     */
+    public static String tableName(String tableName) {
+        return tableName + SUFFIX;
+    }
+
+    /**
+     * Checks whether a table name is the name of an inflected form index rather than of a
+     * dictionary table
+     *
+     * @param tableName The table name
+     * @return true if it names an inflected form index
+     */
+    public static boolean isIndexName(String tableName) {
+        return tableName.endsWith(SUFFIX);
+    }
+
+    /**
+     * Gets the name of the index over the keys of the index of a table
+     *
+     * @param tableName The dictionary table
+     * @return the name of the SQL index
+     */
+    public static String keyIndexName(String tableName) {
+        return SearchKeys.indexName(tableName(tableName));
+    }
+
+    /**
+     * Gets the forms that a word is found by, from its inflections as they are stored in the
+     * dictionary, separated by **. Forms with the same key as the headword are left out, since
+     * the headword search already finds them, as are forms with the same key as an earlier one.
+     *
+     * @param word The headword
+     * @param inflections The inflections of the word, may be null
+     * @return the distinct forms, trimmed, in the order they were found
+     */
+    public static List<String> formsOf(String word, String inflections) {
+
+        List<String> forms = new ArrayList<>();
+
+        if (inflections == null) {
+            return forms;
+        }
+
+        Set<String> keys = new HashSet<>();
+        keys.add(SearchKeys.keyOf(word));
+
+        int start = 0;
+
+        while (start <= inflections.length()) {
+            int end = inflections.indexOf(FORM_SEPARATOR, start);
+
+            if (end < 0) {
+                end = inflections.length();
+            }
+
+            String form = inflections.substring(start, end).trim();
+            String key = SearchKeys.keyOf(form);
+
+            if (key.length() > 0 && keys.add(key)) {
+                forms.add(form);
+            }
+
+            start = end + FORM_SEPARATOR.length();
+        }
+
+        return forms;
+    }
+}
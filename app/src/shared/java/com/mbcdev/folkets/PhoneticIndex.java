@@ -0,0 +1,365 @@
+package com.mbcdev.folkets;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Describes the phonetic index of a table, which finds the words of a table by how they sound
+ * rather than by how they are spelled. Shared between the build, which writes the index into a
+ * shard of its own, and the app, which searches it with a spelling guess.
+ * <p>
+ *     The index holds one row for every phonetic key of every word, along with the row id and
+ *     headword of the word. A phonetic key is a transcription reduced to sound classes: one
+ *     character per sound, with stress, tone and length dropped, and with sounds that are easily
+ *     mistaken for each other, like the vowels of "bok" and "båt", put in the same class. The
+ *     keys of a word come from its phonetic column, or from its headword if it has none.
+ * </p>
+ * <p>
+ *     A guess is turned into a key by reading it as Swedish spelling, so that "skjorta",
+ *     "sjorta" and "chorta" all start with the sj sound, and is then searched for as a range over
+ *     the keys, the same way headwords are. The classes are written as a representative IPA
+ *     symbol each: a, e, i, o and ø for the vowels, ɧ for the sj sound, ɕ for the tj sound, ŋ
+ *     for the ng sound, and p, b, t, d, k, g, f, v, s, j, h, l, m, n and r for the rest.
+ * </p>
+ */
+public final class PhoneticIndex {
+
+    /** The bucket of the shard holding the index, which has a single shard per table */
+    public static final int BUCKET = 0;
+
+    /** The column holding the phonetic key */
+    public static final String KEY_COLUMN = "phonetic_key";
+
+    /** The column holding the row id of the word in its table */
+    public static final String ROW_ID_COLUMN = "word_rowid";
+
+    /** The column holding the headword, which decides the shard the word is in */
+    public static final String WORD_COLUMN = "word";
+
+    private static final String SUFFIX = "_phonetics";
+    private static final String ALTERNATIVE_SEPARATORS = ",;";
+    private static final String SOFT_VOWELS = "eiy" + SearchKeys.SWEDISH_LETTERS.substring(1);
+    private static final String RETROFLEXES = "dtnsl";
+
+    private static final char SJ_SOUND = '\u0267';         // ɧ
+    private static final char TJ_SOUND = '\u0255';         // ɕ
+    private static final char NG_SOUND = '\u014b';         // ŋ
+    private static final char FRONT_ROUNDED = '\u00f8';    // ø
+
+    /** The letters of a key, by the characters of a transcription that are not plain letters */
+    private static final String[][] IPA_LETTERS = {
+            { "\u0251\u0250\u028c", "a" },          // ɑ ɐ ʌ
+            { "\u025b\u00e6", "|" },                // ɛ æ
+            { "\u0259\u0258", "e" },                // ə ɘ
+            { "\u026a", "i" },                      // ɪ
+            { "\u028f", "y" },                      // ʏ
+            { "\u0254\u0252", "{" },                // ɔ ɒ
+            { "\u028a", "o" },                      // ʊ
+            { "\u0289\u0275", "u" },                // ʉ ɵ
+            { "\u00f8\u0153\u0276", "}" },          // ø œ ɶ
+            { "\u0267\u0283\u0292", "sj" },         // ɧ ʃ ʒ
+            { "\u0282", "s" },                      // ʂ
+            { "\u0255\u00e7", "tj" },               // ɕ ç
+            { "\u014b", "ng" },                     // ŋ
+            { "\u0288\u03b8", "t" },                // ʈ θ
+            { "\u0256\u00f0", "d" },                // ɖ ð
+            { "\u0273", "n" },                      // ɳ
+            { "\u026d\u026b", "l" },                // ɭ ɫ
+            { "\u0261", "g" },                      // ɡ
+            { "\u028b", "v" },                      // ʋ
+            { "\u029d", "j" },                      // ʝ
+            { "\u0266", "h" },                      // ɦ
+            { "\u027e\u0281\u0280\u0279", "r" },    // ɾ ʁ ʀ ɹ
+    };
+
+    private PhoneticIndex() {
+        // Intentionally empty
+    }
+
+    /**
+     * Gets the name of the index of a table. The shard holding the index uses it as its table.
+     *
+     * @param tableName The dictionary table
+     * @return the name of the index table
+     */
+    public static String tableName(String tableName) {
+        return tableName + SUFFIX;
+    }
+
+    /**
+     * Checks whether a table name is the name of a phonetic index rather than of a dictionary
+     * table
+     *
+     * @param tableName The table name
+     * @return true if it names a phonetic index
+     */
+    public static boolean isIndexName(String tableName) {
+        return tableName.endsWith(SUFFIX);
+    }
+
+    /**
+     * Gets the name of the index over the keys of the index of a table
+     *
+     * @param tableName The dictionary table
+     * @return the name of the SQL index
+     */
+    public static String keyIndexName(String tableName) {
+        return tableName(tableName) + "_" + KEY_COLUMN;
+    }
+
+    /**
+     * Gets the phonetic keys that a word is found by. Every alternative transcription of the
+     * word, separated by a comma or semicolon, has a key. A word without a transcription is
+     * keyed by its headword, read as Swedish spelling.
+     *
+     * @param word The headword
+     * @param phonetic The transcription of the word, may be null
+     * @return the distinct keys that are not empty, in the order they were found
+     */
+    public static List<String> keysOf(String word, String phonetic) {
+
+        Set<String> keys = new LinkedHashSet<>();
+
+        if (phonetic != null && phonetic.trim().length() > 0) {
+            int start = 0;
+
+            while (start <= phonetic.length()) {
+                int end = start;
+
+                while (end < phonetic.length()
+                        && ALTERNATIVE_SEPARATORS.indexOf(phonetic.charAt(end)) < 0) {
+                    end++;
+                }
+
+                keys.add(keyOfPhonetic(phonetic.substring(start, end)));
+                start = end + 1;
+            }
+        } else if (word != null) {
+            keys.add(keyOfSpelling(SearchKeys.keyOf(word)));
+        }
+
+        keys.remove("");
+        return new ArrayList<>(keys);
+    }
+
+    /**
+     * Gets the phonetic key of a transcription. Plain letters are read the way the dictionary
+     * writes them, so "sj" and "ng" are single sounds, and IPA symbols are read as the sound they
+     * stand for. Stress, tone and length marks are dropped.
+     *
+     * @param phonetic The transcription
+     * @return the key, empty if the transcription has no sounds
+     */
+    public static String keyOfPhonetic(String phonetic) {
+
+        String composed = Normalizer.normalize(phonetic, Normalizer.Form.NFC);
+        StringBuilder letters = new StringBuilder(composed.length());
+
+        for (int i = 0; i < composed.length(); i++) {
+            char c = Character.toLowerCase(composed.charAt(i));
+
+            if (c >= 'a' && c <= 'z') {
+                letters.append(c);
+            } else if (c == '\u00e5') {
+                letters.append(SearchKeys.SWEDISH_LETTERS.charAt(0));
+            } else if (c == '\u00e4') {
+                letters.append(SearchKeys.SWEDISH_LETTERS.charAt(1));
+            } else if (c == '\u00f6') {
+                letters.append(SearchKeys.SWEDISH_LETTERS.charAt(2));
+            } else {
+                letters.append(ipaLettersOf(c));
+            }
+        }
+
+        return keyOf(letters.toString(), false);
+    }
+
+    /**
+     * Gets the phonetic key of a spelling guess, reading it as Swedish spelling, so that the
+     * letters that sound different before a soft vowel or at the start of a word do too
+     *
+     * @param key The {@link SearchKeys search key} of the guess
+     * @return the key, empty if the guess has no letters
+     */
+    public static String keyOfSpelling(String key) {
+        return keyOf(key, true);
+    }
+
+    /**
+     * Gets the letters of a key that a character of a transcription stands for. A letter with a
+     * diacritic that is not an IPA symbol of its own, like the retroflex ṇ, stands for its base
+     * letter.
+     *
+     * @param c The character, lower case
+     * @return the letters, empty for characters that are not sounds
+     */
+    private static String ipaLettersOf(char c) {
+
+        for (String[] letters : IPA_LETTERS) {
+            if (letters[0].indexOf(c) >= 0) {
+                return letters[1];
+            }
+        }
+
+        char base = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD).charAt(0);
+        return base >= 'a' && base <= 'z' ? String.valueOf(base) : "";
+    }
+
+    /**
+     * Reduces letters to sound classes, in a single pass. Characters that are not letters of a
+     * search key are skipped, and runs of the same class, like long or double sounds, are
+     * written once.
+     *
+     * @param text The letters, with å, ä and ö written as in a {@link SearchKeys search key}
+     * @param spelling Whether the letters are spelling, which honours the rules for how letters
+     *                 sound before a soft vowel or at the start of a word, rather than a
+     *                 transcription, which spells sounds out
+     * @return the phonetic key
+     */
+    private static String keyOf(String text, boolean spelling) {
+
+        StringBuilder letters = new StringBuilder(text.length());
+
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+
+            if ((c >= 'a' && c <= 'z') || SearchKeys.SWEDISH_LETTERS.indexOf(c) >= 0) {
+                letters.append(c);
+            }
+        }
+
+        String s = letters.toString();
+        StringBuilder key = new StringBuilder(s.length());
+        int i = 0;
+
+        while (i < s.length()) {
+            char c = s.charAt(i);
+            char next = i + 1 < s.length() ? s.charAt(i + 1) : 0;
+            boolean softNext = next != 0 && SOFT_VOWELS.indexOf(next) >= 0;
+
+            if (spelling && s.startsWith("tion", i)) {
+                append(key, SJ_SOUND);
+                append(key, 'o');
+                append(key, 'n');
+                i += 4;
+            } else if (s.startsWith("skj", i) || s.startsWith("stj", i)
+                    || s.startsWith("sch", i)) {
+                append(key, SJ_SOUND);
+                i += 3;
+            } else if (spelling && i == 0 && c == 's' && next == 'k' && i + 2 < s.length()
+                    && SOFT_VOWELS.indexOf(s.charAt(i + 2)) >= 0) {
+                append(key, SJ_SOUND);
+                i += 2;
+            } else if (s.startsWith("sj", i) || s.startsWith("ch", i) || s.startsWith("sh", i)) {
+                append(key, SJ_SOUND);
+                i += 2;
+            } else if (s.startsWith("tj", i) || s.startsWith("kj", i)) {
+                append(key, TJ_SOUND);
+                i += 2;
+            } else if (spelling && i == 0 && c == 'k' && softNext) {
+                append(key, TJ_SOUND);
+                i++;
+            } else if (i == 0 && next == 'j' && "dghl".indexOf(c) >= 0) {
+                append(key, 'j');
+                i += 2;
+            } else if (spelling && i == 0 && c == 'g' && softNext) {
+                append(key, 'j');
+                i++;
+            } else if (spelling && c == 'g' && i == s.length() - 1 && i > 0
+                    && "lr".indexOf(s.charAt(i - 1)) >= 0) {
+                append(key, 'j');
+                i++;
+            } else if (s.startsWith("ng", i)) {
+                append(key, NG_SOUND);
+                i += 2;
+            } else if (c == 'n' && next == 'k') {
+                append(key, NG_SOUND);
+                i++;
+            } else if (c == 'r' && next != 0 && RETROFLEXES.indexOf(next) >= 0) {
+                // The r only colours the retroflex after it
+                i++;
+            } else if (s.startsWith("ph", i)) {
+                append(key, 'f');
+                i += 2;
+            } else if (s.startsWith("th", i)) {
+                append(key, 't');
+                i += 2;
+            } else if (s.startsWith("qu", i)) {
+                append(key, 'k');
+                append(key, 'v');
+                i += 2;
+            } else {
+                appendLetter(key, c, next);
+                i++;
+            }
+        }
+
+        return key.toString();
+    }
+
+    /**
+     * Appends the sound class of a single letter
+     *
+     * @param key The key being built
+     * @param c The letter
+     * @param next The letter after it, or 0 if there is none
+     */
+    private static void appendLetter(StringBuilder key, char c, char next) {
+
+        switch (c) {
+            case 'a':
+                append(key, 'a');
+                break;
+            case 'e':
+            case '|':
+                append(key, 'e');
+                break;
+            case 'i':
+            case 'y':
+                append(key, 'i');
+                break;
+            case 'o':
+            case 'u':
+            case '{':
+                append(key, 'o');
+                break;
+            case '}':
+                append(key, FRONT_ROUNDED);
+                break;
+            case 'c':
+                append(key, next == 'e' || next == 'i' || next == 'y' ? 's' : 'k');
+                break;
+            case 'q':
+                append(key, 'k');
+                break;
+            case 'x':
+                append(key, 'k');
+                append(key, 's');
+                break;
+            case 'z':
+                append(key, 's');
+                break;
+            case 'w':
+                append(key, 'v');
+                break;
+            default:
+                append(key, c);
+                break;
+        }
+    }
+
+    /**
+     * Appends a sound class to a key, unless the key already ends with it
+     *
+     * @param key The key being built
+     * @param sound The sound class
+     */
+    private static void append(StringBuilder key, char sound) {
+        if (key.length() == 0 || key.charAt(key.length() - 1) != sound) {
+            key.append(sound);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.mbcdev.folkets;
+
+import java.text.Normalizer;
+
+/**
+ * Builds the keys that words are searched and sorted by. Shared between the build, which stores
+ * the key of every word in an indexed column, and the app, which turns the query into a key once
+ * and searches for it as a range over that column.
+ * <p>
+ *     The key of a text is its normalized form: compatibility decomposed, trimmed, with runs of
+ *     white space collapsed into one space, lower cased, and with every accent dropped apart from
+ *     those of å, ä and ö. Æ and ø are read as ä and ö. So leading spaces, case, composition and
+ *     accents no longer decide whether a word matches.
+ * </p>
+ * <p>
+ *     The key is also the Swedish sort key of the text. å, ä and ö are written as the
+ *     {@link #SWEDISH_LETTERS three characters after z}, so that comparing keys character by
+ *     character, as SQLite does without a localized collator, sorts a to z, then å, ä and ö.
+ *     Because that encoding is character for character, the keys starting with the key of a prefix
+ *     are still one range, and the index that answers the range also gives the order.
+ * </p>
+ */
+public final class SearchKeys {
+
+    /** The column holding the key of every word */
+    public static final String COLUMN = "search_key";
+
+    /** How å, ä and ö are written in a key, in that order */
+    public static final String SWEDISH_LETTERS = "{|}";
+
+    private static final char RING_ABOVE = '\u030a';
+    private static final char DIAERESIS = '\u0308';
+
+    private SearchKeys() {
+        // Intentionally empty
+    }
+
+    /**
+     * Gets the name of the index over the keys of a table
+     *
+     * @param tableName The table
+     * @return the name of the index
+     */
+    public static String indexName(String tableName) {
+        return tableName + "_" + COLUMN;
+    }
+
+    /**
+     * Gets the key of a word or prefix, in a single pass over its decomposed form
+     *
+     * @param text The word or prefix
+     * @return the key, or null if the text is null
+     */
+    public static String keyOf(String text) {
+
+        if (text == null) {
+            return null;
+        }
+
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFKD);
+        StringBuilder key = new StringBuilder(decomposed.length());
+        boolean pendingSpace = false;
+        char base = 0;
+
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                char swedish = swedishLetterOf(base, c);
+
+                if (swedish != 0) {
+                    key.setCharAt(key.length() - 1, swedish);
+                    base = 0;
+                }
+
+                continue;
+            }
+
+            if (Character.isWhitespace(c) || Character.isSpaceChar(c)) {
+                pendingSpace = key.length() > 0;
+                base = 0;
+                continue;
+            }
+
+            if (pendingSpace) {
+                key.append(' ');
+                pendingSpace = false;
+            }
+
+            base = Character.toLowerCase(c);
+
+            if (base == '\u00e6') {
+                key.append(SWEDISH_LETTERS.charAt(1));
+            } else if (base == '\u00f8') {
+                key.append(SWEDISH_LETTERS.charAt(2));
+            } else {
+                key.append(base);
+            }
+        }
+
+        return key.toString();
+    }
+
+    /**
+     * Checks whether a prefix search can be answered with a range over the keys. Like wildcards
+     * in the key have to be evaluated by like, as does a key ending in a character that the
+     * upper bound can not be built from.
+     *
+     * @param key The key of the prefix
+     * @return true if the prefix can be searched for with a range
+     */
+    public static boolean canSearchByRange(String key) {
+
+        if (key.indexOf('%') >= 0 || key.indexOf('_') >= 0) {
+            return false;
+        }
+
+        if (key.length() == 0) {
+            return true;
+        }
+
+        char last = key.charAt(key.length() - 1);
+        return last != Character.MAX_VALUE && !Character.isSurrogate(last);
+    }
+
+    /**
+     * Gets the smallest key that is greater than every key starting with the given key
+     *
+     * @param key The key of the prefix, which must be searchable by range
+     * @return the exclusive upper bound of the range, or null if there is none
+     */
+    public static String upperBound(String key) {
+
+        if (key.length() == 0) {
+            return null;
+        }
+
+        int last = key.length() - 1;
+        return key.substring(0, last) + (char) (key.charAt(last) + 1);
+    }
+
+    /**
+     * Gets the key character of a lower case letter followed by a combining mark, if the two
+     * make å, ä or ö
+     *
+     * @param base The lower case letter, or 0 if the mark does not follow a letter
+     * @param mark The combining mark
+     * @return the key character of the Swedish letter, or 0 if they do not make one
+     */
+    private static char swedishLetterOf(char base, char mark) {
+
+        if (base == 'a' && mark == RING_ABOVE) {
+            return SWEDISH_LETTERS.charAt(0);
+        }
+
+        if (base == 'a' && mark == DIAERESIS) {
+            return SWEDISH_LETTERS.charAt(1);
+        }
+
+        if (base == 'o' && mark == DIAERESIS) {
+            return SWEDISH_LETTERS.charAt(2);
+        }
+
+        return 0;
+    }
+}
@@ -0,0 +1,108 @@
+package com.mbcdev.folkets;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+
+/**
+ * Reads and writes the chunk checksums of a shard. Shared between the build, which checksums
+ * every shard, and the app, which uses the checksums to find and repair corrupted chunks of an
+ * installed shard without hashing the whole file.
+ * <p>
+ *     A shard is split into chunks of {@link #CHUNK_SIZE} bytes, the last one possibly shorter,
+ *     and every chunk has a CRC32. Layout, big endian: chunk size, chunk count, then the
+ *     checksum of every chunk.
+ * </p>
+ */
+public final class ShardChecksums {
+
+    /** The size of a chunk in bytes, a multiple of any SQLite page size up to 64k */
+    public static final int CHUNK_SIZE = 64 * 1024;
+
+    private ShardChecksums() {
+        // Intentionally empty
+    }
+
+    /**
+     * Gets the file name of the checksums of a shard
+     *
+     * @param shardFileName The file name of the shard
+     * @return the file name of the checksums
+     */
+    public static String fileName(String shardFileName) {
+        return shardFileName + ".crc";
+    }
+
+    /**
+     * Computes the checksum of a chunk
+     *
+     * @param chunk The buffer holding the chunk
+     * @param length The length of the chunk
+     * @return the checksum of the chunk
+     */
+    public static int checksum(byte[] chunk, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(chunk, 0, length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Writes the checksums of a shard
+     *
+     * @param shard The shard
+     * @param outputStream The stream to write the checksums to, which is not closed
+     * @return the number of chunks
+     * @throws IOException if the shard could not be read or the checksums could not be written
+     */
+    public static int write(File shard, OutputStream outputStream) throws IOException {
+
+        int count = (int) ((shard.length() + CHUNK_SIZE - 1) / CHUNK_SIZE);
+
+        DataOutputStream output = new DataOutputStream(outputStream);
+        output.writeInt(CHUNK_SIZE);
+        output.writeInt(count);
+
+        try (DataInputStream input = new DataInputStream(new FileInputStream(shard))) {
+            byte[] chunk = new byte[CHUNK_SIZE];
+
+            for (int i = 0; i < count; i++) {
+                int length = (int) Math.min(CHUNK_SIZE, shard.length() - (long) i * CHUNK_SIZE);
+                input.readFully(chunk, 0, length);
+                output.writeInt(checksum(chunk, length));
+            }
+        }
+
+        output.flush();
+        return count;
+    }
+
+    /**
+     * Reads the checksums of a shard
+     *
+     * @param inputStream The stream to read the checksums from, which is not closed
+     * @return the checksum of every chunk, in order
+     * @throws IOException if the checksums could not be read or use a different chunk size
+     */
+    public static int[] read(InputStream inputStream) throws IOException {
+
+        DataInputStream input = new DataInputStream(inputStream);
+        int chunkSize = input.readInt();
+
+        if (chunkSize != CHUNK_SIZE) {
+            throw new IOException("Unsupported chunk size " + chunkSize);
+        }
+
+        int[] checksums = new int[input.readInt()];
+
+        for (int i = 0; i < checksums.length; i++) {
+            checksums[i] = input.readInt();
+        }
+
+        return checksums;
+    }
+}
@@ -0,0 +1,113 @@
+package com.mbcdev.folkets;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Decides which shard of a dictionary table a word lives in. Shared between the build, which
+ * splits the dictionary into shards, and the app, which routes searches to them.
+ * <p>
+ *     A shard holds the words of one table whose {@link SearchKeys search key} starts with a
+ *     character in a bucket. Buckets are contiguous, ascending ranges of code points: one bucket
+ *     per letter, upper and lower case apart, plus buckets for the gaps in between. Because the
+ *     ranges are ordered, reading the shards of a table in bucket order gives the words in the
+ *     order of their keys.
+ * </p>
+ */
+public final class ShardKeys {
+
+    private static final int[] BUCKET_STARTS = buildBucketStarts();
+
+    private ShardKeys() {
+        // Intentionally empty
+    }
+
+    /**
+     * Gets every bucket, in ascending order
+     *
+     * @return every bucket, in ascending order
+     */
+    public static int[] allBuckets() {
+        return BUCKET_STARTS.clone();
+    }
+
+    /**
+     * Gets the bucket that a word, or a search key, belongs in
+     *
+     * @param word The word or search key
+     * @return The first code point of the bucket that the word belongs in
+     */
+    public static int bucketOf(String word) {
+
+        if (word == null || word.length() == 0) {
+            return BUCKET_STARTS[0];
+        }
+
+        int index = Arrays.binarySearch(BUCKET_STARTS, word.codePointAt(0));
+        return index >= 0 ? BUCKET_STARTS[index] : BUCKET_STARTS[-index - 2];
+    }
+
+    /**
+     * Gets the buckets that can hold the words whose search keys start with a key. A leading
+     * wildcard can match any bucket.
+     *
+     * @param key The {@link SearchKeys search key} of the prefix being searched for
+     * @return The buckets to search, in ascending order
+     */
+    public static int[] bucketsFor(String key) {
+
+        if (key == null || key.length() == 0) {
+            return allBuckets();
+        }
+
+        int first = key.codePointAt(0);
+
+        if (first == '%' || first == '_') {
+            return allBuckets();
+        }
+
+        return new int[] { bucketOf(key) };
+    }
+
+    /**
+     * Gets the file name of a shard
+     *
+     * @param tableName The table that the shard is part of
+     * @param bucket The bucket that the shard holds
+     * @return the file name of the shard
+     */
+    public static String fileName(String tableName, int bucket) {
+        return String.format(Locale.US, "%s_%04x.db", tableName, bucket);
+    }
+
+    /**
+     * Builds the bucket boundaries. Every letter, upper and lower case, of the English and Swedish
+     * alphabets gets its own bucket, as do the characters that {@link SearchKeys} writes å, ä and ö
+     * as, and the code points in between are grouped into buckets.
+     *
+     * @return The first code point of every bucket, ascending
+     */
+    private static int[] buildBucketStarts() {
+
+        String letters = "ABCDEFGHIJKLMNOPQRSTUVWXYZ" + "abcdefghijklmnopqrstuvwxyz"
+                + SearchKeys.SWEDISH_LETTERS + "\u00c4\u00c5\u00d6" + "\u00e4\u00e5\u00f6";
+
+        int[] starts = new int[1 + letters.length() * 2];
+        int count = 0;
+        starts[count++] = 0;
+
+        for (int i = 0; i < letters.length(); i++) {
+            int letter = letters.charAt(i);
+
+            if (starts[count - 1] != letter) {
+                starts[count++] = letter;
+            }
+
+            starts[count++] = letter + 1;
+        }
+
+        int[] buckets = Arrays.copyOf(starts, count);
+        Arrays.sort(buckets);
+        return buckets;
+    }
+}
@@ -0,0 +1,251 @@
+package com.mbcdev.folkets;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Describes the full text index over the examples, idioms, definitions and explanations of a
+ * table. Shared between the build, which writes the index into a shard of its own, and the app,
+ * which searches it.
+ * <p>
+ *     The index is an FTS4 table without content, so it only stores the row ids of the words and
+ *     the tokens of their texts. The texts themselves are kept in an entries table next to it, so
+ *     that snippets can be cut without installing the shards of the words.
+ * </p>
+ * <p>
+ *     FTS4 only lower cases ASCII letters, so texts and queries are {@link #fold(String) folded}
+ *     before they are tokenized. Folding keeps the length of the text, so a match found in the
+ *     folded text is at the same position in the original.
+ * </p>
+ */
+public final class TextIndex {
+
+    /** The columns of a table that are indexed, in the order of the index */
+    public static final String[] COLUMNS = { "examples", "idioms", "definition", "explanation" };
+
+    /** The bucket of the shard holding the index, which has a single shard per table */
+    public static final int BUCKET = 0;
+
+    /** The shortest prefix that is searched for as a prefix, shorter ones have to match whole */
+    public static final int MIN_PREFIX_LENGTH = 2;
+
+    private static final String SUFFIX = "_text";
+    private static final String ENTRIES_SUFFIX = "_entries";
+
+    private TextIndex() {
+        // Intentionally empty
+    }
+
+    /**
+     * Gets the name of the index of a table. The shard holding the index uses it as its table.
+     *
+     * @param tableName The dictionary table
+     * @return the name of the FTS table
+     */
+    public static String tableName(String tableName) {
+        return tableName + SUFFIX;
+    }
+
+    /**
+     * Checks whether a table name is the name of a full text index rather than of a dictionary
+     * table
+     *
+     * @param tableName The table name
+     * @return true if it names a full text index
+     */
+    public static boolean isIndexName(String tableName) {
+        return tableName.endsWith(SUFFIX);
+    }
+
+    /**
+     * Gets the name of the table holding the original texts of the index of a table
+     *
+     * @param tableName The dictionary table
+     * @return the name of the entries table
+     */
+    public static String entriesTableName(String tableName) {
+        return tableName(tableName) + ENTRIES_SUFFIX;
+    }
+
+    /**
+     * Folds a text for the index: lower cases it, drops accents other than those of å, ä and ö,
+     * and turns punctuation outside of ASCII into spaces, character by character, so that the
+     * folded text has the same length as the original.
+     *
+     * @param text The text
+     * @return the folded text, or null if the text is null
+     */
+    public static String fold(String text) {
+
+        if (text == null) {
+            return null;
+        }
+
+        char[] chars = text.toCharArray();
+
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = fold(chars[i]);
+        }
+
+        return new String(chars);
+    }
+
+    /**
+     * Splits a folded text into the tokens that FTS4's simple tokenizer would find, runs of ASCII
+     * letters and digits and of any characters outside of ASCII
+     *
+     * @param folded The folded text
+     * @return the tokens, in order
+     */
+    public static List<String> tokens(String folded) {
+
+        List<String> tokens = new ArrayList<>();
+        int start = -1;
+
+        for (int i = 0; i <= folded.length(); i++) {
+            boolean token = i < folded.length() && isTokenChar(folded.charAt(i));
+
+            if (token && start < 0) {
+                start = i;
+            } else if (!token && start >= 0) {
+                tokens.add(folded.substring(start, i));
+                start = -1;
+            }
+        }
+
+        return tokens;
+    }
+
+    /**
+     * Finds the first place where a phrase matches a folded text the way the index matches it:
+     * its tokens one after another, the last one as a prefix if it is long enough
+     *
+     * @param folded The folded text
+     * @param phrase The tokens of the folded phrase, see {@link #tokens(String)}
+     * @return the start and end of the match in the text, or null if the phrase does not match
+     */
+    public static int[] findPhrase(String folded, List<String> phrase) {
+
+        if (phrase.isEmpty()) {
+            return null;
+        }
+
+        List<int[]> spans = new ArrayList<>();
+        int start = -1;
+
+        for (int i = 0; i <= folded.length(); i++) {
+            boolean token = i < folded.length() && isTokenChar(folded.charAt(i));
+
+            if (token && start < 0) {
+                start = i;
+            } else if (!token && start >= 0) {
+                spans.add(new int[] { start, i });
+                start = -1;
+            }
+        }
+
+        String last = phrase.get(phrase.size() - 1);
+        boolean prefix = last.length() >= MIN_PREFIX_LENGTH;
+
+        for (int first = 0; first + phrase.size() <= spans.size(); first++) {
+            boolean matches = true;
+
+            for (int i = 0; i < phrase.size() && matches; i++) {
+                int[] span = spans.get(first + i);
+                String token = folded.substring(span[0], span[1]);
+
+                matches = i == phrase.size() - 1 && prefix
+                        ? token.startsWith(last) : token.equals(phrase.get(i));
+            }
+
+            if (matches) {
+                return new int[] {
+                        spans.get(first)[0], spans.get(first + phrase.size() - 1)[1] };
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Builds the FTS4 match expression for a query being typed: the query as a phrase, its last
+     * token matched as a prefix if it is long enough
+     *
+     * @param query The query
+     * @return the match expression, or null if the query has no tokens
+     */
+    public static String matchExpression(String query) {
+
+        List<String> tokens = tokens(fold(query));
+
+        if (tokens.isEmpty()) {
+            return null;
+        }
+
+        StringBuilder expression = new StringBuilder("\"");
+
+        for (int i = 0; i < tokens.size(); i++) {
+            if (i > 0) {
+                expression.append(' ');
+            }
+
+            expression.append(tokens.get(i));
+        }
+
+        if (tokens.get(tokens.size() - 1).length() >= MIN_PREFIX_LENGTH) {
+            expression.append('*');
+        }
+
+        return expression.append('"').toString();
+    }
+
+    /**
+     * Checks whether FTS4's simple tokenizer treats a character as part of a token
+     *
+     * @param c The character
+     * @return true if the character is part of a token
+     */
+    private static boolean isTokenChar(char c) {
+        return c >= 0x80 || (c >= '0' && c <= '9') || (c >= 'a' && c <= 'z')
+                || (c >= 'A' && c <= 'Z');
+    }
+
+    /**
+     * Folds a single character, see {@link #fold(String)}
+     *
+     * @param c The character
+     * @return the folded character
+     */
+    private static char fold(char c) {
+
+        char lower = Character.toLowerCase(c);
+
+        if (lower < 0x80 || lower == '\u00e5' || lower == '\u00e4' || lower == '\u00f6') {
+            return lower;
+        }
+
+        if (lower == '\u00e6') {
+            return '\u00e4';
+        }
+
+        if (lower == '\u00f8') {
+            return '\u00f6';
+        }
+
+        // The tokenizer would take any other character as part of a word, dashes and non
+        // breaking spaces included
+        if (!Character.isLetterOrDigit(lower)
+                && Character.getType(lower) != Character.NON_SPACING_MARK) {
+            return ' ';
+        }
+
+        String decomposed = Normalizer.normalize(String.valueOf(lower), Normalizer.Form.NFD);
+
+        if (decomposed.length() > 1 && Character.isLetter(decomposed.charAt(0))) {
+            return decomposed.charAt(0);
+        }
+
+        return lower;
+    }
+}
@@ -0,0 +1,127 @@
+package com.mbcdev.folkets;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Describes the reverse translation index of a table, which finds the words of a table by their
+ * translations. Shared between the build, which writes the index into a shard of its own, and the
+ * app, which searches it.
+ * <p>
+ *     The index holds one row for every {@link SearchKeys search key} of every translation of
+ *     every word, along with the row id and headword of the word. The keys of a translation are
+ *     the key of the whole translation and the key of every part of it that starts at a word, so
+ *     that "to go" is found by both "to go" and "go". A prefix of a translation is then searched
+ *     for as a range over the keys, the same way headwords are.
+ * </p>
+ */
+public final class TranslationIndex {
+
+    /** The bucket of the shard holding the index, which has a single shard per table */
+    public static final int BUCKET = 0;
+
+    /** The column holding the row id of the word in its table */
+    public static final String ROW_ID_COLUMN = "word_rowid";
+
+    /** The column holding the headword, which decides the shard the word is in */
+    public static final String WORD_COLUMN = "word";
+
+    private static final String SUFFIX = "_translations";
+    private static final String TRANSLATION_SEPARATOR = "**";
+    private static final String COMMENT_SEPARATOR = "||";
+
+    private TranslationIndex() {
+        // Intentionally empty
+    }
+
+    /**
+     * Gets the name of the index of a table. The shard holding the index uses it as its table.
+     *
+     * @param tableName The dictionary table
+     * @return the name of the index table
+     */
+    public static String tableName(String tableName) {
+        return tableName + SUFFIX;
+    }
+
+    /**
+     * Checks whether a table name is the name of a reverse translation index rather than of a
+     * dictionary table
+     *
+     * @param tableName The table name
+     * @return true if it names a reverse translation index
+     */
+    public static boolean isIndexName(String tableName) {
+        return tableName.endsWith(SUFFIX);
+    }
+
+    /**
+     * Gets the name of the index over the keys of the index of a table
+     *
+     * @param tableName The dictionary table
+     * @return the name of the SQL index
+     */
+    public static String keyIndexName(String tableName) {
+        return SearchKeys.indexName(tableName(tableName));
+    }
+
+    /**
+     * Gets the keys that a word is found by, from its translations as they are stored in the
+     * dictionary: translations separated by **, each optionally followed by || and a comment.
+     * Comments are not indexed.
+     *
+     * @param translations The translations of the word, may be null
+     * @return the distinct keys, in the order they were found
+     */
+    public static List<String> keysOf(String translations) {
+
+        Set<String> keys = new LinkedHashSet<>();
+
+        if (translations == null) {
+            return new ArrayList<>(keys);
+        }
+
+        int start = 0;
+
+        while (start <= translations.length()) {
+            int end = translations.indexOf(TRANSLATION_SEPARATOR, start);
+
+            if (end < 0) {
+                end = translations.length();
+            }
+
+            String translation = translations.substring(start, end);
+            int comment = translation.indexOf(COMMENT_SEPARATOR);
+
+            if (comment >= 0) {
+                translation = translation.substring(0, comment);
+            }
+
+            addKeys(keys, SearchKeys.keyOf(translation));
+            start = end + TRANSLATION_SEPARATOR.length();
+        }
+
+        return new ArrayList<>(keys);
+    }
+
+    /**
+     * Adds the key of a translation and the keys of its parts that start at a word
+     *
+     * @param keys The keys found so far
+     * @param key The key of the translation
+     */
+    private static void addKeys(Set<String> keys, String key) {
+
+        if (key.length() == 0) {
+            return;
+        }
+
+        keys.add(key);
+
+        for (int space = key.indexOf(' '); space >= 0; space = key.indexOf(' ', space + 1)) {
+            keys.add(key.substring(space + 1));
+        }
+    }
+}
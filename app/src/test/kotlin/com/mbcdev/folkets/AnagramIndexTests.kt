@@ -0,0 +1,106 @@
+package com.mbcdev.folkets
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.Before
+import org.junit.Test
+import java.util.Random
+
+/**
+ * Tests for [AnagramIndex]
+ */
+class AnagramIndexTests {
+
+    private val words = listOf("ost", "sot", "tos", "os", "så", "stol", "lots", "Ost", "to st")
+
+    private lateinit var index: AnagramIndex
+
+    @Before
+    fun setUp() {
+        index = buildIndex(words)
+    }
+
+    private fun buildIndex(words: List<String>): AnagramIndex {
+        return IndexSnapshots.build(AnagramIndex.snapshot("folkets_sv_en"), words)
+    }
+
+    private fun keysOf(index: AnagramIndex, positions: IntArray): List<String> {
+        return positions.map { index.getKey(it) }
+    }
+
+    @Test
+    fun signatureShouldSortLettersAndDropSpaces() {
+        assertThat(AnagramIndex.signatureOf("to st")).isEqualTo("ostt")
+        assertThat(AnagramIndex.signatureOf("")).isEmpty()
+    }
+
+    @Test
+    fun everyHeadwordShouldBeIndexedWithItsRowId() {
+        val indexed = (0..index.size() - 1).map { index.getKey(it) to index.getRowId(it) }
+        val expected = words.mapIndexed { rowId, word -> SearchKeys.keyOf(word) to rowId + 1 }
+
+        assertThat(indexed).containsExactlyElementsIn(expected)
+    }
+
+    @Test
+    fun findAnagramsShouldFindTheSameLettersInSearchOrder() {
+        assertThat(keysOf(index, index.findAnagrams("ots", 0, 10))).containsExactly(
+                "ost", "ost", "sot", "tos").inOrder()
+        assertThat(keysOf(index, index.findAnagrams("slot", 0, 10))).containsExactly(
+                "lots", "stol").inOrder()
+    }
+
+    @Test
+    fun findAnagramsShouldReturnPages() {
+        assertThat(keysOf(index, index.findAnagrams("ots", 1, 2))).containsExactly(
+                "ost", "sot").inOrder()
+        assertThat(index.findAnagrams("ots", 4, 2)).isEmpty()
+        assertThat(index.findAnagrams("xyz", 0, 2)).isEmpty()
+    }
+
+    @Test
+    fun findFormableShouldSpendEveryLetterOnce() {
+        assertThat(keysOf(index, index.findFormable("tso", 0, 10))).containsExactly(
+                "ost", "ost", "sot", "tos", "os").inOrder()
+        assertThat(keysOf(index, index.findFormable("otst", 0, 10))).containsExactly(
+                "to st", "ost", "ost", "sot", "tos", "os").inOrder()
+    }
+
+    @Test
+    fun findFormableShouldReturnPages() {
+        assertThat(keysOf(index, index.findFormable("tso", 3, 10))).containsExactly(
+                "tos", "os").inOrder()
+        assertThat(index.findFormable("", 0, 10)).isEmpty()
+    }
+
+    @Test
+    fun findFormableShouldAnswerLikeAScan() {
+        val random = Random(21)
+        val letters = "abcdeåäö "
+        val words = (1..2000).map {
+            (1..1 + random.nextInt(10)).map { letters[random.nextInt(letters.length)] }
+                    .joinToString("")
+        }
+        val index = buildIndex(words)
+        val keys = (0..index.size() - 1).map { index.getKey(it) }
+
+        for (word in words.take(50)) {
+            val key = SearchKeys.keyOf(word)
+            val available = AnagramIndex.signatureOf(key)
+            val expected = keys.filter {
+                val signature = AnagramIndex.signatureOf(it)
+                signature.length > 0 && isSpelledWith(signature, available)
+            }
+
+            assertThat(keysOf(index, index.findFormable(key, 0, Int.MAX_VALUE)))
+                    .containsExactlyElementsIn(expected)
+        }
+    }
+
+    /**
+     * Checks whether a signature uses only the letters of another, each at most as often
+     */
+    private fun isSpelledWith(signature: String, letters: String): Boolean {
+        val remaining = letters.toMutableList()
+        return signature.all { remaining.remove(it) }
+    }
+}
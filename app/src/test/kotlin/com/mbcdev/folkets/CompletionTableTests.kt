@@ -0,0 +1,46 @@
+package com.mbcdev.folkets
+
+import org.junit.Test
+import com.google.common.truth.Truth.assertThat
+
+/**
+ * Tests for [CompletionTable]
+ */
+class CompletionTableTests {
+
+    @Test
+    fun shortPrefixesShouldBeServed() {
+        assertThat(CompletionTable.isServed("a")).isTrue()
+        assertThat(CompletionTable.isServed("ba")).isTrue()
+    }
+
+    @Test
+    fun longerPrefixesShouldNotBeServed() {
+        assertThat(CompletionTable.isServed("bar")).isFalse()
+    }
+
+    @Test
+    fun emptyAndWildcardPrefixesShouldNotBeServed() {
+        assertThat(CompletionTable.isServed("")).isFalse()
+        assertThat(CompletionTable.isServed("%")).isFalse()
+        assertThat(CompletionTable.isServed("b_")).isFalse()
+    }
+
+    @Test
+    fun prefixesShouldBeShortestFirst() {
+        assertThat(CompletionTable.prefixesOf("barn")).containsExactly("b", "ba").inOrder()
+        assertThat(CompletionTable.prefixesOf("i")).containsExactly("i")
+    }
+
+    @Test
+    fun prefixesShouldNotEndInASpace() {
+        assertThat(CompletionTable.prefixesOf("a bit")).containsExactly("a")
+    }
+
+    @Test
+    fun tableNamesShouldBeRecognised() {
+        assertThat(CompletionTable.isTableName(CompletionTable.tableName("folkets_sv_en")))
+                .isTrue()
+        assertThat(CompletionTable.isTableName("folkets_sv_en")).isFalse()
+    }
+}
@@ -0,0 +1,77 @@
+package com.mbcdev.folkets
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.Before
+import org.junit.Test
+
+/**
+ * Tests for [CompoundSplitter]
+ */
+class CompoundSplitterTests {
+
+    private val words = listOf("sjuk", "hus", "sjukhus", "parkering", "park", "kväll", "mat",
+            "arbete", "arbeta", "marknad", "politik", "fot", "boll", "fotboll", "lag", "s", "e")
+
+    private lateinit var index: HeadwordIndex
+
+    @Before
+    fun setUp() {
+        index = buildIndex(words)
+    }
+
+    private fun buildIndex(words: List<String>): HeadwordIndex {
+        return IndexSnapshots.build(HeadwordIndex.snapshot("folkets_sv_en"), words)
+    }
+
+    private fun split(compound: String, limit: Int = 3): List<List<String>> {
+        return CompoundSplitter.split(index, SearchKeys.keyOf(compound), limit).map { split ->
+            split.positions.zip(split.links.toList()).map { part ->
+                (if (part.second != 0.toChar()) "(${part.second})" else "") +
+                        index.getKey(part.first)
+            }
+        }
+    }
+
+    @Test
+    fun compoundsShouldBeSplitIntoTheFewestParts() {
+        assertThat(split("sjukhusparkering")).containsExactly(
+                listOf("sjukhus", "parkering"), listOf("sjuk", "hus", "parkering")).inOrder()
+    }
+
+    @Test
+    fun partsShouldBeLinkedByAnSOrAnE() {
+        assertThat(split("kvällsmat").first()).containsExactly("kv|ll", "(s)mat").inOrder()
+        assertThat(split("fotbollslag").first()).containsExactly("fotboll", "(s)lag").inOrder()
+    }
+
+    @Test
+    fun partsWithoutALinkShouldRankFirst() {
+        assertThat(split("arbetemarknad").first()).containsExactly("arbete", "marknad")
+                .inOrder()
+        assertThat(split("arbetsmarknadspolitik")).isEmpty()
+    }
+
+    @Test
+    fun headwordsShouldNotBeSplitIntoThemselves() {
+        assertThat(split("fotboll")).containsExactly(listOf("fot", "boll"))
+        assertThat(split("park")).isEmpty()
+    }
+
+    @Test
+    fun partsShouldNotBeSingleLetters() {
+        assertThat(split("hussmat")).containsExactly(listOf("hus", "(s)mat"))
+    }
+
+    @Test
+    fun keysThatCanNotBeSplitShouldHaveNoSplits() {
+        assertThat(split("sjukhusparkerimg")).isEmpty()
+        assertThat(split("fot boll")).isEmpty()
+        assertThat(split("")).isEmpty()
+    }
+
+    @Test
+    fun splitsShouldStopAtTheLimit() {
+        assertThat(split("sjukhusparkering", 1)).containsExactly(
+                listOf("sjukhus", "parkering"))
+    }
+}
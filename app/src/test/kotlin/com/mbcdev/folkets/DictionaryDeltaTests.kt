@@ -0,0 +1,243 @@
+package com.mbcdev.folkets
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.Before
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.security.MessageDigest
+import java.util.Random
+
+/**
+ * Tests for [DictionaryDelta], and for patching a shard with one in [DictionaryInstaller]
+ */
+class DictionaryDeltaTests {
+
+    private val pageSize = 1024
+
+    private lateinit var random: Random
+    private lateinit var base: ByteArray
+
+    @Before
+    fun setUp() {
+        random = Random(6)
+        base = shard(5)
+    }
+
+    @Test
+    fun fileNameShouldNameTheShardAndItsBase() {
+        assertThat(DictionaryDelta.fileName("folkets_sv_en_0061.db", "abc"))
+                .isEqualTo("folkets_sv_en_0061.db.abc.delta")
+    }
+
+    @Test
+    fun changedPageShouldBeTheOnlyPageInTheDelta() {
+        val target = base.copyOf()
+        target[2 * pageSize + 10] = (target[2 * pageSize + 10] + 1).toByte()
+
+        assertThat(pagesIn(base, target)).isEqualTo(1)
+        assertThat(patch(base, delta(base, target))).isEqualTo(target)
+    }
+
+    @Test
+    fun grownShardShouldBePatchedWithTheNewPages() {
+        val target = base + randomBytes(pageSize * 5 / 2)
+
+        assertThat(pagesIn(base, target)).isEqualTo(3)
+        assertThat(patch(base, delta(base, target))).isEqualTo(target)
+    }
+
+    @Test
+    fun shrunkShardShouldBeCutToTheNewLength() {
+        val target = base.copyOf(3 * pageSize)
+
+        assertThat(pagesIn(base, target)).isEqualTo(0)
+        assertThat(patch(base, delta(base, target))).isEqualTo(target)
+    }
+
+    @Test
+    fun identicalShardShouldHaveAnEmptyDelta() {
+        assertThat(pagesIn(base, base)).isEqualTo(0)
+        assertThat(patch(base, delta(base, base))).isEqualTo(base)
+    }
+
+    @Test
+    fun deltaShouldReturnTheMd5OfTheTarget() {
+        val target = base + randomBytes(pageSize)
+        val file = write(base)
+
+        val md5 = RandomAccessFile(file, "rw").use { shard ->
+            DictionaryDelta.apply(ByteArrayInputStream(delta(base, target)), md5(base), shard)
+        }
+
+        assertThat(md5).isEqualTo(md5(target))
+    }
+
+    @Test
+    fun deltaOfOtherBaseShouldLeaveTheShardUntouched() {
+        val target = base + randomBytes(pageSize)
+        val file = write(base)
+
+        val failure = failureOf {
+            RandomAccessFile(file, "rw").use { shard ->
+                DictionaryDelta.apply(
+                        ByteArrayInputStream(delta(base, target)), md5(target), shard)
+            }
+        }
+
+        assertThat(failure).isNotNull()
+        assertThat(file.readBytes()).isEqualTo(base)
+    }
+
+    @Test
+    fun truncatedDeltaShouldFail() {
+        val target = base.copyOf()
+        target[pageSize] = (target[pageSize] + 1).toByte()
+        val delta = delta(base, target)
+
+        for (length in listOf(0, 6, delta.size / 2, delta.size - 4)) {
+            val file = write(base)
+
+            val failure = failureOf {
+                RandomAccessFile(file, "rw").use { shard ->
+                    DictionaryDelta.apply(
+                            ByteArrayInputStream(delta.copyOf(length)), md5(base), shard)
+                }
+            }
+
+            assertThat(failure).isNotNull()
+        }
+    }
+
+    @Test
+    fun malformedDeltaShouldLeaveTheShardUntouched() {
+        val delta = delta(base, base + randomBytes(pageSize))
+        delta[0] = (delta[0] + 1).toByte()
+        val file = write(base)
+
+        val failure = failureOf {
+            RandomAccessFile(file, "rw").use { shard ->
+                DictionaryDelta.apply(ByteArrayInputStream(delta), md5(base), shard)
+            }
+        }
+
+        assertThat(failure).isNotNull()
+        assertThat(file.readBytes()).isEqualTo(base)
+    }
+
+    @Test
+    fun patchShouldVerifyThePatchedShard() {
+        val target = base + randomBytes(pageSize)
+        val file = write(base)
+
+        DictionaryInstaller.patch(
+                ByteArrayInputStream(delta(base, target)), file, md5(base), md5(target))
+
+        assertThat(file.readBytes()).isEqualTo(target)
+    }
+
+    @Test
+    fun patchShouldFailWhenTheDeltaIsForAnotherRelease() {
+        val target = base + randomBytes(pageSize)
+        val file = write(base)
+
+        val failure = failureOf {
+            DictionaryInstaller.patch(
+                    ByteArrayInputStream(delta(base, target)), file, md5(base), md5(base))
+        }
+
+        assertThat(failure).isNotNull()
+    }
+
+    @Test
+    fun patchShouldFailWhenTheInstalledShardIsNotTheBase() {
+        val target = base + randomBytes(pageSize)
+        val installed = base.copyOf()
+        installed[pageSize] = (installed[pageSize] + 1).toByte()
+        val file = write(installed)
+
+        val failure = failureOf {
+            DictionaryInstaller.patch(
+                    ByteArrayInputStream(delta(base, target)), file, md5(base), md5(target))
+        }
+
+        assertThat(failure).isNotNull()
+    }
+
+    @Test
+    fun patchShouldLeaveAShardOfAnotherBaseUntouched() {
+        val target = base + randomBytes(pageSize)
+        val file = write(base)
+
+        val failure = failureOf {
+            DictionaryInstaller.patch(
+                    ByteArrayInputStream(delta(base, target)), file, md5(target), md5(target))
+        }
+
+        assertThat(failure).isNotNull()
+        assertThat(file.readBytes()).isEqualTo(base)
+    }
+
+    /**
+     * Random pages with the header of an SQLite file with our page size
+     */
+    private fun shard(pages: Int): ByteArray {
+        val shard = randomBytes(pages * pageSize)
+        val header = "SQLite format 3\u0000".toByteArray(Charsets.US_ASCII)
+        System.arraycopy(header, 0, shard, 0, header.size)
+        shard[16] = (pageSize shr 8).toByte()
+        shard[17] = pageSize.toByte()
+        return shard
+    }
+
+    private fun randomBytes(size: Int): ByteArray {
+        val bytes = ByteArray(size)
+        random.nextBytes(bytes)
+        return bytes
+    }
+
+    private fun write(bytes: ByteArray): File {
+        val file = createTempFile("shard", ".db")
+        file.deleteOnExit()
+        file.writeBytes(bytes)
+        return file
+    }
+
+    private fun pagesIn(base: ByteArray, target: ByteArray): Int {
+        return DictionaryDelta.write(write(base), md5(base), write(target), md5(target),
+                ByteArrayOutputStream())
+    }
+
+    private fun delta(base: ByteArray, target: ByteArray): ByteArray {
+        val output = ByteArrayOutputStream()
+        DictionaryDelta.write(write(base), md5(base), write(target), md5(target), output)
+        return output.toByteArray()
+    }
+
+    private fun patch(base: ByteArray, delta: ByteArray): ByteArray {
+        val file = write(base)
+
+        RandomAccessFile(file, "rw").use { shard ->
+            DictionaryDelta.apply(ByteArrayInputStream(delta), md5(base), shard)
+        }
+
+        return file.readBytes()
+    }
+
+    private fun md5(bytes: ByteArray): String {
+        return MessageDigest.getInstance("MD5").digest(bytes)
+                .joinToString("") { "%02x".format(it) }
+    }
+
+    private fun failureOf(block: () -> Unit): IOException? {
+        try {
+            block()
+            return null
+        } catch (e: IOException) {
+            return e
+        }
+    }
+}
@@ -14,4 +14,16 @@ class ErrorTypeTests {
     fun nullDatabaseErrorHasCorrectMessage() {
         assertThat(ErrorType.DATABASE_NULL.stringResourceId).isEqualTo(R.string.error_database_null)
     }
+
+    @Test
+    fun databaseInstallFailedErrorHasCorrectMessage() {
+        assertThat(ErrorType.DATABASE_INSTALL_FAILED.stringResourceId)
+                .isEqualTo(R.string.error_database_install_failed)
+    }
+
+    @Test
+    fun searchFailedErrorHasCorrectMessage() {
+        assertThat(ErrorType.SEARCH_FAILED.stringResourceId)
+                .isEqualTo(R.string.error_search_failed)
+    }
 }
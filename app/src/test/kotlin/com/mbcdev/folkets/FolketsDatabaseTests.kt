@@ -0,0 +1,128 @@
+package com.mbcdev.folkets
+
+import android.content.SharedPreferences
+import com.google.common.truth.Truth.assertThat
+import org.junit.Before
+import org.junit.Test
+import org.mockito.Matchers.anyString
+import org.mockito.Mockito.`when`
+import org.mockito.Mockito.mock
+import org.mockito.Mockito.verify
+import java.io.File
+
+/**
+ * Tests for [FolketsDatabase]
+ */
+class FolketsDatabaseTests {
+
+    private val baselineHash = "0f343b0931126a20f133d67c2b018a3b"
+    private val fingerprint = "9e107d9d372bb6826bd81d3542a419d6"
+
+    private val shards = arrayOf(
+            DictionaryShard("folkets_sv_en", 0x0061, "e4d909c290d0fb1ca068ffaddf22cbd0", 10L),
+            DictionaryShard("folkets_sv_en", 0x0062, "d41d8cd98f00b204e9800998ecf8427e", 20L))
+
+    private lateinit var shardsDir: File
+    private lateinit var installedHashes: MutableMap<String, String>
+    private lateinit var shardPreferences: SharedPreferences
+
+    @Before
+    fun setUp() {
+        shardsDir = createTempDir("dictionary")
+        shardsDir.deleteOnExit()
+        installedHashes = mutableMapOf()
+        shardPreferences = mock(SharedPreferences::class.java)
+
+        `when`(shardPreferences.getString(anyString(), anyString())).thenAnswer { invocation ->
+            installedHashes[invocation.arguments[0] as String] ?: invocation.arguments[1]
+        }
+    }
+
+    @Test
+    fun shardsShouldBeInstalledOverBaselineDatabase() {
+        val toInstall = FolketsDatabase.findShardsToInstall(
+                baselineHash, fingerprint, shardPreferences, shardsDir, *shards)
+
+        assertThat(toInstall).containsExactly(*shards)
+    }
+
+    @Test
+    fun shardsShouldBeInstalledWhenBaselineHashIsStoredAsFingerprint() {
+        val toInstall = FolketsDatabase.findShardsToInstall(
+                baselineHash, baselineHash, shardPreferences, shardsDir, *shards)
+
+        assertThat(toInstall).containsExactly(*shards)
+    }
+
+    @Test
+    fun nothingShouldBeInstalledWhenEveryShardIsInstalled() {
+        shards.forEach { install(it) }
+
+        val toInstall = FolketsDatabase.findShardsToInstall(
+                fingerprint, fingerprint, shardPreferences, shardsDir, *shards)
+
+        assertThat(toInstall).isNull()
+    }
+
+    @Test
+    fun onlyChangedShardsShouldBeInstalled() {
+        shards.forEach { install(it) }
+        installedHashes[shards[1].fileName] = baselineHash
+
+        val toInstall = FolketsDatabase.findShardsToInstall(
+                baselineHash, fingerprint, shardPreferences, shardsDir, *shards)
+
+        assertThat(toInstall).containsExactly(shards[1])
+    }
+
+    @Test
+    fun missingShardShouldBeInstalled() {
+        shards.forEach { install(it) }
+        File(shardsDir, shards[0].fileName).delete()
+
+        val toInstall = FolketsDatabase.findShardsToInstall(
+                baselineHash, fingerprint, shardPreferences, shardsDir, *shards)
+
+        assertThat(toInstall).containsExactly(shards[0])
+    }
+
+    @Test
+    fun rankedHitsShouldMergeWithUnrankedHits() {
+        val ranked = listOf(hit("hus", 0), hit("husbil", 9), hit("husvagn", 3))
+        val unranked = listOf(hit("husa", 1), hit("hush\u00e5ll", 7), hit("husdjur", 8))
+
+        val words = FolketsDatabase.mergeByRank(
+                "hus", Language.SWEDISH, ranked, Language.ENGLISH, unranked)
+
+        assertThat(words).containsExactly(ranked[0].word, ranked[1].word, unranked[2].word,
+                unranked[1].word, ranked[2].word, unranked[0].word).inOrder()
+        verify(unranked[0].word).language = Language.ENGLISH
+        verify(ranked[2].word).language = Language.SWEDISH
+    }
+
+    @Test
+    fun hitsOfEmptyKeyShouldMergeByKey() {
+        val first = listOf(hit("a", 0), hit("b", 9))
+        val second = listOf(hit("ab", 5), hit("c", 1))
+
+        val words = FolketsDatabase.mergeByRank(
+                "", Language.SWEDISH, first, Language.ENGLISH, second)
+
+        assertThat(words).containsExactly(
+                first[0].word, second[0].word, first[1].word, second[1].word).inOrder()
+    }
+
+    private fun hit(key: String, score: Int): FolketsDatabase.WordHit {
+        val hit = FolketsDatabase.WordHit(key, 1L, shards[0], null)
+        hit.word = mock(Word::class.java)
+        hit.score = score
+        return hit
+    }
+
+    private fun install(shard: DictionaryShard) {
+        val file = File(shardsDir, shard.fileName)
+        file.writeText(shard.md5)
+        file.deleteOnExit()
+        installedHashes[shard.fileName] = shard.md5
+    }
+}
@@ -0,0 +1,306 @@
+package com.mbcdev.folkets
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.Before
+import org.junit.Test
+import java.util.Random
+
+/**
+ * Tests for [HeadwordIndex]
+ */
+class HeadwordIndexTests {
+
+    private val words = listOf("barn", "Barn", "barnen", "bil", "bilar", "åka", "abc")
+
+    private lateinit var index: HeadwordIndex
+
+    @Before
+    fun setUp() {
+        index = buildIndex(words)
+    }
+
+    private fun buildIndex(
+            words: List<String>, scores: Map<String, Int> = emptyMap()): HeadwordIndex {
+        return IndexSnapshots.build(HeadwordIndex.snapshot("folkets_sv_en"), words, scores)
+    }
+
+    private fun keysIn(index: HeadwordIndex, range: IntArray): List<String> {
+        return (range[0]..range[1] - 1).map { index.getKey(it) }
+    }
+
+    @Test
+    fun everyHeadwordShouldBeIndexed() {
+        assertThat(index.size()).isEqualTo(words.size)
+    }
+
+    @Test
+    fun headwordsShouldBeSortedBySearchKey() {
+        val indexed = (0..index.size() - 1).map { index.getKey(it) }
+        assertThat(indexed).isEqualTo(words.map { SearchKeys.keyOf(it) }.sorted())
+    }
+
+    @Test
+    fun headwordsShouldKeepTheirRowIds() {
+        val indexed = (0..index.size() - 1).map { index.getKey(it) to index.getRowId(it) }
+        val expected = words.mapIndexed { rowId, word -> SearchKeys.keyOf(word) to rowId + 1 }
+        assertThat(indexed).containsExactlyElementsIn(expected)
+    }
+
+    @Test
+    fun prefixRangeShouldCoverMatchingHeadwords() {
+        assertThat(keysIn(index, index.prefixRange("bar"))).containsExactly(
+                "barn", "barn", "barnen").inOrder()
+    }
+
+    @Test
+    fun prefixRangeShouldMatchSearchKeys() {
+        assertThat(keysIn(index, index.prefixRange(SearchKeys.keyOf("B")))).hasSize(5)
+    }
+
+    @Test
+    fun prefixRangeShouldBeEmptyWithoutMatches() {
+        val range = index.prefixRange("xyz")
+        assertThat(range[0]).isEqualTo(range[1])
+    }
+
+    @Test
+    fun prefixRangeShouldHandleSwedishLetters() {
+        assertThat(keysIn(index, index.prefixRange(SearchKeys.keyOf("å")))).containsExactly(
+                SearchKeys.keyOf("åka"))
+    }
+
+    @Test
+    fun emptyPrefixShouldCoverEveryHeadword() {
+        val range = index.prefixRange("")
+        assertThat(range[1] - range[0]).isEqualTo(words.size)
+    }
+
+    @Test
+    fun trieShouldAnswerLikeABinarySearch() {
+        val random = Random(16)
+        val letters = "abcdeåäö "
+        val words = (1..2000).map {
+            (1..1 + random.nextInt(8)).map { letters[random.nextInt(letters.length)] }
+                    .joinToString("")
+        }
+        val index = buildIndex(words)
+        val keys = words.map { SearchKeys.keyOf(it) }.sorted()
+
+        assertThat(index.nodeCount()).isGreaterThan(1)
+        assertThat(index.nodeCount()).isLessThan(words.size)
+
+        for (prefix in keys.map { it.take(random.nextInt(it.length + 1)) } + listOf("zz", "a|q")) {
+            assertThat(keysIn(index, index.prefixRange(prefix)))
+                    .isEqualTo(keys.filter { it.startsWith(prefix) })
+        }
+    }
+
+    @Test
+    fun findSimilarShouldFindHeadwordsWithATypo() {
+        val index = buildIndex(listOf("restaurang", "restaurant", "rest", "orange"))
+        val similar = index.findSimilar(SearchKeys.keyOf("restorang"), 2, 10)
+
+        assertThat(similar.map { index.getKey(it) }).containsExactly("restaurang")
+    }
+
+    @Test
+    fun findSimilarShouldRankByDistanceAndThenBySearchKey() {
+        val similar = index.findSimilar("bar", 2, 10)
+
+        assertThat(similar.map { index.getKey(it) }).containsExactly(
+                "barn", "barn", "abc", "bil", "bilar").inOrder()
+    }
+
+    @Test
+    fun findSimilarShouldCountASwapAsOneEdit() {
+        assertThat(index.findSimilar("bli", 1, 10).map { index.getKey(it) })
+                .containsExactly("bil")
+    }
+
+    @Test
+    fun findSimilarShouldStopAtTheLimit() {
+        assertThat(index.findSimilar("bar", 2, 2).map { index.getKey(it) }).containsExactly(
+                "barn", "barn")
+    }
+
+    @Test
+    fun findSimilarShouldAnswerLikeABruteForceSearch() {
+        val random = Random(18)
+        val letters = "abcdeåäö "
+        val words = (1..2000).map {
+            (1..1 + random.nextInt(10)).map { letters[random.nextInt(letters.length)] }
+                    .joinToString("")
+        }
+        val index = buildIndex(words)
+        val keys = words.map { SearchKeys.keyOf(it) }.sorted()
+
+        for (word in words.take(50)) {
+            val key = SearchKeys.keyOf(word).drop(1) + "a"
+
+            for (maxDistance in 1..2) {
+                val expected = keys.filter { distance(it, key) <= maxDistance }
+                        .sortedBy { distance(it, key) }
+
+                assertThat(index.findSimilar(key, maxDistance, Int.MAX_VALUE)
+                        .map { index.getKey(it) }).isEqualTo(expected)
+            }
+        }
+    }
+
+    @Test
+    fun findPrefixesOfShouldFindTheHeadwordsStartingTheKey() {
+        assertThat(index.findPrefixesOf("barnenbil", 0).map { index.getKey(it) })
+                .containsExactly("barn", "barnen").inOrder()
+        assertThat(index.findPrefixesOf("barnbilar", 4).map { index.getKey(it) })
+                .containsExactly("bil", "bilar").inOrder()
+        assertThat(index.findPrefixesOf("barnbil", 1)).isEmpty()
+    }
+
+    @Test
+    fun findPrefixesOfShouldFindTheFirstOfHeadwordsWithTheSameKey() {
+        val prefixes = index.findPrefixesOf("barn", 0)
+
+        assertThat(prefixes.toList()).containsExactly(index.prefixRange("barn")[0])
+    }
+
+    @Test
+    fun findPrefixesOfShouldAnswerLikeABruteForceSearch() {
+        val random = Random(23)
+        val letters = "abcåäö"
+        val words = (1..2000).map {
+            (1..1 + random.nextInt(6)).map { letters[random.nextInt(letters.length)] }
+                    .joinToString("")
+        }
+        val index = buildIndex(words)
+        val keys = words.map { SearchKeys.keyOf(it) }.toSet()
+
+        for (i in 0..99) {
+            val key = SearchKeys.keyOf(words[random.nextInt(words.size)] +
+                    words[random.nextInt(words.size)])
+            val start = random.nextInt(key.length)
+            val expected = (start + 1..key.length).map { key.substring(start, it) }
+                    .filter { it in keys }
+
+            assertThat(index.findPrefixesOf(key, start).map { index.getKey(it) })
+                    .isEqualTo(expected)
+        }
+    }
+
+    @Test
+    fun findMatchingShouldMatchWildcardPatterns() {
+        val pattern = WildcardPattern.compile("b?r*")!!
+
+        assertThat(index.findMatching(pattern, 0, 10).map { index.getKey(it) }).containsExactly(
+                "barn", "barn", "barnen").inOrder()
+    }
+
+    @Test
+    fun findMatchingShouldReturnPages() {
+        val pattern = WildcardPattern.compile("*")!!
+        val pages = (0..3).map { page ->
+            index.findMatching(pattern, page * 3, 3).map { index.getKey(it) }
+        }
+
+        assertThat(pages.map { it.size }).containsExactly(3, 3, 1, 0).inOrder()
+        assertThat(pages.flatten()).isEqualTo((0..index.size() - 1).map { index.getKey(it) })
+    }
+
+    @Test
+    fun findMatchingShouldAnswerLikeARegex() {
+        val random = Random(19)
+        val letters = "abcdeåäö "
+        val words = (1..2000).map {
+            (1..1 + random.nextInt(10)).map { letters[random.nextInt(letters.length)] }
+                    .joinToString("")
+        }
+        val index = buildIndex(words)
+        val keys = words.map { SearchKeys.keyOf(it) }.sorted()
+        val patternLetters = "abc?*"
+
+        for (i in 1..200) {
+            val pattern = (1..1 + random.nextInt(6))
+                    .map { patternLetters[random.nextInt(patternLetters.length)] }
+                    .joinToString("")
+            val regex = Regex(pattern.replace("?", ".").replace("*", ".*"))
+            val found = index.findMatching(WildcardPattern.compile(pattern)!!, 0, Int.MAX_VALUE)
+
+            assertThat(found.map { index.getKey(it) }).isEqualTo(keys.filter { regex.matches(it) })
+        }
+    }
+
+    @Test
+    fun findRankedShouldPutTheExactMatchFirst() {
+        val index = buildIndex(listOf("in", "inte", "inom", "ingen"),
+                mapOf("inte" to 20, "inom" to 5, "ingen" to 12))
+
+        assertThat(index.findRanked("in", 10).map { index.getKey(it) })
+                .containsExactly("in", "inte", "ingen", "inom").inOrder()
+    }
+
+    @Test
+    fun findRankedShouldPreferShorterKeysAmongEqualScores() {
+        val index = buildIndex(listOf("bilarna", "bilar", "bil", "bilen"))
+
+        assertThat(index.findRanked("bi", 10).map { index.getKey(it) })
+                .containsExactly("bil", "bilar", "bilen", "bilarna").inOrder()
+    }
+
+    @Test
+    fun findRankedShouldStopAtTheLimit() {
+        val index = buildIndex(listOf("in", "inte", "inom", "ingen"), mapOf("inom" to 5))
+
+        assertThat(index.findRanked("in", 2).map { index.getKey(it) })
+                .containsExactly("in", "inom").inOrder()
+        assertThat(index.findRanked("x", 2)).isEmpty()
+    }
+
+    @Test
+    fun findRankedShouldMatchSortingTheWholeRange() {
+        val random = Random(25)
+        val letters = "abc"
+        val words = (1..500).map {
+            (1..1 + random.nextInt(6)).map { letters[random.nextInt(letters.length)] }
+                    .joinToString("")
+        }.distinct()
+        val scores = words.associate { it to random.nextInt(4) }
+        val index = buildIndex(words, scores)
+
+        for (i in 1..100) {
+            val prefix = (1..random.nextInt(3)).map { letters[random.nextInt(letters.length)] }
+                    .joinToString("")
+            val limit = 1 + random.nextInt(50)
+            val expected = words.filter { it.startsWith(prefix) }
+                    .sortedWith(compareBy<String>({ it != prefix }, { -scores[it]!! },
+                            { it.length }, { it }))
+                    .take(limit)
+
+            assertThat(index.findRanked(prefix, limit).map { index.getKey(it) })
+                    .isEqualTo(expected)
+        }
+    }
+
+    /**
+     * The edit distance between two strings, counting a swap of two neighbouring characters as
+     * one edit
+     */
+    private fun distance(first: String, second: String): Int {
+        val d = Array(first.length + 1) { IntArray(second.length + 1) }
+
+        for (i in 0..first.length) d[i][0] = i
+        for (j in 0..second.length) d[0][j] = j
+
+        for (i in 1..first.length) {
+            for (j in 1..second.length) {
+                val cost = if (first[i - 1] == second[j - 1]) 0 else 1
+                d[i][j] = Math.min(Math.min(d[i - 1][j], d[i][j - 1]) + 1, d[i - 1][j - 1] + cost)
+
+                if (i > 1 && j > 1 && first[i - 1] == second[j - 2]
+                        && first[i - 2] == second[j - 1]) {
+                    d[i][j] = Math.min(d[i][j], d[i - 2][j - 2] + 1)
+                }
+            }
+        }
+
+        return d[first.length][second.length]
+    }
+}
@@ -0,0 +1,42 @@
+package com.mbcdev.folkets
+
+import org.junit.Test
+import com.google.common.truth.Truth.assertThat
+
+/**
+ * Tests for [ImportanceScore]
+ */
+class ImportanceScoreTests {
+
+    @Test
+    fun emptyWordsShouldScoreNothing() {
+        assertThat(ImportanceScore.of(null, null, null, null)).isEqualTo(0)
+        assertThat(ImportanceScore.of("", "", "", " ")).isEqualTo(0)
+    }
+
+    @Test
+    fun itemsShouldBeCounted() {
+        assertThat(ImportanceScore.countItems("a**b||c**c")).isEqualTo(3)
+        assertThat(ImportanceScore.countItems("a** **")).isEqualTo(1)
+    }
+
+    @Test
+    fun moreTranslationsShouldScoreHigher() {
+        assertThat(ImportanceScore.of("child**kid", null, null, null))
+                .isGreaterThan(ImportanceScore.of("child", null, null, null))
+    }
+
+    @Test
+    fun everyColumnShouldCount() {
+        val base = ImportanceScore.of("child", null, null, null)
+        assertThat(ImportanceScore.of("child", "ett barn", null, null)).isGreaterThan(base)
+        assertThat(ImportanceScore.of("child", null, "barnvagn", null)).isGreaterThan(base)
+        assertThat(ImportanceScore.of("child", null, null, "ung människa")).isGreaterThan(base)
+    }
+
+    @Test
+    fun translationsShouldWeighMoreThanCompounds() {
+        assertThat(ImportanceScore.of("child", null, null, null))
+                .isGreaterThan(ImportanceScore.of(null, null, "barnvagn", null))
+    }
+}
@@ -0,0 +1,63 @@
+package com.mbcdev.folkets
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import java.io.ByteArrayOutputStream
+import java.io.DataOutputStream
+import java.nio.ByteBuffer
+
+/**
+ * Tests for [IndexSnapshotStore]
+ */
+class IndexSnapshotStoreTests {
+
+    private val snapshot = object : IndexSnapshot<Int> {
+        override fun getName() = "test"
+        override fun getVersion() = 2
+        override fun build(database: FolketsDatabase, output: DataOutputStream) = output.writeInt(42)
+        override fun load(buffer: ByteBuffer) = buffer.int
+    }
+
+    @Test
+    fun writtenHeaderShouldBeCurrent() {
+        val output = ByteArrayOutputStream()
+        val data = DataOutputStream(output)
+        IndexSnapshotStore.writeHeader(data, snapshot)
+        data.writeInt(42)
+
+        val buffer = ByteBuffer.wrap(output.toByteArray())
+
+        assertThat(IndexSnapshotStore.isCurrent(buffer, snapshot)).isTrue()
+        assertThat(snapshot.load(buffer)).isEqualTo(42)
+    }
+
+    @Test
+    fun headerOfOtherShardsShouldNotBeCurrent() {
+        val buffer = header(0x464b4958, snapshot.version, "0f343b0931126a20f133d67c2b018a3b")
+
+        assertThat(IndexSnapshotStore.isCurrent(buffer, snapshot)).isFalse()
+    }
+
+    @Test
+    fun headerOfOtherVersionShouldNotBeCurrent() {
+        val buffer = header(0x464b4958, snapshot.version + 1, DictionaryFingerprint.SHARDS)
+
+        assertThat(IndexSnapshotStore.isCurrent(buffer, snapshot)).isFalse()
+    }
+
+    @Test
+    fun truncatedHeaderShouldNotBeCurrent() {
+        val buffer = ByteBuffer.wrap(byteArrayOf(0x46, 0x4b))
+
+        assertThat(IndexSnapshotStore.isCurrent(buffer, snapshot)).isFalse()
+    }
+
+    private fun header(magic: Int, version: Int, fingerprint: String): ByteBuffer {
+        val output = ByteArrayOutputStream()
+        val data = DataOutputStream(output)
+        data.writeInt(magic)
+        data.writeInt(version)
+        data.writeUTF(fingerprint)
+        return ByteBuffer.wrap(output.toByteArray())
+    }
+}
@@ -0,0 +1,50 @@
+package com.mbcdev.folkets
+
+import android.database.Cursor
+import org.mockito.Matchers.any
+import org.mockito.Matchers.anyString
+import org.mockito.Mockito.`when`
+import org.mockito.Mockito.doAnswer
+import org.mockito.Mockito.mock
+import java.io.ByteArrayOutputStream
+import java.io.DataOutputStream
+import java.nio.ByteBuffer
+
+/**
+ * Builds [IndexSnapshot]s over a table of headwords for tests
+ */
+object IndexSnapshots {
+
+    /**
+     * Builds a snapshot over the given headwords and loads it back, the way the app loads it
+     * from disk. The headwords get row ids from 1 in the order given.
+     *
+     * @param snapshot The snapshot to build
+     * @param words The headwords of the table
+     * @param scores The importance scores of the headwords, 0 when missing
+     */
+    fun <T> build(
+            snapshot: IndexSnapshot<T>, words: List<String>,
+            scores: Map<String, Int> = emptyMap()): T {
+        val database = mock(FolketsDatabase::class.java)
+
+        doAnswer { invocation ->
+            val visitor = invocation.arguments[2] as FolketsDatabase.RowVisitor
+
+            words.forEachIndexed { rowId, word ->
+                val cursor = mock(Cursor::class.java)
+                `when`(cursor.isNull(1)).thenReturn(false)
+                `when`(cursor.getInt(0)).thenReturn(rowId + 1)
+                `when`(cursor.getString(1)).thenReturn(word)
+                `when`(cursor.getInt(2)).thenReturn(scores[word] ?: 0)
+                visitor.visit(cursor)
+            }
+
+            null
+        }.`when`(database).forEachRow(anyString(), any(), any())
+
+        val bytes = ByteArrayOutputStream()
+        snapshot.build(database, DataOutputStream(bytes))
+        return snapshot.load(ByteBuffer.wrap(bytes.toByteArray()))
+    }
+}
@@ -0,0 +1,49 @@
+package com.mbcdev.folkets
+
+import org.junit.Test
+import com.google.common.truth.Truth.assertThat
+
+/**
+ * Tests for [InflectionIndex]
+ */
+class InflectionIndexTests {
+
+    @Test
+    fun formsShouldHoldEveryInflection() {
+        assertThat(InflectionIndex.formsOf("springa", "sprang**sprungit**springer"))
+                .containsExactly("sprang", "sprungit", "springer").inOrder()
+    }
+
+    @Test
+    fun formsShouldBeTrimmed() {
+        assertThat(InflectionIndex.formsOf("barn", " barnet ** barnen")).containsExactly(
+                "barnet", "barnen").inOrder()
+    }
+
+    @Test
+    fun formsShouldLeaveOutTheHeadword() {
+        assertThat(InflectionIndex.formsOf("barn", "barn**barnen**Barn")).containsExactly("barnen")
+    }
+
+    @Test
+    fun formsShouldBeDistinctByKey() {
+        assertThat(InflectionIndex.formsOf("ö", "öar**Öar**oar")).containsExactly("öar", "oar")
+                .inOrder()
+    }
+
+    @Test
+    fun formsShouldSkipEmptyInflections() {
+        assertThat(InflectionIndex.formsOf("barn", null)).isEmpty()
+        assertThat(InflectionIndex.formsOf("barn", "")).isEmpty()
+        assertThat(InflectionIndex.formsOf("barn", "** **")).isEmpty()
+    }
+
+    @Test
+    fun indexNamesShouldBeRecognised() {
+        assertThat(InflectionIndex.isIndexName(InflectionIndex.tableName("folkets_sv_en")))
+                .isTrue()
+        assertThat(InflectionIndex.isIndexName("folkets_sv_en")).isFalse()
+        assertThat(InflectionIndex.isIndexName(TranslationIndex.tableName("folkets_sv_en")))
+                .isFalse()
+    }
+}
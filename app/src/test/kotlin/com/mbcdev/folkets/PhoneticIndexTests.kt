@@ -0,0 +1,117 @@
+package com.mbcdev.folkets
+
+import org.junit.Test
+import com.google.common.truth.Truth.assertThat
+
+/**
+ * Tests for [PhoneticIndex]
+ */
+class PhoneticIndexTests {
+
+    private fun spelled(guess: String) = PhoneticIndex.keyOfSpelling(SearchKeys.keyOf(guess))
+
+    @Test
+    fun spellingsOfTheSjSoundShouldHaveTheSameKey() {
+        assertThat(spelled("skjorta")).isEqualTo(spelled("sjorta"))
+        assertThat(spelled("chorta")).isEqualTo(spelled("sjorta"))
+        assertThat(spelled("stjärna")).isEqualTo(spelled("sjärna"))
+        assertThat(spelled("sked")).isEqualTo(spelled("sjed"))
+    }
+
+    @Test
+    fun spellingsOfTheTjSoundShouldHaveTheSameKey() {
+        assertThat(spelled("kärlek")).isEqualTo(spelled("tjärlek"))
+        assertThat(spelled("kjol")).isEqualTo(spelled("tjol"))
+    }
+
+    @Test
+    fun softVowelsShouldOnlyChangeTheStartOfAWord() {
+        assertThat(spelled("ge")).isEqualTo(spelled("je"))
+        assertThat(spelled("dagen")).isNotEqualTo(spelled("dajen"))
+    }
+
+    @Test
+    fun silentLettersShouldBeDropped() {
+        assertThat(spelled("hjärta")).isEqualTo(spelled("järta"))
+        assertThat(spelled("djur")).isEqualTo(spelled("jur"))
+        assertThat(spelled("ljus")).isEqualTo(spelled("jus"))
+    }
+
+    @Test
+    fun doubleLettersShouldBeWrittenOnce() {
+        assertThat(spelled("katt")).isEqualTo(spelled("kat"))
+        assertThat(spelled("människa")).isEqualTo(spelled("mäniska"))
+    }
+
+    @Test
+    fun similarVowelsShouldHaveTheSameKey() {
+        assertThat(spelled("bok")).isEqualTo(spelled("båk"))
+        assertThat(spelled("hus")).isEqualTo(spelled("hos"))
+        assertThat(spelled("säng")).isEqualTo(spelled("seng"))
+        assertThat(spelled("bröd")).isNotEqualTo(spelled("brod"))
+    }
+
+    @Test
+    fun lettersWithTheSameSoundShouldHaveTheSameKey() {
+        assertThat(spelled("zebra")).isEqualTo(spelled("sebra"))
+        assertThat(spelled("cykel")).isEqualTo(spelled("sykel"))
+        assertThat(spelled("xylofon")).isEqualTo(spelled("ksylofon"))
+        assertThat(spelled("station")).isEqualTo(spelled("stasjon"))
+        assertThat(spelled("berg")).isEqualTo(spelled("bärj"))
+        assertThat(spelled("bord")).isEqualTo(spelled("bod"))
+    }
+
+    @Test
+    fun transcriptionsShouldDropStressToneAndLength() {
+        assertThat(PhoneticIndex.keyOfPhonetic("²'ab:åre")).isEqualTo(spelled("abore"))
+        assertThat(PhoneticIndex.keyOfPhonetic("b'ä:r")).isEqualTo(spelled("bär"))
+    }
+
+    @Test
+    fun transcriptionsShouldReadIpaSymbols() {
+        assertThat(PhoneticIndex.keyOfPhonetic("ˈɧʉːkˌhʉːs")).isEqualTo(spelled("sjukhus"))
+        assertThat(PhoneticIndex.keyOfPhonetic("ˈɕæːrˌleːk")).isEqualTo(spelled("kärlek"))
+        assertThat(PhoneticIndex.keyOfPhonetic("ˈbaːɳ")).isEqualTo(spelled("barn"))
+    }
+
+    @Test
+    fun transcriptionsShouldNotApplySpellingRules() {
+        assertThat(PhoneticIndex.keyOfPhonetic("k'e:")).isNotEqualTo(spelled("ke"))
+    }
+
+    @Test
+    fun keysShouldHoldEveryAlternativeTranscription() {
+        assertThat(PhoneticIndex.keysOf("abborre", "²'ab:åre; 'ab:år")).containsExactly(
+                spelled("abore"), spelled("abor")).inOrder()
+    }
+
+    @Test
+    fun keysShouldBeDistinct() {
+        assertThat(PhoneticIndex.keysOf("barn", "b'a:rn, ˈbaːɳ")).containsExactly(spelled("barn"))
+    }
+
+    @Test
+    fun keysShouldFallBackToTheHeadword() {
+        assertThat(PhoneticIndex.keysOf("sjukhus", null)).containsExactly(spelled("sjukhus"))
+        assertThat(PhoneticIndex.keysOf("sjukhus", " ")).containsExactly(spelled("sjukhus"))
+    }
+
+    @Test
+    fun keysShouldLeaveOutEmptyKeys() {
+        assertThat(PhoneticIndex.keysOf("-", null)).isEmpty()
+        assertThat(PhoneticIndex.keysOf("sjukhus", "'")).isEmpty()
+    }
+
+    @Test
+    fun guessesShouldBePrefixesOfLongerWords() {
+        assertThat(spelled("sjukhusparkering")).startsWith(spelled("sjukhus"))
+    }
+
+    @Test
+    fun indexNamesShouldBeRecognised() {
+        assertThat(PhoneticIndex.isIndexName(PhoneticIndex.tableName("folkets_sv_en"))).isTrue()
+        assertThat(PhoneticIndex.isIndexName("folkets_sv_en")).isFalse()
+        assertThat(PhoneticIndex.isIndexName(InflectionIndex.tableName("folkets_sv_en")))
+                .isFalse()
+    }
+}
@@ -0,0 +1,100 @@
+package com.mbcdev.folkets
+
+import org.junit.Test
+import com.google.common.truth.Truth.assertThat
+
+/**
+ * Tests for [SearchKeys]
+ */
+class SearchKeysTests {
+
+    @Test
+    fun keyShouldLowerCaseLetters() {
+        assertThat(SearchKeys.keyOf("AIDS")).isEqualTo("aids")
+        assertThat(SearchKeys.keyOf("Apple pie")).isEqualTo("apple pie")
+        assertThat(SearchKeys.keyOf("ÉCOLE")).isEqualTo("ecole")
+    }
+
+    @Test
+    fun keyShouldTrimAndCollapseWhiteSpace() {
+        assertThat(SearchKeys.keyOf("  ice \t cream ")).isEqualTo("ice cream")
+        assertThat(SearchKeys.keyOf("   ")).isEmpty()
+    }
+
+    @Test
+    fun keyShouldDropAccents() {
+        assertThat(SearchKeys.keyOf("été")).isEqualTo("ete")
+        assertThat(SearchKeys.keyOf("naïve")).isEqualTo("naive")
+    }
+
+    @Test
+    fun keyShouldNotDependOnComposition() {
+        assertThat(SearchKeys.keyOf("a\u030aka")).isEqualTo(SearchKeys.keyOf("\u00e5ka"))
+        assertThat(SearchKeys.keyOf("o\u0308l")).isEqualTo(SearchKeys.keyOf("\u00f6l"))
+    }
+
+    @Test
+    fun keyShouldKeepSwedishLettersApart() {
+        assertThat(SearchKeys.keyOf("Åka")).isEqualTo("{ka")
+        assertThat(SearchKeys.keyOf("äta")).isEqualTo("|ta")
+        assertThat(SearchKeys.keyOf("Öland")).isEqualTo("}land")
+        assertThat(SearchKeys.keyOf("ål")).isNotEqualTo(SearchKeys.keyOf("al"))
+    }
+
+    @Test
+    fun keyShouldReadDanishLettersAsSwedish() {
+        assertThat(SearchKeys.keyOf("Ærø")).isEqualTo(SearchKeys.keyOf("Ärö"))
+    }
+
+    @Test
+    fun keyShouldKeepWildcards() {
+        assertThat(SearchKeys.keyOf("B%n_")).isEqualTo("b%n_")
+    }
+
+    @Test
+    fun keysShouldSortTheSwedishWay() {
+        val words = listOf("Zebra", "apple", "Öl", "ärlig", "åka", "zoo", "Ångström", "bil")
+        val sorted = words.sortedBy { SearchKeys.keyOf(it) }
+        assertThat(sorted).containsExactly(
+                "apple", "bil", "Zebra", "zoo", "åka", "Ångström", "ärlig", "Öl").inOrder()
+    }
+
+    @Test
+    fun prefixKeyShouldBeAPrefixOfTheWordKey() {
+        assertThat(SearchKeys.keyOf("Sjukhus")).startsWith(SearchKeys.keyOf(" sjukh"))
+        assertThat(SearchKeys.keyOf("Ölands")).startsWith(SearchKeys.keyOf("öl"))
+    }
+
+    @Test
+    fun upperBoundShouldFollowEveryKeyWithThePrefix() {
+        val upperBound = SearchKeys.upperBound("bar")
+        assertThat(upperBound).isEqualTo("bas")
+        assertThat("barn").isLessThan(upperBound)
+        assertThat("bar\uffff").isLessThan(upperBound)
+        assertThat("bas").isAtLeast(upperBound)
+    }
+
+    @Test
+    fun emptyKeyShouldHaveNoUpperBound() {
+        assertThat(SearchKeys.upperBound("")).isNull()
+    }
+
+    @Test
+    fun wildcardsShouldNotBeSearchedByRange() {
+        assertThat(SearchKeys.canSearchByRange("b%n")).isFalse()
+        assertThat(SearchKeys.canSearchByRange("b_rn")).isFalse()
+    }
+
+    @Test
+    fun unboundablePrefixesShouldNotBeSearchedByRange() {
+        assertThat(SearchKeys.canSearchByRange("a\uffff")).isFalse()
+        assertThat(SearchKeys.canSearchByRange("a\ud83d")).isFalse()
+    }
+
+    @Test
+    fun plainPrefixesShouldBeSearchedByRange() {
+        assertThat(SearchKeys.canSearchByRange("")).isTrue()
+        assertThat(SearchKeys.canSearchByRange("sjukhus")).isTrue()
+        assertThat(SearchKeys.canSearchByRange("åka")).isTrue()
+    }
+}
@@ -0,0 +1,62 @@
+package com.mbcdev.folkets
+
+import org.junit.Test
+import com.google.common.truth.Truth.assertThat
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.File
+
+/**
+ * Tests for [ShardChecksums]
+ */
+class ShardChecksumsTests {
+
+    @Test
+    fun checksumsShouldRoundTrip() {
+        val shard = shardOfSize(ShardChecksums.CHUNK_SIZE * 2 + 10)
+
+        val output = ByteArrayOutputStream()
+        val count = ShardChecksums.write(shard, output)
+        val checksums = ShardChecksums.read(ByteArrayInputStream(output.toByteArray()))
+
+        assertThat(count).isEqualTo(3)
+        assertThat(checksums.size).isEqualTo(3)
+    }
+
+    @Test
+    fun lastChunkShouldOnlyCoverTheRestOfTheShard() {
+        val bytes = ByteArray(ShardChecksums.CHUNK_SIZE + 10) { it.toByte() }
+        val shard = File.createTempFile("shard", ".db")
+        shard.deleteOnExit()
+        shard.writeBytes(bytes)
+
+        val output = ByteArrayOutputStream()
+        ShardChecksums.write(shard, output)
+        val checksums = ShardChecksums.read(ByteArrayInputStream(output.toByteArray()))
+
+        val lastChunk = bytes.copyOfRange(ShardChecksums.CHUNK_SIZE, bytes.size)
+        assertThat(checksums[1]).isEqualTo(ShardChecksums.checksum(lastChunk, lastChunk.size))
+    }
+
+    @Test
+    fun changedChunkShouldHaveDifferentChecksum() {
+        val chunk = ByteArray(ShardChecksums.CHUNK_SIZE)
+        val before = ShardChecksums.checksum(chunk, chunk.size)
+        chunk[100] = 1
+
+        assertThat(ShardChecksums.checksum(chunk, chunk.size)).isNotEqualTo(before)
+    }
+
+    @Test
+    fun fileNameShouldBeBasedOnShardFileName() {
+        assertThat(ShardChecksums.fileName("folkets_sv_en_0061.db"))
+                .isEqualTo("folkets_sv_en_0061.db.crc")
+    }
+
+    private fun shardOfSize(size: Int): File {
+        val shard = File.createTempFile("shard", ".db")
+        shard.deleteOnExit()
+        shard.writeBytes(ByteArray(size))
+        return shard
+    }
+}
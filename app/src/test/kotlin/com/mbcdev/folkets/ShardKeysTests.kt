@@ -0,0 +1,82 @@
+package com.mbcdev.folkets
+
+import org.junit.Test
+import com.google.common.truth.Truth.assertThat
+
+/**
+ * Tests for [ShardKeys]
+ */
+class ShardKeysTests {
+
+    @Test
+    fun bucketsShouldBeAscending() {
+        val buckets = ShardKeys.allBuckets()
+        for (i in 1..buckets.size - 1) {
+            assertThat(buckets[i]).isGreaterThan(buckets[i - 1])
+        }
+    }
+
+    @Test
+    fun emptyWordShouldBeInFirstBucket() {
+        assertThat(ShardKeys.bucketOf("")).isEqualTo(0)
+    }
+
+    @Test
+    fun digitShouldBeInFirstBucket() {
+        assertThat(ShardKeys.bucketOf("3d")).isEqualTo(0)
+    }
+
+    @Test
+    fun upperAndLowerCaseShouldBeInDifferentBuckets() {
+        assertThat(ShardKeys.bucketOf("Apple")).isEqualTo('A'.toInt())
+        assertThat(ShardKeys.bucketOf("apple")).isEqualTo('a'.toInt())
+    }
+
+    @Test
+    fun swedishLettersShouldHaveTheirOwnBuckets() {
+        assertThat(ShardKeys.bucketOf("åka")).isEqualTo(0xe5)
+        assertThat(ShardKeys.bucketOf("äta")).isEqualTo(0xe4)
+        assertThat(ShardKeys.bucketOf("öl")).isEqualTo(0xf6)
+    }
+
+    @Test
+    fun wordsShouldSortInBucketOrder() {
+        val words = listOf("Zebra", "[x]", "apple", "zoo", "Ångström", "äta", "öl")
+        val buckets = words.map { ShardKeys.bucketOf(it) }
+        assertThat(buckets).isStrictlyOrdered()
+    }
+
+    @Test
+    fun asciiLetterKeyShouldSearchOneBucket() {
+        assertThat(ShardKeys.bucketsFor("ab").toList()).containsExactly(0x61)
+    }
+
+    @Test
+    fun swedishLetterKeyShouldSearchOneBucket() {
+        assertThat(ShardKeys.bucketsFor(SearchKeys.keyOf("öl")).toList()).containsExactly(0x7d)
+    }
+
+    @Test
+    fun swedishLetterKeysShouldHaveTheirOwnBuckets() {
+        assertThat(ShardKeys.bucketOf(SearchKeys.keyOf("Åka"))).isEqualTo(0x7b)
+        assertThat(ShardKeys.bucketOf(SearchKeys.keyOf("äta"))).isEqualTo(0x7c)
+        assertThat(ShardKeys.bucketOf(SearchKeys.keyOf("Öl"))).isEqualTo(0x7d)
+        assertThat(ShardKeys.bucketOf(SearchKeys.keyOf("~"))).isEqualTo(0x7e)
+    }
+
+    @Test
+    fun emptyPrefixShouldSearchEveryBucket() {
+        assertThat(ShardKeys.bucketsFor("")).isEqualTo(ShardKeys.allBuckets())
+    }
+
+    @Test
+    fun wildcardPrefixShouldSearchEveryBucket() {
+        assertThat(ShardKeys.bucketsFor("%ab")).isEqualTo(ShardKeys.allBuckets())
+        assertThat(ShardKeys.bucketsFor("_b")).isEqualTo(ShardKeys.allBuckets())
+    }
+
+    @Test
+    fun fileNameShouldIncludeTableAndBucket() {
+        assertThat(ShardKeys.fileName("folkets_sv_en", 0xe5)).isEqualTo("folkets_sv_en_00e5.db")
+    }
+}
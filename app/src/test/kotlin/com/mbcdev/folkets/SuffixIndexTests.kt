@@ -0,0 +1,101 @@
+package com.mbcdev.folkets
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.Before
+import org.junit.Test
+import java.util.Random
+
+/**
+ * Tests for [SuffixIndex]
+ */
+class SuffixIndexTests {
+
+    private val words = listOf("skola", "högskola", "Folkhögskola", "skolbok", "nyhet",
+            "het", "hetta", "anananas")
+
+    private lateinit var index: SuffixIndex
+
+    @Before
+    fun setUp() {
+        index = buildIndex(words)
+    }
+
+    private fun buildIndex(words: List<String>): SuffixIndex {
+        return IndexSnapshots.build(SuffixIndex.snapshot("folkets_sv_en"), words)
+    }
+
+    private fun keysOf(index: SuffixIndex, positions: IntArray): List<String> {
+        return positions.map { index.getKey(it) }
+    }
+
+    @Test
+    fun everyHeadwordShouldBeIndexed() {
+        assertThat(index.size()).isEqualTo(words.size)
+        assertThat(index.suffixCount()).isEqualTo(words.sumBy { SearchKeys.keyOf(it).length })
+    }
+
+    @Test
+    fun headwordsShouldBeInSearchOrderWithTheirRowIds() {
+        val indexed = (0..index.size() - 1).map { index.getKey(it) to index.getRowId(it) }
+        val expected = words.mapIndexed { rowId, word -> SearchKeys.keyOf(word) to rowId + 1 }
+
+        assertThat(indexed).isEqualTo(expected.sortedBy { it.first })
+    }
+
+    @Test
+    fun findEndingWithShouldFindSuffixesInSearchOrder() {
+        assertThat(keysOf(index, index.findEndingWith("skola", 0, 10))).containsExactly(
+                SearchKeys.keyOf("Folkhögskola"), SearchKeys.keyOf("högskola"), "skola")
+                .inOrder()
+        assertThat(keysOf(index, index.findEndingWith("het", 0, 10))).containsExactly(
+                "het", "nyhet").inOrder()
+    }
+
+    @Test
+    fun findContainingShouldFindEveryHeadwordOnce() {
+        assertThat(keysOf(index, index.findContaining("het", 0, 10))).containsExactly(
+                "het", "nyhet", "hetta")
+        assertThat(keysOf(index, index.findContaining("ana", 0, 10))).containsExactly(
+                "anananas")
+    }
+
+    @Test
+    fun findShouldReturnNothingWithoutMatches() {
+        assertThat(index.findContaining("xyz", 0, 10)).isEmpty()
+        assertThat(index.findEndingWith("sko", 0, 10)).isEmpty()
+        assertThat(index.findContaining("", 0, 10)).isEmpty()
+    }
+
+    @Test
+    fun findShouldReturnPages() {
+        val pages = (0..2).map { page ->
+            keysOf(index, index.findContaining("sko", page * 2, 2))
+        }
+
+        assertThat(pages.map { it.size }).containsExactly(2, 2, 0).inOrder()
+        assertThat(pages.flatten()).containsExactly(SearchKeys.keyOf("Folkhögskola"),
+                SearchKeys.keyOf("högskola"), "skola", "skolbok")
+    }
+
+    @Test
+    fun suffixArrayShouldAnswerLikeAScan() {
+        val random = Random(20)
+        val letters = "abcdeåäö "
+        val words = (1..2000).map {
+            (1..1 + random.nextInt(10)).map { letters[random.nextInt(letters.length)] }
+                    .joinToString("")
+        }
+        val index = buildIndex(words)
+        val keys = words.map { SearchKeys.keyOf(it) }.filter { it.length > 0 }.sorted()
+
+        for (word in keys.take(100)) {
+            val from = random.nextInt(word.length)
+            val key = word.substring(from, Math.min(word.length, from + 1 + random.nextInt(3)))
+
+            assertThat(keysOf(index, index.findEndingWith(key, 0, Int.MAX_VALUE)))
+                    .isEqualTo(keys.filter { it.endsWith(key) })
+            assertThat(keysOf(index, index.findContaining(key, 0, Int.MAX_VALUE)).sorted())
+                    .isEqualTo(keys.filter { it.contains(key) })
+        }
+    }
+}
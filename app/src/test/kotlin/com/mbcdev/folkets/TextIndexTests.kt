@@ -0,0 +1,76 @@
+package com.mbcdev.folkets
+
+import org.junit.Test
+import com.google.common.truth.Truth.assertThat
+
+/**
+ * Tests for [TextIndex]
+ */
+class TextIndexTests {
+
+    @Test
+    fun foldShouldKeepTheLength() {
+        val text = "Ærø — l'été,  naïve"
+        assertThat(TextIndex.fold(text)).hasLength(text.length)
+    }
+
+    @Test
+    fun foldShouldLowerCaseAndDropAccents() {
+        assertThat(TextIndex.fold("ÉTÉ Naïve")).isEqualTo("ete naive")
+    }
+
+    @Test
+    fun foldShouldKeepSwedishLetters() {
+        assertThat(TextIndex.fold("Åka Äta Öl")).isEqualTo("åka äta öl")
+        assertThat(TextIndex.fold("Ærø")).isEqualTo("ärö")
+    }
+
+    @Test
+    fun foldShouldTurnPunctuationIntoSpaces() {
+        assertThat(TextIndex.fold("a\u2014b\u00a0c \u00abd\u00bb")).isEqualTo("a b c  d ")
+    }
+
+    @Test
+    fun tokensShouldSplitLikeTheSimpleTokenizer() {
+        assertThat(TextIndex.tokens("gå ut, ta en öl!")).containsExactly(
+                "gå", "ut", "ta", "en", "öl").inOrder()
+        assertThat(TextIndex.tokens(" ,. ")).isEmpty()
+    }
+
+    @Test
+    fun matchExpressionShouldBeAPhraseWithAPrefix() {
+        assertThat(TextIndex.matchExpression("Gå ut")).isEqualTo("\"gå ut*\"")
+    }
+
+    @Test
+    fun matchExpressionShouldNotUseShortPrefixes() {
+        assertThat(TextIndex.matchExpression("ta e")).isEqualTo("\"ta e\"")
+    }
+
+    @Test
+    fun matchExpressionShouldBeNullWithoutTokens() {
+        assertThat(TextIndex.matchExpression("  ")).isNull()
+        assertThat(TextIndex.matchExpression("\"*")).isNull()
+    }
+
+    @Test
+    fun findPhraseShouldFindTheSpanOfThePhrase() {
+        val folded = TextIndex.fold("Vi ska gå ut i kväll")
+        val span = TextIndex.findPhrase(folded, TextIndex.tokens("gå ut"))
+        assertThat(span).asList().containsExactly(7, 12).inOrder()
+    }
+
+    @Test
+    fun findPhraseShouldMatchTheLastTokenAsAPrefix() {
+        val folded = TextIndex.fold("ett glas öl")
+        assertThat(TextIndex.findPhrase(folded, TextIndex.tokens("gla"))).asList()
+                .containsExactly(4, 8).inOrder()
+        assertThat(TextIndex.findPhrase(folded, TextIndex.tokens("g"))).isNull()
+    }
+
+    @Test
+    fun findPhraseShouldNeedTheTokensInOrder() {
+        val folded = TextIndex.fold("ut och gå")
+        assertThat(TextIndex.findPhrase(folded, TextIndex.tokens("gå ut"))).isNull()
+    }
+}
@@ -0,0 +1,86 @@
+package com.mbcdev.folkets
+
+import org.junit.Test
+import com.google.common.truth.Truth.assertThat
+
+/**
+ * Tests for [TextSearch]
+ */
+class TextSearchTests {
+
+    /**
+     * Builds match info in the 'pcnalx' format for a single phrase over four columns
+     */
+    private fun matchInfo(lengths: IntArray, hits: IntArray, rowsWithHits: IntArray): IntArray {
+        val info = mutableListOf(1, 4, 100)
+        info.addAll(listOf(10, 10, 10, 10))
+        info.addAll(lengths.toList())
+        for (column in 0..3) {
+            info.addAll(listOf(hits[column], hits[column], rowsWithHits[column]))
+        }
+        return info.toIntArray()
+    }
+
+    @Test
+    fun columnsWithoutHitsShouldNotScore() {
+        val info = matchInfo(intArrayOf(10, 10, 10, 10), intArrayOf(1, 0, 0, 0),
+                intArrayOf(5, 5, 5, 5))
+        assertThat(TextSearch.score(info, 0)).isGreaterThan(0.0)
+        assertThat(TextSearch.score(info, 1)).isEqualTo(0.0)
+    }
+
+    @Test
+    fun rarerTermsShouldScoreHigher() {
+        val info = matchInfo(intArrayOf(10, 10, 10, 10), intArrayOf(1, 0, 1, 0),
+                intArrayOf(5, 5, 50, 5))
+        assertThat(TextSearch.score(info, 2)).isLessThan(TextSearch.score(info, 0) / 1.5)
+    }
+
+    @Test
+    fun shorterTextsShouldScoreHigher() {
+        val short = matchInfo(intArrayOf(5, 10, 10, 10), intArrayOf(1, 0, 0, 0),
+                intArrayOf(5, 5, 5, 5))
+        val long = matchInfo(intArrayOf(40, 10, 10, 10), intArrayOf(1, 0, 0, 0),
+                intArrayOf(5, 5, 5, 5))
+        assertThat(TextSearch.score(short, 0)).isGreaterThan(TextSearch.score(long, 0))
+    }
+
+    @Test
+    fun idiomsShouldWeighMoreThanDefinitions() {
+        val info = matchInfo(intArrayOf(10, 10, 10, 10), intArrayOf(0, 1, 1, 0),
+                intArrayOf(5, 5, 5, 5))
+        assertThat(TextSearch.score(info, 1)).isGreaterThan(TextSearch.score(info, 2))
+    }
+
+    @Test
+    fun matchShouldHighlightThePhraseInTheMatchingItem() {
+        val texts = arrayOf("en bil**gå ut||go out", null, null, null)
+        val match = TextSearch.match(1, "gå", texts, 0, TextIndex.tokens("go ou"), 1.0)
+
+        assertThat(match.snippet).isEqualTo("gå ut — go out")
+        assertThat(match.snippet.substring(match.highlightStart, match.highlightEnd))
+                .isEqualTo("go out")
+        assertThat(match.column).isEqualTo(0)
+    }
+
+    @Test
+    fun matchShouldLookInOtherColumnsIfTheBestOneHasNoPhrase() {
+        val texts = arrayOf("ingenting", null, "att åka", null)
+        val match = TextSearch.match(1, "åka", texts, 0, TextIndex.tokens("åka"), 1.0)
+
+        assertThat(match.column).isEqualTo(2)
+        assertThat(match.snippet).isEqualTo("att åka")
+    }
+
+    @Test
+    fun longItemsShouldBeCutAroundTheMatch() {
+        val text = "a ".repeat(100) + "målet " + "b ".repeat(100)
+        val match = TextSearch.match(1, "mål", arrayOf(text, null, null, null), 0,
+                TextIndex.tokens("mål"), 1.0)
+
+        assertThat(match.snippet).startsWith("…")
+        assertThat(match.snippet).endsWith("…")
+        assertThat(match.snippet.substring(match.highlightStart, match.highlightEnd))
+                .isEqualTo("målet")
+    }
+}
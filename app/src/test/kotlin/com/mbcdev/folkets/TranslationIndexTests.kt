@@ -0,0 +1,53 @@
+package com.mbcdev.folkets
+
+import org.junit.Test
+import com.google.common.truth.Truth.assertThat
+
+/**
+ * Tests for [TranslationIndex]
+ */
+class TranslationIndexTests {
+
+    @Test
+    fun keysShouldHoldEveryTranslation() {
+        assertThat(TranslationIndex.keysOf("car**automobile")).containsExactly(
+                "car", "automobile").inOrder()
+    }
+
+    @Test
+    fun keysShouldNotHoldComments() {
+        assertThat(TranslationIndex.keysOf("car||informal**auto")).containsExactly("car", "auto")
+    }
+
+    @Test
+    fun keysShouldHoldEveryPartStartingAtAWord() {
+        assertThat(TranslationIndex.keysOf("to go  out")).containsExactly(
+                "to go out", "go out", "out").inOrder()
+    }
+
+    @Test
+    fun keysShouldBeSearchKeys() {
+        assertThat(TranslationIndex.keysOf(" Ångström ")).containsExactly(
+                SearchKeys.keyOf("ångström"))
+    }
+
+    @Test
+    fun keysShouldBeDistinct() {
+        assertThat(TranslationIndex.keysOf("river||c**River**the river")).containsExactly(
+                "river", "the river").inOrder()
+    }
+
+    @Test
+    fun keysShouldSkipEmptyTranslations() {
+        assertThat(TranslationIndex.keysOf(null)).isEmpty()
+        assertThat(TranslationIndex.keysOf("")).isEmpty()
+        assertThat(TranslationIndex.keysOf("**||c** ")).isEmpty()
+    }
+
+    @Test
+    fun indexNamesShouldBeRecognised() {
+        assertThat(TranslationIndex.isIndexName(TranslationIndex.tableName("folkets_sv_en")))
+                .isTrue()
+        assertThat(TranslationIndex.isIndexName("folkets_sv_en")).isFalse()
+    }
+}
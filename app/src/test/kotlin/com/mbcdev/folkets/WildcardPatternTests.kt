@@ -0,0 +1,62 @@
+package com.mbcdev.folkets
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+
+/**
+ * Tests for [WildcardPattern]
+ */
+class WildcardPatternTests {
+
+    private fun matches(pattern: String, key: String): Boolean {
+        return WildcardPattern.compile(pattern)!!.matches(key)
+    }
+
+    @Test
+    fun questionMarkShouldMatchOneCharacter() {
+        assertThat(matches("b?r", "bar")).isTrue()
+        assertThat(matches("b?r", "br")).isFalse()
+        assertThat(matches("b?r", "baar")).isFalse()
+    }
+
+    @Test
+    fun starShouldMatchAnyRun() {
+        assertThat(matches("b*r", "br")).isTrue()
+        assertThat(matches("b*r", "baaar")).isTrue()
+        assertThat(matches("*ning", "tidning")).isTrue()
+        assertThat(matches("*ning", "tidningar")).isFalse()
+    }
+
+    @Test
+    fun patternShouldMatchTheWholeKey() {
+        assertThat(matches("b?r*", "barn")).isTrue()
+        assertThat(matches("b?r*", "bar")).isTrue()
+        assertThat(matches("b?r*", "abar")).isFalse()
+        assertThat(matches("bil", "bil")).isTrue()
+        assertThat(matches("bil", "bilar")).isFalse()
+    }
+
+    @Test
+    fun emptyOrLongPatternsShouldNotCompile() {
+        assertThat(WildcardPattern.compile("")).isNull()
+        assertThat(WildcardPattern.compile("?".repeat(WildcardPattern.MAX_LENGTH + 1))).isNull()
+        assertThat(WildcardPattern.compile("?".repeat(WildcardPattern.MAX_LENGTH))).isNotNull()
+    }
+
+    @Test
+    fun stepShouldRejectDeadEnds() {
+        val pattern = WildcardPattern.compile("ba*")!!
+
+        assertThat(pattern.step(pattern.start(), 'c')).isEqualTo(0L)
+        assertThat(pattern.step(pattern.start(), 'b')).isNotEqualTo(0L)
+    }
+
+    @Test
+    fun trailingStarShouldAcceptEverything() {
+        val pattern = WildcardPattern.compile("ba*")!!
+        val states = pattern.step(pattern.step(pattern.start(), 'b'), 'a')
+
+        assertThat(pattern.acceptsEverything(pattern.step(pattern.start(), 'b'))).isFalse()
+        assertThat(pattern.acceptsEverything(states)).isTrue()
+    }
+}
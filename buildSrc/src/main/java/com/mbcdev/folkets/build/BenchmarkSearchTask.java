@@ -0,0 +1,61 @@
+package com.mbcdev.folkets.build;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.tasks.InputDirectory;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Benchmarks prefix searches over the compiled shards on the build machine, see
+ * {@link SearchBenchmark}. The numbers are only comparable with each other, not with a device.
+ */
+public class BenchmarkSearchTask extends DefaultTask {
+
+    private File shardsDir;
+    private File reportFile;
+
+    @InputDirectory
+    public File getShardsDir() {
+        return shardsDir;
+    }
+
+    public void setShardsDir(File shardsDir) {
+        this.shardsDir = shardsDir;
+    }
+
+    @OutputFile
+    public File getReportFile() {
+        return reportFile;
+    }
+
+    public void setReportFile(File reportFile) {
+        this.reportFile = reportFile;
+    }
+
+    @TaskAction
+    public void benchmark() throws IOException, SQLException {
+
+        List<String> report = new SearchBenchmark(shardsDir, getTemporaryDir()).run();
+
+        CompileDictionaryTask.mkdirs(reportFile.getParentFile());
+
+        try (Writer writer = new OutputStreamWriter(
+                new FileOutputStream(reportFile), StandardCharsets.UTF_8)) {
+
+            for (String line : report) {
+                getLogger().lifecycle(line);
+                writer.write(line);
+                writer.write('\n');
+            }
+        }
+    }
+}
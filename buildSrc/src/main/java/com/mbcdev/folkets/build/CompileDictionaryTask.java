@@ -0,0 +1,651 @@
+package com.mbcdev.folkets.build;
+
+import com.mbcdev.folkets.CompletionTable;
+import com.mbcdev.folkets.DictionaryDelta;
+import com.mbcdev.folkets.InflectionIndex;
+import com.mbcdev.folkets.PhoneticIndex;
+import com.mbcdev.folkets.ShardChecksums;
+import com.mbcdev.folkets.ShardKeys;
+import com.mbcdev.folkets.TextIndex;
+import com.mbcdev.folkets.TranslationIndex;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compiles the bundled dictionary into the artifacts the app needs at runtime.
+ * <ol>
+ *     <li>
+ *         The fingerprint of the shards is computed once per build and written to a generated
+ *         {@code DictionaryFingerprint} class, so the app never has to hash the dictionary
+ *         itself to find out whether it has changed.
+ *     </li>
+ *     <li>
+ *         Every table is split into shards by the first letter of the word, see
+ *         {@link ShardKeys}, so the app only has to install the shards that a search needs.
+ *     </li>
+ *     <li>
+ *         Every shard is gzipped into the assets, so the APK does not carry the full size
+ *         database, and listed in a generated {@code DictionaryShards} class along with its
+ *         fingerprint and size.
+ *     </li>
+ *     <li>
+ *         Every shard that changed since an earlier release of the dictionary, see
+ *         {@link #getBaseDictionaries()}, also gets a gzipped {@link DictionaryDelta} from the
+ *         old version in the assets, so the app can patch an installed shard instead of
+ *         installing it again in full.
+ *     </li>
+ *     <li>
+ *         Every shard gets its {@link ShardChecksums chunk checksums} in the assets, so the app
+ *         can verify an installed shard bit by bit and repair only the chunks that are corrupt.
+ *     </li>
+ *     <li>
+ *         Every table gets five more shards, holding its {@link TextIndex full text index},
+ *         its {@link TranslationIndex reverse translation index}, its
+ *         {@link InflectionIndex inflected form index}, its
+ *         {@link PhoneticIndex phonetic index} and its
+ *         {@link CompletionTable completion table}, which are shipped, patched and verified like
+ *         the others.
+ *     </li>
+ * </ol>
+ */
+public class CompileDictionaryTask extends DefaultTask {
+
+    private static final String PACKAGE = "com.mbcdev.folkets";
+    private static final String FINGERPRINT_CLASS = "DictionaryFingerprint";
+    private static final String SHARDS_CLASS = "DictionaryShards";
+    private static final String SHARDS_ASSET_DIR = "dictionary";
+    private static final String DELTAS_ASSET_DIR = "deltas";
+    private static final String CHECKSUMS_ASSET_DIR = "checksums";
+    private static final String GZIP_SUFFIX = ".gz";
+
+    /**
+     * The version of the layout of the shards. Bump it whenever the app must install the shards
+     * again even though none of them changed, for example when the way they are installed does.
+     */
+    private static final int SHARD_FORMAT_VERSION = 1;
+
+    private File dictionary;
+    private FileCollection baseDictionaries;
+    private File sourceOutputDir;
+    private File assetsOutputDir;
+
+    @InputFile
+    public File getDictionary() {
+        return dictionary;
+    }
+
+    public void setDictionary(File dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Gets the earlier releases of the dictionary to build deltas from. Only shards that came out
+     * of the same build of the shard format can be patched, anything else is installed in full.
+     *
+     * @return the earlier releases of the dictionary, may be null
+     */
+    @InputFiles
+    @Optional
+    public FileCollection getBaseDictionaries() {
+        return baseDictionaries;
+    }
+
+    public void setBaseDictionaries(FileCollection baseDictionaries) {
+        this.baseDictionaries = baseDictionaries;
+    }
+
+    @OutputDirectory
+    public File getSourceOutputDir() {
+        return sourceOutputDir;
+    }
+
+    public void setSourceOutputDir(File sourceOutputDir) {
+        this.sourceOutputDir = sourceOutputDir;
+    }
+
+    @OutputDirectory
+    public File getAssetsOutputDir() {
+        return assetsOutputDir;
+    }
+
+    public void setAssetsOutputDir(File assetsOutputDir) {
+        this.assetsOutputDir = assetsOutputDir;
+    }
+
+    @TaskAction
+    public void compile() throws IOException, SQLException {
+        List<Shard> shards = writeShards();
+        String shardsMd5 = shardsMd5(shards);
+        getLogger().info("Shards have fingerprint {}", shardsMd5);
+
+        writeSource(FINGERPRINT_CLASS, fingerprintSource(shardsMd5));
+        writeSource(SHARDS_CLASS, shardsSource(shards));
+    }
+
+    /**
+     * Splits every table of the dictionary into gzipped shards in the assets, along with deltas
+     * from the same shards of the base dictionaries
+     *
+     * @return The shards that were written
+     * @throws IOException if a shard could not be compressed
+     * @throws SQLException if a shard could not be written
+     */
+    private List<Shard> writeShards() throws IOException, SQLException {
+
+        File shardsDir = new File(assetsOutputDir, SHARDS_ASSET_DIR);
+        File deltasDir = new File(shardsDir, DELTAS_ASSET_DIR);
+        File checksumsDir = new File(shardsDir, CHECKSUMS_ASSET_DIR);
+        deleteContents(shardsDir);
+        deleteContents(deltasDir);
+        deleteContents(checksumsDir);
+        mkdirs(deltasDir);
+        mkdirs(checksumsDir);
+
+        Map<String, List<File>> baseShards = writeBaseShards();
+
+        DictionarySharder sharder = new DictionarySharder(dictionary);
+        List<Shard> shards = new ArrayList<>();
+
+        for (String tableName : sharder.getTableNames()) {
+            for (int bucket : sharder.getBuckets(tableName)) {
+                File shardFile = new File(
+                        getTemporaryDir(), ShardKeys.fileName(tableName, bucket));
+                sharder.writeShard(tableName, bucket, shardFile);
+
+                shards.add(writeShardAssets(
+                        tableName, bucket, shardFile, baseShards, shardsDir, deltasDir,
+                        checksumsDir));
+            }
+
+            String textTableName = TextIndex.tableName(tableName);
+            File textShardFile = new File(
+                    getTemporaryDir(), ShardKeys.fileName(textTableName, TextIndex.BUCKET));
+            sharder.writeTextIndex(tableName, textShardFile);
+
+            shards.add(writeShardAssets(
+                    textTableName, TextIndex.BUCKET, textShardFile, baseShards, shardsDir,
+                    deltasDir, checksumsDir));
+
+            String translationTableName = TranslationIndex.tableName(tableName);
+            File translationShardFile = new File(getTemporaryDir(),
+                    ShardKeys.fileName(translationTableName, TranslationIndex.BUCKET));
+            sharder.writeTranslationIndex(tableName, translationShardFile);
+
+            shards.add(writeShardAssets(
+                    translationTableName, TranslationIndex.BUCKET, translationShardFile,
+                    baseShards, shardsDir, deltasDir, checksumsDir));
+
+            String inflectionTableName = InflectionIndex.tableName(tableName);
+            File inflectionShardFile = new File(getTemporaryDir(),
+                    ShardKeys.fileName(inflectionTableName, InflectionIndex.BUCKET));
+            sharder.writeInflectionIndex(tableName, inflectionShardFile);
+
+            shards.add(writeShardAssets(
+                    inflectionTableName, InflectionIndex.BUCKET, inflectionShardFile,
+                    baseShards, shardsDir, deltasDir, checksumsDir));
+
+            String phoneticTableName = PhoneticIndex.tableName(tableName);
+            File phoneticShardFile = new File(getTemporaryDir(),
+                    ShardKeys.fileName(phoneticTableName, PhoneticIndex.BUCKET));
+            sharder.writePhoneticIndex(tableName, phoneticShardFile);
+
+            shards.add(writeShardAssets(
+                    phoneticTableName, PhoneticIndex.BUCKET, phoneticShardFile,
+                    baseShards, shardsDir, deltasDir, checksumsDir));
+
+            String completionTableName = CompletionTable.tableName(tableName);
+            File completionShardFile = new File(getTemporaryDir(),
+                    ShardKeys.fileName(completionTableName, CompletionTable.BUCKET));
+            sharder.writeCompletionTable(tableName, completionShardFile);
+
+            shards.add(writeShardAssets(
+                    completionTableName, CompletionTable.BUCKET, completionShardFile,
+                    baseShards, shardsDir, deltasDir, checksumsDir));
+        }
+
+        for (List<File> files : baseShards.values()) {
+            for (File file : files) {
+                delete(file);
+            }
+        }
+
+        return shards;
+    }
+
+    /**
+     * Gzips a shard into the assets, along with its deltas from the same shard of the base
+     * dictionaries and its checksums, and deletes it
+     *
+     * @param tableName The table of the shard
+     * @param bucket The bucket of the shard
+     * @param shardFile The shard
+     * @param baseShards The shards of the base dictionaries, by shard file name
+     * @param shardsDir The directory to write the shard to
+     * @param deltasDir The directory to write the deltas to
+     * @param checksumsDir The directory to write the checksums to
+     * @return The shard that was written
+     * @throws IOException if the shard could not be compressed
+     */
+    private Shard writeShardAssets(
+            String tableName, int bucket, File shardFile, Map<String, List<File>> baseShards,
+            File shardsDir, File deltasDir, File checksumsDir) throws IOException {
+
+        String fileName = shardFile.getName();
+        File asset = new File(shardsDir, fileName + GZIP_SUFFIX);
+        String md5 = compress(shardFile, asset);
+
+        List<String> deltaBaseMd5s = writeDeltas(
+                shardFile, md5, asset.length(), baseShards.get(fileName), deltasDir);
+
+        try (OutputStream outputStream = new FileOutputStream(
+                new File(checksumsDir, ShardChecksums.fileName(fileName)))) {
+            ShardChecksums.write(shardFile, outputStream);
+        }
+
+        Shard shard = new Shard(tableName, bucket, md5, shardFile.length(), deltaBaseMd5s);
+
+        getLogger().info("Wrote shard {} ({} bytes, {} deltas)",
+                fileName, shardFile.length(), deltaBaseMd5s.size());
+
+        delete(shardFile);
+        return shard;
+    }
+
+    /**
+     * Splits every base dictionary into shards, in the temporary directory
+     *
+     * @return The shards of the base dictionaries, by shard file name
+     * @throws IOException if a shard could not be written
+     * @throws SQLException if a base dictionary could not be read
+     */
+    private Map<String, List<File>> writeBaseShards() throws IOException, SQLException {
+
+        Map<String, List<File>> baseShards = new HashMap<>();
+
+        if (baseDictionaries == null) {
+            return baseShards;
+        }
+
+        int release = 0;
+
+        for (File baseDictionary : baseDictionaries.getFiles()) {
+            File releaseDir = new File(getTemporaryDir(), "base-" + release++);
+            mkdirs(releaseDir);
+
+            DictionarySharder sharder = new DictionarySharder(baseDictionary);
+
+            for (String tableName : sharder.getTableNames()) {
+                for (int bucket : sharder.getBuckets(tableName)) {
+                    File shardFile = new File(releaseDir, ShardKeys.fileName(tableName, bucket));
+                    sharder.writeShard(tableName, bucket, shardFile);
+                    addBaseShard(baseShards, shardFile);
+                }
+
+                File textShardFile = new File(releaseDir, ShardKeys.fileName(
+                        TextIndex.tableName(tableName), TextIndex.BUCKET));
+                sharder.writeTextIndex(tableName, textShardFile);
+                addBaseShard(baseShards, textShardFile);
+
+                File translationShardFile = new File(releaseDir, ShardKeys.fileName(
+                        TranslationIndex.tableName(tableName), TranslationIndex.BUCKET));
+                sharder.writeTranslationIndex(tableName, translationShardFile);
+                addBaseShard(baseShards, translationShardFile);
+
+                File inflectionShardFile = new File(releaseDir, ShardKeys.fileName(
+                        InflectionIndex.tableName(tableName), InflectionIndex.BUCKET));
+                sharder.writeInflectionIndex(tableName, inflectionShardFile);
+                addBaseShard(baseShards, inflectionShardFile);
+
+                File phoneticShardFile = new File(releaseDir, ShardKeys.fileName(
+                        PhoneticIndex.tableName(tableName), PhoneticIndex.BUCKET));
+                sharder.writePhoneticIndex(tableName, phoneticShardFile);
+                addBaseShard(baseShards, phoneticShardFile);
+
+                File completionShardFile = new File(releaseDir, ShardKeys.fileName(
+                        CompletionTable.tableName(tableName), CompletionTable.BUCKET));
+                sharder.writeCompletionTable(tableName, completionShardFile);
+                addBaseShard(baseShards, completionShardFile);
+            }
+
+            getLogger().info("Split base dictionary {}", baseDictionary);
+        }
+
+        return baseShards;
+    }
+
+    /**
+     * Adds a shard of a base dictionary to the base shards
+     *
+     * @param baseShards The shards of the base dictionaries, by shard file name
+     * @param shardFile The shard
+     */
+    private static void addBaseShard(Map<String, List<File>> baseShards, File shardFile) {
+
+        if (!baseShards.containsKey(shardFile.getName())) {
+            baseShards.put(shardFile.getName(), new ArrayList<File>());
+        }
+
+        baseShards.get(shardFile.getName()).add(shardFile);
+    }
+
+    /**
+     * Writes a gzipped delta to a shard from every distinct older version of it. A delta is only
+     * kept if it is smaller than the gzipped shard itself.
+     *
+     * @param shardFile The shard
+     * @param md5 The hex encoded md5 of the shard
+     * @param compressedSize The size of the gzipped shard
+     * @param baseShardFiles The older versions of the shard, may be null
+     * @param deltasDir The directory to write the deltas to
+     * @return The hex encoded md5s of the older versions that have a delta
+     * @throws IOException if a delta could not be written
+     */
+    private List<String> writeDeltas(
+            File shardFile, String md5, long compressedSize,
+            List<File> baseShardFiles, File deltasDir) throws IOException {
+
+        Map<String, File> bases = new LinkedHashMap<>();
+
+        if (baseShardFiles != null) {
+            for (File baseShardFile : baseShardFiles) {
+                bases.put(md5(baseShardFile), baseShardFile);
+            }
+        }
+
+        bases.remove(md5);
+
+        List<String> deltaBaseMd5s = new ArrayList<>();
+
+        for (Map.Entry<String, File> base : bases.entrySet()) {
+
+            String deltaName = DictionaryDelta.fileName(shardFile.getName(), base.getKey());
+            File deltaFile = new File(getTemporaryDir(), deltaName);
+            int pages;
+
+            try (OutputStream outputStream = new FileOutputStream(deltaFile)) {
+                pages = DictionaryDelta.write(
+                        base.getValue(), base.getKey(), shardFile, md5, outputStream);
+            }
+
+            File asset = new File(deltasDir, deltaName + GZIP_SUFFIX);
+            compress(deltaFile, asset);
+            delete(deltaFile);
+
+            if (asset.length() < compressedSize) {
+                getLogger().info("Wrote delta {} ({} pages, {} bytes)",
+                        deltaName, pages, asset.length());
+                deltaBaseMd5s.add(base.getKey());
+            } else {
+                getLogger().info("Dropped delta {}, it is no smaller than the shard", deltaName);
+                delete(asset);
+            }
+        }
+
+        return deltaBaseMd5s;
+    }
+
+    /**
+     * Writes a generated class
+     *
+     * @param className The name of the class
+     * @param body The body of the class, without the class declaration
+     * @throws IOException if the source could not be written
+     */
+    private void writeSource(String className, String body) throws IOException {
+        File packageDir = new File(sourceOutputDir, PACKAGE.replace('.', File.separatorChar));
+        mkdirs(packageDir);
+
+        File source = new File(packageDir, className + ".java");
+
+        try (Writer writer = new OutputStreamWriter(
+                new FileOutputStream(source), StandardCharsets.UTF_8)) {
+
+            writer.write("package " + PACKAGE + ";\n\n");
+            writer.write("/**\n * Generated by " + getClass().getSimpleName() + ". Do not edit.\n */\n");
+            writer.write("final class " + className + " {\n\n");
+            writer.write(body);
+            writer.write("    private " + className + "() {\n");
+            writer.write("        // Intentionally empty\n");
+            writer.write("    }\n");
+            writer.write("}\n");
+        }
+    }
+
+    /**
+     * Builds the body of the fingerprint class
+     *
+     * @param shardsMd5 The hex encoded md5 of the shards, see {@link #shardsMd5(List)}
+     * @return the body of the fingerprint class
+     */
+    private static String fingerprintSource(String shardsMd5) {
+        return "    /** Hex encoded md5 of the format and the md5 of every bundled shard */\n" +
+                "    static final String SHARDS = \"" + shardsMd5 + "\";\n\n";
+    }
+
+    /**
+     * Computes the fingerprint of the shards. It changes whenever any shard or the
+     * {@link #SHARD_FORMAT_VERSION} does, even if the dictionary they were built from did not.
+     *
+     * @param shards The shards
+     * @return the hex encoded md5 of the format version and the file name and md5 of every shard
+     */
+    private static String shardsMd5(List<Shard> shards) {
+        MessageDigest digest = newMd5();
+        StringBuilder builder = new StringBuilder();
+        builder.append(SHARD_FORMAT_VERSION).append('\n');
+
+        for (Shard shard : shards) {
+            builder.append(ShardKeys.fileName(shard.tableName, shard.bucket))
+                    .append(' ').append(shard.md5).append('\n');
+        }
+
+        digest.update(builder.toString().getBytes(StandardCharsets.UTF_8));
+        return hex(digest.digest());
+    }
+
+    /**
+     * Builds the body of the shards class
+     *
+     * @param shards The shards
+     * @return the body of the shards class
+     */
+    private static String shardsSource(List<Shard> shards) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("    /** Every shard of the bundled dictionary, by table and then bucket */\n");
+        builder.append("    static final DictionaryShard[] ALL = {\n");
+
+        for (Shard shard : shards) {
+            builder.append(String.format(Locale.US,
+                    "            new DictionaryShard(\"%s\", 0x%04x, \"%s\", %dL",
+                    shard.tableName, shard.bucket, shard.md5, shard.size));
+
+            for (String deltaBaseMd5 : shard.deltaBaseMd5s) {
+                builder.append(", \"").append(deltaBaseMd5).append('"');
+            }
+
+            builder.append("),\n");
+        }
+
+        builder.append("    };\n\n");
+        return builder.toString();
+    }
+
+    /**
+     * Gzips a file, hashing the uncompressed bytes as they are read
+     *
+     * @param source The file to compress
+     * @param target The file to write the compressed data to
+     * @return the hex encoded md5 of the uncompressed data
+     * @throws IOException if the file could not be compressed
+     */
+    static String compress(File source, File target) throws IOException {
+        MessageDigest digest = newMd5();
+
+        try (InputStream inputStream = new FileInputStream(source);
+             OutputStream outputStream = new BestCompressionGzipOutputStream(
+                     new FileOutputStream(target))) {
+
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+
+            while ((read = inputStream.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+                outputStream.write(buffer, 0, read);
+            }
+        }
+
+        return hex(digest.digest());
+    }
+
+    /**
+     * Computes the hex encoded md5 of a file
+     *
+     * @param file The file to hash
+     * @return the hex encoded md5 of the file
+     * @throws IOException if the file could not be read
+     */
+    static String md5(File file) throws IOException {
+        MessageDigest digest = newMd5();
+
+        try (InputStream inputStream = new FileInputStream(file)) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+
+            while ((read = inputStream.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+
+        return hex(digest.digest());
+    }
+
+    /**
+     * Creates a new md5 digest
+     *
+     * @return a new md5 digest
+     */
+    static MessageDigest newMd5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new GradleException("MD5 is not available", e);
+        }
+    }
+
+    /**
+     * Hex encodes bytes the same way okio's ByteString.hex() does
+     *
+     * @param bytes The bytes to encode
+     * @return the lower case hex encoding of the bytes
+     */
+    static String hex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+
+        for (byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xf, 16));
+            builder.append(Character.forDigit(b & 0xf, 16));
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * Creates a directory if it does not exist
+     *
+     * @param dir The directory
+     */
+    static void mkdirs(File dir) {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new GradleException("Could not create " + dir);
+        }
+    }
+
+    /**
+     * Deletes the files in a directory, so that stale outputs do not end up in the APK
+     *
+     * @param dir The directory
+     */
+    static void deleteContents(File dir) {
+        File[] files = dir.listFiles();
+
+        if (files == null) {
+            return;
+        }
+
+        for (File file : files) {
+            if (file.isFile() && !file.delete()) {
+                throw new GradleException("Could not delete " + file);
+            }
+        }
+    }
+
+    /**
+     * Deletes a file, so that the temporary directory does not grow with every build
+     *
+     * @param file The file
+     */
+    private void delete(File file) {
+        if (!file.delete()) {
+            getLogger().warn("Could not delete {}", file);
+        }
+    }
+
+    /**
+     * A shard that has been written to the assets
+     */
+    private static class Shard {
+
+        final String tableName;
+        final int bucket;
+        final String md5;
+        final long size;
+        final List<String> deltaBaseMd5s;
+
+        Shard(String tableName, int bucket, String md5, long size, List<String> deltaBaseMd5s) {
+            this.tableName = tableName;
+            this.bucket = bucket;
+            this.md5 = md5;
+            this.size = size;
+            this.deltaBaseMd5s = deltaBaseMd5s;
+        }
+    }
+
+    /**
+     * A gzip stream that trades build time for the smallest possible asset
+     */
+    private static class BestCompressionGzipOutputStream extends GZIPOutputStream {
+
+        BestCompressionGzipOutputStream(OutputStream outputStream) throws IOException {
+            super(outputStream, 64 * 1024);
+            def.setLevel(Deflater.BEST_COMPRESSION);
+        }
+    }
+}
@@ -0,0 +1,720 @@
+package com.mbcdev.folkets.build;
+
+import com.mbcdev.folkets.CompletionTable;
+import com.mbcdev.folkets.ImportanceScore;
+import com.mbcdev.folkets.InflectionIndex;
+import com.mbcdev.folkets.PhoneticIndex;
+import com.mbcdev.folkets.SearchKeys;
+import com.mbcdev.folkets.ShardKeys;
+import com.mbcdev.folkets.TextIndex;
+import com.mbcdev.folkets.TranslationIndex;
+
+import org.sqlite.Function;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits the tables of the dictionary into shards, one SQLite file per table and
+ * {@link ShardKeys bucket} of search keys. Every shard keeps the schema, indexes and row ids of
+ * its table, and gains an indexed {@link SearchKeys search key} column that prefix searches are
+ * matched against and ordered by, and an {@link ImportanceScore importance} column that searches
+ * rank their results by.
+ * <p>
+ *     Every table also gets a shard holding its {@link TextIndex full text index}, one holding
+ *     its {@link TranslationIndex reverse translation index}, one holding its
+ *     {@link InflectionIndex inflected form index}, one holding its
+ *     {@link PhoneticIndex phonetic index}, and one holding its
+ *     {@link CompletionTable completion table}.
+ * </p>
+ */
+class DictionarySharder {
+
+    private static final String BUCKET_FUNCTION = "shard_bucket";
+    private static final String SEARCH_KEY_FUNCTION = "search_key";
+    private static final String IMPORTANCE_FUNCTION = "importance_score";
+    private static final String FOLD_FUNCTION = "text_fold";
+
+    private final File dictionary;
+
+    /**
+     * Creates a sharder
+     *
+     * @param dictionary The dictionary to split
+     */
+    DictionarySharder(File dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Gets the dictionary tables, which are all tables apart from SQLite and Android metadata
+     *
+     * @return The names of the dictionary tables, in alphabetical order
+     * @throws SQLException if the dictionary could not be read
+     */
+    List<String> getTableNames() throws SQLException {
+
+        List<String> tableNames = new ArrayList<>();
+
+        try (Connection connection = open(dictionary);
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(
+                     "select name from sqlite_master where type = 'table' " +
+                     "and name not like 'sqlite_%' and name != 'android_metadata' " +
+                     "order by name")) {
+
+            while (resultSet.next()) {
+                tableNames.add(resultSet.getString(1));
+            }
+        }
+
+        return tableNames;
+    }
+
+    /**
+     * Gets the buckets that hold at least one word of a table
+     *
+     * @param tableName The table
+     * @return The non empty buckets of the table, in ascending order
+     * @throws SQLException if the dictionary could not be read
+     */
+    List<Integer> getBuckets(String tableName) throws SQLException {
+
+        List<Integer> buckets = new ArrayList<>();
+
+        try (Connection connection = open(dictionary);
+             Statement statement = connection.createStatement()) {
+
+            registerBucketFunction(connection);
+
+            try (ResultSet resultSet = statement.executeQuery(
+                    "select distinct " + BUCKET_FUNCTION + "(word) as bucket from " +
+                    quote(tableName) + " order by bucket")) {
+
+                while (resultSet.next()) {
+                    buckets.add(resultSet.getInt(1));
+                }
+            }
+        }
+
+        return buckets;
+    }
+
+    /**
+     * Writes the words of a table in one bucket to a new SQLite file
+     *
+     * @param tableName The table
+     * @param bucket The bucket
+     * @param shard The file to write, which must not exist yet
+     * @throws SQLException if the shard could not be written
+     * @throws IOException if the shard already exists and could not be deleted
+     */
+    void writeShard(String tableName, int bucket, File shard) throws SQLException, IOException {
+
+        if (shard.exists() && !shard.delete()) {
+            throw new IOException("Could not delete " + shard);
+        }
+
+        try (Connection connection = open(shard)) {
+            registerBucketFunction(connection);
+
+            try (PreparedStatement attach = connection.prepareStatement(
+                    "attach database ? as source")) {
+                attach.setString(1, dictionary.getPath());
+                attach.execute();
+            }
+
+            connection.setAutoCommit(false);
+
+            try (Statement statement = connection.createStatement()) {
+
+                for (String sql : getSchema(connection, tableName)) {
+                    statement.execute(sql);
+                }
+
+                String columns = getColumns(connection, tableName);
+
+                try (PreparedStatement insert = connection.prepareStatement(
+                        "insert into main." + quote(tableName) + " (rowid, " + columns + ") " +
+                        "select rowid, " + columns + " from source." + quote(tableName) + " " +
+                        "where " + BUCKET_FUNCTION + "(word) = ? order by rowid")) {
+
+                    insert.setInt(1, bucket);
+                    insert.execute();
+                }
+
+                addSearchColumns(connection, tableName);
+            }
+
+            connection.commit();
+            connection.setAutoCommit(true);
+
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("detach database source");
+                statement.execute("vacuum");
+            }
+        }
+    }
+
+    /**
+     * Writes the {@link TextIndex full text index} of a table to a new SQLite file
+     *
+     * @param tableName The table
+     * @param shard The file to write, which must not exist yet
+     * @throws SQLException if the index could not be written
+     * @throws IOException if the file already exists and could not be deleted
+     */
+    void writeTextIndex(String tableName, File shard) throws SQLException, IOException {
+
+        if (shard.exists() && !shard.delete()) {
+            throw new IOException("Could not delete " + shard);
+        }
+
+        String indexName = quote(TextIndex.tableName(tableName));
+        String entriesName = quote(TextIndex.entriesTableName(tableName));
+        StringBuilder columns = new StringBuilder();
+        StringBuilder typedColumns = new StringBuilder();
+        StringBuilder notEmpty = new StringBuilder();
+        StringBuilder folded = new StringBuilder();
+
+        for (String column : TextIndex.COLUMNS) {
+            String separator = columns.length() > 0 ? ", " : "";
+
+            columns.append(separator).append(quote(column));
+            typedColumns.append(separator).append(quote(column)).append(" text");
+            folded.append(separator).append(FOLD_FUNCTION).append('(').append(quote(column))
+                    .append(')');
+            notEmpty.append(notEmpty.length() > 0 ? " or " : "")
+                    .append("coalesce(").append(quote(column)).append(", '') != ''");
+        }
+
+        try (Connection connection = open(shard)) {
+
+            Function.create(connection, FOLD_FUNCTION, new Function() {
+                @Override
+                protected void xFunc() throws SQLException {
+                    result(TextIndex.fold(value_text(0)));
+                }
+            });
+
+            try (PreparedStatement attach = connection.prepareStatement(
+                    "attach database ? as source")) {
+                attach.setString(1, dictionary.getPath());
+                attach.execute();
+            }
+
+            connection.setAutoCommit(false);
+
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("create table main." + entriesName +
+                        " (docid integer primary key, word text, " + typedColumns + ")");
+                statement.execute("insert into main." + entriesName +
+                        " (docid, word, " + columns + ") " +
+                        "select rowid, word, " + columns + " from source." + quote(tableName) +
+                        " where " + notEmpty + " order by rowid");
+
+                statement.execute("create virtual table main." + indexName + " using fts4(" +
+                        columns + ", content=\"\", prefix=\"" + TextIndex.MIN_PREFIX_LENGTH +
+                        "," + (TextIndex.MIN_PREFIX_LENGTH + 1) + "\")");
+                statement.execute("insert into main." + indexName + " (docid, " + columns +
+                        ") select docid, " + folded + " from main." + entriesName);
+                statement.execute("insert into main." + indexName + " (" + indexName +
+                        ") values ('optimize')");
+            }
+
+            connection.commit();
+            connection.setAutoCommit(true);
+
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("detach database source");
+                statement.execute("vacuum");
+            }
+        }
+    }
+
+    /**
+     * Writes the {@link TranslationIndex reverse translation index} of a table to a new SQLite
+     * file
+     *
+     * @param tableName The table
+     * @param shard The file to write, which must not exist yet
+     * @throws SQLException if the index could not be written
+     * @throws IOException if the file already exists and could not be deleted
+     */
+    void writeTranslationIndex(
+            String tableName, File shard) throws SQLException, IOException {
+
+        if (shard.exists() && !shard.delete()) {
+            throw new IOException("Could not delete " + shard);
+        }
+
+        String indexName = quote(TranslationIndex.tableName(tableName));
+
+        try (Connection connection = open(shard);
+             Connection source = open(dictionary)) {
+
+            connection.setAutoCommit(false);
+
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("create table " + indexName + " (" +
+                        SearchKeys.COLUMN + " text, " +
+                        TranslationIndex.ROW_ID_COLUMN + " integer, " +
+                        TranslationIndex.WORD_COLUMN + " text)");
+            }
+
+            try (Statement select = source.createStatement();
+                 ResultSet resultSet = select.executeQuery(
+                         "select rowid, word, translations from " + quote(tableName) +
+                         " order by rowid");
+                 PreparedStatement insert = connection.prepareStatement(
+                         "insert into " + indexName + " values (?, ?, ?)")) {
+
+                while (resultSet.next()) {
+                    for (String key : TranslationIndex.keysOf(resultSet.getString(3))) {
+                        insert.setString(1, key);
+                        insert.setLong(2, resultSet.getLong(1));
+                        insert.setString(3, resultSet.getString(2));
+                        insert.addBatch();
+                    }
+                }
+
+                insert.executeBatch();
+            }
+
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("create index " +
+                        quote(TranslationIndex.keyIndexName(tableName)) + " on " + indexName +
+                        " (" + SearchKeys.COLUMN + ", " + TranslationIndex.WORD_COLUMN + ")");
+            }
+
+            connection.commit();
+            connection.setAutoCommit(true);
+
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("vacuum");
+            }
+        }
+    }
+
+    /**
+     * Writes the {@link InflectionIndex inflected form index} of a table to a new SQLite file
+     *
+     * @param tableName The table
+     * @param shard The file to write, which must not exist yet
+     * @throws SQLException if the index could not be written
+     * @throws IOException if the file already exists and could not be deleted
+     */
+    void writeInflectionIndex(
+            String tableName, File shard) throws SQLException, IOException {
+
+        if (shard.exists() && !shard.delete()) {
+            throw new IOException("Could not delete " + shard);
+        }
+
+        String indexName = quote(InflectionIndex.tableName(tableName));
+
+        try (Connection connection = open(shard);
+             Connection source = open(dictionary)) {
+
+            connection.setAutoCommit(false);
+
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("create table " + indexName + " (" +
+                        SearchKeys.COLUMN + " text, " +
+                        InflectionIndex.ROW_ID_COLUMN + " integer, " +
+                        InflectionIndex.WORD_COLUMN + " text, " +
+                        InflectionIndex.FORM_COLUMN + " text)");
+            }
+
+            try (Statement select = source.createStatement();
+                 ResultSet resultSet = select.executeQuery(
+                         "select rowid, word, inflections from " + quote(tableName) +
+                         " order by rowid");
+                 PreparedStatement insert = connection.prepareStatement(
+                         "insert into " + indexName + " values (?, ?, ?, ?)")) {
+
+                while (resultSet.next()) {
+                    String word = resultSet.getString(2);
+
+                    for (String form : InflectionIndex.formsOf(word, resultSet.getString(3))) {
+                        insert.setString(1, SearchKeys.keyOf(form));
+                        insert.setLong(2, resultSet.getLong(1));
+                        insert.setString(3, word);
+                        insert.setString(4, form);
+                        insert.addBatch();
+                    }
+                }
+
+                insert.executeBatch();
+            }
+
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("create index " +
+                        quote(InflectionIndex.keyIndexName(tableName)) + " on " + indexName +
+                        " (" + SearchKeys.COLUMN + ", " + InflectionIndex.WORD_COLUMN + ")");
+            }
+
+            connection.commit();
+            connection.setAutoCommit(true);
+
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("vacuum");
+            }
+        }
+    }
+
+    /**
+     * Writes the {@link PhoneticIndex phonetic index} of a table to a new SQLite file
+     *
+     * @param tableName The table
+     * @param shard The file to write, which must not exist yet
+     * @throws SQLException if the index could not be written
+     * @throws IOException if the file already exists and could not be deleted
+     */
+    void writePhoneticIndex(
+            String tableName, File shard) throws SQLException, IOException {
+
+        if (shard.exists() && !shard.delete()) {
+            throw new IOException("Could not delete " + shard);
+        }
+
+        String indexName = quote(PhoneticIndex.tableName(tableName));
+
+        try (Connection connection = open(shard);
+             Connection source = open(dictionary)) {
+
+            connection.setAutoCommit(false);
+
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("create table " + indexName + " (" +
+                        PhoneticIndex.KEY_COLUMN + " text, " +
+                        PhoneticIndex.ROW_ID_COLUMN + " integer, " +
+                        PhoneticIndex.WORD_COLUMN + " text)");
+            }
+
+            try (Statement select = source.createStatement();
+                 ResultSet resultSet = select.executeQuery(
+                         "select rowid, word, phonetic from " + quote(tableName) +
+                         " order by rowid");
+                 PreparedStatement insert = connection.prepareStatement(
+                         "insert into " + indexName + " values (?, ?, ?)")) {
+
+                while (resultSet.next()) {
+                    String word = resultSet.getString(2);
+
+                    for (String key : PhoneticIndex.keysOf(word, resultSet.getString(3))) {
+                        insert.setString(1, key);
+                        insert.setLong(2, resultSet.getLong(1));
+                        insert.setString(3, word);
+                        insert.addBatch();
+                    }
+                }
+
+                insert.executeBatch();
+            }
+
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("create index " +
+                        quote(PhoneticIndex.keyIndexName(tableName)) + " on " + indexName +
+                        " (" + PhoneticIndex.KEY_COLUMN + ", " + PhoneticIndex.WORD_COLUMN + ")");
+            }
+
+            connection.commit();
+            connection.setAutoCommit(true);
+
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("vacuum");
+            }
+        }
+    }
+
+    /**
+     * Writes the {@link CompletionTable completion table} of a table to a new SQLite file
+     *
+     * @param tableName The table
+     * @param shard The file to write, which must not exist yet
+     * @throws SQLException if the table could not be written
+     * @throws IOException if the file already exists and could not be deleted
+     */
+    void writeCompletionTable(
+            String tableName, File shard) throws SQLException, IOException {
+
+        if (shard.exists() && !shard.delete()) {
+            throw new IOException("Could not delete " + shard);
+        }
+
+        Map<String, List<Completion>> completions = new HashMap<>();
+
+        try (Connection source = open(dictionary);
+             Statement select = source.createStatement();
+             ResultSet resultSet = select.executeQuery(
+                     "select rowid, word, translations, examples, compounds, definition " +
+                     "from " + quote(tableName) + " where word is not null")) {
+
+            while (resultSet.next()) {
+                Completion completion = new Completion(
+                        resultSet.getLong(1), resultSet.getString(2),
+                        ImportanceScore.of(resultSet.getString(3), resultSet.getString(4),
+                                resultSet.getString(5), resultSet.getString(6)));
+
+                for (String prefix : CompletionTable.prefixesOf(completion.key)) {
+                    if (!completions.containsKey(prefix)) {
+                        completions.put(prefix, new ArrayList<Completion>());
+                    }
+
+                    completions.get(prefix).add(completion);
+                }
+            }
+        }
+
+        String completionTableName = quote(CompletionTable.tableName(tableName));
+
+        try (Connection connection = open(shard)) {
+
+            connection.setAutoCommit(false);
+
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("create table " + completionTableName + " (" +
+                        CompletionTable.PREFIX_COLUMN + " text, " +
+                        CompletionTable.RANK_COLUMN + " integer, " +
+                        CompletionTable.ROW_ID_COLUMN + " integer, " +
+                        SearchKeys.COLUMN + " text, " +
+                        "primary key (" + CompletionTable.PREFIX_COLUMN + ", " +
+                        CompletionTable.RANK_COLUMN + "))");
+            }
+
+            try (PreparedStatement insert = connection.prepareStatement(
+                    "insert into " + completionTableName + " values (?, ?, ?, ?)")) {
+
+                for (Map.Entry<String, List<Completion>> entry : completions.entrySet()) {
+                    List<Completion> ranked = entry.getValue();
+                    Collections.sort(ranked, Completion.byRank(entry.getKey()));
+
+                    for (int rank = 0;
+                         rank < Math.min(CompletionTable.SIZE, ranked.size()); rank++) {
+                        insert.setString(1, entry.getKey());
+                        insert.setInt(2, rank);
+                        insert.setLong(3, ranked.get(rank).rowId);
+                        insert.setString(4, ranked.get(rank).key);
+                        insert.addBatch();
+                    }
+                }
+
+                insert.executeBatch();
+            }
+
+            connection.commit();
+            connection.setAutoCommit(true);
+
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("vacuum");
+            }
+        }
+    }
+
+    /**
+     * Adds the search key and importance columns to a table of a shard, after its rows have been
+     * copied. The index on the search key also covers the word, so that searches are ordered by
+     * it without sorting.
+     *
+     * @param connection A connection to the shard
+     * @param tableName The table
+     * @throws SQLException if the columns or the index could not be added
+     */
+    private static void addSearchColumns(
+            Connection connection, String tableName) throws SQLException {
+
+        Function.create(connection, SEARCH_KEY_FUNCTION, new Function() {
+            @Override
+            protected void xFunc() throws SQLException {
+                result(SearchKeys.keyOf(value_text(0)));
+            }
+        });
+
+        Function.create(connection, IMPORTANCE_FUNCTION, new Function() {
+            @Override
+            protected void xFunc() throws SQLException {
+                result(ImportanceScore.of(
+                        value_text(0), value_text(1), value_text(2), value_text(3)));
+            }
+        });
+
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("alter table main." + quote(tableName) +
+                    " add column " + SearchKeys.COLUMN + " text");
+            statement.execute("update main." + quote(tableName) +
+                    " set " + SearchKeys.COLUMN + " = " + SEARCH_KEY_FUNCTION + "(word)");
+            statement.execute("alter table main." + quote(tableName) +
+                    " add column " + ImportanceScore.COLUMN + " integer not null default 0");
+            statement.execute("update main." + quote(tableName) +
+                    " set " + ImportanceScore.COLUMN + " = " + IMPORTANCE_FUNCTION +
+                    "(translations, examples, compounds, definition)");
+            statement.execute("create index main." + quote(SearchKeys.indexName(tableName)) +
+                    " on " + quote(tableName) + " (" + SearchKeys.COLUMN + ", word)");
+        }
+    }
+
+    /**
+     * Gets the SQL that creates a table and its indexes
+     *
+     * @param connection A connection with the dictionary attached as source
+     * @param tableName The table
+     * @return The create statements, table first
+     * @throws SQLException if the schema could not be read
+     */
+    private static List<String> getSchema(
+            Connection connection, String tableName) throws SQLException {
+
+        List<String> schema = new ArrayList<>();
+
+        try (PreparedStatement statement = connection.prepareStatement(
+                "select sql from source.sqlite_master where tbl_name = ? and sql is not null " +
+                "order by case type when 'table' then 0 else 1 end, name")) {
+
+            statement.setString(1, tableName);
+
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    schema.add(resultSet.getString(1));
+                }
+            }
+        }
+
+        return schema;
+    }
+
+    /**
+     * Gets the quoted, comma separated columns of a table
+     *
+     * @param connection A connection with the dictionary attached as source
+     * @param tableName The table
+     * @return the columns of the table
+     * @throws SQLException if the columns could not be read
+     */
+    private static String getColumns(
+            Connection connection, String tableName) throws SQLException {
+
+        StringBuilder columns = new StringBuilder();
+
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(
+                     "pragma source.table_info(" + quote(tableName) + ")")) {
+
+            while (resultSet.next()) {
+                if (columns.length() > 0) {
+                    columns.append(", ");
+                }
+
+                columns.append(quote(resultSet.getString("name")));
+            }
+        }
+
+        return columns.toString();
+    }
+
+    /**
+     * Registers the SQL function that puts a word in its bucket. Words are bucketed by their
+     * {@link SearchKeys search key}, so that all the words matching a prefix are in one shard, and
+     * reading the shards in bucket order gives the words in the order of their keys.
+     *
+     * @param connection The connection to register the function with
+     * @throws SQLException if the function could not be registered
+     */
+    private static void registerBucketFunction(Connection connection) throws SQLException {
+        Function.create(connection, BUCKET_FUNCTION, new Function() {
+            @Override
+            protected void xFunc() throws SQLException {
+                result(ShardKeys.bucketOf(SearchKeys.keyOf(value_text(0))));
+            }
+        });
+    }
+
+    /**
+     * Opens a connection to a SQLite file
+     *
+     * @param file The file
+     * @return the connection
+     * @throws SQLException if the file could not be opened
+     */
+    static Connection open(File file) throws SQLException {
+        return DriverManager.getConnection("jdbc:sqlite:" + file.getPath());
+    }
+
+    /**
+     * A word that completes a prefix, see {@link #writeCompletionTable(String, File)}
+     */
+    private static class Completion {
+
+        /**
+         * Ranks the completions of a prefix: the prefix itself first, then most important, then
+         * shortest, then in search order
+         *
+         * @param prefix The prefix
+         * @return the comparator
+         */
+        static Comparator<Completion> byRank(final String prefix) {
+            return new Comparator<Completion>() {
+                @Override
+                public int compare(Completion first, Completion second) {
+
+                    boolean isFirstExact = first.key.equals(prefix);
+
+                    if (isFirstExact != second.key.equals(prefix)) {
+                        return isFirstExact ? -1 : 1;
+                    }
+
+                    if (first.score != second.score) {
+                        return second.score - first.score;
+                    }
+
+                    if (first.key.length() != second.key.length()) {
+                        return first.key.length() - second.key.length();
+                    }
+
+                    int byKey = first.key.compareTo(second.key);
+
+                    if (byKey != 0) {
+                        return byKey;
+                    }
+
+                    int byWord = first.word.compareTo(second.word);
+                    return byWord != 0 ? byWord : Long.compare(first.rowId, second.rowId);
+                }
+            };
+        }
+
+        final long rowId;
+        final String word;
+        final String key;
+        final int score;
+
+        Completion(long rowId, String word, int score) {
+            this.rowId = rowId;
+            this.word = word;
+            this.key = SearchKeys.keyOf(word);
+            this.score = score;
+        }
+    }
+
+    /**
+     * Quotes an SQL identifier
+     *
+     * @param identifier The identifier
+     * @return the quoted identifier
+     */
+    static String quote(String identifier) {
+        return '"' + identifier.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,440 @@
+package com.mbcdev.folkets.build;
+
+import com.mbcdev.folkets.CompletionTable;
+import com.mbcdev.folkets.InflectionIndex;
+import com.mbcdev.folkets.PhoneticIndex;
+import com.mbcdev.folkets.SearchKeys;
+import com.mbcdev.folkets.ShardKeys;
+import com.mbcdev.folkets.TextIndex;
+import com.mbcdev.folkets.TranslationIndex;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Times prefix searches over the compiled shards the way the app runs them, once with like and
+ * once with a range over the {@link SearchKeys search keys}, for every keystroke of a sample of
+ * words from each table.
+ * <p>
+ *     It also times the first {@link #KEYSTROKES} keystrokes right after the shards of each table
+ *     are opened, once with SQLite's defaults and once with the connections tuned like
+ *     {@code DatabaseTuning.TUNED} in the app, including its warm up.
+ * </p>
+ */
+class SearchBenchmark {
+
+    private static final int SEARCH_LIMIT = 100;
+    private static final int SAMPLE_WORDS = 8;
+    private static final int RUNS = 15;
+    private static final int KEYSTROKES = 20;
+    private static final int COLD_RUNS = 9;
+
+    // The same as DatabaseTuning.TUNED in the app
+    private static final long TUNED_MMAP_SIZE = 16 * 1024 * 1024;
+    private static final int TUNED_CACHE_SIZE_KB = 4 * 1024;
+
+    private final File shardsDir;
+    private final File workDir;
+    private final Map<String, Connection> connections = new HashMap<>();
+
+    /**
+     * Creates a benchmark
+     *
+     * @param shardsDir The directory of gzipped shards written by {@link CompileDictionaryTask}
+     * @param workDir A directory to decompress the shards into
+     */
+    SearchBenchmark(File shardsDir, File workDir) {
+        this.shardsDir = shardsDir;
+        this.workDir = workDir;
+    }
+
+    /**
+     * Runs the benchmark
+     *
+     * @return The report, one line per table and prefix length
+     * @throws IOException if the shards could not be decompressed
+     * @throws SQLException if the shards could not be searched
+     */
+    List<String> run() throws IOException, SQLException {
+
+        Map<String, List<String>> shardsByTable = decompressShards();
+        List<String> report = new ArrayList<>();
+
+        report.add(String.format(Locale.US, "%-16s %6s %8s %12s %12s %8s",
+                "table", "length", "queries", "like (us)", "range (us)", "speedup"));
+
+        try {
+            for (Map.Entry<String, List<String>> table : shardsByTable.entrySet()) {
+                report.addAll(benchmarkTable(table.getKey(), table.getValue()));
+            }
+
+            report.add("");
+            report.add(String.format(Locale.US, "%-16s %8s %10s %10s %10s %10s %10s",
+                    "table", "tuning", "open (us)", "first (us)", "median (us)", "max (us)",
+                    "total (us)"));
+
+            for (Map.Entry<String, List<String>> table : shardsByTable.entrySet()) {
+                report.add(benchmarkFirstKeystrokes(table.getKey(), table.getValue(), false));
+                report.add(benchmarkFirstKeystrokes(table.getKey(), table.getValue(), true));
+            }
+        } finally {
+            for (Connection connection : connections.values()) {
+                connection.close();
+            }
+        }
+
+        return report;
+    }
+
+    /**
+     * Times every keystroke of a sample of words of a table
+     *
+     * @param tableName The table
+     * @param fileNames The shards of the table
+     * @return The report lines of the table, one per prefix length
+     * @throws SQLException if the shards could not be searched
+     */
+    private List<String> benchmarkTable(
+            String tableName, List<String> fileNames) throws SQLException {
+
+        Map<Integer, List<Long>> likeTimes = new TreeMap<>();
+        Map<Integer, List<Long>> rangeTimes = new TreeMap<>();
+
+        for (String word : sampleWords(tableName, fileNames)) {
+            for (int length = 1; length <= word.length(); length++) {
+                String prefix = word.substring(0, length);
+
+                if (!SearchKeys.canSearchByRange(SearchKeys.keyOf(prefix))) {
+                    continue;
+                }
+
+                long like = median(tableName, prefix, false);
+                long range = median(tableName, prefix, true);
+
+                add(likeTimes, length, like);
+                add(rangeTimes, length, range);
+            }
+        }
+
+        List<String> lines = new ArrayList<>();
+
+        for (int length : likeTimes.keySet()) {
+            long like = average(likeTimes.get(length));
+            long range = average(rangeTimes.get(length));
+
+            lines.add(String.format(Locale.US, "%-16s %6d %8d %12d %12d %7.1fx",
+                    tableName, length, likeTimes.get(length).size(), like, range,
+                    (double) like / Math.max(range, 1)));
+        }
+
+        return lines;
+    }
+
+    /**
+     * Times the first {@link #KEYSTROKES} keystrokes of typing sample words right after the shards
+     * of a table are opened, taking the median of each keystroke over {@link #COLD_RUNS} opens.
+     * The page cache of every connection starts empty, though the OS may still cache the files.
+     *
+     * @param tableName The table
+     * @param fileNames The shards of the table
+     * @param tuned true to tune the connections and warm them up like the app
+     * @return The report line of the table and tuning
+     * @throws SQLException if the shards could not be searched
+     */
+    private String benchmarkFirstKeystrokes(
+            String tableName, List<String> fileNames, boolean tuned) throws SQLException {
+
+        List<String> prefixes = new ArrayList<>();
+
+        for (String word : sampleWords(tableName, fileNames)) {
+            for (int length = 1; length <= word.length() && prefixes.size() < KEYSTROKES;
+                 length++) {
+
+                if (SearchKeys.canSearchByRange(SearchKeys.keyOf(word.substring(0, length)))) {
+                    prefixes.add(word.substring(0, length));
+                }
+            }
+        }
+
+        long[] opens = new long[COLD_RUNS];
+        long[][] times = new long[prefixes.size()][COLD_RUNS];
+
+        for (int run = 0; run < COLD_RUNS; run++) {
+            long start = System.nanoTime();
+            reopen(tableName, fileNames, tuned);
+            opens[run] = (System.nanoTime() - start) / 1000;
+
+            for (int i = 0; i < prefixes.size(); i++) {
+                start = System.nanoTime();
+                search(tableName, prefixes.get(i), true);
+                times[i][run] = (System.nanoTime() - start) / 1000;
+            }
+        }
+
+        long[] keystrokes = new long[prefixes.size()];
+        long total = 0;
+
+        for (int i = 0; i < keystrokes.length; i++) {
+            Arrays.sort(times[i]);
+            keystrokes[i] = times[i][COLD_RUNS / 2];
+            total += keystrokes[i];
+        }
+
+        long first = keystrokes.length > 0 ? keystrokes[0] : 0;
+        Arrays.sort(keystrokes);
+        Arrays.sort(opens);
+
+        return String.format(Locale.US, "%-16s %8s %10d %10d %10d %10d %10d",
+                tableName, tuned ? "tuned" : "default", opens[COLD_RUNS / 2], first,
+                keystrokes.length > 0 ? keystrokes[keystrokes.length / 2] : 0,
+                keystrokes.length > 0 ? keystrokes[keystrokes.length - 1] : 0, total);
+    }
+
+    /**
+     * Closes and opens the connections to the shards of a table again, so their page caches are
+     * empty
+     *
+     * @param tableName The table
+     * @param fileNames The shards of the table
+     * @param tuned true to tune the connections and warm them up like the app
+     * @throws SQLException if a shard could not be opened
+     */
+    private void reopen(
+            String tableName, List<String> fileNames, boolean tuned) throws SQLException {
+
+        for (String fileName : fileNames) {
+            connections.remove(fileName).close();
+
+            Connection connection = DictionarySharder.open(new File(workDir, fileName));
+            connections.put(fileName, connection);
+
+            if (!tuned) {
+                continue;
+            }
+
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("pragma mmap_size = " + TUNED_MMAP_SIZE);
+                statement.execute("pragma cache_size = -" + TUNED_CACHE_SIZE_KB);
+
+                try (ResultSet resultSet = statement.executeQuery(
+                        "select sum(length(" + SearchKeys.COLUMN + ")) from " +
+                        DictionarySharder.quote(tableName) +
+                        " where " + SearchKeys.COLUMN + " >= ''")) {
+                    resultSet.next();
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the median time of a search over {@link #RUNS} runs
+     *
+     * @param tableName The table
+     * @param prefix The prefix being typed
+     * @param byRange true to search by range, false to search with like
+     * @return the median time in microseconds
+     * @throws SQLException if the search failed
+     */
+    private long median(String tableName, String prefix, boolean byRange) throws SQLException {
+
+        long[] times = new long[RUNS];
+
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            search(tableName, prefix, byRange);
+            times[run] = (System.nanoTime() - start) / 1000;
+        }
+
+        Arrays.sort(times);
+        return times[RUNS / 2];
+    }
+
+    /**
+     * Searches the shards of a table the way the app does, reading every column of every row
+     *
+     * @param tableName The table
+     * @param prefix The prefix
+     * @param byRange true to search by range, false to search with like
+     * @return the number of rows found
+     * @throws SQLException if the search failed
+     */
+    private int search(String tableName, String prefix, boolean byRange) throws SQLException {
+
+        String key = SearchKeys.keyOf(prefix);
+        String upperBound = SearchKeys.upperBound(key);
+        int found = 0;
+
+        for (int bucket : ShardKeys.bucketsFor(key)) {
+            Connection connection = connections.get(ShardKeys.fileName(tableName, bucket));
+
+            if (connection == null || found >= SEARCH_LIMIT) {
+                continue;
+            }
+
+            String where;
+
+            if (!byRange) {
+                where = SearchKeys.COLUMN + " like ?";
+            } else if (upperBound == null) {
+                where = SearchKeys.COLUMN + " >= ?";
+            } else {
+                where = SearchKeys.COLUMN + " >= ? and " + SearchKeys.COLUMN + " < ?";
+            }
+
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "select * from " + DictionarySharder.quote(tableName) + " where " + where +
+                    " order by " + SearchKeys.COLUMN + " asc, word asc" +
+                    " limit 0," + (SEARCH_LIMIT - found))) {
+
+                statement.setString(1, byRange ? key : key + "%");
+
+                if (byRange && upperBound != null) {
+                    statement.setString(2, upperBound);
+                }
+
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    int columns = resultSet.getMetaData().getColumnCount();
+
+                    while (resultSet.next()) {
+                        for (int index = 1; index <= columns; index++) {
+                            resultSet.getString(index);
+                        }
+
+                        found++;
+                    }
+                }
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * Picks words spread evenly through a table
+     *
+     * @param tableName The table
+     * @param fileNames The shards of the table
+     * @return up to {@link #SAMPLE_WORDS} words
+     * @throws SQLException if the shards could not be read
+     */
+    private List<String> sampleWords(
+            String tableName, List<String> fileNames) throws SQLException {
+
+        List<String> words = new ArrayList<>();
+
+        for (String fileName : fileNames) {
+            try (Statement statement = connections.get(fileName).createStatement();
+                 ResultSet resultSet = statement.executeQuery(
+                         "select word from " + DictionarySharder.quote(tableName) +
+                         " where length(word) >= 4 order by word")) {
+
+                while (resultSet.next()) {
+                    words.add(resultSet.getString(1));
+                }
+            }
+        }
+
+        List<String> sample = new ArrayList<>();
+        int step = Math.max(1, words.size() / SAMPLE_WORDS);
+
+        for (int i = step / 2; i < words.size() && sample.size() < SAMPLE_WORDS; i += step) {
+            sample.add(words.get(i));
+        }
+
+        return sample;
+    }
+
+    /**
+     * Decompresses every shard into the work directory and opens it
+     *
+     * @return The file names of the shards, by table
+     * @throws IOException if a shard could not be decompressed
+     * @throws SQLException if a shard could not be opened
+     */
+    private Map<String, List<String>> decompressShards() throws IOException, SQLException {
+
+        Map<String, List<String>> shardsByTable = new TreeMap<>();
+        File[] files = shardsDir.listFiles();
+
+        if (files == null) {
+            throw new IOException("No shards in " + shardsDir);
+        }
+
+        CompileDictionaryTask.mkdirs(workDir);
+
+        for (File file : files) {
+            String name = file.getName();
+
+            if (!name.endsWith(".db.gz")) {
+                continue;
+            }
+
+            String fileName = name.substring(0, name.length() - ".gz".length());
+            String tableName = fileName.substring(0, fileName.lastIndexOf('_'));
+
+            if (TextIndex.isIndexName(tableName) || TranslationIndex.isIndexName(tableName)
+                    || InflectionIndex.isIndexName(tableName)
+                    || PhoneticIndex.isIndexName(tableName)
+                    || CompletionTable.isTableName(tableName)) {
+                continue;
+            }
+            File shard = new File(workDir, fileName);
+
+            try (InputStream inputStream = new GZIPInputStream(new FileInputStream(file));
+                 OutputStream outputStream = new FileOutputStream(shard)) {
+
+                byte[] buffer = new byte[64 * 1024];
+                int read;
+
+                while ((read = inputStream.read(buffer)) != -1) {
+                    outputStream.write(buffer, 0, read);
+                }
+            }
+
+            connections.put(fileName, DictionarySharder.open(shard));
+
+            if (!shardsByTable.containsKey(tableName)) {
+                shardsByTable.put(tableName, new ArrayList<String>());
+            }
+
+            shardsByTable.get(tableName).add(fileName);
+        }
+
+        return shardsByTable;
+    }
+
+    private static void add(Map<Integer, List<Long>> times, int length, long time) {
+        if (!times.containsKey(length)) {
+            times.put(length, new ArrayList<Long>());
+        }
+
+        times.get(length).add(time);
+    }
+
+    private static long average(List<Long> times) {
+        long total = 0;
+
+        for (long time : times) {
+            total += time;
+        }
+
+        return total / Math.max(times.size(), 1);
+    }
+}